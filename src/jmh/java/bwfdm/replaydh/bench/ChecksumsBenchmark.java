@@ -0,0 +1,164 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bwfdm.replaydh.io.resources.FileResource;
+import bwfdm.replaydh.io.resources.IOResource;
+import bwfdm.replaydh.io.resources.VirtualIOResource;
+import bwfdm.replaydh.workflow.Checksum;
+import bwfdm.replaydh.workflow.Checksums;
+import bwfdm.replaydh.workflow.Checksums.ChecksumType;
+
+/**
+ * Measures the throughput of {@link Checksums#createChecksum(IOResource, ChecksumType)}
+ * and {@link Checksums#validateChecksum(IOResource, Checksum)}.
+ * <p>
+ * The default {@link #size sizes} cover the first three size classes used by
+ * {@link Checksums} (no summary digest, 16 byte gaps, 32 byte gaps). Bigger classes
+ * (500 MB, 1 GB and 10 GB thresholds) can be selected with {@code -p size=...},
+ * but are only supported for the {@link Source#FILE file} source.
+ * <p>
+ * A {@link Source#FILE file} is read through a {@link java.nio.channels.FileChannel}
+ * into a direct buffer, while the {@link Source#VIRTUAL in-memory} resource uses
+ * a heap buffer. The {@link Throughput#bytes bytes} counter yields the raw data rate,
+ * allocation rates are available via {@code -prof gc}.
+ *
+ * @author Markus Gärtner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumsBenchmark {
+
+	public enum Source {
+		FILE,
+		VIRTUAL,
+		;
+	}
+
+	@Param({"8", "1048576", "134217728"})
+	public long size;
+
+	@Param({"MD5", "SHA_1", "SHA_256", "XXH64"})
+	public ChecksumType type;
+
+	@Param({"FILE", "VIRTUAL"})
+	public Source source;
+
+	private Path file;
+	private IOResource resource;
+	private Checksum checksum;
+
+	/**
+	 * Counts processed bytes so that JMH reports bytes per second
+	 * next to the plain operation rate.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0L;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, InterruptedException {
+		byte[] data = new byte[(int) Math.min(size, 1<<20)];
+		new Random(size).nextBytes(data);
+		ByteBuffer bb = ByteBuffer.wrap(data);
+
+		switch (source) {
+		case FILE:
+			file = Files.createTempFile("rdh-bench", ".bin");
+			resource = new FileResource(file);
+			break;
+
+		case VIRTUAL:
+			if(size>Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Size too big for in-memory resource: "+size);
+			resource = new VirtualIOResource(null, (int) size);
+			break;
+
+		default:
+			throw new IllegalStateException("Unknown source: "+source);
+		}
+
+		try(SeekableByteChannel channel = resource.getWriteChannel(true)) {
+			long remaining = size;
+			while(remaining>0) {
+				bb.clear();
+				bb.limit((int) Math.min(bb.capacity(), remaining));
+				remaining -= channel.write(bb);
+			}
+		}
+
+		checksum = Checksums.createChecksum(resource, type);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		if(file!=null) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Benchmark
+	public Checksum create(Throughput throughput) throws IOException, InterruptedException {
+		Checksum result = Checksums.createChecksum(resource, type);
+		throughput.bytes += size;
+		return result;
+	}
+
+	@Benchmark
+	public Checksums.ChecksumValidationResult validate(Throughput throughput) throws IOException, InterruptedException {
+		Checksums.ChecksumValidationResult result = Checksums.validateChecksum(resource, checksum);
+		throughput.bytes += size;
+		return result;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bwfdm.replaydh.io.MemoryByteStorage;
+
+/**
+ * Measures sequential reads and writes through the {@link SeekableByteChannel}
+ * provided by {@link MemoryByteStorage#newChannel()} for different transfer
+ * chunk sizes, using either heap or direct buffers on the caller side.
+ *
+ * @author Markus Gärtner
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryByteStorageBenchmark {
+
+	@Param({"16777216"})
+	public int size;
+
+	@Param({"4096", "16384", "1048576"})
+	public int chunkSize;
+
+	@Param({"true", "false"})
+	public boolean direct;
+
+	private MemoryByteStorage storage;
+	private ByteBuffer buffer;
+
+	/**
+	 * Counts transferred bytes so that JMH reports bytes per second
+	 * next to the plain operation rate.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0L;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		buffer = direct ? ByteBuffer.allocateDirect(chunkSize) : ByteBuffer.allocate(chunkSize);
+
+		byte[] data = new byte[chunkSize];
+		new Random(chunkSize).nextBytes(data);
+		buffer.put(data);
+
+		storage = new MemoryByteStorage(size);
+		try(SeekableByteChannel channel = storage.newChannel()) {
+			fill(channel);
+		}
+	}
+
+	private long fill(SeekableByteChannel channel) throws IOException {
+		long written = 0L;
+		while(written<size) {
+			buffer.clear();
+			buffer.limit((int) Math.min(chunkSize, size-written));
+			written += channel.write(buffer);
+		}
+		return written;
+	}
+
+	@Benchmark
+	public long write(Throughput throughput) throws IOException {
+		long written;
+		try(SeekableByteChannel channel = storage.newChannel()) {
+			written = fill(channel);
+		}
+		throughput.bytes += written;
+		return written;
+	}
+
+	@Benchmark
+	public long read(Throughput throughput) throws IOException {
+		long read = 0L;
+		try(SeekableByteChannel channel = storage.newChannel()) {
+			int count;
+			buffer.clear();
+			while((count = channel.read(buffer)) > -1) {
+				read += count;
+				buffer.clear();
+			}
+		}
+		throughput.bytes += read;
+		return read;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and low-level codecs for the compact binary interchange format
+ * of workflows. A binary file starts with a fixed header that is never
+ * compressed:
+ * <pre>
+ * MAGIC (4 bytes) | VERSION (1 byte) | FLAGS (1 byte)
+ * </pre>
+ * The remainder of the file is a sequence of blocks (see {@link BlockOutputStream})
+ * that carry a stream of tagged records: an optional {@link #TAG_INFO info}
+ * record with title and description of the workflow, any number of
+ * {@link #TAG_STEP step} records, any number of {@link #TAG_LINKS link}
+ * records and a final {@link #TAG_END end} marker.
+ * <p>
+ * Numbers are stored as unsigned LEB128 varints, signed values get zigzag
+ * encoded first. Strings that tend to repeat (identifiers, types, roles,
+ * property keys, ...) are written only once and afterwards referenced by
+ * their index in a string table that both writer and reader build up on the
+ * fly, so no table needs to be kept in front of the data and steps can be
+ * streamed.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public final class BinaryFormat {
+
+	private BinaryFormat() {
+		// no instantiation
+	}
+
+	/**
+	 * File ending for workflows stored in the binary format
+	 */
+	public static final String FILE_EXTENSION = ".rdhw";
+
+	/**
+	 * Current version of the format. Readers reject files with a higher version.
+	 */
+	public static final int VERSION = 1;
+
+	static final byte[] MAGIC = {'R', 'D', 'H', 'W'};
+
+	/**
+	 * Header flag signaling that blocks may be deflate compressed
+	 */
+	static final int FLAG_COMPRESSED = 0x1;
+
+	static final int TAG_END = 0;
+	static final int TAG_INFO = 1;
+	static final int TAG_STEP = 2;
+	static final int TAG_LINKS = 3;
+
+	/*
+	 *  References for strings. Any value above STRING_TABLE
+	 *  points to the table entry at (value-STRING_TABLE).
+	 */
+	static final int STRING_NULL = 0;
+	static final int STRING_LITERAL = 1;
+	static final int STRING_NEW = 2;
+	static final int STRING_TABLE = 3;
+
+	/*
+	 *  Bits of the field mask preceding every step
+	 */
+	static final int FIELD_ID = 1<<0;
+	static final int FIELD_TITLE = 1<<1;
+	static final int FIELD_DESCRIPTION = 1<<2;
+	static final int FIELD_TIMESTAMP = 1<<3;
+	static final int FIELD_INPUT = 1<<4;
+	static final int FIELD_TOOL = 1<<5;
+	static final int FIELD_PERSONS = 1<<6;
+	static final int FIELD_OUTPUT = 1<<7;
+	static final int FIELD_PROPERTIES = 1<<8;
+
+	/**
+	 * Uncompressed size of the blocks created by the writer
+	 */
+	static final int BLOCK_SIZE = 1<<16;
+
+	/**
+	 * Upper bound for the size of a single block or string accepted
+	 * by the reader, to fail early on corrupted data.
+	 */
+	static final int MAX_LENGTH = 1<<26;
+
+	static void writeVarInt(OutputStream out, int value) throws IOException {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static void writeVarLong(OutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0L) {
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	static int readVarInt(InputStream in) throws IOException {
+		int result = 0;
+		for(int shift = 0; shift<32; shift += 7) {
+			int b = readByte(in);
+			result |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static long readVarLong(InputStream in) throws IOException {
+		long result = 0L;
+		for(int shift = 0; shift<64; shift += 7) {
+			int b = readByte(in);
+			result |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1L);
+	}
+
+	static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if(b==-1)
+			throw new EOFException("Unexpected end of binary data");
+		return b;
+	}
+
+	static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+		while(length>0) {
+			int count = in.read(buffer, offset, length);
+			if(count==-1)
+				throw new EOFException("Unexpected end of binary data");
+			offset += count;
+			length -= count;
+		}
+	}
+
+	static int readLength(InputStream in) throws IOException {
+		int length = readVarInt(in);
+		if(length<0 || length>MAX_LENGTH)
+			throw new IOException("Invalid length in binary data: "+(length & 0xFFFFFFFFL));
+		return length;
+	}
+
+	static void writeUTF8(OutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readUTF8(InputStream in) throws IOException {
+		int length = readLength(in);
+		byte[] bytes = new byte[length];
+		readFully(in, bytes, 0, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
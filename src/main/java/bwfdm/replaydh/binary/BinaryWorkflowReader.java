@@ -0,0 +1,373 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.binary;
+
+import static bwfdm.replaydh.utils.RDHUtils.checkState;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import bwfdm.replaydh.utils.LazyCollection;
+import bwfdm.replaydh.utils.Options;
+import bwfdm.replaydh.workflow.Identifier;
+import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.impl.DefaultPerson;
+import bwfdm.replaydh.workflow.impl.DefaultResource;
+import bwfdm.replaydh.workflow.impl.DefaultTool;
+import bwfdm.replaydh.workflow.schema.IdentifierSchema;
+import bwfdm.replaydh.workflow.schema.IdentifierType;
+import bwfdm.replaydh.workflow.schema.WorkflowSchema;
+
+/**
+ * Reads workflow steps stored in the {@link BinaryFormat binary format}.
+ * Mirrors the API of {@link bwfdm.replaydh.io.ObjectReader} but operates
+ * on byte streams. Steps are decoded one at a time and the reader itself only
+ * keeps the string table, which the writer caps in size. Files with any number
+ * of steps can therefore be processed as long as the caller doesn't hold on to
+ * the steps.
+ * <p>
+ * Links between steps are reported to the {@link #setLinkAction(LinkAction) link action}
+ * as soon as they are encountered while advancing through the data. Steps are
+ * identified by the order in which they got {@link #read() read}, so callers
+ * that need the actual steps have to keep a lookup for them on their own.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class BinaryWorkflowReader implements AutoCloseable {
+
+	private final WorkflowSchema schema;
+	private final Supplier<? extends WorkflowStep> stepFactory;
+
+	private InputStream in;
+
+	/**
+	 * Tag of the next record or {@code -1} if it hasn't been read yet
+	 */
+	private int nextTag = -1;
+
+	private String title, description;
+
+	private final List<String> strings = new ArrayList<>();
+
+	/**
+	 * Number of steps read so far, needed to validate links
+	 */
+	private int stepCount = 0;
+
+	private LinkAction linkAction;
+
+	/**
+	 * Resolved identifier types, so that each type string only gets parsed once
+	 */
+	private final Map<String, IdentifierType> resourceTypes = new HashMap<>();
+	private final Map<String, IdentifierType> personTypes = new HashMap<>();
+
+	public BinaryWorkflowReader(WorkflowSchema schema, Supplier<? extends WorkflowStep> stepFactory) {
+		this.schema = requireNonNull(schema);
+		this.stepFactory = requireNonNull(stepFactory);
+	}
+
+	/**
+	 * Validates the file header and prepares the reader for consuming the
+	 * actual data. If the data starts with workflow information, title and
+	 * description are available immediately after this method returns.
+	 */
+	public void init(InputStream input, Options options) throws IOException {
+		requireNonNull(input);
+		checkState("Reader already initialized", in==null);
+
+		for(byte b : BinaryFormat.MAGIC) {
+			if(BinaryFormat.readByte(input)!=(b & 0xFF))
+				throw new IOException("Not a binary workflow file");
+		}
+
+		int version = BinaryFormat.readByte(input);
+		if(version>BinaryFormat.VERSION)
+			throw new IOException("Unsupported format version: "+version);
+
+		// Blocks are self-describing, the compression flag is purely informative
+		BinaryFormat.readByte(input);
+
+		in = new BlockInputStream(input);
+
+		if(peekTag()==BinaryFormat.TAG_INFO) {
+			nextTag = -1;
+			title = readString();
+			description = readString();
+		}
+	}
+
+	public void setLinkAction(LinkAction linkAction) {
+		this.linkAction = linkAction;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Reads the tag of the next record, handling all link records on the way.
+	 */
+	private int peekTag() throws IOException {
+		while(nextTag==-1) {
+			int tag = BinaryFormat.readVarInt(in);
+			if(tag==BinaryFormat.TAG_LINKS) {
+				readLinks();
+			} else {
+				nextTag = tag;
+			}
+		}
+		return nextTag;
+	}
+
+	private void readLinks() throws IOException {
+		int sourceIndex = BinaryFormat.readVarInt(in);
+		int count = BinaryFormat.readLength(in);
+
+		checkStepIndex(sourceIndex);
+		for(int i=0; i<count; i++) {
+			int targetIndex = sourceIndex+BinaryFormat.unZigZag(BinaryFormat.readVarInt(in));
+			checkStepIndex(targetIndex);
+			if(linkAction!=null) {
+				linkAction.link(sourceIndex, targetIndex);
+			}
+		}
+	}
+
+	private void checkStepIndex(int index) throws IOException {
+		if(index<0 || index>=stepCount)
+			throw new IOException("Link to unknown step: "+index);
+	}
+
+	public boolean hasMoreData() throws IOException, InterruptedException {
+		checkState("Reader not initialized", in!=null);
+
+		int tag = peekTag();
+		switch (tag) {
+		case BinaryFormat.TAG_STEP:
+			return true;
+		case BinaryFormat.TAG_END:
+			return false;
+
+		default:
+			throw new IOException("Unexpected record tag: "+tag);
+		}
+	}
+
+	public WorkflowStep read() throws IOException, InterruptedException {
+		if(!hasMoreData())
+			throw new IOException("No more steps available");
+		nextTag = -1;
+
+		WorkflowStep result = stepFactory.get();
+
+		int fields = BinaryFormat.readVarInt(in);
+
+		if((fields & BinaryFormat.FIELD_ID) != 0) {
+			result.setId(readString());
+		}
+		if((fields & BinaryFormat.FIELD_TITLE) != 0) {
+			result.setTitle(readString());
+		}
+		if((fields & BinaryFormat.FIELD_DESCRIPTION) != 0) {
+			result.setDescription(readString());
+		}
+		if((fields & BinaryFormat.FIELD_TIMESTAMP) != 0) {
+			long seconds = BinaryFormat.unZigZag(BinaryFormat.readVarLong(in));
+			int nanos = BinaryFormat.readVarInt(in);
+			result.setRecordingTime(LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+		}
+		if((fields & BinaryFormat.FIELD_INPUT) != 0) {
+			int count = BinaryFormat.readLength(in);
+			for(int i=0; i<count; i++) {
+				result.addInput(readResource());
+			}
+		}
+		if((fields & BinaryFormat.FIELD_TOOL) != 0) {
+			result.setTool(readTool());
+		}
+		if((fields & BinaryFormat.FIELD_PERSONS) != 0) {
+			int count = BinaryFormat.readLength(in);
+			for(int i=0; i<count; i++) {
+				result.addPerson(readPerson());
+			}
+		}
+		if((fields & BinaryFormat.FIELD_OUTPUT) != 0) {
+			int count = BinaryFormat.readLength(in);
+			for(int i=0; i<count; i++) {
+				result.addOutput(readResource());
+			}
+		}
+		if((fields & BinaryFormat.FIELD_PROPERTIES) != 0) {
+			int count = BinaryFormat.readLength(in);
+			for(int i=0; i<count; i++) {
+				String key = readString();
+				String value = readString();
+				result.setProperty(key, value);
+			}
+		}
+
+		stepCount++;
+
+		return result;
+	}
+
+	public int readAll(Consumer<? super WorkflowStep> action) throws IOException, InterruptedException {
+		int counter = 0;
+		while(hasMoreData()) {
+			action.accept(read());
+			counter++;
+		}
+		return counter;
+	}
+
+	public List<WorkflowStep> readAll() throws IOException, InterruptedException {
+		LazyCollection<WorkflowStep> buffer = LazyCollection.lazyList();
+		readAll(buffer);
+		return buffer.getAsList();
+	}
+
+	@SuppressWarnings("deprecation")
+	private DefaultResource readResource() throws IOException {
+		DefaultResource resource = DefaultResource.blankResource();
+		readResourceFields(resource);
+		return resource;
+	}
+
+	private void readResourceFields(DefaultResource resource) throws IOException {
+		IdentifierSchema identifierSchema = schema.getResourceIdentifierSchema();
+
+		resource.setDescription(readString());
+		int count = BinaryFormat.readLength(in);
+		for(int i=0; i<count; i++) {
+			resource.addIdentifier(readIdentifier(identifierSchema, resourceTypes));
+		}
+		resource.setResourceType(readString());
+	}
+
+	@SuppressWarnings("deprecation")
+	private DefaultTool readTool() throws IOException {
+		DefaultTool tool = DefaultTool.blankTool();
+		readResourceFields(tool);
+		tool.setParameters(readString());
+		tool.setEnvironment(readString());
+		return tool;
+	}
+
+	@SuppressWarnings("deprecation")
+	private DefaultPerson readPerson() throws IOException {
+		IdentifierSchema identifierSchema = schema.getPersonIdentifierSchema();
+
+		DefaultPerson person = DefaultPerson.blankPerson();
+		person.setDescription(readString());
+		int count = BinaryFormat.readLength(in);
+		for(int i=0; i<count; i++) {
+			person.addIdentifier(readIdentifier(identifierSchema, personTypes));
+		}
+		person.setRole(readString());
+		return person;
+	}
+
+	private Identifier readIdentifier(IdentifierSchema identifierSchema,
+			Map<String, IdentifierType> types) throws IOException {
+		String typeName = readString();
+		String context = readString();
+		String id = readString();
+
+		if(typeName==null)
+			throw new IOException("Missing identifier type");
+
+		IdentifierType type = types.get(typeName);
+		if(type==null) {
+			type = IdentifierSchema.parseIdentifierType(identifierSchema, typeName);
+			if(type==null)
+				throw new IOException("Unknown identifier type: "+typeName);
+			types.put(typeName, type);
+		}
+
+		return new Identifier(type, id, context);
+	}
+
+	private String readString() throws IOException {
+		int ref = BinaryFormat.readVarInt(in);
+		switch (ref) {
+		case BinaryFormat.STRING_NULL:
+			return null;
+
+		case BinaryFormat.STRING_LITERAL:
+			return BinaryFormat.readUTF8(in);
+
+		case BinaryFormat.STRING_NEW: {
+			String s = BinaryFormat.readUTF8(in);
+			strings.add(s);
+			return s;
+		}
+
+		default: {
+			int index = ref-BinaryFormat.STRING_TABLE;
+			if(index<0 || index>=strings.size())
+				throw new IOException("Invalid string reference: "+(ref & 0xFFFFFFFFL));
+			return strings.get(index);
+		}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if(in!=null) {
+				in.close();
+			}
+		} finally {
+			in = null;
+			nextTag = -1;
+			title = description = null;
+			strings.clear();
+			stepCount = 0;
+			resourceTypes.clear();
+			personTypes.clear();
+		}
+	}
+
+	/**
+	 * Receives the links between steps, with both steps given by their
+	 * index in the order they were read in, starting at {@code 0}.
+	 *
+	 * @author Markus Gärtner
+	 *
+	 */
+	@FunctionalInterface
+	public interface LinkAction {
+		void link(int source, int target);
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.binary;
+
+import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
+import static bwfdm.replaydh.utils.RDHUtils.checkState;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import bwfdm.replaydh.utils.Options;
+import bwfdm.replaydh.workflow.Identifiable;
+import bwfdm.replaydh.workflow.Identifier;
+import bwfdm.replaydh.workflow.Person;
+import bwfdm.replaydh.workflow.Resource;
+import bwfdm.replaydh.workflow.Tool;
+import bwfdm.replaydh.workflow.Workflow;
+import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowStepIterator;
+
+/**
+ * Writes workflow steps in the {@link BinaryFormat binary format}.
+ * Mirrors the API of {@link bwfdm.replaydh.io.ObjectWriter} but operates
+ * on byte streams. Steps can either be streamed individually via
+ * {@link #write(WorkflowStep)} or an entire (partial) workflow including
+ * its graph can be written with {@link #writeWorkflow(Workflow, Set)}.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class BinaryWorkflowWriter implements AutoCloseable {
+
+	/**
+	 * Property to control block compression. Active by default.
+	 */
+	public static final String COMPRESS = "compress";
+
+	/**
+	 * Upper bound for the number of entries in the string table.
+	 * Once reached, all further strings are written as literals.
+	 */
+	private static final int MAX_TABLE_SIZE = 1<<20;
+
+	private OutputStream output;
+	private boolean compress;
+
+	/**
+	 * Block layer, created when the header is written
+	 */
+	private BlockOutputStream out;
+
+	private boolean finished = false;
+
+	private final Map<String, Integer> strings = new HashMap<>();
+
+	/**
+	 * Position of every step written so far, used to encode links
+	 */
+	private final Map<WorkflowStep, Integer> stepIndices = new IdentityHashMap<>();
+
+	public void init(OutputStream output, Options options) {
+		requireNonNull(output);
+		checkState("Writer already initialized", this.output==null);
+
+		if(options==null) {
+			options = Options.emptyOptions;
+		}
+
+		this.output = output;
+		compress = options.getBoolean(COMPRESS, true);
+	}
+
+	/**
+	 * Writes the uncompressed file header. Calling this method is optional,
+	 * the header will be written with the first data otherwise.
+	 */
+	public void writeHeader() throws IOException {
+		checkState("Writer not initialized", output!=null);
+		checkState("Header already written", out==null);
+
+		output.write(BinaryFormat.MAGIC);
+		output.write(BinaryFormat.VERSION);
+		output.write(compress ? BinaryFormat.FLAG_COMPRESSED : 0);
+
+		out = new BlockOutputStream(output, compress);
+	}
+
+	private void ensureHeader() throws IOException {
+		if(out==null) {
+			writeHeader();
+		}
+	}
+
+	/**
+	 * Writes the title and description of a workflow. If used, this
+	 * must happen before any steps are written.
+	 */
+	public void writeInfo(String title, String description) throws IOException {
+		ensureHeader();
+		checkState("Info must precede all steps", stepIndices.isEmpty());
+
+		BinaryFormat.writeVarInt(out, BinaryFormat.TAG_INFO);
+		writeLiteral(title);
+		writeLiteral(description);
+	}
+
+	public void write(WorkflowStep step) throws IOException, InterruptedException {
+		write(step, step);
+	}
+
+	/**
+	 * Writes {@code step} and registers it under {@code source} for
+	 * later links, so that transformed steps can be linked based on
+	 * their original counterparts.
+	 */
+	private void write(WorkflowStep step, WorkflowStep source) throws IOException {
+		requireNonNull(step);
+		ensureHeader();
+		checkState("Footer already written", !finished);
+
+		stepIndices.put(source, Integer.valueOf(stepIndices.size()));
+
+		String id = step.getId();
+		String title = step.getTitle();
+		String description = step.getDescription();
+		LocalDateTime timestamp = step.getRecordingTime();
+		Set<Resource> input = step.getInput();
+		Tool tool = step.getTool();
+		Set<Person> persons = step.getPersons();
+		Set<Resource> output = step.getOutput();
+		Map<String, String> properties = step.getProperties();
+
+		int fields = 0;
+		if(id!=null) fields |= BinaryFormat.FIELD_ID;
+		if(title!=null) fields |= BinaryFormat.FIELD_TITLE;
+		if(description!=null) fields |= BinaryFormat.FIELD_DESCRIPTION;
+		if(timestamp!=null) fields |= BinaryFormat.FIELD_TIMESTAMP;
+		if(!input.isEmpty()) fields |= BinaryFormat.FIELD_INPUT;
+		if(tool!=null) fields |= BinaryFormat.FIELD_TOOL;
+		if(!persons.isEmpty()) fields |= BinaryFormat.FIELD_PERSONS;
+		if(!output.isEmpty()) fields |= BinaryFormat.FIELD_OUTPUT;
+		if(!properties.isEmpty()) fields |= BinaryFormat.FIELD_PROPERTIES;
+
+		BinaryFormat.writeVarInt(out, BinaryFormat.TAG_STEP);
+		BinaryFormat.writeVarInt(out, fields);
+
+		if(id!=null) {
+			writeLiteral(id);
+		}
+		if(title!=null) {
+			writeLiteral(title);
+		}
+		if(description!=null) {
+			writeLiteral(description);
+		}
+		if(timestamp!=null) {
+			BinaryFormat.writeVarLong(out, BinaryFormat.zigZag(timestamp.toEpochSecond(ZoneOffset.UTC)));
+			BinaryFormat.writeVarInt(out, timestamp.getNano());
+		}
+		if(!input.isEmpty()) {
+			BinaryFormat.writeVarInt(out, input.size());
+			for(Resource resource : input) {
+				writeResourceFields(resource);
+			}
+		}
+		if(tool!=null) {
+			writeResourceFields(tool);
+			writeLiteral(tool.getParameters());
+			writeString(tool.getEnvironment());
+		}
+		if(!persons.isEmpty()) {
+			BinaryFormat.writeVarInt(out, persons.size());
+			for(Person person : persons) {
+				writeIdentifiableFields(person);
+				writeString(person.getRole());
+			}
+		}
+		if(!output.isEmpty()) {
+			BinaryFormat.writeVarInt(out, output.size());
+			for(Resource resource : output) {
+				writeResourceFields(resource);
+			}
+		}
+		if(!properties.isEmpty()) {
+			BinaryFormat.writeVarInt(out, properties.size());
+			for(Map.Entry<String, String> entry : properties.entrySet()) {
+				writeString(entry.getKey());
+				writeLiteral(entry.getValue());
+			}
+		}
+	}
+
+	private void writeIdentifiableFields(Identifiable identifiable) throws IOException {
+		writeLiteral(identifiable.getDescription());
+
+		Set<Identifier> identifiers = identifiable.getIdentifiers();
+		BinaryFormat.writeVarInt(out, identifiers.size());
+		for(Identifier identifier : identifiers) {
+			writeString(identifier.getType().getStringValue());
+			writeString(identifier.getContext());
+			writeString(identifier.getId());
+		}
+	}
+
+	private void writeResourceFields(Resource resource) throws IOException {
+		writeIdentifiableFields(resource);
+		writeString(resource.getResourceType());
+	}
+
+	/**
+	 * Writes a string that is expected to occur repeatedly
+	 * and therefore gets stored in the string table.
+	 */
+	private void writeString(String s) throws IOException {
+		if(s==null) {
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_NULL);
+			return;
+		}
+
+		Integer index = strings.get(s);
+		if(index!=null) {
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_TABLE+index.intValue());
+		} else if(strings.size()<MAX_TABLE_SIZE) {
+			strings.put(s, Integer.valueOf(strings.size()));
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_NEW);
+			BinaryFormat.writeUTF8(out, s);
+		} else {
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_LITERAL);
+			BinaryFormat.writeUTF8(out, s);
+		}
+	}
+
+	/**
+	 * Writes a string that is unlikely to repeat and therefore
+	 * bypasses the string table.
+	 */
+	private void writeLiteral(String s) throws IOException {
+		if(s==null) {
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_NULL);
+		} else {
+			BinaryFormat.writeVarInt(out, BinaryFormat.STRING_LITERAL);
+			BinaryFormat.writeUTF8(out, s);
+		}
+	}
+
+	/**
+	 * Writes the links from {@code source} to its {@code targets}. All the steps
+	 * involved must have been {@link #write(WorkflowStep) written} already.
+	 */
+	public void writeLinks(WorkflowStep source, Iterable<? extends WorkflowStep> targets) throws IOException {
+		int sourceIndex = indexOf(source);
+
+		int count = 0;
+		for(@SuppressWarnings("unused") WorkflowStep target : targets) {
+			count++;
+		}
+		if(count==0) {
+			return;
+		}
+
+		BinaryFormat.writeVarInt(out, BinaryFormat.TAG_LINKS);
+		BinaryFormat.writeVarInt(out, sourceIndex);
+		BinaryFormat.writeVarInt(out, count);
+
+		// Steps are mostly linked to their close neighbors, so deltas stay small
+		for(WorkflowStep target : targets) {
+			BinaryFormat.writeVarInt(out, BinaryFormat.zigZag(indexOf(target)-sourceIndex));
+		}
+	}
+
+	private int indexOf(WorkflowStep step) {
+		Integer index = stepIndices.get(step);
+		checkArgument("Step has not been written yet", index!=null);
+		return index.intValue();
+	}
+
+	public void writeAll(Supplier<? extends WorkflowStep> source) throws IOException, InterruptedException {
+		ensureHeader();
+
+		WorkflowStep step;
+		while((step=source.get())!=null) {
+			write(step);
+		}
+
+		writeFooter();
+	}
+
+	/**
+	 * Writes a section (or all) of the given {@link Workflow}, including
+	 * the links between the selected steps.
+	 */
+	public void writeWorkflow(Workflow workflow, Set<WorkflowStep> steps)
+			throws IOException, InterruptedException {
+		requireNonNull(workflow);
+		requireNonNull(steps);
+		checkArgument("No steps defined for output", !steps.isEmpty());
+
+		writeWorkflow(workflow.getTitle(), workflow.getDescription(),
+				new WorkflowStepIterator(workflow, steps));
+	}
+
+	/**
+	 * Writes the steps provided by the given iterator as soon as they
+	 * are produced. Since the iterator delivers steps in topological order,
+	 * the links from previous steps can be written directly after each step
+	 * and no second pass over the steps is needed.
+	 */
+	public void writeWorkflow(String title, String description, WorkflowStepIterator steps)
+			throws IOException, InterruptedException {
+		requireNonNull(steps);
+
+		writeInfo(title, description);
+
+		final Workflow workflow = steps.getWorkflow();
+
+		// For parallel sanity check against duplicate ids
+		final Set<String> ids = new HashSet<>();
+
+		// Only followedBy links are stored, the reverse direction is implied
+		final List<WorkflowStep> targets = new ArrayList<>(1);
+
+		while(steps.hasNext()) {
+			WorkflowStep step = steps.next();
+			WorkflowStep source = steps.getCurrentSource();
+
+			String id = step.getId();
+			if(id==null)
+				throw new IllegalArgumentException("Step has no valid id");
+			if(!ids.add(id))
+				throw new IllegalArgumentException("Duplicate id encountered: "+id);
+
+			write(step, source);
+
+			targets.add(source);
+			int previousStepCount = workflow.getPreviousStepCount(source);
+			for(int i=0; i<previousStepCount; i++) {
+				WorkflowStep previousStep = workflow.getPreviousStep(source, i);
+				if(steps.isInScope(previousStep)) {
+					writeLinks(previousStep, targets);
+				}
+			}
+			targets.clear();
+
+			if(Thread.interrupted())
+				throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Writes the end marker and flushes all pending data.
+	 */
+	public void writeFooter() throws IOException {
+		ensureHeader();
+		if(finished) {
+			return;
+		}
+
+		BinaryFormat.writeVarInt(out, BinaryFormat.TAG_END);
+		out.finish();
+		finished = true;
+	}
+
+	/**
+	 * Finishes the output if needed and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if(out!=null) {
+				writeFooter();
+				out.close();
+			} else if(output!=null) {
+				output.close();
+			}
+		} finally {
+			out = null;
+			output = null;
+			finished = false;
+			strings.clear();
+			stepIndices.clear();
+		}
+	}
+}
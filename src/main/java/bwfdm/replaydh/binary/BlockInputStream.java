@@ -0,0 +1,157 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.binary;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the blocks created by {@link BlockOutputStream} and presents
+ * their (decompressed) content as one continuous stream.
+ *
+ * @author Markus Gärtner
+ *
+ */
+class BlockInputStream extends InputStream {
+
+	private final InputStream in;
+
+	private byte[] buffer = new byte[BinaryFormat.BLOCK_SIZE];
+	private int position = 0;
+	private int limit = 0;
+
+	private byte[] compressed;
+	private Inflater inflater;
+
+	/**
+	 * Set once the terminating empty block has been read
+	 */
+	private boolean eos = false;
+
+	BlockInputStream(InputStream in) {
+		this.in = requireNonNull(in);
+	}
+
+	/**
+	 * Loads the next block, returns {@code false} if the end marker
+	 * has been reached.
+	 */
+	private boolean nextBlock() throws IOException {
+		if(eos) {
+			return false;
+		}
+
+		int rawLength = BinaryFormat.readLength(in);
+		if(rawLength==0) {
+			eos = true;
+			releaseInflater();
+			return false;
+		}
+
+		int storedLength = BinaryFormat.readLength(in);
+		if(storedLength>rawLength)
+			throw new IOException("Corrupted block header: "+storedLength+" > "+rawLength);
+
+		if(buffer.length<rawLength) {
+			buffer = new byte[rawLength];
+		}
+
+		if(storedLength==rawLength) {
+			BinaryFormat.readFully(in, buffer, 0, rawLength);
+		} else {
+			inflate(rawLength, storedLength);
+		}
+
+		position = 0;
+		limit = rawLength;
+
+		return true;
+	}
+
+	private void inflate(int rawLength, int storedLength) throws IOException {
+		if(compressed==null || compressed.length<storedLength) {
+			compressed = new byte[Math.max(storedLength, BinaryFormat.BLOCK_SIZE)];
+		}
+		BinaryFormat.readFully(in, compressed, 0, storedLength);
+
+		if(inflater==null) {
+			inflater = new Inflater(true);
+		} else {
+			inflater.reset();
+		}
+		inflater.setInput(compressed, 0, storedLength);
+
+		try {
+			int length = 0;
+			while(length<rawLength) {
+				int count = inflater.inflate(buffer, length, rawLength-length);
+				if(count==0 && (inflater.finished() || inflater.needsInput()))
+					throw new IOException("Compressed block is shorter than declared");
+				length += count;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted compressed block", e);
+		}
+	}
+
+	private void releaseInflater() {
+		if(inflater!=null) {
+			inflater.end();
+			inflater = null;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(position==limit && !nextBlock()) {
+			return -1;
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len==0) {
+			return 0;
+		}
+		if(position==limit && !nextBlock()) {
+			return -1;
+		}
+
+		int count = Math.min(len, limit-position);
+		System.arraycopy(buffer, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return limit-position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		releaseInflater();
+		in.close();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.binary;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Splits the written data into blocks of at most {@link BinaryFormat#BLOCK_SIZE}
+ * bytes. Every block is preceded by its raw length and the number of stored bytes.
+ * If both are equal the block is stored as is, otherwise its content is deflate
+ * compressed. Blocks that don't shrink when compressed are always stored raw.
+ * The stream is terminated by an empty block.
+ *
+ * @author Markus Gärtner
+ *
+ */
+class BlockOutputStream extends OutputStream {
+
+	private final OutputStream out;
+
+	private final byte[] buffer;
+	private int count = 0;
+
+	/**
+	 * Compressor and target buffer, only present if compression is active
+	 */
+	private final Deflater deflater;
+	private byte[] compressed;
+
+	private boolean finished = false;
+
+	BlockOutputStream(OutputStream out, boolean compress) {
+		this.out = requireNonNull(out);
+
+		buffer = new byte[BinaryFormat.BLOCK_SIZE];
+		deflater = compress ? new Deflater(Deflater.BEST_SPEED, true) : null;
+		compressed = compress ? new byte[BinaryFormat.BLOCK_SIZE] : null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(count==buffer.length) {
+			writeBlock();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len>0) {
+			if(count==buffer.length) {
+				writeBlock();
+			}
+			int chunk = Math.min(len, buffer.length-count);
+			System.arraycopy(b, off, buffer, count, chunk);
+			count += chunk;
+			off += chunk;
+			len -= chunk;
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if(count==0) {
+			return;
+		}
+
+		int stored = count;
+		if(deflater!=null) {
+			stored = deflate();
+		}
+
+		BinaryFormat.writeVarInt(out, count);
+		BinaryFormat.writeVarInt(out, stored);
+		out.write(stored==count ? buffer : compressed, 0, stored);
+
+		count = 0;
+	}
+
+	/**
+	 * Compresses the current block and returns the number of compressed bytes
+	 * or the raw block length if compression didn't pay off.
+	 */
+	private int deflate() {
+		deflater.reset();
+		deflater.setInput(buffer, 0, count);
+		deflater.finish();
+
+		int length = 0;
+		while(!deflater.finished()) {
+			length += deflater.deflate(compressed, length, compressed.length-length);
+			if(length>=count) {
+				return count;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Writes pending data and the terminating empty block without
+	 * closing the underlying stream.
+	 */
+	void finish() throws IOException {
+		if(finished) {
+			return;
+		}
+
+		writeBlock();
+		BinaryFormat.writeVarInt(out, 0);
+		out.flush();
+
+		if(deflater!=null) {
+			deflater.end();
+		}
+		finished = true;
+	}
+
+	/**
+	 * Pushes all complete blocks to the underlying stream. Incomplete blocks
+	 * are kept in the buffer to avoid fragmenting the output into tiny blocks.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+}
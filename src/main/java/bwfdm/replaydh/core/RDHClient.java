@@ -71,6 +71,7 @@ import org.slf4j.LoggerFactory;
 import bwfdm.replaydh.git.GitException;
 import bwfdm.replaydh.git.JGitAdapter;
 import bwfdm.replaydh.git.RDHInfoProperty;
+import bwfdm.replaydh.io.ChecksumCache;
 import bwfdm.replaydh.io.FileTracker;
 import bwfdm.replaydh.io.IOUtils;
 import bwfdm.replaydh.io.resources.FileResource;
@@ -203,6 +204,8 @@ public class RDHClient {
 
 	private final Lazy<StatLog> statLog = Lazy.create(this::createStatLog, true);
 
+	private final Lazy<ChecksumCache> checksumCache = Lazy.create(this::createChecksumCache, true);
+
 	private final boolean verbose;
 
 	private final boolean debug;
@@ -536,6 +539,14 @@ public class RDHClient {
 		return statLog.value();
 	}
 
+	/**
+	 * Returns the persistent cache for checksums of local files.
+	 * @return
+	 */
+	public ChecksumCache getChecksumCache() {
+		return checksumCache.value();
+	}
+
 	/**
 	 * Returns the client component responsible for managing the
 	 * graphical user interface (GUI) of this client.
@@ -889,6 +900,20 @@ public class RDHClient {
 		}
 	}
 
+	private ChecksumCache createChecksumCache() {
+		synchronized (lock) {
+			Path folder;
+			try {
+				folder = ensureUserFolder(UserFolder.CACHE);
+			} catch (IOException e) {
+				throw new RDHException("Unable to create default directory for cached data", e);
+			}
+			Path cacheFile = folder.resolve("checksums.txt");
+
+			return addAndStartTool(new ChecksumCache(new FileResource(cacheFile)));
+		}
+	}
+
 	private void loadResourceManager() {
 		final RDHEnvironment environment = getEnvironment();
 
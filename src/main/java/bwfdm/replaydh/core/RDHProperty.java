@@ -113,6 +113,19 @@ public enum RDHProperty implements Property {
 	INTERN_EXECUTOR_MAX_THREADS("intern.executor.maxThreads"),
 	INTERN_EXECUTOR_LIMIT_TO_CORES("intern.executor.limitToCores", true),
 
+	/**
+	 * Maximum number of files to be processed concurrently when they reside
+	 * on a solid state drive or a disk of unknown type. Defaults to the number
+	 * of available processors.
+	 */
+	INTERN_IO_THREADS_SSD("intern.io.threads.ssd"),
+
+	/**
+	 * Maximum number of files to be processed concurrently when they reside
+	 * on a spinning disk.
+	 */
+	INTERN_IO_THREADS_HDD("intern.io.threads.hdd", 1),
+
 	INTERN_VERBOSE("intern.verbose", false),
 
 	/**
@@ -208,6 +221,35 @@ public enum RDHProperty implements Property {
 	 */
 	GIT_IGNORE_FAULTY_METADATA("git.ignoreFaultyMetadata", false),
 
+	/**
+	 * Boolean flag to indicate whether the git adapter should
+	 * watch the working directory for file system changes and
+	 * only re-check modified files when refreshing the tracking
+	 * status instead of scanning the entire working directory.
+	 * <p>
+	 * The default value for this property is {@code true}.
+	 */
+	GIT_WATCH_WORKING_TREE("git.watchWorkingTree", true),
+
+	/**
+	 * Number of commits to be turned into workflow steps when first
+	 * opening a workspace and each time older parts of the history
+	 * are requested afterwards. A value of {@code 0} or less causes
+	 * the entire history to be loaded at once.
+	 * <p>
+	 * The default value for this property is {@code 500}.
+	 */
+	GIT_HISTORY_PAGE_SIZE("git.historyPageSize", 500),
+
+	/**
+	 * Boolean flag to indicate whether the git adapter should store
+	 * a snapshot of the commit graph inside the git directory and use
+	 * it to restore the workflow skeleton when a workspace is opened.
+	 * <p>
+	 * The default value for this property is {@code true}.
+	 */
+	GIT_CACHE_WORKFLOW_SKELETON("git.cacheWorkflowSkeleton", true),
+
 	// Properties defining elicitation of process metadata
 
 	/**
@@ -31,6 +31,7 @@ public enum UserFolder {
 	METADATA("metadata"),
 	IDENTIFIERS("identifiers"),
 	SCHEMAS("schemas"),
+	CACHE("cache"),
 	;
 
 	final String folderName;
@@ -0,0 +1,221 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.db;
+
+import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed pool of connections meant for read access. Each connection is
+ * confined to a single thread for the duration of a {@link #execute(SQLTask) task}
+ * and keeps its own cache of {@link PreparedStatement prepared statements}, so
+ * tasks can simply {@link PooledConnection#prepare(String) prepare} the queries
+ * they need without paying for compilation on every call.
+ * <p>
+ * The pool takes ownership of the connections it was created with and closes
+ * them when it gets {@link #close() closed} itself.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class ReadConnectionPool implements AutoCloseable {
+
+	/**
+	 * Default number of prepared statements to keep per connection
+	 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+	/**
+	 * Interval in milliseconds at which threads waiting for a connection
+	 * check whether the pool has been closed in the meantime
+	 */
+	private static final long CLOSE_CHECK_INTERVAL_MILLIS = 100;
+
+	@FunctionalInterface
+	public interface SQLTask<R> {
+		R execute(PooledConnection connection) throws SQLException;
+	}
+
+	/**
+	 * Wraps a single connection of the pool together with its statement cache.
+	 * Instances must not be used outside of the task they have been passed to.
+	 */
+	public static final class PooledConnection {
+
+		private final Connection connection;
+
+		/** Prepared statements in access order, the least recently used one first */
+		private final LinkedHashMap<String, PreparedStatement> statements;
+		private final int statementCacheSize;
+
+		PooledConnection(Connection connection, int statementCacheSize) {
+			this.connection = requireNonNull(connection);
+			this.statementCacheSize = statementCacheSize;
+			statements = new LinkedHashMap<>(statementCacheSize, 0.75f, true);
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Returns a prepared statement for the given query, either from the cache
+		 * of this connection or freshly prepared. Parameters of cached statements
+		 * are cleared. The returned statement must not be closed by client code.
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement stmt = statements.get(sql);
+			if(stmt==null) {
+				stmt = connection.prepareStatement(sql);
+				statements.put(sql, stmt);
+				evictStatements();
+			} else {
+				stmt.clearParameters();
+			}
+			return stmt;
+		}
+
+		private void evictStatements() {
+			for(Iterator<PreparedStatement> it = statements.values().iterator();
+					it.hasNext() && statements.size()>statementCacheSize;) {
+				DBUtils.closeSilently(it.next());
+				it.remove();
+			}
+		}
+
+		void close() {
+			statements.values().forEach(DBUtils::closeSilently);
+			statements.clear();
+			DBUtils.closeSilently(connection);
+		}
+	}
+
+	private final List<PooledConnection> connections;
+	private final BlockingQueue<PooledConnection> idle;
+
+	private volatile boolean closed = false;
+
+	public ReadConnectionPool(Collection<Connection> connections) {
+		this(connections, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	public ReadConnectionPool(Collection<Connection> connections, int statementCacheSize) {
+		requireNonNull(connections);
+		checkArgument("Pool must contain at least one connection", !connections.isEmpty());
+		checkArgument("Statement cache size must be greater than 0", statementCacheSize>0);
+
+		List<PooledConnection> pooled = new ArrayList<>(connections.size());
+		for(Connection connection : connections) {
+			pooled.add(new PooledConnection(connection, statementCacheSize));
+		}
+
+		this.connections = Collections.unmodifiableList(pooled);
+		idle = new ArrayBlockingQueue<>(pooled.size(), false, pooled);
+	}
+
+	public int getSize() {
+		return connections.size();
+	}
+
+	/**
+	 * Runs the given task with exclusive access to one of the connections
+	 * in this pool, waiting for one to become available if necessary.
+	 * Threads waiting for a connection give up once the pool gets closed,
+	 * since connections returned afterwards are closed instead of reused.
+	 *
+	 * @throws SQLException if the task failed, the pool is closed or the
+	 * calling thread got interrupted while waiting for a connection
+	 */
+	public <R> R execute(SQLTask<R> task) throws SQLException {
+		requireNonNull(task);
+
+		if(closed)
+			throw new SQLException("Connection pool closed");
+
+		PooledConnection connection = null;
+		try {
+			while(connection==null) {
+				if(closed)
+					throw new SQLException("Connection pool closed");
+
+				connection = idle.poll(CLOSE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}
+
+		try {
+			if(closed)
+				throw new SQLException("Connection pool closed");
+
+			return task.execute(connection);
+		} finally {
+			release(connection);
+		}
+	}
+
+	/**
+	 * Returns the given connection to the pool or closes it if the pool
+	 * has been closed. Since {@link #close()} might run concurrently, the
+	 * state gets checked again after handing back the connection. Whoever
+	 * manages to remove it from the idle queue is responsible for closing it.
+	 */
+	private void release(PooledConnection connection) {
+		if(closed) {
+			connection.close();
+			return;
+		}
+
+		idle.offer(connection);
+
+		if(closed && idle.remove(connection)) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Closes all idle connections. Connections currently in use get closed
+	 * as soon as their task finishes.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		closed = true;
+
+		for(PooledConnection connection; (connection = idle.poll())!=null;) {
+			connection.close();
+		}
+	}
+}
@@ -76,6 +76,12 @@ public class GitUtils {
 	 */
 	static final String RDH_CLIENT_INFO_FILENAME = "replaydh.info";
 
+	/**
+	 * Name of the file within the repository git-directory that
+	 * stores a snapshot of the commit graph for faster loading.
+	 */
+	static final String RDH_SKELETON_CACHE_FILENAME = "replaydh.skeleton";
+
 	/**
 	 * General namespace prefix for all refs we generate through
 	 * our client.
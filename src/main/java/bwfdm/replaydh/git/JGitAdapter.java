@@ -20,6 +20,7 @@ package bwfdm.replaydh.git;
 
 import static bwfdm.replaydh.git.GitUtils.gitToSystemPath;
 import static bwfdm.replaydh.git.GitUtils.systemToGitPath;
+import static bwfdm.replaydh.utils.Primitives._int;
 import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
 import static bwfdm.replaydh.utils.RDHUtils.checkState;
 import static java.util.Objects.requireNonNull;
@@ -39,21 +40,30 @@ import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -65,6 +75,7 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.GitCommand;
 import org.eclipse.jgit.api.RmCommand;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
@@ -77,6 +88,7 @@ import org.eclipse.jgit.ignore.IgnoreNode;
 import org.eclipse.jgit.ignore.IgnoreNode.MatchResult;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefDatabase;
@@ -86,7 +98,6 @@ import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
-import org.eclipse.jgit.treewalk.TreeWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -184,6 +195,104 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	 */
 	private volatile boolean workflowLoaded = false;
 
+	/**
+	 * Default number of commits to load per page of the commit history
+	 */
+	private static final int DEFAULT_HISTORY_PAGE_SIZE = 500;
+
+	/**
+	 * Number of blocks the skeleton cache file may consist of before
+	 * it gets rewritten as a single block
+	 */
+	private static final int MAX_SKELETON_CACHE_BLOCKS = 32;
+
+	/**
+	 * Number of commits read by a single {@link ObjectReader} when
+	 * loading the data of many workflow steps at once
+	 */
+	private static final int HYDRATION_BATCH_SIZE = 64;
+
+	/**
+	 * Minimum number of unloaded workflow steps to justify parsing
+	 * their commits concurrently
+	 */
+	private static final int MIN_PARALLEL_HYDRATION = 2*HYDRATION_BATCH_SIZE;
+
+	/**
+	 * Maximum difference in seconds by which the commit time of a child commit
+	 * is expected to lag behind the one of its parent due to clock skew.
+	 */
+	private static final int MAX_CLOCK_SKEW = 24*60*60;
+
+	/**
+	 * Walk over the part of the commit history that has not yet been
+	 * turned into workflow steps. {@code null} if the history has been
+	 * loaded completely.
+	 * <p>
+	 * The walk produces commits ordered by descending commit time. Unlike
+	 * a topological sorting this does not require the entire history to be
+	 * parsed before the first commit is produced, so only the commits of the
+	 * pages loaded so far (and their direct parents) are held in memory.
+	 * In the presence of clock skew a commit may be produced before one of
+	 * its children. The child then gets linked once its own page is loaded.
+	 */
+	private RevWalk historyWalk;
+
+	/**
+	 * Branch tips the {@link #historyWalk} started with. Commits reachable
+	 * from any of them will eventually be produced by the walk.
+	 */
+	private List<ObjectId> historyStarts;
+
+	/**
+	 * Commit time of the commit most recently produced by the {@link #historyWalk}
+	 */
+	private int historyTime;
+
+	/**
+	 * Flag to prevent the lazy loading of further history while
+	 * already in the process of loading.
+	 */
+	private boolean loadingHistory = false;
+
+	/**
+	 * Commits that already have a step assigned but are missing one or more parent
+	 * steps, mapped by the ids of those missing parents.
+	 */
+	private final Map<String, List<RevCommit>> unresolvedChildren = new HashMap<>();
+
+	/**
+	 * Steps that still wait for their parent steps to be loaded.
+	 */
+	private final Set<WorkflowStep> unresolvedSteps = new HashSet<>();
+
+	/**
+	 * Commit marked by {@link GitUtils#TAG_SOURCE}
+	 */
+	private ObjectId initialCommitId;
+
+	/**
+	 * Signals that the workflow skeleton changed since it has
+	 * last been read from or written to the skeleton cache.
+	 */
+	private boolean skeletonCacheDirty = false;
+
+	/**
+	 * Indices of all the commits stored in the skeleton cache file. {@code null}
+	 * if the content of the file is unknown and it needs to be rewritten entirely.
+	 */
+	private Map<String, Integer> skeletonCacheIndices;
+
+	/**
+	 * Branch tips last stored in the skeleton cache file
+	 */
+	private Map<String, ObjectId> skeletonCacheTips;
+
+	/**
+	 * Number of blocks in the skeleton cache file
+	 */
+	private int skeletonCacheBlocks = 0;
+
 	/**
 	 * The latest step added to the workflow.
 	 * <p>
@@ -191,7 +300,19 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	 */
 	private volatile WorkflowStep pendingStep = null;
 
-	private volatile Status lastStatus = null;
+	/**
+	 * Cached status of the working tree. Gets populated by a full
+	 * {@code git status} scan and afterwards updated incrementally
+	 * for paths reported as modified by the file system or git.
+	 */
+	private final WorkingTreeStatus workingTreeStatus = new WorkingTreeStatus();
+
+	/**
+	 * Sorted paths of all files tracked in the tree of the current
+	 * {@code HEAD} commit. Shared by all queries for tracked files
+	 * and only recreated when {@code HEAD} moves to a different tree.
+	 */
+	private volatile TrackedFileIndex trackedFileIndex = TrackedFileIndex.EMPTY;
 	private volatile LocalDateTime lastStatusUpdateTime = null;
 
 	/**
@@ -327,6 +448,10 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 		handler.registerRepoListeners(git.getRepository());
 
+		if(getEnvironment().getBoolean(RDHProperty.GIT_WATCH_WORKING_TREE, true)) {
+			workingTreeStatus.startWatching(getRootFolder(newGit));
+		}
+
 		getPropertyChangeSupport().firePropertyChange(FileTracker.NAME_WORKFLOW, null, workflow);
 	}
 
@@ -753,12 +878,16 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 					saveConfig(infoFile, config);
 				}
 
-				if(git!=null) {
-					handler.unregisterRepoListeners(git.getRepository());
-				}
+				saveSkeletonCache();
 			} catch(IOException e) {
 				log.error("Failed to update git info file", e);
 			} finally {
+				// Stop reacting to changes before anything else gets released
+				if(git!=null) {
+					handler.unregisterRepoListeners(git.getRepository());
+				}
+				workingTreeStatus.stopWatching();
+
 				// Now proceed to shutdown all resources
 				close(git);
 				git = null;
@@ -775,6 +904,14 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 				pendingStep = null;
 				workflowLoaded = false;
+				disposeHistoryWalk();
+				resetStepLookup();
+				initialCommitId = null;
+				skeletonCacheDirty = false;
+				skeletonCacheIndices = null;
+				skeletonCacheTips = null;
+				skeletonCacheBlocks = 0;
+				trackedFileIndex = TrackedFileIndex.EMPTY;
 				clearStatusInfo();
 			}
 		}
@@ -882,7 +1019,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 	@Override
 	public boolean hasStatusInfo() {
-		return lastStatus!=null;
+		return workingTreeStatus.isValid();
 	}
 
 	protected void fireRefreshStarted() {
@@ -942,7 +1079,12 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		}
 
 		synchronized (gitLock) {
-			lastStatus = null;
+			if(workingTreeStatus.canUpdateIncrementally()) {
+				return updateStatusInfo0();
+			}
+
+			// Fetch watcher state before scanning so we don't miss any events
+			boolean watched = workingTreeStatus.beginFullRescan();
 
 			fireRefreshStarted();
 
@@ -955,7 +1097,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 					log.info("Updated git status");
 				}
 
-				lastStatus = status.result;
+				workingTreeStatus.reset(status.result, watched);
 				lastStatusUpdateTime = LocalDateTime.now();
 
 				fireRefreshDone(false);
@@ -971,6 +1113,53 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		}
 	}
 
+	/**
+	 * Only re-checks the paths that have been reported as modified
+	 * since the last update and merges the result into the cached
+	 * working tree status.
+	 * <p>
+	 * Needs to be called under {@code gitLock} lock!
+	 */
+	private boolean updateStatusInfo0() {
+
+		final Set<String> dirtyPaths = workingTreeStatus.drainDirtyPaths();
+
+		fireRefreshStarted();
+
+		if(!dirtyPaths.isEmpty()) {
+			StatusCommand command = git.status();
+			dirtyPaths.forEach(command::addPath);
+
+			ExecutionResult<Status> status = executeCommand(command);
+			if(status.hasFailed()) {
+				if(isVerbose()) {
+					log.info("Failed to update git status for {} paths", dirtyPaths.size(), status.exception);
+				}
+				// Make sure the next attempt doesn't rely on the now outdated index
+				workingTreeStatus.invalidate();
+				fireRefreshFailed(status.exception);
+				fireStatusInfoChanged();
+				return false;
+			}
+
+			workingTreeStatus.update(dirtyPaths, status.result);
+
+			if(isVerbose()) {
+				log.info("Incrementally updated git status for {} paths", dirtyPaths.size());
+			}
+		}
+
+		lastStatusUpdateTime = LocalDateTime.now();
+
+		fireRefreshDone(false);
+
+		if(!dirtyPaths.isEmpty()) {
+			fireStatusInfoChanged();
+		}
+
+		return true;
+	}
+
 	private boolean maybeRefreshStatusInfo(long cacheExpirationTimeMillis) {
 		LocalDateTime lastUpdate = lastStatusUpdateTime;
 		if(lastUpdate==null || lastUpdate.plusNanos(
@@ -984,6 +1173,9 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	/**
 	 * Attempts to refresh the internal {@link Status git status} cache
 	 * and returns {@code true} if successful.
+	 * <p>
+	 * If the working tree is being watched for changes, only paths that
+	 * have been modified since the last refresh will be checked.
 	 *
 	 * @return
 	 */
@@ -1008,9 +1200,11 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	@Override
 	public void clearStatusInfo() {
 		synchronized (gitLock) {
-			if(lastStatus!=null) {
-				lastStatus = null;
+			if(workingTreeStatus.isValid()) {
+				workingTreeStatus.invalidate();
 				fireStatusInfoChanged();
+			} else {
+				workingTreeStatus.requestFullRescan();
 			}
 		}
 	}
@@ -1019,15 +1213,13 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	public Set<Path> getFilesForStatus(TrackingStatus status) throws TrackerException {
 		LazyCollection<Path> result = LazyCollection.lazySet();
 		synchronized (gitLock) {
-			Status gitStatus = lastStatus;
-
-			if(gitStatus!=null) {
+			if(workingTreeStatus.isValid()) {
 				final Path root = getRootFolder(git);
 				final Consumer<String> resolver = path -> {
 					result.add(root.resolve(gitToSystemPath(path)));
 				};
 
-				collectFilesForStatus(gitStatus, status, resolver);
+				collectFilesForStatus(status, resolver);
 			}
 		}
 
@@ -1036,47 +1228,27 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 	/**
 	 * Need to be called under {@code gitLock} lock!
-	 * @param gitStatus
 	 * @param status
 	 * @param action
 	 * @throws TrackerException
 	 */
-	private void collectFilesForStatus(Status gitStatus, TrackingStatus status, Consumer<? super String> action)
+	private void collectFilesForStatus(TrackingStatus status, Consumer<? super String> action)
 			throws TrackerException {
 
 		switch (status) {
 		case IGNORED:
-			gitStatus.getIgnoredNotInIndex().forEach(action);
-			break;
-
 		case UNKNOWN:
-			gitStatus.getUntracked().forEach(action);
-			break;
-
 		case MISSING:
-			gitStatus.getMissing().forEach(action);
-			break;
-
 		case MODIFIED:
-			gitStatus.getModified().forEach(action);
-			gitStatus.getChanged().forEach(action);
-			break;
-
 		case CORRUPTED:
-			gitStatus.getConflicting().forEach(action);
+			workingTreeStatus.forEach(status, action);
 			break;
 
 		case TRACKED: {
-			try(TreeWalk treeWalk = prepareTreeWalk(Constants.HEAD)) {
-				while(treeWalk.next()) {
-					if(treeWalk.isSubtree()) {
-						treeWalk.enterSubtree();
-					} else {
-						action.accept(treeWalk.getPathString());
-					}
-				}
+			try {
+				getTrackedFileIndex().forEach(action);
 			} catch(IOException e) {
-				throw new TrackerException("Failed to access JGit TreeWalk to count tracked files", e);
+				throw new TrackerException("Failed to access JGit TreeWalk to collect tracked files", e);
 			}
 		} break;
 
@@ -1086,23 +1258,32 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	}
 
 	/**
+	 * Returns the index of all files tracked in the current {@code HEAD}
+	 * commit. The index is only recreated if {@code HEAD} points to a
+	 * different tree than the one the previous index was created for.
+	 * <p>
 	 * Needs to be called under {@code gitLock} lock!
-	 * @param str
 	 * @return
 	 * @throws IOException
 	 */
-	private TreeWalk prepareTreeWalk(String str) throws IOException {
-		RevCommit commit = resolve(str);
-		RevTree tree = commit.getTree();
+	private TrackedFileIndex getTrackedFileIndex() throws IOException {
+		RevCommit commit = head();
+		RevTree tree = commit==null ? null : commit.getTree();
 		if(tree==null) {
-			return null;
+			return TrackedFileIndex.EMPTY;
 		}
 
-		TreeWalk treeWalk = new TreeWalk(git.getRepository());
-		treeWalk.addTree(tree);
-		treeWalk.setRecursive(false);
+		TrackedFileIndex index = trackedFileIndex;
+		if(!index.isIndexFor(tree)) {
+			index = TrackedFileIndex.create(git.getRepository(), tree);
+			trackedFileIndex = index;
 
-		return treeWalk;
+			if(isVerbose()) {
+				log.info("Indexed {} tracked files for tree {}", index.size(), tree.name());
+			}
+		}
+
+		return index;
 	}
 
 	/**
@@ -1121,27 +1302,21 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		boolean hasFiles = false;
 
 		synchronized (gitLock) {
-			Status gitStatus = lastStatus;
-			if(gitStatus!=null) {
+			if(workingTreeStatus.isValid()) {
 
 				for(TrackingStatus status : ss) {
 					switch (status) {
-					case IGNORED: hasFiles |= !gitStatus.getIgnoredNotInIndex().isEmpty(); break;
-					case UNKNOWN: hasFiles |= !gitStatus.getUntracked().isEmpty(); break;
-					case MISSING: hasFiles |= !gitStatus.getMissing().isEmpty(); break;
-					case MODIFIED: hasFiles |= !gitStatus.getModified().isEmpty() || !gitStatus.getChanged().isEmpty(); break;
-					case CORRUPTED: hasFiles |= !gitStatus.getConflicting().isEmpty(); break;
+					case IGNORED:
+					case UNKNOWN:
+					case MISSING:
+					case MODIFIED:
+					case CORRUPTED:
+						hasFiles |= !workingTreeStatus.isEmpty(status);
+						break;
 
 					case TRACKED: {
-						try(TreeWalk treeWalk = prepareTreeWalk(Constants.HEAD)) {
-							walk : while(treeWalk.next()) {
-								if(treeWalk.isSubtree()) {
-									treeWalk.enterSubtree();
-								} else {
-									hasFiles = true;
-									break walk;
-								}
-							}
+						try {
+							hasFiles |= !getTrackedFileIndex().isEmpty();
 						} catch(IOException e) {
 							throw new TrackerException("Failed to access JGit TreeWalk to check for tracked files", e);
 						}
@@ -1178,28 +1353,21 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		int fileCount = 0;
 
 		synchronized (gitLock) {
-			Status gitStatus = lastStatus;
-			if(gitStatus!=null) {
+			if(workingTreeStatus.isValid()) {
 
 				for(TrackingStatus status : ss) {
 					switch (status) {
-					case IGNORED: fileCount += gitStatus.getIgnoredNotInIndex().size(); break;
-					case UNKNOWN: fileCount += gitStatus.getUntracked().size(); break;
-					case MISSING: fileCount += gitStatus.getMissing().size(); break;
-					case MODIFIED: fileCount += gitStatus.getModified().size() + gitStatus.getChanged().size(); break;
-					case CORRUPTED: fileCount += gitStatus.getConflicting().size(); break;
+					case IGNORED:
+					case UNKNOWN:
+					case MISSING:
+					case MODIFIED:
+					case CORRUPTED:
+						fileCount += workingTreeStatus.size(status);
+						break;
 
 					case TRACKED: {
-						try(TreeWalk treeWalk = prepareTreeWalk(Constants.HEAD)) {
-							int count = 0;
-							while(treeWalk.next()) {
-								if(treeWalk.isSubtree()) {
-									treeWalk.enterSubtree();
-								} else {
-									count++;
-								}
-							}
-							fileCount += count;
+						try {
+							fileCount += getTrackedFileIndex().size();
 						} catch(IOException e) {
 							throw new TrackerException("Failed to access JGit TreeWalk to count tracked files", e);
 						}
@@ -1220,9 +1388,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	public Map<Path, TrackingStatus> getFilesForStatus(Set<TrackingStatus> statuses) throws TrackerException {
 		Map<Path, TrackingStatus> result = new HashMap<>();
 		synchronized (gitLock) {
-			Status gitStatus = lastStatus;
-
-			if(gitStatus!=null) {
+			if(workingTreeStatus.isValid()) {
 				final Path root = getRootFolder(git);
 
 				for(TrackingStatus status : statuses) {
@@ -1230,7 +1396,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 						result.put(root.resolve(gitToSystemPath(path)), status);
 					};
 
-					collectFilesForStatus(gitStatus, status, resolver);
+					collectFilesForStatus(status, resolver);
 				}
 
 			}
@@ -1317,7 +1483,10 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		AddCommand command = git.add();
 
 		// Collect all file paths that are valid for our workspace
-		prepareFiles(files, (file, gitPath) -> command.addFilepattern(gitPath), leftovers);
+		prepareFiles(files, (file, gitPath) -> {
+			command.addFilepattern(gitPath);
+			workingTreeStatus.markDirty(gitPath);
+		}, leftovers);
 
 		if(command!=null) {
 			ExecutionResult<DirCache> result = executeCommand(command);
@@ -1342,8 +1511,10 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		command.setCached(!delete);
 
 		// Collect all file paths that are valid for our workspace
-		prepareFiles(files, (file, gitPath) -> command.addFilepattern(gitPath), leftovers);
-
+		prepareFiles(files, (file, gitPath) -> {
+			command.addFilepattern(gitPath);
+			workingTreeStatus.markDirty(gitPath);
+		}, leftovers);
 
 		if(command!=null) {
 			ExecutionResult<DirCache> result = executeCommand(command);
@@ -1430,6 +1601,8 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 		// Now append new entries to .gitignore file
 		if(!pathsToIgnore.isEmpty()) {
+			// New ignore rules can affect arbitrary files
+			workingTreeStatus.requestFullRescan();
 			try {
 				appendIgnoreRules(pathsToIgnore);
 			} catch (IOException e) {
@@ -1496,30 +1669,16 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		//TODO facility to revert changes made since last successful commit?
 	}
 
-	private Status ensureUpdatedStatus() throws TrackerException {
-		Status status;
-		if(!maybeRefreshStatusInfo(DEFAULT_STATUS_INFO_EXPIRATION_TIME_MILLIS) || ((status=lastStatus)==null))
+	private WorkingTreeStatus ensureUpdatedStatus() throws TrackerException {
+		if(!maybeRefreshStatusInfo(DEFAULT_STATUS_INFO_EXPIRATION_TIME_MILLIS) || !workingTreeStatus.isValid())
 			throw new TrackerException("No status info available to determine tracking status");
-		return status;
+		return workingTreeStatus;
 	}
 
-	private static TrackingStatus lookupFileStatus(Status status, String path) {
+	private static TrackingStatus lookupFileStatus(WorkingTreeStatus status, String path) {
 		checkArgument("Path must not be null", path!=null);
 
-		if(status.getUntracked().contains(path)) {
-			return TrackingStatus.UNKNOWN;
-		} else if(status.getIgnoredNotInIndex().contains(path)) {
-			return TrackingStatus.IGNORED;
-		} else if(status.getMissing().contains(path)) {
-			return TrackingStatus.MISSING;
-		} else if(status.getChanged().contains(path)
-				|| status.getModified().contains(path)) {
-			return TrackingStatus.MODIFIED;
-		} else if(status.getConflicting().contains(path)) {
-			return TrackingStatus.CORRUPTED;
-		} else {
-			return TrackingStatus.TRACKED;
-		}
+		return status.lookup(path);
 	}
 
 	/**
@@ -1529,7 +1688,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	@Override
 	public TrackingStatus getStatusForFile(Path file) throws TrackerException {
 		synchronized (gitLock) {
-			final Status status = ensureUpdatedStatus();
+			final WorkingTreeStatus status = ensureUpdatedStatus();
 			final Path root = getRootFolder(git);
 			final String path = systemToGitPath(root.relativize(file).toString());
 
@@ -1547,7 +1706,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 		synchronized (gitLock) {
 
-			final Status status = ensureUpdatedStatus();
+			final WorkingTreeStatus status = ensureUpdatedStatus();
 			final Path root = getRootFolder(git);
 
 			for(Path file : files) {
@@ -1569,7 +1728,7 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		final EnumMap<TrackingStatus, Set<Path>> result = new EnumMap<>(TrackingStatus.class);
 
 		synchronized (gitLock) {
-			final Status status = ensureUpdatedStatus();
+			final WorkingTreeStatus status = ensureUpdatedStatus();
 			final Path root = getRootFolder(git);
 
 			for(Path file : files) {
@@ -1881,10 +2040,18 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 	}
 
 	private void saveId(WorkflowStep step, RevCommit commit) {
-		// Save SHA-1 of commit id as lowercase hexadecimal string
-		storeNodeProperty(step, NODE_PROPERTY_COMMIT_ID, commit.name());
+		saveId(step, commit.name());
+	}
+
+	/**
+	 * @param step
+	 * @param commitId SHA-1 of commit id as lowercase hexadecimal string
+	 */
+	private void saveId(WorkflowStep step, String commitId) {
+		storeNodeProperty(step, NODE_PROPERTY_COMMIT_ID, commitId);
 
-		commitToStepLookup.put(commit.name(), step);
+		commitToStepLookup.put(commitId, step);
+		skeletonCacheDirty = true;
 	}
 
 	/**
@@ -2015,6 +2182,8 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 
 	private void resetStepLookup() {
 		commitToStepLookup.clear();
+		unresolvedChildren.clear();
+		unresolvedSteps.clear();
 	}
 
 	private static final String DEFAULT_MESSAGE = "Generic unnamed step";
@@ -2083,7 +2252,13 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 //	}
 
 	/**
-	 * Load the entire commit history of the underlying git and create the skeleton workflow steps.
+	 * Load the most recent part of the commit history of the underlying git and create
+	 * the skeleton workflow steps for it. The size of this initial window is defined by
+	 * {@link RDHProperty#GIT_HISTORY_PAGE_SIZE}. The commit currently pointed to by
+	 * {@code HEAD} is always included. Older parts of the history are loaded on demand
+	 * when a traversal reaches the border of the already loaded window or when the
+	 * {@link DefaultWorkflow#ensureFullWorkflowData() full workflow} is requested.
+	 *
 	 * @throws GitException if accessing any git related resources failed
 	 */
 	public void loadWorkflow() throws GitException {
@@ -2093,25 +2268,50 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 				return;
 			}
 
+			loadingHistory = true;
 			workflow.setIgnoreEventRequests(true);
 			final Repository repo = git.getRepository();
 
-			try(RevWalk revWalk = new RevWalk(repo)) {
+			boolean success = false;
+			try {
+				resetStepLookup();
+				initialCommitId = repo.resolve(GitUtils.TAG_SOURCE);
 
 				Collection<Ref> allRefs = repo.getRefDatabase().getRefs(Constants.R_HEADS).values();
-                for( Ref ref : allRefs ) {
-                    revWalk.markStart(revWalk.parseCommit(getTarget(ref, repo)));
-                }
+				Map<String, ObjectId> tips = getTips(allRefs, repo);
+
+				// Try the fast path first and only fall back to walking the history if needed
+				if(!loadSkeletonCache(repo, tips)) {
+					historyWalk = new RevWalk(repo);
+					// We only need the graph structure, commit messages get loaded per step later
+					historyWalk.setRetainBody(false);
+					historyStarts = new ArrayList<>(tips.values());
+					historyTime = Integer.MAX_VALUE;
+
+	                for( ObjectId tip : historyStarts ) {
+	                	historyWalk.markStart(historyWalk.parseCommit(tip));
+	                }
+
+					loadHistoryPage(getHistoryPageSize());
+				}
 
-				buildWorkflowGraph(revWalk, Constants.HEAD, false);
+				refreshActiveStep();
 
 				// Finally switch flag so we don't ever attempt to load the workflow a second time
 				workflowLoaded = true;
+				success = true;
+
+				// Persist commits found in addition to the cached ones
+				saveSkeletonCache();
 
 			} catch (IOException e) {
 				throw new GitException("General I/O issue when trying to access ref database git repository", e);
 			} finally {
+				if(!success) {
+					disposeHistoryWalk();
+				}
 
+				loadingHistory = false;
 				workflow.setIgnoreEventRequests(false);
 			}
 		}
@@ -2127,11 +2327,11 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 				return;
 			}
 
+			loadingHistory = true;
 			workflow.setIgnoreEventRequests(true);
 			final Repository repo = git.getRepository();
 
-			try(RevWalk revWalk = new RevWalk(repo)) {
-
+			try {
 				Collection<Ref> refs;
 				if(branches==null || branches.isEmpty()) {
 					refs = repo.getRefDatabase().getRefs(Constants.R_HEADS).values();
@@ -2141,16 +2341,25 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 						refs.add(repo.findRef(branch));
 					}
 				}
+
+				List<ObjectId> tips = new ArrayList<>(refs.size());
                 for( Ref ref : refs ) {
-                    revWalk.markStart(revWalk.parseCommit(getTarget(ref, repo)));
+                	tips.add(getTarget(ref, repo));
+                }
+
+                int count = loadCommits(tips);
+                if(isVerbose()) {
+                	log.info("Added {} new steps during refresh", count);
                 }
 
-				buildWorkflowGraph(revWalk, Constants.HEAD, true);
+				refreshActiveStep();
+
+				saveSkeletonCache();
 
 			} catch (IOException e) {
 				throw new GitException("General I/O issue when trying to refresh workflow based on branch list", e);
 			} finally {
-
+				loadingHistory = false;
 				workflow.setIgnoreEventRequests(false);
 			}
 		}
@@ -2159,234 +2368,916 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		workflow.fireStateChanged();
 	}
 
-	private void buildWorkflowGraph(Iterable<RevCommit> source, String active,
-			boolean incremental)
-				throws GitException, IOException {
-
-		if(!incremental) {
-			resetStepLookup();
+	private static Map<String, ObjectId> getTips(Collection<Ref> refs, Repository repo) {
+		Map<String, ObjectId> tips = new LinkedHashMap<>();
+		for(Ref ref : refs) {
+			tips.put(ref.getName(), getTarget(ref, repo));
 		}
+		return tips;
+	}
 
-		/*
-		 *  The 'source' will usually be an instance of RevWalk
-		 *  and cannot be used more than once for iterating.
-		 *  So we kinda have to duplicate the storage for our
-		 *  2-phase strategy.
-		 */
-		final Set<RevCommit> commits = new HashSet<>();
-		source.forEach(commits::add);
-
-		// Treat our initial commit special
-		final RevCommit initialCommit = resolve(GitUtils.TAG_SOURCE);
+	private Path getSkeletonCacheFile(Repository repo) {
+		return repo.getDirectory().toPath().resolve(GitUtils.RDH_SKELETON_CACHE_FILENAME);
+	}
 
-		if(isVerbose() && !incremental) {
-			StringBuilder sb = new StringBuilder("----- Commits for graph -----");
-			for(RevCommit commit : commits) {
-				sb.append("\n  ").append(commit);
-			}
-			sb.append('\n');
-			sb.append("initial:  ").append(initialCommit).append('\n');
-			sb.append("---------------------------------");
+	private boolean isSkeletonCacheEnabled() {
+		return getEnvironment().getBoolean(RDHProperty.GIT_CACHE_WORKFLOW_SKELETON, true);
+	}
 
-			log.info(sb.toString());
+	/**
+	 * Tries to rebuild the workflow skeleton from the {@link WorkflowSkeletonCache}
+	 * stored in the git directory. The cache is only used if all the branch tips it
+	 * has been created for are still reachable from the current {@code tips}. Commits
+	 * added since the cache has been written are loaded afterwards.
+	 *
+	 * @return {@code true} if the skeleton got loaded from the cache
+	 */
+	private boolean loadSkeletonCache(Repository repo, Map<String, ObjectId> tips) throws IOException {
+		if(!isSkeletonCacheEnabled()) {
+			return false;
 		}
 
-//		// Lookup to see which commits start a new branch
-//		final Map<RevCommit, String> branchPointers = getBranchPointers();
-
-		// Phase 1: create mapping for all commits
-		for(RevCommit commit : commits) {
-
-			// Sanity check against duplicate step creation (should normally never happen)
-			if(lookupStep(commit)!=null) {
-				if(isVerbose() && !incremental) {
-					log.info("Redundant graph node for commit: {}", commit);
-				}
-				continue;
+		WorkflowSkeletonCache cache;
+		try {
+			cache = WorkflowSkeletonCache.read(getSkeletonCacheFile(repo));
+			if(cache==null) {
+				return false;
 			}
 
-			WorkflowStep step;
+			if(!Objects.equals(initialCommitId, cache.getInitialCommit())) {
+				log.info("Discarding workflow skeleton cache - initial commit changed");
+				return false;
+			}
 
-			if(commit.equals(initialCommit)) {
-//				log.info("Detected initial step commit {}", commit);
-				step = workflow.getInitialStepDirect();
-			} else {
-//				log.info("Proper step commit {}", commit);
-				step = workflow.createWorkflowStep();
+			if(!isReachable(repo, cache.getTips().values(), tips.values())) {
+				log.info("Discarding workflow skeleton cache - branches have been rewritten");
+				return false;
 			}
+		} catch(IOException e) {
+			log.warn("Failed to read workflow skeleton cache", e);
+			return false;
+		}
 
-			/*
-			 *  We only save the commit id here and leave subsequent loading to
-			 *  a later time. The workflow implementation will make sure to load
-			 *  the process metadata stored inside a commit's message prior to the
-			 *  associated workflow step being accessed.
-			 */
-			saveId(step, commit);
+		final int count = cache.getCommitCount();
+		final WorkflowStep initialStep = workflow.getInitialStepDirect();
+		final WorkflowStep[] steps = new WorkflowStep[count];
 
-//			// Mark step as beginning of a new branch
-//			String branch = branchPointers.get(commit);
-//			if(branch!=null) {
-//				step.setProperty(WorkflowStep.PROPERTY_INTERNAL_INFO, "Branch: "+branch);
-//				storeNodeProperty(step, NODE_PROPERTY_BRANCH_ID, branch);
-//			}
+		// Phase 1: create mapping for all commits
+		for(int i=0; i<count; i++) {
+			ObjectId commit = cache.getCommit(i);
+			steps[i] = commit.equals(initialCommitId) ? initialStep : workflow.createWorkflowStep();
+			saveId(steps[i], commit.name());
 		}
 
 		// Phase 2: actually add the steps and links to workflow
-		for(RevCommit commit : commits) {
-			WorkflowStep step = lookupStep(commit);
-
-			if(workflow.isInitialStep(step)) {
+		for(int i=0; i<count; i++) {
+			if(steps[i]==initialStep) {
 				continue;
 			}
 
-			// Only if we have an actual "child" commit do we need to create a new step+node
-			if(commit.getParentCount()>0) {
-				// Establish links to parent steps
-				for(RevCommit parentCommit : commit.getParents()) {
-					WorkflowStep parentStep = lookupStep(parentCommit);
-
-					// Our initial sorting should make sure that this check never fails
-					if(parentStep==null)
-						throw new GitException(String.format(
-								"Inconsistent rev revWalk - node for parent '%s' of commit '%s' is missing",
-								parentCommit.name(), commit.name()));
-
-					// Introduce the actual graph structure via links between steps
-					workflow.addWorkflowStepDirect(parentStep, step);
-				}
+			int[] parents = cache.getParents(i);
+			if(parents.length==0) {
+				workflow.addWorkflowStepDirect(initialStep, steps[i]);
 			} else {
-				// Commits without parents are considered to be linked to the virtual root step
-				workflow.addWorkflowStepDirect(workflow.getInitialStep(), step);
+				for(int parent : parents) {
+					workflow.addWorkflowStepDirect(steps[parent], steps[i]);
+				}
 			}
 		}
 
+		// Remember the file content, so that new commits can simply be appended
+		if(!cache.isTruncated()) {
+			Map<String, Integer> indices = new HashMap<>();
+			for(int i=0; i<count; i++) {
+				indices.put(cache.getCommit(i).name(), Integer.valueOf(i));
+			}
+			skeletonCacheIndices = indices;
+		}
+		skeletonCacheTips = cache.getTips();
+		skeletonCacheBlocks = cache.getBlockCount();
 
-		// Fetch and assign the "active" step in the workflow
-		RevCommit activeCommit = resolve(active);
-		if(activeCommit!=null) {
-			WorkflowStep activeStep = lookupStep(activeCommit);
-			if(activeStep==null)
-				throw new GitException("Inconsistent repo data - no active workflow step for object-id: "+active);
+		// Now fetch everything that got committed since the cache was written
+		int added = loadCommits(tips.values());
+		skeletonCacheDirty = added>0;
 
-			workflow.setActiveStepDirect(activeStep);
+		if(isVerbose()) {
+			log.info("Loaded {} steps from workflow skeleton cache and {} new steps from git", count, added);
 		}
-	}
 
-	/**
-	 * Returns the RevCommit for the supplied id or {@code null}
-	 * if that id cannot be resolved.
-	 * <p>
-	 * Package private so that {@link GitRemoteUpdater} has access.
-	 *
-	 * @return
-	 * @throws GitException if parsing the head commit failed
-	 */
-	RevCommit resolve(String str) throws IOException {
-		ObjectId id = git.getRepository().resolve(str);
-		return id==null ? null : revWalk.parseCommit(id);
+		return true;
 	}
 
 	/**
-	 *
-	 * @param step
-	 * @throws GitException if loading the git commit data for the specified step failed
+	 * Checks whether all the commits in {@code sources} are reachable
+	 * from at least one of the {@code targets}.
+	 * <p>
+	 * Uses a single walk starting from all the {@code targets} at once, which
+	 * ends as soon as every source has been found. Since the walk is ordered by
+	 * commit time, it gives up once it passed the oldest source not found so far
+	 * by more than the {@link #MAX_CLOCK_SKEW tolerated clock skew}.
 	 */
-	private void loadWorkflowStep(final WorkflowStep step) throws GitException {
-		synchronized (gitLock) {
-			workflow.setIgnoreEventRequests(true);
-			try {
-				RevCommit commit = null;
+	private static boolean isReachable(Repository repo, Collection<ObjectId> sources,
+			Collection<ObjectId> targets) throws IOException {
+		Set<ObjectId> remaining = new HashSet<>(sources);
+		remaining.removeAll(targets);
 
-				try {
-					commit = loadId(step);
-				} catch (IOException e) {
-					throw new GitException("Failed to resolve commit id", e);
-				}
+		// Common case: none of the branches moved
+		if(remaining.isEmpty()) {
+			return true;
+		}
 
-				// A pending workflow step won't have any commit assigned to it
-				if(commit==null) {
-					return;
-				}
+		try(RevWalk walk = new RevWalk(repo)) {
+			walk.setRetainBody(false);
 
-				if(isVerbose()) {
-					log.info("Loading step for commit {}", commit);
-				}
+			int oldestTime = Integer.MAX_VALUE;
+			for(ObjectId source : remaining) {
+				oldestTime = Math.min(oldestTime, walk.parseCommit(source).getCommitTime());
+			}
 
-				String message = commit.getFullMessage();
-
-				if(workflow.getInitialStepDirect()==step) {
-					// Special handling of initial commit: this one only carries configuration metadata
-					step.setTitle(GitUtils.INITIAL_COMMIT_HEADER);
-					step.setDescription(message);
-					step.setRecordingTime(LocalDateTime.ofInstant(
-							Instant.ofEpochSecond(commit.getCommitTime()),
-							ZoneId.systemDefault()));
-				} else if(isNonJsonString(message)) {
-					/*
-					 *  "Foreign" commits are accepted, but not encouraged.
-					 *
-					 *  We can't properly handle the commit message there, but
-					 *  we'll at least be able to visualize them in the client.
-					 */
-					step.setDescription(message);
-					step.setTitle(WorkflowStep.FOREIGN_COMMIT_HEADER);
-				} else {
-					// We expect valid JSON data here
-					Options options = new Options();
-					options.put(JsonWorkflowStepReader.SKIP_HEADER, true);
+			for(ObjectId target : targets) {
+				walk.markStart(walk.parseCommit(target));
+			}
 
-					try {
-						JsonWorkflowStepReader.parseStep(workflow.getSchema(), () -> step, message, options);
-					} catch (Exception e) {
-						if(getEnvironment().getBoolean(RDHProperty.GIT_IGNORE_FAULTY_METADATA, false)) {
-							// If we're prevented from throwing an exception, at least log it for future info
-							log.warn("Failed to read process metadata from commit for step {}", step.getId(), e);
-						} else
-							throw new GitException("Failed to read process metadata from commit message for "+commit, e);
-					}
+			RevCommit commit;
+			while((commit = walk.next())!=null) {
+				if(remaining.remove(commit) && remaining.isEmpty()) {
+					return true;
 				}
 
-			} finally {
-				workflow.setIgnoreEventRequests(false);
+				if(commit.getCommitTime() < oldestTime-MAX_CLOCK_SKEW) {
+					break;
+				}
 			}
 		}
-	}
 
-	private boolean isNonJsonString(String s) {
-		return s.indexOf('{')==-1;
+		return false;
 	}
 
-	private class Handler implements RefsChangedListener, WorkingTreeModifiedListener {
+	/**
+	 * Writes the current workflow skeleton to the {@link WorkflowSkeletonCache}
+	 * if it changed and the entire history has been loaded. Commits added since
+	 * the last save are appended to the existing file, which only gets rewritten
+	 * from scratch if commits vanished from the workflow or too many blocks have
+	 * been appended already.
+	 * <p>
+	 * Needs to be called under {@code gitLock} lock!
+	 */
+	private void saveSkeletonCache() {
+		if(git==null || workflow==null || !workflowLoaded
+				|| historyWalk!=null || !unresolvedChildren.isEmpty() || !isSkeletonCacheEnabled()) {
+			return;
+		}
 
-		private ListenerHandle refsChangedHandle;
-		private ListenerHandle workingTreeModifiedHandle;
+		final Repository repo = git.getRepository();
+		final Path file = getSkeletonCacheFile(repo);
 
-		private void registerRepoListeners(Repository repo) {
-			refsChangedHandle = repo.getListenerList().addRefsChangedListener(this);
-			workingTreeModifiedHandle = repo.getListenerList().addWorkingTreeModifiedListener(this);
-		}
+		try {
+			Map<String, ObjectId> tips = getTips(
+					repo.getRefDatabase().getRefs(Constants.R_HEADS).values(), repo);
 
-		private void unregisterRepoListeners(Repository repo) {
-			if(refsChangedHandle!=null) {
-				refsChangedHandle.remove();
+			if(!skeletonCacheDirty && tips.equals(skeletonCacheTips)) {
+				return;
 			}
-			if(workingTreeModifiedHandle!=null) {
-				workingTreeModifiedHandle.remove();
+
+			Map<String, Integer> indices = skeletonCacheIndices;
+			final boolean append = indices!=null
+					&& skeletonCacheBlocks<MAX_SKELETON_CACHE_BLOCKS
+					&& Files.exists(file, LinkOption.NOFOLLOW_LINKS)
+					&& commitToStepLookup.keySet().containsAll(indices.keySet());
+			if(!append) {
+				indices = new HashMap<>();
 			}
-		}
 
-		@Override
-		public void onWorkingTreeModified(WorkingTreeModifiedEvent event) {
-			// TODO Auto-generated method stub
-//			System.out.println(event);
-		}
+			// Invalid until the new state has been written successfully
+			skeletonCacheIndices = null;
 
-		@Override
-		public void onRefsChanged(RefsChangedEvent event) {
-			// TODO Auto-generated method stub
-//			System.out.println(event);
-		}
-	}
+			// Assign indices to all commits not yet stored in the file
+			final int offset = indices.size();
+			final List<String> added = new ArrayList<>();
+			for(String commitId : commitToStepLookup.keySet()) {
+				if(!indices.containsKey(commitId)) {
+					indices.put(commitId, Integer.valueOf(offset+added.size()));
+					added.add(commitId);
+				}
+			}
+
+			final int count = added.size();
+			final ObjectId[] commits = new ObjectId[count];
+			final int[][] parents = new int[count][];
+
+			final boolean hasInitialCommit = initialCommitId!=null
+					&& indices.containsKey(initialCommitId.name());
+
+			for(int i=0; i<count; i++) {
+				String commitId = added.get(i);
+				WorkflowStep step = commitToStepLookup.get(commitId);
+				commits[i] = ObjectId.fromString(commitId);
+
+				int[] parentIndices = getParentIndices(step, commits[i], indices, hasInitialCommit);
+				if(parentIndices==null) {
+					log.warn("Unable to save workflow skeleton cache - no commit for parent of step {}",
+							getLabel(step));
+					return;
+				}
+				parents[i] = parentIndices;
+			}
+
+			if(append) {
+				WorkflowSkeletonCache.append(file, tips, commits, parents);
+				skeletonCacheBlocks++;
+			} else {
+				new WorkflowSkeletonCache(tips, initialCommitId, commits, parents).write(file);
+				skeletonCacheBlocks = 1;
+			}
+
+			skeletonCacheIndices = indices;
+			skeletonCacheTips = tips;
+			skeletonCacheDirty = false;
+
+			if(isVerbose()) {
+				log.info("Saved {} commits to workflow skeleton cache - appended: {}", count, append);
+			}
+		} catch(IOException e) {
+			log.error("Failed to save workflow skeleton cache", e);
+		}
+	}
+
+	/**
+	 * Returns the cache indices of all the parents of the given step
+	 * or {@code null} if any of them has not been assigned an index.
+	 */
+	private int[] getParentIndices(WorkflowStep step, ObjectId commit,
+			Map<String, Integer> indices, boolean hasInitialCommit) throws IOException {
+		final WorkflowStep initialStep = workflow.getInitialStepDirect();
+		List<WorkflowStep> incoming = step==initialStep ?
+				Collections.emptyList() : workflow.node(step).incoming();
+
+		/*
+		 *  Links from the initial step either represent an actual parent
+		 *  relation or mark a commit without any parents.
+		 */
+		if(incoming.isEmpty() || (incoming.size()==1 && incoming.get(0)==initialStep
+				&& (!hasInitialCommit || revWalk.parseCommit(commit).getParentCount()==0))) {
+			return new int[0];
+		}
+
+		int[] parentIndices = new int[incoming.size()];
+		for(int j=0; j<parentIndices.length; j++) {
+			String parentId = (String)workflow.node(incoming.get(j)).getProperty(NODE_PROPERTY_COMMIT_ID);
+			Integer index = parentId==null ? null : indices.get(parentId);
+			if(index==null) {
+				return null;
+			}
+			parentIndices[j] = index.intValue();
+		}
+		return parentIndices;
+	}
+
+	private int getHistoryPageSize() {
+		return getEnvironment().getInteger(RDHProperty.GIT_HISTORY_PAGE_SIZE, DEFAULT_HISTORY_PAGE_SIZE);
+	}
+
+	private void disposeHistoryWalk() {
+		if(historyWalk!=null) {
+			historyWalk.close();
+			historyWalk = null;
+			historyStarts = null;
+		}
+	}
+
+	/**
+	 * Collects all the commits reachable from {@code starts} that are not
+	 * reachable from the {@link #historyStarts tips} of the history walk,
+	 * i.e. the commits the walk will never produce. Returns {@code null}
+	 * if the history has been loaded completely.
+	 */
+	private Set<ObjectId> collectCommitsOutsideHistory(
+			Collection<? extends ObjectId> starts) throws IOException {
+		if(historyWalk==null) {
+			return null;
+		}
+
+		Set<ObjectId> result = new HashSet<>();
+		try(RevWalk walk = new RevWalk(git.getRepository())) {
+			walk.setRetainBody(false);
+
+			for(ObjectId start : starts) {
+				walk.markStart(walk.parseCommit(start));
+			}
+			for(ObjectId tip : historyStarts) {
+				walk.markUninteresting(walk.parseCommit(tip));
+			}
+
+			for(RevCommit commit : walk) {
+				result.add(commit.copy());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the {@link #historyWalk} might still produce children
+	 * of the given commit. Since the walk is ordered by commit time, this
+	 * is the case until it reached commits that are older than the given
+	 * one by more than the {@link #MAX_CLOCK_SKEW tolerated clock skew}.
+	 */
+	private boolean mayLackChildren(RevCommit commit) {
+		return historyWalk!=null
+				&& historyTime >= commit.getCommitTime()-MAX_CLOCK_SKEW;
+	}
+
+	/**
+	 * Fetch and assign the "active" step in the workflow. If the
+	 * commit {@code HEAD} points to is not part of the loaded history
+	 * yet, it will be loaded directly.
+	 */
+	private void refreshActiveStep() throws IOException {
+		RevCommit activeCommit = resolve(Constants.HEAD);
+		if(activeCommit!=null) {
+			WorkflowStep activeStep = lookupStep(activeCommit);
+			if(activeStep==null) {
+				activeStep = addCommit(activeCommit);
+			}
+
+			workflow.setActiveStepDirect(activeStep);
+		}
+	}
+
+	/**
+	 * Creates steps for up to {@code limit} further commits produced by
+	 * the {@link #historyWalk history walk}. If {@code limit} is {@code 0}
+	 * or negative, the entire remaining history will be loaded.
+	 *
+	 * @return the number of newly created steps
+	 */
+	private int loadHistoryPage(int limit) throws IOException {
+		if(historyWalk==null) {
+			return 0;
+		}
+
+		int count = 0;
+		while(limit<=0 || count<limit) {
+			RevCommit commit = historyWalk.next();
+			if(commit==null) {
+				disposeHistoryWalk();
+
+				/*
+				 *  Remaining unresolved parents can only stem from commits that
+				 *  are not reachable from any branch (e.g. a detached HEAD) and
+				 *  therefore need to be loaded manually.
+				 */
+				if(!unresolvedChildren.isEmpty()) {
+					List<ObjectId> missing = new ArrayList<>(unresolvedChildren.size());
+					for(String id : unresolvedChildren.keySet()) {
+						missing.add(ObjectId.fromString(id));
+					}
+					count += loadCommits(missing);
+				}
+				break;
+			}
+
+			historyTime = commit.getCommitTime();
+
+			// Commits loaded out of order (e.g. the active one) will be reported by the walk again
+			if(lookupStep(commit)==null) {
+				addCommit(commit);
+				count++;
+			}
+		}
+
+		if(isVerbose()) {
+			log.info("Loaded {} steps from commit history - history complete: {}", count, historyWalk==null);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Creates steps for all the commits reachable from {@code starts}
+	 * that are not yet part of the workflow. Traversal stops at commits
+	 * that already have a step assigned and at commits that are part of
+	 * the history still waiting to be {@link #loadHistoryPage(int) paged in}.
+	 * Steps of commits with parents in that part of the history remain
+	 * unresolved until those parents get loaded.
+	 *
+	 * @return the number of newly created steps
+	 */
+	private int loadCommits(Collection<? extends ObjectId> starts) throws IOException {
+		// Only relevant while paging, otherwise there is no history left to stop at
+		final Set<ObjectId> outside = collectCommitsOutsideHistory(starts);
+
+		Deque<ObjectId> pending = new ArrayDeque<>(starts);
+
+		int count = 0;
+		while(!pending.isEmpty()) {
+			RevCommit commit = revWalk.parseCommit(pending.pop());
+
+			if(lookupStep(commit)!=null || (outside!=null && !outside.contains(commit))) {
+				continue;
+			}
+
+			addCommit(commit);
+			count++;
+
+			for(RevCommit parentCommit : commit.getParents()) {
+				if(lookupStep(parentCommit)==null
+						&& (outside==null || outside.contains(parentCommit))) {
+					pending.push(parentCommit);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Creates the skeleton step for the given commit and links it to
+	 * all parents and children that are already present.
+	 */
+	private WorkflowStep addCommit(RevCommit commit) {
+		WorkflowStep step;
+
+		if(initialCommitId!=null && initialCommitId.equals(commit)) {
+			step = workflow.getInitialStepDirect();
+		} else {
+			step = workflow.createWorkflowStep();
+		}
+
+		/*
+		 *  We only save the commit id here and leave subsequent loading to
+		 *  a later time. The workflow implementation will make sure to load
+		 *  the process metadata stored inside a commit's message prior to the
+		 *  associated workflow step being accessed.
+		 */
+		saveId(step, commit);
+
+		linkToParents(commit, step);
+
+		// Now finish all children that have been waiting for this commit
+		List<RevCommit> children = unresolvedChildren.remove(commit.name());
+		if(children!=null) {
+			for(RevCommit child : children) {
+				linkToParents(child, lookupStep(child));
+			}
+		}
+
+		return step;
+	}
+
+	/**
+	 * Establishes the links from all parent steps of {@code commit} to the given
+	 * {@code step}. If any of the parents has not been loaded yet, the step will
+	 * be registered as unresolved instead, so that the order of incoming links
+	 * always matches the order of parent commits.
+	 */
+	private void linkToParents(RevCommit commit, WorkflowStep step) {
+		if(workflow.isInitialStep(step)) {
+			return;
+		}
+
+		// Commits without parents are considered to be linked to the virtual root step
+		if(commit.getParentCount()==0) {
+			workflow.addWorkflowStepDirect(workflow.getInitialStepDirect(), step);
+			return;
+		}
+
+		boolean complete = true;
+		for(RevCommit parentCommit : commit.getParents()) {
+			if(lookupStep(parentCommit)==null) {
+				complete = false;
+				List<RevCommit> waiting = unresolvedChildren.computeIfAbsent(
+						parentCommit.name(), k -> new ArrayList<>(1));
+				if(!waiting.contains(commit)) {
+					waiting.add(commit);
+				}
+			}
+		}
+
+		if(!complete) {
+			unresolvedSteps.add(step);
+			return;
+		}
+
+		unresolvedSteps.remove(step);
+
+		// Introduce the actual graph structure via links between steps
+		for(RevCommit parentCommit : commit.getParents()) {
+			workflow.addWorkflowStepDirect(lookupStep(parentCommit), step);
+		}
+	}
+
+	/**
+	 * Loads further parts of the commit history if needed to make the links
+	 * of the given step available. If {@code step} is {@code null} the entire
+	 * remaining history will be loaded.
+	 * <p>
+	 * The history walk produces commits ordered by commit time, so all children
+	 * of a step are considered known once the walk has moved past the step's
+	 * commit time by more than the {@link #MAX_CLOCK_SKEW tolerated clock skew}.
+	 * Children produced even later are still linked when their page gets loaded.
+	 */
+	private void ensureHistoryLoaded(WorkflowStep step, boolean incoming) throws GitException {
+		loadHistory(pageSize -> {
+			boolean loaded = false;
+
+			if(step==null || (!incoming && workflow.isInitialStep(step))) {
+				loaded = loadHistoryPage(0)>0;
+			} else if(incoming) {
+				while(historyWalk!=null && unresolvedSteps.contains(step)) {
+					loaded |= loadHistoryPage(pageSize)>0;
+				}
+			} else {
+				RevCommit commit = loadId(step);
+				if(commit!=null) {
+					while(mayLackChildren(commit)) {
+						loaded |= loadHistoryPage(pageSize)>0;
+					}
+				}
+			}
+
+			return loaded;
+		});
+	}
+
+	/**
+	 * Loads the next page of the commit history, if there is any left.
+	 *
+	 * @return {@code true} iff any new steps have been created
+	 */
+	private boolean loadOlderHistory() throws GitException {
+		return loadHistory(pageSize -> loadHistoryPage(pageSize)>0);
+	}
+
+	/**
+	 * Returns whether the links of the given step in the specified direction
+	 * are available without loading further parts of the commit history.
+	 * This mirrors the conditions used by {@link #ensureHistoryLoaded(WorkflowStep, boolean)}.
+	 */
+	private boolean hasLoadedLinks(WorkflowStep step, boolean incoming) throws GitException {
+		synchronized (gitLock) {
+			if(historyWalk==null) {
+				return true;
+			}
+
+			if(incoming) {
+				return !unresolvedSteps.contains(step);
+			} else if(workflow.isInitialStep(step)) {
+				return false;
+			}
+
+			try {
+				RevCommit commit = loadId(step);
+				return commit==null || !mayLackChildren(commit);
+			} catch (IOException e) {
+				throw new GitException("Failed to resolve commit id", e);
+			}
+		}
+	}
+
+	/**
+	 * Runs the given {@code loader} unless the history has been loaded completely
+	 * or is already in the process of being loaded. Listeners get notified if any
+	 * new steps have been created.
+	 *
+	 * @return {@code true} iff any new steps have been created
+	 */
+	private boolean loadHistory(HistoryLoader loader) throws GitException {
+		boolean loaded = false;
+
+		synchronized (gitLock) {
+			// Nothing to do or already in the process of loading
+			if(historyWalk==null || loadingHistory) {
+				return false;
+			}
+
+			loadingHistory = true;
+			workflow.setIgnoreEventRequests(true);
+			try {
+				loaded = loader.load(getHistoryPageSize());
+
+				// Once the history is complete we can keep it for the next session
+				if(loaded && historyWalk==null) {
+					saveSkeletonCache();
+				}
+			} catch (IOException e) {
+				throw new GitException("Failed to load older parts of commit history", e);
+			} finally {
+				loadingHistory = false;
+				workflow.setIgnoreEventRequests(false);
+			}
+		}
+
+		// Notify listeners
+		if(loaded) {
+			workflow.fireStateChanged();
+		}
+
+		return loaded;
+	}
+
+	@FunctionalInterface
+	private interface HistoryLoader {
+
+		/**
+		 * Loads parts of the commit history based on the given page size.
+		 *
+		 * @return {@code true} iff any new steps have been created
+		 */
+		boolean load(int pageSize) throws IOException;
+	}
+
+	/**
+	 * Returns the RevCommit for the supplied id or {@code null}
+	 * if that id cannot be resolved.
+	 * <p>
+	 * Package private so that {@link GitRemoteUpdater} has access.
+	 *
+	 * @return
+	 * @throws GitException if parsing the head commit failed
+	 */
+	RevCommit resolve(String str) throws IOException {
+		ObjectId id = git.getRepository().resolve(str);
+		return id==null ? null : revWalk.parseCommit(id);
+	}
+
+	/**
+	 *
+	 * @param step
+	 * @return {@code false} if no commit is assigned to the step yet
+	 * @throws GitException if loading the git commit data for the specified step failed
+	 */
+	private boolean loadWorkflowStep(final WorkflowStep step) throws GitException {
+		synchronized (gitLock) {
+			workflow.setIgnoreEventRequests(true);
+			try {
+				RevCommit commit = null;
+
+				try {
+					commit = loadId(step);
+				} catch (IOException e) {
+					throw new GitException("Failed to resolve commit id", e);
+				}
+
+				// A pending workflow step won't have any commit assigned to it
+				if(commit==null) {
+					return false;
+				}
+
+				if(isVerbose()) {
+					log.info("Loading step for commit {}", commit);
+				}
+
+				readWorkflowStep(step, commit, workflow.getInitialStepDirect()==step);
+
+				return true;
+			} finally {
+				workflow.setIgnoreEventRequests(false);
+			}
+		}
+	}
+
+	/**
+	 * Transforms the message of the given {@code commit} into process
+	 * metadata stored in {@code step}. This method does not access any
+	 * shared state of this adapter and can therefore be used to parse
+	 * detached steps concurrently.
+	 *
+	 * @param step
+	 * @param commit
+	 * @param initial
+	 * @throws GitException if the commit message contains faulty metadata
+	 */
+	private void readWorkflowStep(final WorkflowStep step, RevCommit commit, boolean initial) throws GitException {
+		String message = commit.getFullMessage();
+
+		if(initial) {
+			// Special handling of initial commit: this one only carries configuration metadata
+			step.setTitle(GitUtils.INITIAL_COMMIT_HEADER);
+			step.setDescription(message);
+			step.setRecordingTime(LocalDateTime.ofInstant(
+					Instant.ofEpochSecond(commit.getCommitTime()),
+					ZoneId.systemDefault()));
+		} else if(isNonJsonString(message)) {
+			/*
+			 *  "Foreign" commits are accepted, but not encouraged.
+			 *
+			 *  We can't properly handle the commit message there, but
+			 *  we'll at least be able to visualize them in the client.
+			 */
+			step.setDescription(message);
+			step.setTitle(WorkflowStep.FOREIGN_COMMIT_HEADER);
+		} else {
+			// We expect valid JSON data here
+			Options options = new Options();
+			options.put(JsonWorkflowStepReader.SKIP_HEADER, true);
+
+			try {
+				JsonWorkflowStepReader.parseStep(workflow.getSchema(), () -> step, message, options);
+			} catch (Exception e) {
+				if(getEnvironment().getBoolean(RDHProperty.GIT_IGNORE_FAULTY_METADATA, false)) {
+					// If we're prevented from throwing an exception, at least log it for future info
+					log.warn("Failed to read process metadata from commit {}", commit.getName(), e);
+				} else
+					throw new GitException("Failed to read process metadata from commit message for "+commit, e);
+			}
+		}
+	}
+
+	/**
+	 * Loads the process metadata for all the given steps that haven't been
+	 * loaded yet. Commit messages are read in batches, each batch using its
+	 * own {@link ObjectReader}, and parsed concurrently on the client's
+	 * executor into detached steps. The calling thread takes part in the
+	 * work, so this method never depends on a free worker thread.
+	 * Afterwards all the results get published under the git lock in one go.
+	 * <p>
+	 * Small sets of steps are simply loaded one after the other.
+	 *
+	 * @param steps
+	 * @throws GitException if reading or parsing any of the commits failed
+	 */
+	private void hydrateWorkflowSteps(Collection<? extends WorkflowStep> steps) throws GitException {
+		final List<WorkflowStep> pending = new ArrayList<>();
+		final List<ObjectId> commitIds = new ArrayList<>();
+		final WorkflowStep initialStep;
+		final Repository repository;
+
+		// Collect all the unloaded steps that have a commit assigned
+		synchronized (gitLock) {
+			checkState("No git connection", git!=null);
+
+			initialStep = workflow.getInitialStepDirect();
+			repository = git.getRepository();
+
+			for(WorkflowStep step : steps) {
+				Node<WorkflowStep> node = workflow.node(step, false, false);
+				if(node==null || workflow.isLoaded(node)) {
+					continue;
+				}
+				String id = (String)node.getProperty(NODE_PROPERTY_COMMIT_ID);
+				if(id!=null) {
+					pending.add(step);
+					commitIds.add(ObjectId.fromString(id));
+				}
+			}
+		}
+
+		if(pending.isEmpty()) {
+			return;
+		}
+
+		final int count = pending.size();
+		final int batchCount = (count+HYDRATION_BATCH_SIZE-1) / HYDRATION_BATCH_SIZE;
+		final int parallelism = Math.min(batchCount, Runtime.getRuntime().availableProcessors());
+
+		if(count<MIN_PARALLEL_HYDRATION || parallelism<2) {
+			for(WorkflowStep step : pending) {
+				workflow.ensureWorkflowStepData(step);
+			}
+			return;
+		}
+
+		if(isVerbose()) {
+			log.info("Loading {} steps in {} batches", _int(count), _int(batchCount));
+		}
+
+		final WorkflowStep[] results = new WorkflowStep[count];
+		final AtomicInteger nextBatch = new AtomicInteger(0);
+		final CountDownLatch finishedBatches = new CountDownLatch(batchCount);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		final Runnable worker = () -> {
+			int batch;
+			while((batch = nextBatch.getAndIncrement()) < batchCount) {
+				int from = batch * HYDRATION_BATCH_SIZE;
+				int to = Math.min(from + HYDRATION_BATCH_SIZE, count);
+
+				try(ObjectReader reader = repository.newObjectReader();
+						RevWalk walk = new RevWalk(reader)) {
+					for(int i = from; i<to && failure.get()==null; i++) {
+						RevCommit commit = walk.parseCommit(commitIds.get(i));
+						WorkflowStep result = workflow.createWorkflowStep();
+						readWorkflowStep(result, commit, pending.get(i)==initialStep);
+						results[i] = result;
+					}
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					finishedBatches.countDown();
+				}
+			}
+		};
+
+		ExecutorService executorService = getEnvironment().getClient().getExecutorService();
+		List<Future<?>> helpers = new ArrayList<>(parallelism-1);
+		try {
+			for(int i = 1; i<parallelism; i++) {
+				helpers.add(executorService.submit(worker));
+			}
+
+			worker.run();
+
+			finishedBatches.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GitException("Interrupted while loading workflow steps", e);
+		} finally {
+			// Helpers that never got a thread assigned won't find any work anyway
+			helpers.forEach(f -> f.cancel(false));
+		}
+
+		Exception e = failure.get();
+		if(e instanceof GitException) {
+			throw (GitException) e;
+		} else if(e!=null) {
+			throw new GitException("Failed to load commits for workflow steps", e);
+		}
+
+		// Publish all the results at once
+		synchronized (gitLock) {
+			workflow.setIgnoreEventRequests(true);
+			try {
+				for(int i = 0; i<count; i++) {
+					WorkflowStep step = pending.get(i);
+					Node<WorkflowStep> node = workflow.node(step, false, false);
+					// Steps might have been loaded or removed in the meantime
+					if(node==null || workflow.isLoaded(node)) {
+						continue;
+					}
+					transferWorkflowStep(results[i], step);
+					workflow.setLoaded(node);
+				}
+			} finally {
+				workflow.setIgnoreEventRequests(false);
+			}
+		}
+	}
+
+	/**
+	 * Moves the content of a freshly parsed and detached step into the
+	 * actual step from the workflow graph. Since the {@code source} step
+	 * is discarded afterwards, there's no need to copy its resources.
+	 */
+	private static void transferWorkflowStep(WorkflowStep source, WorkflowStep target) {
+		if(source.getId()!=null) {
+			target.setId(source.getId());
+		}
+		target.setTitle(source.getTitle());
+		target.setDescription(source.getDescription());
+		if(source.getRecordingTime()!=null) {
+			target.setRecordingTime(source.getRecordingTime());
+		}
+		if(source.getTool()!=null) {
+			target.setTool(source.getTool());
+		}
+		source.getInput().forEach(target::addInput);
+		source.getOutput().forEach(target::addOutput);
+		source.getPersons().forEach(target::addPerson);
+		source.getProperties().forEach(target::setProperty);
+	}
+
+	private boolean isNonJsonString(String s) {
+		return s.indexOf('{')==-1;
+	}
+
+	private class Handler implements RefsChangedListener, WorkingTreeModifiedListener {
+
+		private ListenerHandle refsChangedHandle;
+		private ListenerHandle workingTreeModifiedHandle;
+
+		private void registerRepoListeners(Repository repo) {
+			refsChangedHandle = repo.getListenerList().addRefsChangedListener(this);
+			workingTreeModifiedHandle = repo.getListenerList().addWorkingTreeModifiedListener(this);
+		}
+
+		private void unregisterRepoListeners(Repository repo) {
+			if(refsChangedHandle!=null) {
+				refsChangedHandle.remove();
+			}
+			if(workingTreeModifiedHandle!=null) {
+				workingTreeModifiedHandle.remove();
+			}
+		}
+
+		/**
+		 * Git commands such as checkout or merge report the files they touched,
+		 * so only those need to be re-checked on the next status refresh.
+		 */
+		@Override
+		public void onWorkingTreeModified(WorkingTreeModifiedEvent event) {
+			workingTreeStatus.markDirty(event.getModified());
+			workingTreeStatus.markDirty(event.getDeleted());
+		}
+
+		/**
+		 * Moving refs (commits, checkouts, merges) changes the status of
+		 * arbitrary files relative to {@code HEAD}, so we need a full rescan.
+		 */
+		@Override
+		public void onRefsChanged(RefsChangedEvent event) {
+			workingTreeStatus.requestFullRescan();
+		}
+	}
 
 	/**
 	 *
@@ -2437,6 +3328,14 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 			ignoreEventRequests = value;
 		}
 
+		boolean isLoaded(Node<WorkflowStep> node) {
+			return node.flagSet(FLAG_LOADED);
+		}
+
+		void setLoaded(Node<WorkflowStep> node) {
+			node.setFlag(FLAG_LOADED, true);
+		}
+
 		/**
 		 * @see bwfdm.replaydh.workflow.impl.DefaultWorkflow#fireWorkflowStepAdded(bwfdm.replaydh.workflow.WorkflowStep)
 		 */
@@ -2616,6 +3515,72 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		 */
 		@Override
 		protected void ensureFullWorkflowData() {
+			ensureWorkflowSkeleton();
+
+			try {
+				ensureHistoryLoaded(null, false);
+			} catch (GitException e) {
+				throw new RDHException("Failed to load remaining commit history", e);
+			}
+		}
+
+		/**
+		 * Makes sure the initial window of the commit history is available.
+		 *
+		 * @see bwfdm.replaydh.workflow.impl.DefaultWorkflow#getKnownSteps()
+		 */
+		@Override
+		public List<WorkflowStep> getKnownSteps() {
+			ensureWorkflowSkeleton();
+
+			return super.getKnownSteps();
+		}
+
+		/**
+		 * @see bwfdm.replaydh.workflow.Workflow#hasOlderSteps()
+		 */
+		@Override
+		public boolean hasOlderSteps() {
+			ensureWorkflowSkeleton();
+
+			synchronized (gitLock) {
+				return historyWalk!=null;
+			}
+		}
+
+		/**
+		 * @see bwfdm.replaydh.workflow.Workflow#loadOlderSteps()
+		 */
+		@Override
+		public boolean loadOlderSteps() {
+			ensureWorkflowSkeleton();
+
+			try {
+				return loadOlderHistory();
+			} catch (GitException e) {
+				throw new RDHException("Failed to load older parts of commit history", e);
+			}
+		}
+
+		/**
+		 * @see bwfdm.replaydh.workflow.Workflow#hasLoadedLinks(bwfdm.replaydh.workflow.WorkflowStep, boolean)
+		 */
+		@Override
+		public boolean hasLoadedLinks(WorkflowStep step, boolean incoming) {
+			requireNonNull(step);
+			ensureWorkflowSkeleton();
+
+			try {
+				return JGitAdapter.this.hasLoadedLinks(step, incoming);
+			} catch (GitException e) {
+				throw new RDHException("Failed to check commit history for workflow step: "+getLabel(step), e);
+			}
+		}
+
+		/**
+		 * Loads the initial window of the commit history.
+		 */
+		private void ensureWorkflowSkeleton() {
 			if(skeletonLoaded.compareAndSet(false, true)) {
 				// Load the skeleton process metadata (this includes links)
 				try {
@@ -2626,6 +3591,20 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 			}
 		}
 
+		/**
+		 * @see bwfdm.replaydh.workflow.impl.DefaultWorkflow#ensureWorkflowStepLinks(bwfdm.replaydh.workflow.WorkflowStep, boolean)
+		 */
+		@Override
+		protected void ensureWorkflowStepLinks(WorkflowStep step, boolean incoming) {
+			ensureWorkflowSkeleton();
+
+			try {
+				ensureHistoryLoaded(step, incoming);
+			} catch (GitException e) {
+				throw new RDHException("Failed to load commit history for workflow step: "+getLabel(step), e);
+			}
+		}
+
 		/**
 		 * @see bwfdm.replaydh.workflow.impl.DefaultWorkflow#ensureWorkflowStepData(bwfdm.replaydh.workflow.WorkflowStep)
 		 */
@@ -2633,22 +3612,40 @@ public class JGitAdapter extends AbstractRDHTool implements RDHTool, FileTracker
 		protected WorkflowStep ensureWorkflowStepData(WorkflowStep step) {
 
 			// Make sure we got the workflow skeleton loaded
-			ensureFullWorkflowData();
+			ensureWorkflowSkeleton();
 
 			// Ensure that the commit message is parsed into actual step data
 			synchronized (gitLock) {
 				Node<WorkflowStep> node = node(step);
 				if(!node.flagSet(FLAG_LOADED)) {
 					try {
-						loadWorkflowStep(step);
+						// The initial step might not have its commit loaded yet
+						if(loadWorkflowStep(step)) {
+							node.setFlag(FLAG_LOADED, true);
+						}
 					} catch (GitException e) {
 						throw new RDHException("Failed to load data for workflow step: "+getLabel(step), e);
 					}
-					node.setFlag(FLAG_LOADED, true);
 				}
 			}
 
 			return step;
 		}
+
+		/**
+		 * @see bwfdm.replaydh.workflow.impl.DefaultWorkflow#ensureWorkflowStepsData(java.util.Collection)
+		 */
+		@Override
+		protected void ensureWorkflowStepsData(Collection<? extends WorkflowStep> steps) {
+
+			// Make sure we got the workflow skeleton loaded
+			ensureWorkflowSkeleton();
+
+			try {
+				hydrateWorkflowSteps(steps);
+			} catch (GitException e) {
+				throw new RDHException("Failed to load data for workflow steps", e);
+			}
+		}
 	}
 }
@@ -0,0 +1,108 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+/**
+ * Immutable snapshot of all the files tracked in a single git tree.
+ * <p>
+ * The paths are stored as a sorted array, so that the number of tracked
+ * files is available in constant time. Since trees are immutable in git,
+ * an index is valid for as long as the tree it was
+ * {@link #isIndexFor(AnyObjectId) created for} is used as source.
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class TrackedFileIndex {
+
+	/**
+	 * Shared index for an empty tree or a missing {@code HEAD}
+	 */
+	static final TrackedFileIndex EMPTY = new TrackedFileIndex(ObjectId.zeroId(), new String[0]);
+
+	/**
+	 * Walks the entire tree denoted by {@code treeId} and collects the
+	 * paths of all contained files.
+	 */
+	static TrackedFileIndex create(Repository repository, AnyObjectId treeId) throws IOException {
+		requireNonNull(repository);
+		requireNonNull(treeId);
+
+		List<String> paths = new ArrayList<>();
+
+		try(TreeWalk treeWalk = new TreeWalk(repository)) {
+			treeWalk.addTree(treeId);
+			treeWalk.setRecursive(true);
+
+			while(treeWalk.next()) {
+				paths.add(treeWalk.getPathString());
+			}
+		}
+
+		String[] array = paths.toArray(new String[paths.size()]);
+		// Git tree order differs from plain string order for folders
+		Arrays.sort(array);
+
+		return new TrackedFileIndex(treeId.copy(), array);
+	}
+
+	private final ObjectId treeId;
+
+	private final String[] paths;
+
+	private TrackedFileIndex(ObjectId treeId, String[] paths) {
+		this.treeId = treeId;
+		this.paths = paths;
+	}
+
+	/**
+	 * Returns {@code true} if this index has been created for the
+	 * given tree.
+	 */
+	boolean isIndexFor(AnyObjectId treeId) {
+		return this.treeId.equals(treeId);
+	}
+
+	int size() {
+		return paths.length;
+	}
+
+	boolean isEmpty() {
+		return paths.length==0;
+	}
+
+	void forEach(Consumer<? super String> action) {
+		for(String path : paths) {
+			action.accept(path);
+		}
+	}
+}
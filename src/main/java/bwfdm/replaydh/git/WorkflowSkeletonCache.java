@@ -0,0 +1,363 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Compact binary snapshot of the commit graph underlying a workflow.
+ * Stores the ids of all commits together with the parent links between
+ * them and the branch tips the snapshot was taken from. Allows the
+ * {@link JGitAdapter} to rebuild the skeleton of a workflow without
+ * walking the entire commit history.
+ * <p>
+ * The file consists of a header followed by one or more blocks. The first
+ * block is written when the cache is {@link #write(Path) created}, every
+ * further block gets {@link #append(Path, Map, ObjectId[], int[][]) appended}
+ * later on and adds the commits created since then. The tips of the last
+ * block replace all previous ones. A damaged block at the end of the file
+ * (e.g. due to a crash while appending) is ignored. The layout is as follows
+ * (all numbers in big-endian):
+ * <pre>
+ * int      magic number
+ * int      format version
+ * boolean  initial commit present
+ *   byte[20] initial commit id
+ * block+
+ *   int      number of tips
+ *     UTF      ref name
+ *     byte[20] commit id
+ *   int      number of commits
+ *     byte[20] commit id
+ *     short    number of parents
+ *       int      index of parent commit (counted over all blocks)
+ *   long     CRC32 of the block (the first one includes the header)
+ * </pre>
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class WorkflowSkeletonCache {
+
+	private static final int MAGIC = 0x52444853; // "RDHS"
+
+	private static final int VERSION = 2;
+
+	private static final int[] NO_PARENTS = {};
+
+	/**
+	 * Minimal number of bytes needed per tip and commit, used to detect
+	 * corrupted counts before allocating any buffers for them.
+	 */
+	private static final int MIN_ENTRY_SIZE = Constants.OBJECT_ID_LENGTH + 2;
+
+	private final Map<String, ObjectId> tips;
+
+	private final ObjectId initialCommit;
+
+	private final ObjectId[] commits;
+
+	private final int[][] parents;
+
+	private final int blockCount;
+
+	private final boolean truncated;
+
+	WorkflowSkeletonCache(Map<String, ObjectId> tips, ObjectId initialCommit,
+			ObjectId[] commits, int[][] parents) {
+		this(tips, initialCommit, commits, parents, 1, false);
+	}
+
+	private WorkflowSkeletonCache(Map<String, ObjectId> tips, ObjectId initialCommit,
+			ObjectId[] commits, int[][] parents, int blockCount, boolean truncated) {
+		requireNonNull(tips);
+		requireNonNull(commits);
+		requireNonNull(parents);
+		if(commits.length!=parents.length)
+			throw new IllegalArgumentException("Inconsistent size of commit and parent data");
+
+		this.tips = Collections.unmodifiableMap(new LinkedHashMap<>(tips));
+		this.initialCommit = initialCommit;
+		this.commits = commits;
+		this.parents = parents;
+		this.blockCount = blockCount;
+		this.truncated = truncated;
+	}
+
+	public Map<String, ObjectId> getTips() {
+		return tips;
+	}
+
+	public ObjectId getInitialCommit() {
+		return initialCommit;
+	}
+
+	public int getCommitCount() {
+		return commits.length;
+	}
+
+	public ObjectId getCommit(int index) {
+		return commits[index];
+	}
+
+	/**
+	 * Returns the indices of all the parents of the commit at the given
+	 * {@code index} in the order they appear in the commit.
+	 */
+	public int[] getParents(int index) {
+		return parents[index];
+	}
+
+	/**
+	 * Returns the number of blocks this cache has been assembled from.
+	 */
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Returns {@code true} if the file this cache was read from ended with
+	 * a damaged block. Such a file should be rewritten before further blocks
+	 * get appended to it.
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	private static int readCount(DataInputStream data, long limit, String label) throws IOException {
+		int count = data.readInt();
+		if(count<0 || count>limit)
+			throw new IOException("Corrupted skeleton cache - invalid "+label+" count: "+count);
+		return count;
+	}
+
+	/**
+	 * Reads a cache from the given file. Returns {@code null} if the file does
+	 * not exist or uses an incompatible format.
+	 *
+	 * @throws IOException if reading the file failed or the content of its first
+	 * block is corrupted
+	 */
+	public static WorkflowSkeletonCache read(Path file) throws IOException {
+		if(!Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+			return null;
+		}
+
+		// Neither tips nor commits can be more numerous than the file has room for
+		final long limit = Files.size(file)/MIN_ENTRY_SIZE;
+
+		CRC32 crc = new CRC32();
+		try(InputStream in = new BufferedInputStream(Files.newInputStream(file));
+				CheckedInputStream checked = new CheckedInputStream(in, crc);
+				DataInputStream data = new DataInputStream(checked)) {
+
+			if(data.readInt()!=MAGIC || data.readInt()!=VERSION) {
+				return null;
+			}
+
+			byte[] buffer = new byte[Constants.OBJECT_ID_LENGTH];
+
+			ObjectId initialCommit = data.readBoolean() ? readId(data, buffer) : null;
+
+			Map<String, ObjectId> tips = null;
+			ObjectId[] commits = new ObjectId[0];
+			int[][] parents = new int[0][];
+			int blockCount = 0;
+			boolean truncated = false;
+
+			for(;;) {
+				// Stop at the end of the file, without affecting the checksum
+				in.mark(1);
+				if(in.read()==-1) {
+					break;
+				}
+				in.reset();
+
+				Map<String, ObjectId> blockTips = new LinkedHashMap<>();
+				ObjectId[] blockCommits;
+				int[][] blockParents;
+
+				try {
+					int tipCount = readCount(data, limit, "tip");
+					for(int i=0; i<tipCount; i++) {
+						String name = data.readUTF();
+						blockTips.put(name, readId(data, buffer));
+					}
+
+					int commitCount = readCount(data, limit-commits.length, "commit");
+					int totalCount = commits.length+commitCount;
+
+					blockCommits = new ObjectId[commitCount];
+					blockParents = new int[commitCount][];
+					for(int i=0; i<commitCount; i++) {
+						blockCommits[i] = readId(data, buffer);
+
+						int parentCount = data.readUnsignedShort();
+						int[] parentIndices = parentCount==0 ? NO_PARENTS : new int[parentCount];
+						for(int j=0; j<parentCount; j++) {
+							int index = data.readInt();
+							if(index<0 || index>=totalCount)
+								throw new IOException("Corrupted skeleton cache - parent index out of bounds: "+index);
+							parentIndices[j] = index;
+						}
+						blockParents[i] = parentIndices;
+					}
+
+					long expectedCrc = crc.getValue();
+					if(data.readLong()!=expectedCrc)
+						throw new IOException("Corrupted skeleton cache - checksum mismatch");
+				} catch(IOException e) {
+					// Without the first block there's nothing to recover
+					if(blockCount==0) {
+						throw e instanceof EOFException ?
+								new IOException("Corrupted skeleton cache - unexpected end of file", e) : e;
+					}
+
+					truncated = true;
+					break;
+				}
+
+				tips = blockTips;
+				commits = concat(commits, blockCommits);
+				parents = concat(parents, blockParents);
+				blockCount++;
+
+				crc.reset();
+			}
+
+			if(blockCount==0)
+				throw new IOException("Corrupted skeleton cache - no data");
+
+			return new WorkflowSkeletonCache(tips, initialCommit, commits, parents, blockCount, truncated);
+		}
+	}
+
+	private static <T> T[] concat(T[] first, T[] second) {
+		if(first.length==0) {
+			return second;
+		}
+		T[] result = Arrays.copyOf(first, first.length+second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static ObjectId readId(DataInputStream data, byte[] buffer) throws IOException {
+		data.readFully(buffer);
+		return ObjectId.fromRaw(buffer);
+	}
+
+	private static void writeBlock(DataOutputStream data, CRC32 crc, Map<String, ObjectId> tips,
+			ObjectId[] commits, int[][] parents) throws IOException {
+		data.writeInt(tips.size());
+		for(Map.Entry<String, ObjectId> entry : tips.entrySet()) {
+			data.writeUTF(entry.getKey());
+			entry.getValue().copyRawTo(data);
+		}
+
+		data.writeInt(commits.length);
+		for(int i=0; i<commits.length; i++) {
+			commits[i].copyRawTo(data);
+
+			int[] parentIndices = parents[i];
+			data.writeShort(parentIndices.length);
+			for(int index : parentIndices) {
+				data.writeInt(index);
+			}
+		}
+
+		data.flush();
+		data.writeLong(crc.getValue());
+	}
+
+	/**
+	 * Writes this cache to the given file as a single block. The content is
+	 * first written to a temporary file which then replaces the target file.
+	 */
+	public void write(Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+
+		CRC32 crc = new CRC32();
+		try(OutputStream out = Files.newOutputStream(tmp);
+				CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), crc);
+				DataOutputStream data = new DataOutputStream(checked)) {
+
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+
+			data.writeBoolean(initialCommit!=null);
+			if(initialCommit!=null) {
+				initialCommit.copyRawTo(data);
+			}
+
+			writeBlock(data, crc, tips, commits, parents);
+		}
+
+		try {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Appends a block to an existing cache file. Parent indices of the new
+	 * {@code commits} are counted over all the commits already stored in the
+	 * file followed by the new ones.
+	 */
+	public static void append(Path file, Map<String, ObjectId> tips,
+			ObjectId[] commits, int[][] parents) throws IOException {
+		requireNonNull(tips);
+		requireNonNull(commits);
+		requireNonNull(parents);
+		if(commits.length!=parents.length)
+			throw new IllegalArgumentException("Inconsistent size of commit and parent data");
+
+		CRC32 crc = new CRC32();
+		try(OutputStream out = Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out), crc);
+				DataOutputStream data = new DataOutputStream(checked)) {
+			writeBlock(data, crc, tips, commits, parents);
+		}
+	}
+}
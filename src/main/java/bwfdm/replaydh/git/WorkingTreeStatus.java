@@ -0,0 +1,454 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bwfdm.replaydh.io.TrackingStatus;
+
+/**
+ * Persistent index of the tracking state of files in a git working tree.
+ * <p>
+ * The index is initially populated from a full {@link Status} report and can
+ * afterwards be kept up to date by re-checking only those paths that have been
+ * {@link #markDirty(String) marked dirty}. Dirty paths are collected from a
+ * {@link WatchService} registered for all folders of the working tree (if
+ * {@link #startWatching(Path) activated}) and from callers that know about
+ * modifications, such as git listeners or tracking actions.
+ * <p>
+ * Whenever the collected information is insufficient to perform an incremental
+ * update (e.g. the watch service overflowed, the ignore rules changed or the
+ * refs of the repository moved) a {@link #requestFullRescan() full rescan} is
+ * requested.
+ * <p>
+ * All methods that read or modify the actual status index need to be called
+ * under the {@code gitLock} lock of the {@link JGitAdapter}. Marking paths as
+ * dirty or requesting a rescan is thread-safe.
+ *
+ * @author Markus Gärtner
+ *
+ */
+class WorkingTreeStatus {
+
+	private static final Logger log = LoggerFactory.getLogger(WorkingTreeStatus.class);
+
+	/**
+	 * Upper limit on the number of dirty paths we're willing to check
+	 * during an incremental update. Beyond this point a single full
+	 * status scan is usually cheaper than the path filtering.
+	 */
+	static final int MAX_INCREMENTAL_PATHS = 5000;
+
+	/**
+	 * Sorted git paths for every status we report. Sorting allows us to
+	 * efficiently remove all entries located under a modified folder.
+	 */
+	private final EnumMap<TrackingStatus, NavigableSet<String>> entries = new EnumMap<>(TrackingStatus.class);
+
+	/**
+	 * Git paths that changed since the last (full or incremental) update
+	 */
+	private final Set<String> dirtyPaths = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean valid = false;
+
+	private volatile boolean fullRescanRequired = true;
+
+	/**
+	 * Set when the current index content has been created while the
+	 * watch service was fully registered, meaning that no modification
+	 * of the working tree can have gone unnoticed.
+	 */
+	private volatile boolean coveredByWatcher = false;
+
+	private volatile Path root;
+	private volatile WatchService watchService;
+	private volatile Thread watcherThread;
+	private volatile boolean watcherReady = false;
+
+	/**
+	 * Guards changes of the {@link #watchService} and of the watcher state
+	 * derived from it, so that a watcher thread that is still shutting down
+	 * cannot affect the state of its successor.
+	 */
+	private final Object watcherLock = new Object();
+
+	WorkingTreeStatus() {
+		for(TrackingStatus status : TrackingStatus.values()) {
+			entries.put(status, new TreeSet<>());
+		}
+	}
+
+	// Status index
+
+	boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Discards the current index content and forces the next update to be
+	 * a full rescan.
+	 */
+	void invalidate() {
+		valid = false;
+		requestFullRescan();
+	}
+
+	/**
+	 * Returns whether the next update can be performed by only checking
+	 * the {@link #drainDirtyPaths() dirty paths}.
+	 */
+	boolean canUpdateIncrementally() {
+		return valid && !fullRescanRequired && coveredByWatcher
+				&& dirtyPaths.size()<=MAX_INCREMENTAL_PATHS;
+	}
+
+	/**
+	 * Prepares a full status scan by discarding the current index content
+	 * and all pending change notifications. Changes reported while the scan
+	 * is running will be kept for the next incremental update.
+	 *
+	 * @return whether or not the watch service is fully registered for
+	 * the working tree, which is to be passed to {@link #reset(Status, boolean)}
+	 * once the scan has finished
+	 */
+	boolean beginFullRescan() {
+		valid = false;
+		fullRescanRequired = false;
+		dirtyPaths.clear();
+
+		return watcherReady;
+	}
+
+	/**
+	 * Replaces the entire index content with the given status report.
+	 *
+	 * @param status full status report for the working tree
+	 * @param watched {@code true} if the watch service was active for the
+	 * entire duration of the scan that produced {@code status}
+	 */
+	void reset(Status status, boolean watched) {
+		requireNonNull(status);
+
+		for(NavigableSet<String> paths : entries.values()) {
+			paths.clear();
+		}
+		addAll(status);
+
+		coveredByWatcher = watched;
+		valid = true;
+	}
+
+	/**
+	 * Removes all entries for the given {@code scope} of paths (including
+	 * entries for files located in the folders denoted by the scope) and
+	 * then adds the content of the {@code status} report, which is expected
+	 * to be limited to that very scope.
+	 */
+	void update(Collection<String> scope, Status status) {
+		requireNonNull(scope);
+		requireNonNull(status);
+
+		for(NavigableSet<String> paths : entries.values()) {
+			for(String path : scope) {
+				paths.remove(path);
+				// Character following '/' in natural order
+				paths.subSet(path+'/', true, path+'0', false).clear();
+			}
+		}
+		addAll(status);
+	}
+
+	private void addAll(Status status) {
+		entries.get(TrackingStatus.IGNORED).addAll(status.getIgnoredNotInIndex());
+		entries.get(TrackingStatus.UNKNOWN).addAll(status.getUntracked());
+		entries.get(TrackingStatus.MISSING).addAll(status.getMissing());
+		entries.get(TrackingStatus.MODIFIED).addAll(status.getModified());
+		entries.get(TrackingStatus.MODIFIED).addAll(status.getChanged());
+		entries.get(TrackingStatus.CORRUPTED).addAll(status.getConflicting());
+	}
+
+	/**
+	 * Returns a live view on all the paths stored for the given status.
+	 * Only {@link TrackingStatus#TRACKED} is not supported, since that
+	 * information is not part of the working tree status.
+	 */
+	Set<String> getPaths(TrackingStatus status) {
+		if(status==TrackingStatus.TRACKED)
+			throw new IllegalArgumentException("Tracked files are not part of the working tree status");
+		return Collections.unmodifiableSet(entries.get(status));
+	}
+
+	void forEach(TrackingStatus status, Consumer<? super String> action) {
+		getPaths(status).forEach(action);
+	}
+
+	int size(TrackingStatus status) {
+		return getPaths(status).size();
+	}
+
+	boolean isEmpty(TrackingStatus status) {
+		return getPaths(status).isEmpty();
+	}
+
+	/**
+	 * Same ordering of checks as the original status lookup:
+	 * if a path is not contained in any of the working tree
+	 * categories, it is considered {@link TrackingStatus#TRACKED}.
+	 */
+	TrackingStatus lookup(String path) {
+		if(entries.get(TrackingStatus.UNKNOWN).contains(path)) {
+			return TrackingStatus.UNKNOWN;
+		} else if(entries.get(TrackingStatus.IGNORED).contains(path)) {
+			return TrackingStatus.IGNORED;
+		} else if(entries.get(TrackingStatus.MISSING).contains(path)) {
+			return TrackingStatus.MISSING;
+		} else if(entries.get(TrackingStatus.MODIFIED).contains(path)) {
+			return TrackingStatus.MODIFIED;
+		} else if(entries.get(TrackingStatus.CORRUPTED).contains(path)) {
+			return TrackingStatus.CORRUPTED;
+		} else {
+			return TrackingStatus.TRACKED;
+		}
+	}
+
+	// Change notifications
+
+	void requestFullRescan() {
+		fullRescanRequired = true;
+	}
+
+	void markDirty(String path) {
+		if(path==null || path.isEmpty()) {
+			return;
+		}
+
+		// Changed ignore rules can affect any file in the working tree
+		if(path.equals(Constants.DOT_GIT_IGNORE) || path.endsWith("/"+Constants.DOT_GIT_IGNORE)) {
+			requestFullRescan();
+		} else {
+			dirtyPaths.add(path);
+		}
+	}
+
+	void markDirty(Collection<String> paths) {
+		paths.forEach(this::markDirty);
+	}
+
+	/**
+	 * Returns a snapshot of all paths marked dirty since the last update
+	 * and removes them from the internal buffer.
+	 */
+	Set<String> drainDirtyPaths() {
+		Set<String> result = new TreeSet<>();
+		for(Iterator<String> it = dirtyPaths.iterator(); it.hasNext();) {
+			result.add(it.next());
+			it.remove();
+		}
+		return result;
+	}
+
+	// Watch service
+
+	/**
+	 * Starts a background thread that registers a {@link WatchService} for
+	 * every folder within the given working tree (except the git folder) and
+	 * afterwards turns received events into dirty paths.
+	 * <p>
+	 * If the watch service cannot be created or registered (e.g. because the
+	 * platform limit on watched folders is exceeded) this index silently falls
+	 * back to requiring full rescans.
+	 */
+	void startWatching(Path root) {
+		requireNonNull(root);
+
+		stopWatching();
+
+		final WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			log.warn("Unable to create watch service for working tree {} - falling back to full status scans", root, e);
+			return;
+		}
+
+		this.root = root;
+		synchronized (watcherLock) {
+			this.watchService = watchService;
+		}
+
+		Thread thread = new Thread(() -> watch(root, watchService), "replay-dh-tree-watcher");
+		thread.setDaemon(true);
+		watcherThread = thread;
+		thread.start();
+	}
+
+	void stopWatching() {
+		WatchService watchService;
+		synchronized (watcherLock) {
+			watcherReady = false;
+			coveredByWatcher = false;
+
+			watchService = this.watchService;
+			this.watchService = null;
+		}
+
+		if(watchService!=null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn("Failed to close watch service for working tree {}", root, e);
+			}
+		}
+
+		Thread thread = watcherThread;
+		watcherThread = null;
+		if(thread!=null) {
+			thread.interrupt();
+		}
+
+		root = null;
+	}
+
+	private void watch(Path root, WatchService watchService) {
+		try {
+			register(root, watchService);
+		} catch (IOException e) {
+			log.warn("Unable to watch working tree {} - falling back to full status scans", root, e);
+			try {
+				watchService.close();
+			} catch (IOException e2) {
+				log.warn("Failed to close watch service for working tree {}", root, e2);
+			}
+			return;
+		}
+
+		synchronized (watcherLock) {
+			// Got stopped or replaced while registering
+			if(this.watchService!=watchService) {
+				return;
+			}
+			watcherReady = true;
+		}
+
+		log.info("Watching working tree {} for changes", root);
+
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watchService.take();
+				Path dir = (Path) key.watchable();
+
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind()==StandardWatchEventKinds.OVERFLOW) {
+						requestFullRescan();
+						continue;
+					}
+
+					Path file = dir.resolve((Path) event.context());
+					if(isGitFolder(root, file)) {
+						continue;
+					}
+
+					markDirty(GitUtils.systemToGitPath(root.relativize(file).toString()));
+
+					// New folders need to be watched as well
+					if(event.kind()==StandardWatchEventKinds.ENTRY_CREATE
+							&& Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+						try {
+							register(file, watchService);
+						} catch (IOException e) {
+							log.warn("Failed to watch new folder {}", file, e);
+							requestFullRescan();
+						}
+					}
+				}
+
+				// Folder got deleted or became inaccessible
+				if(!key.reset() && dir.equals(root)) {
+					requestFullRescan();
+					break;
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Regular shutdown
+		} finally {
+			synchronized (watcherLock) {
+				// A stopped watcher has already been taken care of and must not touch its successor
+				if(this.watchService==watchService) {
+					// Whatever ended the watcher, changes from now on go unnoticed
+					watcherReady = false;
+					coveredByWatcher = false;
+					requestFullRescan();
+				}
+			}
+		}
+	}
+
+	private static boolean isGitFolder(Path root, Path file) {
+		return file.startsWith(root.resolve(GitUtils.DEFAULT_GIT_DIR_NAME));
+	}
+
+	private static void register(Path start, WatchService watchService) throws IOException {
+		final Path root = start;
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if(dir.getFileName()!=null && GitUtils.DEFAULT_GIT_DIR_NAME.equals(dir.getFileName().toString())
+						&& !dir.equals(root)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
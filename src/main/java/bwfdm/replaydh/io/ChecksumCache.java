@@ -0,0 +1,403 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.io;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bwfdm.replaydh.core.AbstractRDHTool;
+import bwfdm.replaydh.core.RDHEnvironment;
+import bwfdm.replaydh.core.RDHLifecycleException;
+import bwfdm.replaydh.io.resources.IOResource;
+import bwfdm.replaydh.utils.RDHUtils;
+import bwfdm.replaydh.workflow.Checksum;
+import bwfdm.replaydh.workflow.Checksums.ChecksumType;
+
+/**
+ * Persistent cache of previously computed {@link Checksum checksums} for local files.
+ * <p>
+ * Entries are keyed by the normalized path of a file and are only considered
+ * valid as long as the size, last modification time and (if supported by the
+ * file system) the {@link BasicFileAttributes#fileKey() file key} of the file
+ * remain unchanged. This allows unmodified files to skip the expensive hashing
+ * entirely, across recorded steps as well as client restarts.
+ * <p>
+ * The cache content is loaded when the tool is started and written back to the
+ * underlying {@link IOResource} when it is stopped. Clients should additionally
+ * {@link #flush() flush} it after larger batches of checksums have been computed,
+ * so that those don't get lost if the application terminates abnormally. The number of entries is
+ * limited by {@link #DEFAULT_MAX_ENTRIES}, discarding the least recently used
+ * ones first.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class ChecksumCache extends AbstractRDHTool {
+
+	private static final Logger log = LoggerFactory.getLogger(ChecksumCache.class);
+
+	public static final int DEFAULT_MAX_ENTRIES = 250_000;
+
+	/**
+	 * Files modified less than this amount of milliseconds ago are not
+	 * cached, since their timestamps might not yet reflect further pending
+	 * modifications (same "racy" problem git has to deal with).
+	 */
+	private static final long RACY_INTERVAL_MILLIS = 2_000;
+
+	/**
+	 * Marker in the first line of the storage file
+	 */
+	private static final String HEADER = "#checksum-cache v1";
+
+	private static final String SEP = "\t";
+
+	private static final String NO_FILE_KEY = "-";
+
+	private final IOResource storage;
+
+	private final int maxEntries;
+
+	/**
+	 * Entries in access order, also used for synchronization
+	 */
+	private final Map<String, Entry> cache;
+
+	private boolean modified = false;
+
+	public ChecksumCache(IOResource storage) {
+		this(storage, DEFAULT_MAX_ENTRIES);
+	}
+
+	@SuppressWarnings("serial")
+	public ChecksumCache(IOResource storage, int maxEntries) {
+		this.storage = requireNonNull(storage);
+		this.maxEntries = maxEntries;
+
+		cache = new LinkedHashMap<String, Entry>(1000, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size()>ChecksumCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @see bwfdm.replaydh.core.AbstractRDHTool#start(bwfdm.replaydh.core.RDHEnvironment)
+	 */
+	@Override
+	public boolean start(RDHEnvironment environment) throws RDHLifecycleException {
+		if(!super.start(environment)) {
+			return false;
+		}
+
+		synchronized (cache) {
+			try {
+				load();
+			} catch (IOException | RuntimeException e) {
+				// A broken cache file is not fatal, we just start over
+				log.warn("Failed to load checksum cache from {} - discarding content", storage.getPath(), e);
+				cache.clear();
+				modified = true;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @see bwfdm.replaydh.core.AbstractRDHTool#stop(bwfdm.replaydh.core.RDHEnvironment)
+	 */
+	@Override
+	public void stop(RDHEnvironment environment) throws RDHLifecycleException {
+
+		flush();
+
+		super.stop(environment);
+	}
+
+	/**
+	 * Writes the cache content back to the underlying storage if it
+	 * has been modified since the last time it was loaded or saved.
+	 * Failures are only logged, since the cache can always be rebuilt.
+	 */
+	public void flush() {
+		synchronized (cache) {
+			try {
+				save();
+			} catch (IOException e) {
+				log.error("Failed to save checksum cache to {}", storage.getPath(), e);
+			}
+		}
+	}
+
+	private static String key(Path file) {
+		return RDHUtils.normalize(file).toString();
+	}
+
+	private static String fileKey(BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		return fileKey==null ? NO_FILE_KEY : fileKey.toString();
+	}
+
+	/**
+	 * Returns the cached checksum of the specified type for the given file,
+	 * or {@code null} if there is no entry or if the file has been modified
+	 * since the checksum was stored.
+	 *
+	 * @param file the file to lookup a checksum for
+	 * @param attributes current attributes of {@code file}
+	 * @param type the desired type of checksum
+	 * @return
+	 */
+	public Checksum lookup(Path file, BasicFileAttributes attributes, ChecksumType type) {
+		requireNonNull(file);
+		requireNonNull(attributes);
+		requireNonNull(type);
+
+		String key = key(file);
+
+		synchronized (cache) {
+			Entry entry = cache.get(key);
+			if(entry==null) {
+				return null;
+			}
+
+			if(!entry.matches(attributes) || !type.getAlgorithm().equals(entry.checksum.getType())) {
+				cache.remove(key);
+				modified = true;
+				return null;
+			}
+
+			return entry.checksum;
+		}
+	}
+
+	/**
+	 * Stores the given checksum for the specified file. If the file's
+	 * last modification lies too close to the time its attributes have
+	 * been read, no entry will be created.
+	 *
+	 * @param file the file the checksum was computed for
+	 * @param attributes attributes of {@code file} as read <b>before</b>
+	 * computing the checksum
+	 * @param attributesTime the time in milliseconds at which {@code attributes}
+	 * have been read
+	 * @param checksum
+	 */
+	public void store(Path file, BasicFileAttributes attributes, long attributesTime, Checksum checksum) {
+		requireNonNull(file);
+		requireNonNull(attributes);
+		requireNonNull(checksum);
+
+		String key = key(file);
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		synchronized (cache) {
+			if(attributesTime-lastModified < RACY_INTERVAL_MILLIS) {
+				if(cache.remove(key)!=null) {
+					modified = true;
+				}
+				return;
+			}
+
+			if(attributes.size()!=checksum.getSize()) {
+				return;
+			}
+
+			cache.put(key, new Entry(attributes.size(), lastModified, fileKey(attributes), checksum));
+			modified = true;
+		}
+	}
+
+	public void invalidate(Path file) {
+		requireNonNull(file);
+
+		synchronized (cache) {
+			if(cache.remove(key(file))!=null) {
+				modified = true;
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+			modified = true;
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Needs to be called under {@code cache} lock!
+	 */
+	private void load() throws IOException {
+		cache.clear();
+		modified = false;
+
+		storage.prepare();
+
+		if(storage.size()==0) {
+			return;
+		}
+
+		int count = 0;
+
+		try(Reader in = Channels.newReader(storage.getReadChannel(), StandardCharsets.UTF_8.newDecoder(), IOUtils.BUFFER_LENGTH);
+				BufferedReader reader = new BufferedReader(in)) {
+
+			String line = reader.readLine();
+			if(!HEADER.equals(line)) {
+				log.info("Unknown format of checksum cache {} - discarding content", storage.getPath());
+				modified = true;
+				return;
+			}
+
+			while((line = reader.readLine())!=null) {
+				if(line.isEmpty()) {
+					continue;
+				}
+
+				// Path is stored last, so it can safely contain the separator
+				String[] items = line.split(SEP, 5);
+				if(items.length!=5) {
+					modified = true;
+					continue;
+				}
+
+				Entry entry = new Entry(
+						Long.parseLong(items[0]),
+						Long.parseLong(items[1]),
+						items[2],
+						Checksum.parse(items[3]));
+				cache.put(items[4], entry);
+				count++;
+			}
+		}
+
+		if(isVerbose()) {
+			log.info("Loaded {} checksums from cache {}", count, storage.getPath());
+		}
+	}
+
+	/**
+	 * Needs to be called under {@code cache} lock!
+	 */
+	private void save() throws IOException {
+		if(!modified) {
+			return;
+		}
+
+		Path file = storage.getPath();
+		if(file==null) {
+			try(Writer writer = Channels.newWriter(storage.getWriteChannel(true),
+					StandardCharsets.UTF_8.newEncoder(), IOUtils.BUFFER_LENGTH)) {
+				write(writer);
+			}
+		} else {
+			// Never leave a partially written file behind, so write a copy and swap it in
+			Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+			try(Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				write(writer);
+			}
+
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+
+		modified = false;
+
+		if(isVerbose()) {
+			log.info("Saved {} checksums to cache {}", cache.size(), storage.getPath());
+		}
+	}
+
+	/**
+	 * Needs to be called under {@code cache} lock!
+	 */
+	private void write(Writer writer) throws IOException {
+		writer.write(HEADER);
+		writer.write('\n');
+
+		for(Map.Entry<String, Entry> e : cache.entrySet()) {
+			String path = e.getKey();
+			// Line breaks in file names would break our format
+			if(path.indexOf('\n')!=-1 || path.indexOf('\r')!=-1) {
+				continue;
+			}
+
+			Entry entry = e.getValue();
+			writer.write(String.valueOf(entry.size));
+			writer.write(SEP);
+			writer.write(String.valueOf(entry.lastModified));
+			writer.write(SEP);
+			writer.write(entry.fileKey);
+			writer.write(SEP);
+			writer.write(entry.checksum.toString());
+			writer.write(SEP);
+			writer.write(path);
+			writer.write('\n');
+		}
+	}
+
+	private static final class Entry {
+		final long size;
+		final long lastModified;
+		final String fileKey;
+		final Checksum checksum;
+
+		Entry(long size, long lastModified, String fileKey, Checksum checksum) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.fileKey = requireNonNull(fileKey);
+			this.checksum = requireNonNull(checksum);
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size==attributes.size()
+					&& lastModified==attributes.lastModifiedTime().toMillis()
+					&& Objects.equals(fileKey, fileKey(attributes));
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -84,6 +85,23 @@ public class LocalFileObject implements Comparable<LocalFileObject> {
 	 */
 	public static boolean ensureOrValidateChecksum(LocalFileObject fileObject)
 			throws IOException, InterruptedException {
+		return ensureOrValidateChecksum(fileObject, null);
+	}
+
+	/**
+	 * Tries to create a new {@link ChecksumType#MD5 MD5} checksum for the
+	 * specified file object if needed. If a {@link ChecksumCache} is provided,
+	 * it will be consulted first and only files that have been modified since
+	 * their checksum got cached will actually be hashed.
+	 *
+	 * @param fileObject
+	 * @param cache optional cache for previously computed checksums
+	 * @return {@code true} iff a fresh checksum had to be calculated
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static boolean ensureOrValidateChecksum(LocalFileObject fileObject, ChecksumCache cache)
+			throws IOException, InterruptedException {
 		requireNonNull(fileObject);
 
 		// Nothing to do here when we have no actual physical file
@@ -97,21 +115,44 @@ public class LocalFileObject implements Comparable<LocalFileObject> {
 			fileObject.startUpdate();
 
 			try {
-				IOResource resource = null;
+				// Attributes need to be read before hashing to not miss concurrent modifications
+				BasicFileAttributes attributes = null;
+				long attributesTime = 0L;
+
+				if(cache!=null) {
+					attributes = Files.readAttributes(fileObject.file,
+							BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					attributesTime = System.currentTimeMillis();
+
+					Checksum cachedChecksum = cache.lookup(fileObject.file, attributes, ChecksumType.MD5);
+					if(cachedChecksum!=null) {
+						needsNewChecksum = !cachedChecksum.equals(fileObject.checksum);
+						fileObject.checksum = cachedChecksum;
+						return needsNewChecksum;
+					}
+				}
 
-				needsNewChecksum = fileObject.checksum==null;
+				IOResource resource = new FileResource(fileObject.file);
 
-				if(!needsNewChecksum) {
-					resource = new FileResource(fileObject.file);
+				if(fileObject.checksum==null) {
+					needsNewChecksum = true;
+					fileObject.checksum = Checksums.createChecksum(resource, ChecksumType.MD5);
+				} else if(ChecksumType.MD5.getAlgorithm().equals(fileObject.checksum.getType())) {
+					// Validate and recompute in one go, so modified files only get read once
+					Checksum checksum = Checksums.updateChecksum(resource, fileObject.checksum);
+					needsNewChecksum = checksum!=fileObject.checksum;
+					fileObject.checksum = checksum;
+				} else {
 					needsNewChecksum = Checksums.validateChecksum(resource, fileObject.checksum)!=ChecksumValidationResult.VALID;
+					if(needsNewChecksum) {
+						fileObject.checksum = Checksums.createChecksum(resource, ChecksumType.MD5);
+					}
 				}
 
-				if(needsNewChecksum) {
-					if(resource==null) {
-						resource = new FileResource(fileObject.file);
-					}
+				fileObject.bytesHashed += fileObject.checksum.getSize();
 
-					fileObject.checksum = Checksums.createChecksum(resource, ChecksumType.MD5);
+				if(cache!=null) {
+					cache.store(fileObject.file, attributes, attributesTime, fileObject.checksum);
 				}
 
 			} finally {
@@ -143,7 +184,8 @@ public class LocalFileObject implements Comparable<LocalFileObject> {
 		synchronized (fileObject.lock) {
 			fileObject.startUpdate();
 			try {
-				needsNewIdentifiers= ensureOrValidateChecksum(fileObject)
+				needsNewIdentifiers= ensureOrValidateChecksum(fileObject,
+						environment.getClient().getChecksumCache())
 						|| fileObject.identifiers.isEmpty();
 
 				if(needsNewIdentifiers) {
@@ -298,6 +340,13 @@ public class LocalFileObject implements Comparable<LocalFileObject> {
 
 	private State state = State.UNKNOWN;
 
+	/**
+	 * Number of bytes actually read from the file for computing or
+	 * validating its checksum. Stays {@code 0} as long as the checksum
+	 * only got served from a {@link ChecksumCache}.
+	 */
+	private long bytesHashed = 0L;
+
 //	/**
 //	 * Result of the attempt to resolve the local file to an existing
 //	 * resource by means of an available {@link IdentifiableResolver}.
@@ -343,6 +392,10 @@ public class LocalFileObject implements Comparable<LocalFileObject> {
 		return checksum;
 	}
 
+	public long getBytesHashed() {
+		return bytesHashed;
+	}
+
 	public Resource getResource() {
 		return resource;
 	}
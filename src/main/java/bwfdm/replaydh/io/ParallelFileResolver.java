@@ -0,0 +1,309 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.io;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bwfdm.replaydh.core.RDHEnvironment;
+import bwfdm.replaydh.core.RDHProperty;
+import bwfdm.replaydh.utils.RDHUtils;
+
+/**
+ * Resolves a collection of local files into {@link LocalFileObject} instances by
+ * running {@link LocalFileObject#ensureOrRefreshResource(LocalFileObject, RDHEnvironment)}
+ * for the individual files concurrently on the client's executor.
+ * <p>
+ * The number of files processed at the same time is limited per underlying
+ * {@link FileStore}: stores backed by solid state drives (or of unknown type)
+ * use the limit defined by {@link RDHProperty#INTERN_IO_THREADS_SSD}, while
+ * spinning disks use the (usually much smaller) limit defined by
+ * {@link RDHProperty#INTERN_IO_THREADS_HDD} to avoid excessive seeking.
+ * <p>
+ * Results are reported to the {@link ResolutionListener} on the thread that called
+ * {@link #resolve(Collection, TrackingStatus, ResolutionListener)}. Interrupting that
+ * thread cancels all pending work.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class ParallelFileResolver {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelFileResolver.class);
+
+	private final RDHEnvironment environment;
+
+	private final ExecutorService executorService;
+
+	private final int ssdLimit, hddLimit;
+
+	/**
+	 * Concurrency limits for every file store encountered so far
+	 */
+	private final Map<FileStore, Semaphore> permits = new HashMap<>();
+
+	private final AtomicLong bytesHashed = new AtomicLong();
+
+	private final AtomicLong bytesCached = new AtomicLong();
+
+	public ParallelFileResolver(RDHEnvironment environment) {
+		this(environment, environment.getClient().getExecutorService());
+	}
+
+	public ParallelFileResolver(RDHEnvironment environment, ExecutorService executorService) {
+		this.environment = requireNonNull(environment);
+		this.executorService = requireNonNull(executorService);
+
+		int ssdLimit = environment.getInteger(RDHProperty.INTERN_IO_THREADS_SSD, -1);
+		if(ssdLimit<=0) {
+			ssdLimit = Runtime.getRuntime().availableProcessors();
+		}
+		this.ssdLimit = ssdLimit;
+		this.hddLimit = Math.max(1, environment.getInteger(RDHProperty.INTERN_IO_THREADS_HDD, 1));
+	}
+
+	/**
+	 * Returns the total number of bytes actually read for hashing
+	 * the files processed by this resolver so far.
+	 */
+	public long getBytesHashed() {
+		return bytesHashed.get();
+	}
+
+	/**
+	 * Returns the total size of all the files processed by this resolver
+	 * so far whose checksums have been served from a {@link ChecksumCache}.
+	 */
+	public long getBytesCached() {
+		return bytesCached.get();
+	}
+
+	/**
+	 * Resolves all the given files and reports each new {@link LocalFileObject}
+	 * to the specified {@code listener}. This method blocks until all files
+	 * are processed.
+	 *
+	 * @param files
+	 * @param trackingStatus the status to assign to the new file objects
+	 * @param listener
+	 * @throws IOException if processing any of the files failed
+	 * @throws InterruptedException if the calling thread got interrupted
+	 */
+	public void resolve(Collection<Path> files, TrackingStatus trackingStatus,
+			ResolutionListener listener) throws IOException, InterruptedException {
+		requireNonNull(files);
+		requireNonNull(trackingStatus);
+		requireNonNull(listener);
+
+		if(files.isEmpty()) {
+			return;
+		}
+
+		final CompletionService<LocalFileObject> completionService =
+				new ExecutorCompletionService<>(executorService);
+		final List<Future<LocalFileObject>> futures = new ArrayList<>(files.size());
+		final Map<LocalFileObject, Boolean> refreshed = new HashMap<>();
+
+		boolean success = false;
+		try {
+			int pending = 0;
+
+			for(Path file : files) {
+				if(Thread.interrupted())
+					throw new InterruptedException();
+
+				final Path normalizedFile = RDHUtils.normalize(file);
+				final LocalFileObject fileObject = new LocalFileObject(normalizedFile, trackingStatus);
+				final Semaphore semaphore = getPermits(normalizedFile);
+
+				// Blocks until the disk in question can take more load
+				semaphore.acquire();
+
+				try {
+					futures.add(completionService.submit(() -> {
+						try {
+							boolean fresh = LocalFileObject.ensureOrRefreshResource(fileObject, environment);
+							synchronized (refreshed) {
+								refreshed.put(fileObject, Boolean.valueOf(fresh));
+							}
+							long hashed = fileObject.getBytesHashed();
+							if(hashed>0) {
+								bytesHashed.addAndGet(hashed);
+							} else if(fileObject.getChecksum()!=null) {
+								bytesCached.addAndGet(fileObject.getChecksum().getSize());
+							}
+							return fileObject;
+						} finally {
+							semaphore.release();
+						}
+					}));
+				} catch(RuntimeException e) {
+					semaphore.release();
+					throw e;
+				}
+				pending++;
+
+				// Report whatever is already done without blocking
+				Future<LocalFileObject> future;
+				while((future = completionService.poll())!=null) {
+					report(future, refreshed, listener);
+					pending--;
+				}
+			}
+
+			// Now wait for the remaining files
+			while(pending>0) {
+				report(completionService.take(), refreshed, listener);
+				pending--;
+			}
+
+			success = true;
+		} finally {
+			if(!success) {
+				for(Future<LocalFileObject> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+	}
+
+	private void report(Future<LocalFileObject> future, Map<LocalFileObject, Boolean> refreshed,
+			ResolutionListener listener) throws IOException, InterruptedException {
+		LocalFileObject fileObject;
+		try {
+			fileObject = future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof InterruptedException)
+				throw (InterruptedException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException("Failed to resolve file", cause);
+		}
+
+		Boolean fresh;
+		synchronized (refreshed) {
+			fresh = refreshed.remove(fileObject);
+		}
+
+		listener.fileResolved(fileObject, fresh!=null && fresh.booleanValue());
+	}
+
+	private Semaphore getPermits(Path file) {
+		FileStore store = null;
+		try {
+			Path existing = file;
+			while(existing!=null && !Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) {
+				existing = existing.getParent();
+			}
+			if(existing!=null) {
+				store = Files.getFileStore(existing);
+			}
+		} catch (IOException e) {
+			log.debug("Unable to determine file store for {}", file, e);
+		}
+
+		return permits.computeIfAbsent(store, s -> {
+			boolean rotational = s!=null && isRotational(s);
+			int limit = rotational ? hddLimit : ssdLimit;
+			if(log.isDebugEnabled()) {
+				log.debug("Using concurrency limit of {} for file store {} (rotational={})", limit, s, rotational);
+			}
+			return new Semaphore(limit);
+		});
+	}
+
+	/**
+	 * Tries to determine whether the given store is located on a spinning disk.
+	 * Currently this only works on Linux systems via the {@code rotational} flag
+	 * exposed by the kernel for block devices. For all other platforms or unknown
+	 * devices this method returns {@code false}.
+	 */
+	static boolean isRotational(FileStore store) {
+		String name = store.name();
+		if(name==null || !name.startsWith("/dev/")) {
+			return false;
+		}
+
+		try {
+			Path device = Paths.get("/sys/class/block", name.substring(5));
+			if(!Files.exists(device)) {
+				return false;
+			}
+
+			// Partitions are located within the folder of their disk
+			device = device.toRealPath();
+			Path flag = device.resolve("queue/rotational");
+			if(!Files.exists(flag) && device.getParent()!=null) {
+				flag = device.getParent().resolve("queue/rotational");
+			}
+			if(!Files.exists(flag)) {
+				return false;
+			}
+
+			return "1".equals(new String(Files.readAllBytes(flag), StandardCharsets.US_ASCII).trim());
+		} catch (IOException | RuntimeException e) {
+			log.debug("Unable to determine disk type of {}", name, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Callback for reporting resolved files.
+	 *
+	 * @author Markus Gärtner
+	 *
+	 */
+	@FunctionalInterface
+	public interface ResolutionListener {
+
+		/**
+		 * Called for every processed file.
+		 *
+		 * @param fileObject the resolved file
+		 * @param refreshed {@code true} if new identifiers or resources
+		 * had to be created for the file
+		 */
+		void fileResolved(LocalFileObject fileObject, boolean refreshed);
+	}
+}
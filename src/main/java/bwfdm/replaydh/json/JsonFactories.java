@@ -0,0 +1,112 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.json;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.Json;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * Shared parser and generator factories for the JSON serialization of
+ * workflow data.
+ * <p>
+ * Every call to {@link Json#createParserFactory(Map)} or
+ * {@link Json#createGeneratorFactory(Map)} performs a lookup of the
+ * JSON provider, which adds up when thousands of steps get read or written.
+ * The factories themselves are thread-safe, so we create them once for
+ * every distinct configuration and reuse them afterwards. Only option
+ * entries meant for the JSON provider (the ones prefixed with
+ * {@value #CONFIG_PREFIX}) are part of that configuration, our own
+ * options such as the header of a step are ignored.
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class JsonFactories {
+
+	private JsonFactories() {
+		// no instantiation
+	}
+
+	static final String CONFIG_PREFIX = "javax.json.";
+
+	/**
+	 * Upper bound for the number of cached configurations
+	 */
+	private static final int MAX_CACHED_CONFIGS = 16;
+
+	private static final Map<Map<String, Object>, JsonParserFactory> parserFactories = new ConcurrentHashMap<>();
+
+	private static final Map<Map<String, Object>, JsonGeneratorFactory> generatorFactories = new ConcurrentHashMap<>();
+
+	/**
+	 * Extracts the entries relevant for the JSON provider from
+	 * the given {@code options}.
+	 */
+	static Map<String, Object> config(Map<String, ?> options) {
+		if(options==null || options.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Object> config = null;
+		for(Map.Entry<String, ?> entry : options.entrySet()) {
+			if(entry.getKey().startsWith(CONFIG_PREFIX)) {
+				if(config==null) {
+					config = new HashMap<>();
+				}
+				config.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		return config==null ? Collections.emptyMap() : Collections.unmodifiableMap(config);
+	}
+
+	static JsonParserFactory parserFactory(Map<String, ?> options) {
+		Map<String, Object> config = config(options);
+
+		JsonParserFactory factory = parserFactories.get(config);
+		if(factory==null) {
+			factory = Json.createParserFactory(config);
+			if(parserFactories.size()<MAX_CACHED_CONFIGS) {
+				parserFactories.putIfAbsent(config, factory);
+			}
+		}
+
+		return factory;
+	}
+
+	static JsonGeneratorFactory generatorFactory(Map<String, ?> options) {
+		Map<String, Object> config = config(options);
+
+		JsonGeneratorFactory factory = generatorFactories.get(config);
+		if(factory==null) {
+			factory = Json.createGeneratorFactory(config);
+			if(generatorFactories.size()<MAX_CACHED_CONFIGS) {
+				generatorFactories.putIfAbsent(config, factory);
+			}
+		}
+
+		return factory;
+	}
+}
@@ -26,7 +26,6 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.util.function.Supplier;
 
-import javax.json.Json;
 import javax.json.stream.JsonParser;
 import javax.json.stream.JsonParser.Event;
 import javax.json.stream.JsonParsingException;
@@ -69,15 +68,34 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 			}
 		}
 
-		StringReader sr = new StringReader(s);
-		try(JsonWorkflowStepReader reader = new JsonWorkflowStepReader(schema, stepFactory)) {
-			reader.init(sr, options);
+		// Reuse the reader of the current thread unless we're called recursively
+		JsonWorkflowStepReader reader = sharedReaders.get();
+		if(reader.parser!=null) {
+			reader = new JsonWorkflowStepReader(schema, stepFactory);
+		} else {
+			reader.schema = requireNonNull(schema);
+			reader.stepFactory = requireNonNull(stepFactory);
+		}
+
+		try {
+			reader.init(new StringReader(s), options);
 			return reader.read();
 		} catch (IOException | InterruptedException e) {
 			return null;
+		} finally {
+			reader.reset();
+			reader.schema = null;
+			reader.stepFactory = null;
 		}
 	}
 
+	/**
+	 * Readers used by {@link #parseStep(WorkflowSchema, Supplier, String, Options)},
+	 * so that loading many steps doesn't create a new reader for each.
+	 */
+	private static final ThreadLocal<JsonWorkflowStepReader> sharedReaders =
+			ThreadLocal.withInitial(JsonWorkflowStepReader::new);
+
 	/**
 	 * Supplier which is used to generate new steps
 	 */
@@ -98,6 +116,16 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 	 */
 	private IdentifierSchema identifierSchema;
 
+	/**
+	 * Canonical strings for labels from the current {@link #labelSchema}
+	 */
+	private SchemaInterner labels;
+
+	/**
+	 * Canonical types from the current {@link #identifierSchema}
+	 */
+	private SchemaInterner identifierTypes;
+
 	/**
 	 * ParseControl used for a sequence of parse operations
 	 */
@@ -122,6 +150,21 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 		this.stepFactory = requireNonNull(stepFactory);
 	}
 
+	/**
+	 * Creates a blank reader for {@link #sharedReaders}.
+	 */
+	private JsonWorkflowStepReader() {
+		// no-op
+	}
+
+	private void setSchemas(IdentifierSchema identifierSchema, LabelSchema labelSchema) {
+		this.identifierSchema = identifierSchema;
+		this.labelSchema = labelSchema;
+
+		identifierTypes = identifierSchema==null ? null : SchemaInterner.forIdentifiers(identifierSchema);
+		labels = labelSchema==null ? null : SchemaInterner.forLabels(labelSchema);
+	}
+
 	/**
 	 * Fetches next event, failing it there are no more events available
 	 * or if the next event does not match the expected one.
@@ -172,23 +215,34 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 		requireNonNull(input);
 		checkState("ParseControl already initialized", parser==null);
 
-		parser = Json.createParserFactory(options).createParser(input);
+		parser = JsonFactories.parserFactory(options).createParser(input);
 	}
 
 	/**
-	 * @see bwfdm.replaydh.io.ObjectReader#close()
+	 * Closes the current input, so that the reader can be
+	 * {@link #init(Reader, Options) initialized} again for another
+	 * input. Unlike {@link #close()} this keeps the schema and step
+	 * factory.
 	 */
-	@Override
-	public void close() {
+	public void reset() {
 		if(parser!=null) {
 			parser.close();
 			parser = null;
 		}
 
+		event = null;
+		setSchemas(null, null);
+	}
+
+	/**
+	 * @see bwfdm.replaydh.io.ObjectReader#close()
+	 */
+	@Override
+	public void close() {
+		reset();
+
 		stepFactory = null;
 		schema = null;
-		labelSchema = null;
-		identifierSchema = null;
 	}
 
 	/**
@@ -312,8 +366,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 		}
 
 		DefaultResource resource = DefaultResource.blankResource();
-		identifierSchema = schema.getResourceIdentifierSchema();
-		labelSchema = schema.getResourceTypeSchema();
+		setSchemas(schema.getResourceIdentifierSchema(), schema.getResourceTypeSchema());
 
 		loop : while(tryAdvance()) {
 			switch (event) {
@@ -325,7 +378,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 				switch (key) {
 				case JsonLabels.TYPE:
 					expectEvent(Event.VALUE_STRING);
-					resource.setResourceType(parser.getString());
+					resource.setResourceType(labels.label(parser.getString()));
 					break;
 
 //				case CHECKSUM:
@@ -362,8 +415,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 			}
 		}
 
-		identifierSchema = null;
-		labelSchema = null;
+		setSchemas(null, null);
 
 		return resource;
 	}
@@ -387,7 +439,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 				switch (key) {
 				case JsonLabels.TYPE:
 					expectEvent(Event.VALUE_STRING);
-					type = IdentifierSchema.parseIdentifierType(identifierSchema, parser.getString());
+					type = identifierTypes.identifierType(identifierSchema, parser.getString());
 					break;
 
 				case JsonLabels.ID:
@@ -426,8 +478,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 		}
 
 		DefaultPerson person = DefaultPerson.blankPerson();
-		identifierSchema = schema.getPersonIdentifierSchema();
-		labelSchema = schema.getRoleSchema();
+		setSchemas(schema.getPersonIdentifierSchema(), schema.getRoleSchema());
 
 		loop : while(tryAdvance()) {
 			switch (event) {
@@ -440,7 +491,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 
 				case JsonLabels.ROLE:
 					expectEvent(Event.VALUE_STRING);
-					person.setRole(parser.getString());
+					person.setRole(labels.label(parser.getString()));
 					break;
 
 				case JsonLabels.DESCRIPTION:
@@ -472,8 +523,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 			}
 		}
 
-		identifierSchema = null;
-		labelSchema = null;
+		setSchemas(null, null);
 
 		return person;
 	}
@@ -485,8 +535,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 		}
 
 		DefaultTool tool = DefaultTool.blankTool();
-		identifierSchema = schema.getResourceIdentifierSchema();
-		labelSchema = schema.getResourceTypeSchema();
+		setSchemas(schema.getResourceIdentifierSchema(), schema.getResourceTypeSchema());
 
 		loop : while(tryAdvance()) {
 			switch (event) {
@@ -498,7 +547,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 				switch (key) {
 				case JsonLabels.TYPE:
 					expectEvent(Event.VALUE_STRING);
-					tool.setResourceType(parser.getString());
+					tool.setResourceType(labels.label(parser.getString()));
 					break;
 
 //				case CHECKSUM:
@@ -545,8 +594,7 @@ public class JsonWorkflowStepReader implements ObjectReader<WorkflowStep> {
 			}
 		}
 
-		identifierSchema = null;
-		labelSchema = null;
+		setSchemas(null, null);
 
 		return tool;
 	}
@@ -26,11 +26,11 @@ import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import javax.json.Json;
 import javax.json.stream.JsonGenerator;
 
 import bwfdm.replaydh.io.ObjectWriter;
@@ -43,6 +43,7 @@ import bwfdm.replaydh.workflow.Resource;
 import bwfdm.replaydh.workflow.Tool;
 import bwfdm.replaydh.workflow.Workflow;
 import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowStepIterator;
 
 /**
  * @author Markus Gärtner
@@ -99,18 +100,33 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 			sw.write("\n\n");
 		}
 
-		try(JsonWorkflowStepWriter writer = new JsonWorkflowStepWriter()) {
+		// Reuse the writer of the current thread unless we're called recursively
+		JsonWorkflowStepWriter writer = sharedWriters.get();
+		if(writer.generator!=null) {
+			writer = new JsonWorkflowStepWriter();
+		}
+
+		try {
 			writer.init(sw, options);
 			writer.writeHeader();
 			writer.write(step);
 			writer.writeFooter();
 		} catch (IOException | InterruptedException e) {
 			return null;
+		} finally {
+			writer.reset();
 		}
 
 		return sw.toString();
 	}
 
+	/**
+	 * Writers used by {@link #writeStep(WorkflowStep, Options)}, so that
+	 * saving many steps doesn't create a new writer for each.
+	 */
+	private static final ThreadLocal<JsonWorkflowStepWriter> sharedWriters =
+			ThreadLocal.withInitial(JsonWorkflowStepWriter::new);
+
 	private JsonGenerator generator;
 
 	@Override
@@ -123,11 +139,24 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 		}
 
 		// Activate pretty printing if requested
+		Map<String, Object> config = JsonFactories.config(options);
 		if(options.getBoolean(PRETTY, false)) {
-			options.put(JsonGenerator.PRETTY_PRINTING, true);
+			config = new HashMap<>(config);
+			config.put(JsonGenerator.PRETTY_PRINTING, Boolean.TRUE);
 		}
 
-		generator = Json.createGeneratorFactory(options).createGenerator(output);
+		generator = JsonFactories.generatorFactory(config).createGenerator(output);
+	}
+
+	/**
+	 * Closes the current output, so that the writer can be
+	 * {@link #init(Writer, Options) initialized} again for another output.
+	 */
+	public void reset() {
+		if(generator!=null) {
+			generator.close();
+			generator = null;
+		}
 	}
 
 	@Override
@@ -296,28 +325,50 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 		requireNonNull(workflow);
 		requireNonNull(steps);
 		checkArgument("No steps defined for output", !steps.isEmpty());
+
+		writeWorkflow(workflow.getTitle(), workflow.getDescription(),
+				new WorkflowStepIterator(workflow, steps));
+	}
+
+	/**
+	 * Writes the steps provided by the given iterator in the order they are
+	 * returned, followed by the graph structure between them. Every step is
+	 * written as soon as it has been produced, so no transformed copy of the
+	 * steps is ever kept in memory.
+	 *
+	 * @param title title of the workflow
+	 * @param description description of the workflow
+	 * @param steps iterator that also provides the graph and scope information
+	 */
+	public void writeWorkflow(String title, String description, WorkflowStepIterator steps)
+			throws IOException, InterruptedException {
+		requireNonNull(steps);
 		checkState("Generator not initialized", generator!=null);
 
 		generator.writeStartObject();
 
-		generator.write(JsonLabels.TITLE, workflow.getTitle());
-		generator.write(JsonLabels.DESCRIPTION, workflow.getDescription());
+		generator.write(JsonLabels.TITLE, title);
+		generator.write(JsonLabels.DESCRIPTION, description);
+
+		// Obtain a separate traversal for the graph before consuming the steps
+		WorkflowStepIterator graph = steps.restart();
 
 		writeSteps(steps);
 
-		writeGraph(workflow, steps);
+		writeGraph(graph);
 
 		generator.writeEnd();
 	}
 
-	private void writeSteps(Set<WorkflowStep> steps) throws IOException, InterruptedException {
+	private void writeSteps(WorkflowStepIterator steps) throws IOException, InterruptedException {
 
 		// For parallel sanity check against duplicate ids
-		final Set<String> ids = new HashSet<>(steps.size());
+		final Set<String> ids = new HashSet<>();
 
 		generator.writeStartArray(JsonLabels.STEPS);
 
-		for(WorkflowStep step : steps) {
+		while(steps.hasNext()) {
+			WorkflowStep step = steps.next();
 			String id = step.getId();
 			if(id==null)
 				throw new IllegalArgumentException("Step has no valid id");
@@ -332,11 +383,13 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 		generator.writeEnd();
 	}
 
-	private void writeGraph(Workflow workflow, Set<WorkflowStep> steps) {
+	private void writeGraph(WorkflowStepIterator steps) {
+		final Workflow workflow = steps.getWorkflow();
 
 		generator.writeStartObject(JsonLabels.GRAPH);
 
-		for(WorkflowStep step : steps) {
+		while(steps.hasNext()) {
+			WorkflowStep step = steps.next();
 			int nextStepCount = workflow.getNextStepCount(step);
 			int previousStepCount = workflow.getPreviousStepCount(step);
 
@@ -346,7 +399,7 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 			// For each next step check if we are actually allowed to write it
 			for(int i=0; i<nextStepCount; i++) {
 				WorkflowStep nextStep = workflow.getNextStep(step, i);
-				if(steps.contains(nextStep)) {
+				if(steps.isInScope(nextStep)) {
 
 					// Check if we have written the JSON array yet
 					if(nextStepsWritten==-1) {
@@ -373,7 +426,7 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 			// For each previous step check if we are actually allowed to write it
 			for(int i=0; i<previousStepCount; i++) {
 				WorkflowStep previousStep = workflow.getPreviousStep(step, i);
-				if(steps.contains(previousStep)) {
+				if(steps.isInScope(previousStep)) {
 
 					// Check if we have written the JSON array yet
 					if(previousStepsWritten==-1) {
@@ -409,10 +462,7 @@ public class JsonWorkflowStepWriter implements ObjectWriter<WorkflowStep> {
 
 	@Override
 	public void close() throws IOException {
-		if(generator!=null) {
-			generator.close();
-			generator = null;
-		}
+		reset();
 	}
 
 }
@@ -0,0 +1,122 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.json;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bwfdm.replaydh.utils.Label;
+import bwfdm.replaydh.workflow.schema.IdentifierSchema;
+import bwfdm.replaydh.workflow.schema.IdentifierType;
+import bwfdm.replaydh.workflow.schema.LabelSchema;
+
+/**
+ * Provides canonical instances for the strings and identifier types that
+ * occur over and over again when deserializing workflow steps, so that a
+ * large history doesn't keep thousands of copies of the same role or
+ * resource type around. Labels declared by a {@link LabelSchema} are mapped
+ * to the schema's own strings, identifier types are resolved against their
+ * {@link IdentifierSchema} only once per distinct type string. This also
+ * means that all identifiers using the same custom type share one
+ * {@link IdentifierType} instance.
+ * <p>
+ * All methods are thread-safe.
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class SchemaInterner {
+
+	/**
+	 * Upper bound for the number of custom values remembered per schema,
+	 * so that faulty data cannot make the tables grow indefinitely.
+	 */
+	private static final int MAX_CUSTOM_VALUES = 2048;
+
+	private static final Map<Object, SchemaInterner> interners = Collections.synchronizedMap(new WeakHashMap<>());
+
+	static SchemaInterner forLabels(LabelSchema schema) {
+		return interners.computeIfAbsent(schema, key -> {
+			SchemaInterner interner = new SchemaInterner();
+			for(Label label : schema.getLabels()) {
+				String value = label.getLabel();
+				interner.labels.put(value, value);
+			}
+			return interner;
+		});
+	}
+
+	static SchemaInterner forIdentifiers(IdentifierSchema schema) {
+		return interners.computeIfAbsent(schema, key -> {
+			SchemaInterner interner = new SchemaInterner();
+			schema.forEachIdentifierType(type -> interner.types.put(type.getLabel(), type));
+			return interner;
+		});
+	}
+
+	private final Map<String, String> labels = new ConcurrentHashMap<>();
+
+	private final Map<String, IdentifierType> types = new ConcurrentHashMap<>();
+
+	private SchemaInterner() {
+		// only created via the factory methods
+	}
+
+	/**
+	 * Returns the canonical instance for the given label string.
+	 */
+	String label(String s) {
+		if(s==null) {
+			return null;
+		}
+
+		String result = labels.get(s);
+		if(result==null) {
+			result = s;
+			if(labels.size()<MAX_CUSTOM_VALUES) {
+				String previous = labels.putIfAbsent(s, s);
+				if(previous!=null) {
+					result = previous;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves the identifier type for the given string via
+	 * {@link IdentifierSchema#parseIdentifierType(IdentifierSchema, String)},
+	 * reusing earlier results.
+	 */
+	IdentifierType identifierType(IdentifierSchema schema, String s) {
+		IdentifierType result = types.get(s);
+		if(result==null) {
+			result = IdentifierSchema.parseIdentifierType(schema, s);
+			if(result!=null && types.size()<MAX_CUSTOM_VALUES) {
+				IdentifierType previous = types.putIfAbsent(s, result);
+				if(previous!=null) {
+					result = previous;
+				}
+			}
+		}
+		return result;
+	}
+}
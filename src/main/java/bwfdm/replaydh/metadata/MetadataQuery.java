@@ -0,0 +1,248 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.metadata;
+
+import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import bwfdm.replaydh.metadata.MetadataRecord.Entry;
+
+/**
+ * Describes a search for metadata records. A query consists of free text that
+ * may appear in any entry of a record and of text that is scoped to entries of
+ * a certain name. All the given text is split into terms, each of which must
+ * appear as prefix of a word in the respective entries for a record to match.
+ * Results can additionally be restricted to a single metadata schema and are
+ * delivered in pages described by {@link #getOffset() offset} and
+ * {@link #getLimit() limit}.
+ *
+ * @author Markus Gärtner
+ *
+ * @see MetadataRepository#search(MetadataQuery)
+ */
+public final class MetadataQuery {
+
+	public static final int DEFAULT_LIMIT = 100;
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+	/**
+	 * Splits the given text into lower case terms without diacritics,
+	 * using any character that is neither a letter nor a digit as separator.
+	 */
+	public static List<String> terms(String text) {
+		if(text==null || text.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+		normalized = DIACRITICS.matcher(normalized).replaceAll("").toLowerCase(Locale.ROOT);
+
+		List<String> terms = new ArrayList<>();
+		for(String term : SEPARATOR.split(normalized)) {
+			if(!term.isEmpty()) {
+				terms.add(term);
+			}
+		}
+		return terms;
+	}
+
+	private final List<String> terms;
+	private final Map<String, List<String>> fieldTerms;
+	private final String schemaId;
+	private final int offset;
+	private final int limit;
+
+	private MetadataQuery(Builder builder) {
+		terms = Collections.unmodifiableList(terms(builder.text));
+
+		Map<String, List<String>> fieldTerms = new LinkedHashMap<>();
+		builder.fields.forEach((name, text) -> {
+			List<String> terms = terms(text);
+			if(!terms.isEmpty()) {
+				fieldTerms.put(name, Collections.unmodifiableList(terms));
+			}
+		});
+		this.fieldTerms = Collections.unmodifiableMap(fieldTerms);
+
+		schemaId = builder.schemaId;
+		offset = builder.offset;
+		limit = builder.limit;
+	}
+
+	/**
+	 * Returns the terms that may appear in any entry of a matching record.
+	 */
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	/**
+	 * Returns the terms that must appear in entries of a specific name,
+	 * mapped by that name.
+	 */
+	public Map<String, List<String>> getFieldTerms() {
+		return fieldTerms;
+	}
+
+	/**
+	 * Returns the schema all results must be based on or {@code null}
+	 * if records of any schema should be considered.
+	 */
+	public String getSchemaId() {
+		return schemaId;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns {@code true} if this query contains no terms at all.
+	 * Such a query matches no record.
+	 */
+	public boolean isEmpty() {
+		return terms.isEmpty() && fieldTerms.isEmpty();
+	}
+
+	/**
+	 * Checks the given record against this query without any ranking.
+	 * Intended for repositories that have no dedicated index to search.
+	 */
+	public boolean matches(MetadataRecord record) {
+		if(isEmpty()) {
+			return false;
+		}
+		if(schemaId!=null && !schemaId.equals(record.getSchemaId())) {
+			return false;
+		}
+
+		for(String term : terms) {
+			boolean[] found = {false};
+			record.forEachEntry(entry -> found[0] |= matches(entry, Collections.singletonList(term)));
+			if(!found[0]) {
+				return false;
+			}
+		}
+
+		for(Map.Entry<String, List<String>> field : fieldTerms.entrySet()) {
+			boolean[] found = {false};
+			record.forEachEntry(field.getKey(), entry -> found[0] |= matches(entry, field.getValue()));
+			if(!found[0]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns {@code true} if every one of the given terms is a prefix of some
+	 * term in the value of the given entry.
+	 */
+	private static boolean matches(Entry entry, List<String> terms) {
+		List<String> words = terms(entry.getValue());
+		for(String term : terms) {
+			if(words.stream().noneMatch(word -> word.startsWith(term))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("MetadataQuery@[terms=%s, fields=%s, schema=%s, offset=%d, limit=%d]",
+				terms, fieldTerms, schemaId, offset, limit);
+	}
+
+	public static class Builder {
+
+		private String text;
+		private final Map<String, String> fields = new LinkedHashMap<>();
+		private String schemaId;
+		private int offset = 0;
+		private int limit = DEFAULT_LIMIT;
+
+		/**
+		 * Prevents public instantiation outside of {@link MetadataQuery#newBuilder()}.
+		 */
+		private Builder() {
+			// no-op
+		}
+
+		/**
+		 * Free text to be matched against all entries.
+		 */
+		public Builder text(String text) {
+			this.text = requireNonNull(text);
+			return this;
+		}
+
+		/**
+		 * Text to be matched against the entries of the given {@code name} only.
+		 */
+		public Builder field(String name, String text) {
+			fields.put(requireNonNull(name), requireNonNull(text));
+			return this;
+		}
+
+		public Builder schema(String schemaId) {
+			this.schemaId = requireNonNull(schemaId);
+			return this;
+		}
+
+		public Builder offset(int offset) {
+			checkArgument("Offset must not be negative", offset>=0);
+			this.offset = offset;
+			return this;
+		}
+
+		public Builder limit(int limit) {
+			checkArgument("Limit must be greater than 0", limit>0);
+			this.limit = limit;
+			return this;
+		}
+
+		public MetadataQuery build() {
+			return new MetadataQuery(this);
+		}
+	}
+}
@@ -19,8 +19,12 @@
 package bwfdm.replaydh.metadata;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import bwfdm.replaydh.core.RDHEnvironment;
 import bwfdm.replaydh.core.RDHLifecycleException;
@@ -99,6 +103,76 @@ public interface MetadataRepository extends RDHTool, SchemaManager<MetadataSchem
 	 */
 	Collection<MetadataRecord> getRecords(Target target);
 
+	/**
+	 * Fetches all records for each of the given {@code targets}. The returned
+	 * map contains an entry for every distinct target, holding the same collection
+	 * as {@link #getRecords(Target)} would return for it.
+	 * <p>
+	 * The default implementation delegates to {@link #getRecords(Target)} for every
+	 * target. Implementations backed by external storage should override this method
+	 * to load the records for many targets at once.
+	 *
+	 * @param targets
+	 * @return
+	 */
+	default Map<Target, Collection<MetadataRecord>> getRecords(Collection<Target> targets) {
+		Map<Target, Collection<MetadataRecord>> result = new LinkedHashMap<>();
+		for(Target target : targets) {
+			result.computeIfAbsent(target, this::getRecords);
+		}
+		return result;
+	}
+
+	/**
+	 * Signals that the records for the given {@code targets} are about to be
+	 * accessed, so that the repository can load them in bulk ahead of time.
+	 * <p>
+	 * The default implementation does nothing.
+	 *
+	 * @param targets
+	 */
+	default void prefetchRecords(Collection<Target> targets) {
+		// no-op
+	}
+
+	/**
+	 * Searches for records matching the given {@code query} and returns the
+	 * page of results described by the query's offset and limit, ordered by
+	 * relevance with the best match first.
+	 * <p>
+	 * The default implementation {@link #getAvailableRecords() iterates} all records
+	 * and checks each of them with {@link MetadataQuery#matches(MetadataRecord)}, so
+	 * results are delivered in iteration order. Implementations that maintain a
+	 * search index should override this method.
+	 *
+	 * @param query
+	 * @return
+	 */
+	default List<MetadataRecord> search(MetadataQuery query) {
+		List<MetadataRecord> result = new ArrayList<>();
+		if(query.isEmpty()) {
+			return result;
+		}
+
+		int skip = query.getOffset();
+		try(RecordIterator it = getAvailableRecords()) {
+			while(it.hasNext() && result.size()<query.getLimit()) {
+				for(MetadataRecord record : getRecords(it.next())) {
+					if(query.matches(record) && result.size()<query.getLimit()) {
+						if(skip>0) {
+							skip--;
+						} else {
+							result.add(record);
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new MetadataException("Failed to iterate records", e);
+		}
+		return result;
+	}
+
 	void addRecord(MetadataRecord record);
 
 	void removeRecord(MetadataRecord record);
@@ -59,9 +59,9 @@ public abstract class AbstractMetadataRespository extends AbstractSchemaManager<
 	private final List<MetadataListener> listeners = new CopyOnWriteArrayList<>();
 
 	/**
-	 * Transaction wrapper linking to {@link #endTransaction()}
+	 * Transaction wrapper linking to {@link #beginTransaction()} and {@link #endTransaction()}
 	 */
-	private final Transaction transaction = Transaction.withEndCallback(this::endTransaction);
+	private final Transaction transaction = Transaction.withCallbacks(this::beginTransaction, this::endTransaction);
 
 	/**
 	 * Currently active builds
@@ -155,6 +155,16 @@ public abstract class AbstractMetadataRespository extends AbstractSchemaManager<
 		}
 	}
 
+	/**
+	 * Callback used by this repositories {@link Transaction} wrapper
+	 * when the outermost {@link #beginUpdate() update} starts.
+	 * <p>
+	 * The default implementation does nothing.
+	 */
+	protected void beginTransaction() {
+		// no-op
+	}
+
 	/**
 	 * Callback used by this repositories {@link Transaction} wrapper.
 	 * <p>
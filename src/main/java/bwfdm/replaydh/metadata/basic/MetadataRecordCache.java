@@ -25,13 +25,23 @@ import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import bwfdm.replaydh.metadata.MetadataException;
 import bwfdm.replaydh.metadata.MetadataRecord;
@@ -40,107 +50,371 @@ import bwfdm.replaydh.utils.UsageAware;
 
 /**
  * Implements a cache for {@link Target} to {@link MetadataRecord} mappings.
+ * <p>
+ * The cache is organized in two tiers: Recently used records are kept strongly
+ * reachable in a LRU tier that is bounded by the number of records and their
+ * estimated memory footprint. Every record is additionally tracked by a weak
+ * reference, so records evicted from the LRU tier remain available as long as
+ * they haven't been garbage collected.
+ * <p>
+ * Once either bound of the LRU tier is exceeded, the least recently used records
+ * are evicted until the tier has shrunk by the {@code purgeThreshold} fraction of
+ * its bounds. This avoids evicting on every single insertion when the cache is
+ * running at its limit.
+ * <p>
+ * This class is thread-safe and lookups do not block: Each target maps to an
+ * immutable array of references that gets replaced atomically on modification,
+ * recency is tracked by per-record timestamps and only eviction itself runs
+ * under a lock. References to records that got garbage collected are removed
+ * by a shared background thread.
  *
  * @author Markus Gärtner
  *
  */
 public class MetadataRecordCache {
 
+	private static final Logger log = LoggerFactory.getLogger(MetadataRecordCache.class);
+
 	private static class Proxy extends WeakReference<MetadataRecord> {
 
+		final MetadataRecordCache owner;
 		final Target target;
 		final String schemaId;
 
-		public Proxy(MetadataRecord record, ReferenceQueue<? super MetadataRecord> q) {
+		/**
+		 * Estimated memory footprint of the record, updated whenever the
+		 * record gets added again. Guarded by the proxy's monitor.
+		 */
+		int size;
+
+		/**
+		 * Part of {@link MetadataRecordCache#retainedBytes} contributed by
+		 * this proxy, {@code 0} while not in the LRU tier. Guarded by the
+		 * proxy's monitor.
+		 */
+		int accountedSize;
+
+		/** Strong reference to the record while it's part of the LRU tier */
+		volatile MetadataRecord retained;
+
+		/** Time of last access, used to pick candidates for eviction */
+		volatile long lastAccess;
+
+		/** Set once the proxy is no longer mapped, prevents re-entering the LRU tier */
+		volatile boolean removed;
+
+		public Proxy(MetadataRecordCache owner, MetadataRecord record, ReferenceQueue<? super MetadataRecord> q) {
 			super(record, q);
 
+			this.owner = owner;
 			this.target = record.getTarget().clone();
 			this.schemaId = record.getSchemaId();
+			this.size = estimateSize(record);
 		}
 
 	}
 
+	private static final AtomicReferenceFieldUpdater<Proxy, MetadataRecord> RETAINED =
+			AtomicReferenceFieldUpdater.newUpdater(Proxy.class, MetadataRecord.class, "retained");
+
+	private static final Proxy[] NO_PROXIES = {};
+
 	private static final float DEFAULT_PURGE_THRESHOLD = 0.2f;
 
-	private final Map<Target, List<Proxy>> cache;
+	/**
+	 * Default upper bound for the estimated memory footprint of
+	 * the strongly referenced tier: 16 MB
+	 */
+	public static final long DEFAULT_BYTE_LIMIT = 16L * 1024 * 1024;
+
+	/** Rough overhead per cached record: object headers, proxy and map nodes */
+	private static final int RECORD_OVERHEAD = 160;
+	/** Rough overhead per entry: entry object, two string headers and set node */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * Estimates the memory footprint of the given record in bytes.
+	 */
+	static int estimateSize(MetadataRecord record) {
+		int[] size = {RECORD_OVERHEAD};
+		record.forEachEntry(entry -> {
+			size[0] += ENTRY_OVERHEAD;
+			size[0] += 2 * (length(entry.getName()) + length(entry.getValue()));
+		});
+		return size[0];
+	}
+
+	private static int length(String s) {
+		return s==null ? 0 : s.length();
+	}
+
+	/**
+	 * Queue shared by all caches, so that a single thread can take care
+	 * of removing references to collected records.
+	 */
+	private static final ReferenceQueue<MetadataRecord> queue = new ReferenceQueue<>();
+
+	private static final AtomicBoolean cleanerStarted = new AtomicBoolean(false);
+
+	private static void ensureCleaner() {
+		if(cleanerStarted.compareAndSet(false, true)) {
+			Thread thread = new Thread(MetadataRecordCache::drainQueue, "metadata-cache-cleaner");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private static void drainQueue() {
+		while(!Thread.currentThread().isInterrupted()) {
+			try {
+				Proxy proxy = (Proxy) queue.remove();
+				proxy.owner.expunge(proxy);
+			} catch (InterruptedException e) {
+				break;
+			} catch (RuntimeException e) {
+				log.error("Failed to remove stale metadata record reference", e);
+			}
+		}
+	}
+
+	private final ConcurrentMap<Target, Proxy[]> cache;
+
+	/**
+	 * Proxies currently retaining their records. May briefly contain proxies
+	 * that already got released, those get cleaned up by the next eviction.
+	 */
+	private final Set<Proxy> retained;
+
+	private final AtomicInteger retainedCount = new AtomicInteger();
+	/**
+	 * Sum of the {@link Proxy#accountedSize estimated sizes} of all records in the
+	 * {@link #retained} tier.
+	 */
+	private final AtomicLong retainedBytes = new AtomicLong();
+
+	private final Lock evictionLock = new ReentrantLock();
 
-	private final ReferenceQueue<MetadataRecord> queue = new ReferenceQueue<>();
 	private final int limit;
+	private final long byteLimit;
+	private final float purgeThreshold;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
 
 	public MetadataRecordCache(int initialCapacity, int limit) {
-		this(initialCapacity, limit, DEFAULT_PURGE_THRESHOLD);
+		this(initialCapacity, limit, DEFAULT_BYTE_LIMIT, DEFAULT_PURGE_THRESHOLD);
 	}
 
 	public MetadataRecordCache(int initialCapacity, int limit, float purgeThreshold) {
+		this(initialCapacity, limit, DEFAULT_BYTE_LIMIT, purgeThreshold);
+	}
+
+	/**
+	 * @param initialCapacity initial size of the internal lookup table
+	 * @param limit maximum number of records kept strongly reachable
+	 * @param byteLimit maximum estimated memory footprint of the records kept strongly reachable
+	 * @param purgeThreshold fraction of the above bounds to free up when one of them is exceeded
+	 */
+	public MetadataRecordCache(int initialCapacity, int limit, long byteLimit, float purgeThreshold) {
 		checkArgument("Initial capacity must be greater that 0", initialCapacity>0);
+		checkArgument("Limit must be greater than 0", limit>0);
+		checkArgument("Byte limit must be greater than 0", byteLimit>0);
 		checkArgument("Purge threshold must be positive and less then 1", purgeThreshold>0 && purgeThreshold<1);
 
-		cache = new HashMap<>(initialCapacity);
+		cache = new ConcurrentHashMap<>(initialCapacity);
+		retained = ConcurrentHashMap.newKeySet(Math.min(initialCapacity, limit));
 
 		this.limit = limit;
+		this.byteLimit = byteLimit;
+		this.purgeThreshold = purgeThreshold;
+
+		ensureCleaner();
+	}
+
+	private static Proxy[] without(Proxy[] proxies, Proxy proxy) {
+		for(int i=0; i<proxies.length; i++) {
+			if(proxies[i]==proxy) {
+				if(proxies.length==1) {
+					return null;
+				}
+				Proxy[] result = new Proxy[proxies.length-1];
+				System.arraycopy(proxies, 0, result, 0, i);
+				System.arraycopy(proxies, i+1, result, i, result.length-i);
+				return result;
+			}
+		}
+		return proxies;
 	}
 
-	private void purgeStaleEntries() {
-        for (Object x; (x = queue.poll()) != null; ) {
-            synchronized (cache) {
-            	Proxy proxy = (Proxy) x;
-        		List<Proxy> proxies = cache.get(proxy.target);
-            	proxies.remove(proxy);
-            	if(proxies.isEmpty()) {
-            		cache.remove(proxy.target);
-            	}
-            }
-        }
+	/**
+	 * Removes the given proxy from the mapping of its target.
+	 */
+	private void expunge(Proxy proxy) {
+		proxy.removed = true;
+		release(proxy);
+		cache.computeIfPresent(proxy.target, (t, proxies) -> without(proxies, proxy));
 	}
 
+	/**
+	 * Removes all records that have been garbage collected and those from the
+	 * weak tier that report to be no longer in use. Records in the LRU tier are
+	 * considered to be in active use and therefore kept.
+	 */
 	public void purgeUnusedEntries() {
-		purgeStaleEntries();
+		for(Proxy[] proxies : cache.values()) {
+			for(Proxy proxy : proxies) {
+				MetadataRecord record = proxy.get();
 
-		synchronized (cache) {
-			for(Iterator<Entry<Target, List<Proxy>>> itList = cache.entrySet().iterator(); itList.hasNext();) {
-				Entry<Target, List<Proxy>> entry = itList.next();
+				// Mark for purging all GC'd records
+				boolean purge = record==null || proxy.isEnqueued();
 
-				for(Iterator<Proxy> it = entry.getValue().iterator(); it.hasNext();) {
-					Proxy proxy = it.next();
-					MetadataRecord record = proxy.get();
+				if(!purge && record instanceof UsageAware && proxy.retained==null) {
 
-					// Mark for purging all GC'd records
-					boolean purge = record==null || proxy.isEnqueued();
+					// Additionally check if we can purge entries that are no longer in active use
+					UsageAware aware = (UsageAware) record;
+					// Make sure we give entries time to be used at least once!
+					if(aware.hasBeenUsed() && !aware.inUse()) {
+						proxy.clear();
+						purge = true;
+					}
+				}
 
-					if(!purge && record instanceof UsageAware) {
+				if(purge) {
+					expunge(proxy);
+				}
+			}
+		}
+	}
 
-						// Additionally check if we can purge entries that are no longer in active use
-						UsageAware aware = (UsageAware) record;
-						// Make sure we give entries time to be used at least once!
-						if(aware.hasBeenUsed() && !aware.inUse()) {
-							proxy.clear();
-							purge = true;
-						}
-					}
+	/**
+	 * Marks the given record as most recently used, moving it into
+	 * the LRU tier if needed.
+	 */
+	private void touch(Proxy proxy, MetadataRecord record) {
+		proxy.lastAccess = System.nanoTime();
+
+		if(proxy.retained==null && RETAINED.compareAndSet(proxy, null, record)) {
+			retained.add(proxy);
+			int count = retainedCount.incrementAndGet();
+			long bytes;
+			synchronized (proxy) {
+				proxy.accountedSize = proxy.size;
+				bytes = retainedBytes.addAndGet(proxy.accountedSize);
+			}
 
-					if(purge) {
-						it.remove();
-					}
+			// Lost a race against removal
+			if(proxy.removed) {
+				release(proxy);
+			} else if(count>limit || bytes>byteLimit) {
+				evict();
+			}
+		}
+	}
+
+	private static class Candidate implements Comparable<Candidate> {
+		final Proxy proxy;
+		final long lastAccess;
+
+		Candidate(Proxy proxy) {
+			this.proxy = proxy;
+			this.lastAccess = proxy.lastAccess;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Long.compare(lastAccess, other.lastAccess);
+		}
+	}
+
+	/**
+	 * Shrinks the LRU tier below both of its bounds, reduced by the purge threshold.
+	 * Evicted records stay reachable via the weak tier. If another thread is already
+	 * evicting, this method returns immediately.
+	 */
+	private void evict() {
+		if(!evictionLock.tryLock()) {
+			return;
+		}
+
+		try {
+			int targetCount = (int) (limit * (1-purgeThreshold));
+			long targetBytes = (long) (byteLimit * (1-purgeThreshold));
+
+			// Snapshot access times so that sorting isn't affected by concurrent lookups
+			List<Candidate> candidates = new ArrayList<>(retained.size());
+			for(Proxy proxy : retained) {
+				if(proxy.retained==null) {
+					retained.remove(proxy);
+				} else {
+					candidates.add(new Candidate(proxy));
 				}
+			}
+			Collections.sort(candidates);
 
-				if(entry.getValue().isEmpty()) {
-					itList.remove();
+			for(Candidate candidate : candidates) {
+				if(retainedCount.get()<=targetCount && retainedBytes.get()<=targetBytes) {
+					break;
+				}
+				if(release(candidate.proxy)) {
+					evictions.increment();
 				}
 			}
+		} finally {
+			evictionLock.unlock();
 		}
 	}
 
 	/**
-	 * Must be called under cache lock!
+	 * Removes the given proxy from the LRU tier.
+	 *
+	 * @return {@code true} if the proxy was retaining its record
 	 */
-	private Proxy proxyFor(Target target, String schemaId) {
-		List<Proxy> proxies = cache.get(target);
-		if(proxies == null || proxies.isEmpty()) {
-			return null;
+	private boolean release(Proxy proxy) {
+		if(RETAINED.getAndSet(proxy, null)!=null) {
+			retained.remove(proxy);
+			retainedCount.decrementAndGet();
+			synchronized (proxy) {
+				retainedBytes.addAndGet(-proxy.accountedSize);
+				proxy.accountedSize = 0;
+			}
+			return true;
 		}
-		for(Proxy proxy : proxies) {
-			if(proxy.schemaId.equals(schemaId)) {
-				return proxy;
+		return false;
+	}
+
+	/**
+	 * Re-estimates the size of the given proxy's record, which might have been
+	 * edited since it got cached, and adjusts the LRU tier's footprint accordingly.
+	 */
+	private void resize(Proxy proxy, MetadataRecord record) {
+		int size = estimateSize(record);
+
+		long bytes;
+		synchronized (proxy) {
+			if(proxy.size==size) {
+				return;
+			}
+			proxy.size = size;
+
+			if(proxy.accountedSize==0) {
+				return;
+			}
+			bytes = retainedBytes.addAndGet(size-proxy.accountedSize);
+			proxy.accountedSize = size;
+		}
+
+		if(bytes>byteLimit) {
+			evict();
+		}
+	}
+
+	private static Proxy proxyFor(Proxy[] proxies, String schemaId) {
+		if(proxies!=null) {
+			for(Proxy proxy : proxies) {
+				if(proxy.schemaId.equals(schemaId)) {
+					return proxy;
+				}
 			}
 		}
 		return null;
@@ -149,36 +423,42 @@ public class MetadataRecordCache {
 	public MetadataRecord getRecord(Target target, String schemaId) {
 		requireNonNull(target);
 
-		purgeStaleEntries();
-
-		synchronized (cache) {
-			Proxy proxy = proxyFor(target, schemaId);
-			return proxy==null ? null : proxy.get();
+		Proxy proxy = proxyFor(cache.get(target), schemaId);
+		MetadataRecord record = proxy==null ? null : proxy.get();
+		if(record==null) {
+			misses.increment();
+		} else {
+			hits.increment();
+			touch(proxy, record);
 		}
+		return record;
 	}
 
 	public List<MetadataRecord> getRecords(Target target) {
 		requireNonNull(target);
 
-		purgeStaleEntries();
-
-		synchronized (cache) {
-			List<Proxy> proxies = cache.get(target);
-			if(proxies == null || proxies.isEmpty()) {
-				return Collections.emptyList();
-			}
+		Proxy[] proxies = cache.get(target);
+		if(proxies == null) {
+			misses.increment();
+			return Collections.emptyList();
+		}
 
-			List<MetadataRecord> records = new ArrayList<>(proxies.size());
-			for(Proxy proxy : proxies) {
-				MetadataRecord record = proxy.get();
-				if(record!=null) {
-					records.add(record);
-				}
+		List<MetadataRecord> records = new ArrayList<>(proxies.length);
+		for(Proxy proxy : proxies) {
+			MetadataRecord record = proxy.get();
+			if(record!=null) {
+				records.add(record);
+				touch(proxy, record);
 			}
-			return records;
 		}
 
+		if(records.isEmpty()) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
 
+		return records;
 	}
 
 	/**
@@ -193,113 +473,160 @@ public class MetadataRecordCache {
 	public boolean hasRecords(Target target) {
 		requireNonNull(target);
 
-		purgeStaleEntries();
-
-		synchronized (cache) {
-			List<Proxy> proxies = cache.get(target);
-			return proxies!=null && !proxies.isEmpty();
+		Proxy[] proxies = cache.get(target);
+		if(proxies==null) {
+			return false;
 		}
-	}
 
-	/**
-	 * Must be called under cache lock!
-	 */
-	private List<Proxy> proxyList(Target target, boolean createIfMissing) {
-		List<Proxy> proxies = cache.get(target);
-		if(proxies==null && createIfMissing) {
-			proxies = new ArrayList<>();
-			cache.put(target, proxies);
+		boolean alive = false;
+		for(Proxy proxy : proxies) {
+			if(proxy.get()!=null && !proxy.isEnqueued()) {
+				alive = true;
+			} else {
+				// Don't wait for the cleaner to get rid of dead references
+				expunge(proxy);
+			}
 		}
-		return proxies;
+		return alive;
 	}
 
 	public void addRecord(MetadataRecord record) {
 		requireNonNull(record);
 
-		purgeStaleEntries();
+		Target target = requireNonNull(record.getTarget());
+		String schemaId = record.getSchemaId();
+		Proxy[] added = {null};
+		boolean[] readded = {false};
 
-		synchronized (cache) {
-			addRecord0(record);
-		}
-	}
+		cache.compute(target, (t, proxies) -> {
+			if(proxies==null) {
+				proxies = NO_PROXIES;
+			}
 
-	/**
-	 * Must be called under cache lock!
-	 */
-	private void addRecord0(MetadataRecord record) {
-		Target target = requireNonNull(record.getTarget());
-		Proxy proxy = proxyFor(target, record.getSchemaId());
+			Proxy proxy = proxyFor(proxies, schemaId);
 
-		if(proxy!=null) {
-			MetadataRecord existing = proxy.get();
+			if(proxy!=null) {
+				MetadataRecord existing = proxy.get();
 
-			// If the ref got cleared
-			if(existing!=null) {
+				// If the ref got cleared
+				if(existing!=null) {
+
+					// If the exact same record is already registered, only its size needs refreshing
+					if(existing==record) {
+						added[0] = proxy;
+						readded[0] = true;
+						return proxies;
+					} else // Otherwise report inconsistency
+						throw new MetadataException("Cache corrupted - foreign record already registered for target: "+target);
+				}
 
-				// If the exact same record is already registered, do nothing
-				if(existing==record) {
-					return;
-				} else // Otherwise report inconsistency
-					throw new MetadataException("Cache corrupted - foreign record already registered for target: "+target);
+				// Get rid of the dead ref right away instead of waiting for the cleaner
+				proxy.removed = true;
+				proxies = without(proxies, proxy);
+				if(proxies==null) {
+					proxies = NO_PROXIES;
+				}
 			}
+
+			// Here we either have a ref that got GC'd or a blank new entry
+			added[0] = new Proxy(this, record, queue);
+			Proxy[] result = Arrays.copyOf(proxies, proxies.length+1);
+			result[proxies.length] = added[0];
+			return result;
+		});
+
+		// The record might have been edited since it got cached
+		if(readded[0]) {
+			resize(added[0], record);
 		}
 
-		// Here we either have a ref that got GC'd or a blank new entry
-		proxyList(target, true).add(new Proxy(record, queue));
+		touch(added[0], record);
 	}
 
 	public void addRecords(Collection<MetadataRecord> records) {
 		requireNonNull(records);
 
-		purgeStaleEntries();
-
-		synchronized (cache) {
-			records.forEach(this::addRecord0);
-		}
+		records.forEach(this::addRecord);
 	}
 
 	public void removeRecord(MetadataRecord record) {
 		requireNonNull(record);
 
-		purgeStaleEntries();
-
 		Target target = requireNonNull(record.getTarget());
+		String schemaId = record.getSchemaId();
 
-		synchronized (cache) {
-			List<Proxy> proxies = cache.get(target);
-			if(proxies == null || proxies.isEmpty())
+		cache.compute(target, (t, proxies) -> {
+			if(proxies == null)
 				throw new MetadataException("No metadata record present in cache for target: "+target);
 
-			for(Iterator<Proxy> it = proxies.iterator(); it.hasNext();) {
-				Proxy proxy = it.next();
-				if(proxy.schemaId.equals(record.getSchemaId())) {
+			for(Proxy proxy : proxies) {
+				if(proxy.schemaId.equals(schemaId)) {
+					proxy.removed = true;
+					release(proxy);
 					proxy.clear();
-					it.remove();
+					proxies = without(proxies, proxy);
+					if(proxies==null) {
+						break;
+					}
 				}
 			}
-		}
+			return proxies;
+		});
 	}
 
 	/**
 	 * Force removal of all entries from cache.
 	 */
 	public void clear() {
-		// Initial removal of queued refs (no need to purge since cache will get cleared)
-		while(queue.poll()!=null);
-
-		synchronized (cache) {
-			cache.clear();
+		for(Proxy[] proxies : cache.values()) {
+			for(Proxy proxy : proxies) {
+				proxy.removed = true;
+				release(proxy);
+			}
 		}
-
-		// Clearing the cache might have caused additional GC runs, so we need to free up more queued refs
-		while(queue.poll()!=null);
+		cache.clear();
 	}
 
 	public boolean isEmpty() {
-		purgeStaleEntries();
+		return cache.isEmpty();
+	}
 
-		synchronized (cache) {
-			return cache.isEmpty();
-		}
+	// Statistics
+
+	/**
+	 * Returns the number of lookups that could be answered by this cache.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that found no (longer) cached record.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of records that got evicted from the strongly
+	 * referenced tier because one of its bounds was exceeded.
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of records currently kept strongly reachable.
+	 */
+	public int getRetainedCount() {
+		return retainedCount.get();
+	}
+
+	/**
+	 * Returns the estimated memory footprint of all the records currently
+	 * kept strongly reachable.
+	 */
+	public long getRetainedBytes() {
+		return retainedBytes.get();
 	}
 }
@@ -18,6 +18,7 @@
  */
 package bwfdm.replaydh.metadata.db;
 
+import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
 import static bwfdm.replaydh.utils.RDHUtils.checkState;
 import static java.util.Objects.requireNonNull;
 
@@ -26,31 +27,51 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import bwfdm.replaydh.core.RDHClient;
 import bwfdm.replaydh.core.RDHEnvironment;
 import bwfdm.replaydh.core.RDHLifecycleException;
 import bwfdm.replaydh.db.DBUtils;
+import bwfdm.replaydh.db.ReadConnectionPool;
+import bwfdm.replaydh.db.ReadConnectionPool.PooledConnection;
+import bwfdm.replaydh.db.ReadConnectionPool.SQLTask;
 import bwfdm.replaydh.io.resources.FileResource;
 import bwfdm.replaydh.io.resources.FileResourceProvider;
 import bwfdm.replaydh.io.resources.IOResource;
 import bwfdm.replaydh.io.resources.ResourceProvider;
 import bwfdm.replaydh.metadata.MetadataException;
+import bwfdm.replaydh.metadata.MetadataQuery;
 import bwfdm.replaydh.metadata.MetadataRecord;
 import bwfdm.replaydh.metadata.MetadataRecord.Target;
 import bwfdm.replaydh.metadata.MetadataRepository;
 import bwfdm.replaydh.metadata.MetadataSchema;
+import bwfdm.replaydh.metadata.MetadataStats;
 import bwfdm.replaydh.metadata.ValueRestriction;
 import bwfdm.replaydh.metadata.basic.AbstractMetadataRespository;
 import bwfdm.replaydh.metadata.basic.DefaultMetadataRecord;
@@ -61,14 +82,28 @@ import bwfdm.replaydh.metadata.basic.MetadataRecordCache;
 import bwfdm.replaydh.metadata.basic.MutableMetadataRecord;
 import bwfdm.replaydh.metadata.xml.MetadataSchemaXml;
 import bwfdm.replaydh.resources.ResourceManager;
+import bwfdm.replaydh.stats.StatEntry;
+import bwfdm.replaydh.stats.StatLog;
+import bwfdm.replaydh.stats.StatType;
 import bwfdm.replaydh.utils.AccessMode;
-import bwfdm.replaydh.utils.MutablePrimitives.MutableInteger;
 
 /**
  * Implements a {@link MetadataRepository repository} that stores records
- * as local text files inside a given folder.
+ * in a local SQLite database, either as the file {@value #DEFAULT_DB_FILE}
+ * inside a given folder or entirely in memory.
  * <p>
- * TODO
+ * File based databases use write-ahead logging, so that reads are served from
+ * a pool of read-only connections without waiting for the writer. The layout of
+ * the database is versioned and migrated on startup. Entries are additionally
+ * indexed in a full-text table to support searching the repository.
+ * <p>
+ * Modifications are persisted asynchronously by a dedicated writer thread
+ * using prepared statements and JDBC batches. All the writes issued within
+ * a single {@link #beginUpdate() update} get committed as one database
+ * transaction and {@link #endUpdate()} waits for that transaction, throwing
+ * a {@link MetadataException} if it failed. Failures of writes issued outside
+ * of an update are reported by the next call to {@link #flush()} or
+ * {@link #endUpdate()}.
  *
  * @author Markus Gärtner
  *
@@ -97,8 +132,94 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 	private final boolean emptySchemaAsFallback;
 
+	/**
+	 * Number of records fetched per query by {@link #getAvailableRecords()}
+	 */
+	private final int pageSize;
+
+	/**
+	 * Whether {@link #getAvailableRecords()} should load the next page in the background
+	 */
+	private final boolean prefetchPages;
+
+	/**
+	 * Number of read-only connections kept in {@link #readers}
+	 */
+	private final int readConnections;
+
+	/**
+	 * Connection used exclusively for setting up the database and
+	 * by the {@link #writer} thread.
+	 */
 	private Connection connection;
 
+	/**
+	 * Read-only connections serving all the queries, so that lookups
+	 * neither block each other nor the writer thread.
+	 */
+	private ReadConnectionPool readers;
+
+	/**
+	 * Serializes all access to the single {@link #connection} of an in-memory
+	 * database, so that queries never run in the middle of a write transaction
+	 * and see its uncommitted changes.
+	 */
+	private final Object memoryLock = new Object();
+
+	/**
+	 * Single thread performing all modifications of the database,
+	 * so that callers never have to wait for disk I/O when adding
+	 * or changing records.
+	 */
+	private ExecutorService writer;
+
+	private final Object writeLock = new Object();
+
+	/**
+	 * Writes not yet handed over to the {@link #writer}, grouped by target
+	 * and schema id. Later writes for a record replace earlier ones.
+	 */
+	private Map<Target, Map<String, WriteOp>> pendingWrites = new LinkedHashMap<>();
+
+	/**
+	 * Writes currently being persisted by the {@link #writer}
+	 */
+	private Map<Target, Map<String, WriteOp>> activeWrites = Collections.emptyMap();
+
+	/**
+	 * Set while an update is in progress, so that all the writes
+	 * issued during that update end up in a single transaction.
+	 */
+	private boolean holdWrites = false;
+
+	private boolean writeScheduled = false;
+
+	private volatile MetadataException writeFailure;
+
+	/**
+	 * Number of writes issued so far, used to detect writes that
+	 * happened concurrently to a bulk load.
+	 */
+	private long writeCount = 0;
+
+	/**
+	 * Number of batches the {@link #writer} has finished so far, used
+	 * to detect writes that reached the database during a bulk load.
+	 */
+	private long completedBatches = 0;
+
+	/**
+	 * Targets that a bulk load found to have no records at all. Since the
+	 * record cache can only store actual records, this lets us answer
+	 * repeated lookups for such targets without asking the database.
+	 * Entries get removed whenever a write for the target is issued.
+	 */
+	private final Set<Target> knownEmptyTargets = ConcurrentHashMap.newKeySet();
+
+	// Statements confined to the writer thread
+	private PreparedStatement stmtSelectRecordId, stmtInsertRecord, stmtLastInsertId;
+	private PreparedStatement stmtDeleteRecord, stmtDeleteEntries, stmtInsertEntry;
+
 	/**
 	 * Specialized schema that requires strings for names and values to be
 	 * at least 2 characters in length and not contain the assignment symbol '='.
@@ -126,6 +247,9 @@ public class MetadataDB extends AbstractMetadataRespository {
 		memory = builder.isMemory();
 		verbose = builder.isVerbose();
 		emptySchemaAsFallback = builder.isEmptySchemaAsFallback();
+		pageSize = builder.getPageSize();
+		prefetchPages = builder.isPrefetchPages();
+		readConnections = builder.getReadConnections();
 
 		setDefaultSchema(builder.getDefaultSchema());
 
@@ -200,6 +324,21 @@ public class MetadataDB extends AbstractMetadataRespository {
 			return false;
 		}
 
+		try {
+			readers = openReaders();
+		} catch (SQLException e) {
+			log.error("Failed to open read connections", e);
+			return false;
+		}
+
+		synchronized (writeLock) {
+			writer = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "metadata-db-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
 		return connection!=null;
 	}
 
@@ -232,6 +371,28 @@ public class MetadataDB extends AbstractMetadataRespository {
 		}
 	}
 
+	/**
+	 * Reports the usage of the record cache over the lifetime of this repository.
+	 */
+	private void logCacheStats(RDHEnvironment environment) {
+		RDHClient client = environment.getClient();
+		StatLog statLog = client==null ? null : client.getStatLog();
+		if(statLog!=null && statLog.isActive()) {
+			statLog.log(StatEntry.withData(StatType.INTERNAL_END, MetadataStats.RECORD_CACHE,
+					String.valueOf(cache.getHitCount()),
+					String.valueOf(cache.getMissCount()),
+					String.valueOf(cache.getEvictionCount()),
+					String.valueOf(cache.getRetainedCount()),
+					String.valueOf(cache.getRetainedBytes())));
+		}
+
+		if(log.isDebugEnabled()) {
+			log.debug("Record cache usage: {} hits, {} misses, {} evictions, {} records retained (~{} bytes)",
+					cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount(),
+					cache.getRetainedCount(), cache.getRetainedBytes());
+		}
+	}
+
 	/**
 	 * @throws RDHLifecycleException
 	 * @see bwfdm.replaydh.metadata.MetadataRepository#stop(bwfdm.replaydh.core.RDHEnvironment)
@@ -244,8 +405,18 @@ public class MetadataDB extends AbstractMetadataRespository {
 		// Make sure we have no pending builds or edits
 		cleanupPendingBuildsAndEdits();
 
+		logCacheStats(environment);
+
 		// Remove all data from live cache
 		cache.clear();
+		knownEmptyTargets.clear();
+
+		shutdownWriter();
+
+		if(readers!=null) {
+			readers.close();
+			readers = null;
+		}
 
 		if(connection!=null) {
 			DBUtils.closeSilently(connection);
@@ -254,9 +425,72 @@ public class MetadataDB extends AbstractMetadataRespository {
 		super.stop(environment);
 	}
 
+	private void shutdownWriter() {
+		if(writer==null) {
+			return;
+		}
+
+		try {
+			flush();
+		} catch (MetadataException e) {
+			log.error("Failed to persist pending metadata records", e);
+		}
+
+		ExecutorService writer;
+		synchronized (writeLock) {
+			writer = this.writer;
+			this.writer = null;
+		}
+
+		writer.shutdown();
+		try {
+			if(!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+				log.warn("Writer thread for metadata database did not terminate in time");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		closeWriteStatements();
+	}
+
+	/**
+	 * Starts holding back writes so that the entire update gets
+	 * persisted as one database transaction.
+	 *
+	 * @see bwfdm.replaydh.metadata.basic.AbstractMetadataRespository#beginTransaction()
+	 */
+	@Override
+	protected void beginTransaction() {
+		synchronized (writeLock) {
+			holdWrites = true;
+		}
+	}
+
+	/**
+	 * Hands over all the writes collected during the update to the writer thread
+	 * and waits for them to be persisted.
+	 *
+	 * @throws MetadataException if persisting any records failed
+	 *
+	 * @see bwfdm.replaydh.metadata.basic.AbstractMetadataRespository#endTransaction()
+	 */
+	@Override
+	protected void endTransaction() {
+		super.endTransaction();
+
+		synchronized (writeLock) {
+			holdWrites = false;
+			scheduleWrite();
+		}
+
+		flush();
+	}
+
 	private static final String PREFIX = "rdh_";
 	private static final String TBL_RECORD = PREFIX+"record";
 	private static final String TBL_ENTRY = PREFIX+"entry";
+	private static final String TBL_ENTRY_FTS = PREFIX+"entry_fts";
 
 	private static final String COL_ID = "id";
 	private static final String COL_WORKSPACE = "workspace";
@@ -269,6 +503,48 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 	private static final int NO_ID = -1;
 
+	private static final String SQL_HAS_RECORDS =
+			"SELECT 1 FROM "+TBL_RECORD+"\n" +
+			"WHERE "+COL_WORKSPACE+" = ? AND "+COL_PATH+" = ?\n" +
+			"LIMIT 1";
+
+	private static final String SQL_LOAD_RECORDS =
+			"SELECT r."+COL_ID+", r."+COL_SCHEMA+", e."+COL_PROPERTY+", e."+COL_VALUE+"\n" +
+			"FROM "+TBL_ENTRY+" AS e\n" +
+			"INNER JOIN "+TBL_RECORD+" AS r ON r."+COL_ID+" = e."+COL_RECORD_ID+"\n" +
+			"WHERE r."+COL_WORKSPACE+" = ? AND r."+COL_PATH+" = ?\n" +
+			"ORDER BY r."+COL_ID;
+
+	private static final String SQL_LOAD_RECORD =
+			"SELECT e."+COL_PROPERTY+", e."+COL_VALUE+"\n" +
+			"FROM "+TBL_ENTRY+" AS e\n" +
+			"INNER JOIN "+TBL_RECORD+" AS r ON r."+COL_ID+" = e."+COL_RECORD_ID+"\n" +
+			"WHERE r."+COL_WORKSPACE+" = ? AND r."+COL_PATH+" = ? AND r."+COL_SCHEMA+" = ?";
+
+	private static final String SQL_LOAD_PAGE =
+			"SELECT r."+COL_ID+", r."+COL_WORKSPACE+", r."+COL_PATH+"\n" +
+			"FROM "+TBL_RECORD+" AS r\n" +
+			"WHERE r."+COL_ID+" > ?\n" +
+			"ORDER BY r."+COL_ID+"\n" +
+			"LIMIT ?";
+
+	/**
+	 * Version of the database layout created by this implementation.
+	 * It is stored as {@code user_version} inside the database file and
+	 * every increment is backed by a step in {@link #migrate(Statement, int)}.
+	 */
+	private static final int SCHEMA_VERSION = 3;
+
+	/**
+	 * Page cache size in KiB (negative values are interpreted as KiB by SQLite)
+	 */
+	private static final int CACHE_SIZE = -16_000;
+
+	/**
+	 * Maximum number of bytes SQLite is allowed to memory-map from the database file
+	 */
+	private static final long MMAP_SIZE = 256L * 1024 * 1024;
+
 	private void setupDB() throws SQLException {
 		try(Statement stmt = connection.createStatement()) {
 
@@ -280,60 +556,297 @@ public class MetadataDB extends AbstractMetadataRespository {
 			stmt.execute("PRAGMA foreign_keys = ON");
 
 			/*
-			 *  CREATE TABLE rdh_record (
-				    id        INTEGER PRIMARY KEY AUTOINCREMENT,
-				    workspace TEXT    NOT NULL,
-				    path      TEXT    NOT NULL,
-				    schema    TEXT    NOT NULL,
-				    UNIQUE (
-				        workspace COLLATE NOCASE,
-				        path COLLATE NOCASE
-				    )
-				    ON CONFLICT ABORT
-				);
+			 * Write-ahead logging lets readers proceed while the writer
+			 * thread commits and only requires a sync on checkpoints
+			 * when combined with synchronous=NORMAL. In-memory databases
+			 * simply ignore the journal mode.
 			 */
-			stmt.execute(maybeLogQuery(
-					"CREATE TABLE IF NOT EXISTS "+TBL_RECORD+" (\n" +
-					"    "+COL_ID+"        INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-					"    "+COL_WORKSPACE+" TEXT    NOT NULL,\n" +
-					"    "+COL_PATH+"      TEXT    NOT NULL,\n" +
-					"    "+COL_SCHEMA+"    TEXT    NOT NULL,\n" +
-					"    UNIQUE (\n" +
-					"        "+COL_WORKSPACE+" COLLATE NOCASE,\n" +
-					"        "+COL_PATH+" COLLATE NOCASE,\n" +
-					"        "+COL_SCHEMA+" COLLATE NOCASE\n" +
-					"    )\n" +
-					"    ON CONFLICT ABORT\n" +
-					");"));
+			if(!memory) {
+				stmt.execute("PRAGMA journal_mode = WAL");
+				stmt.execute("PRAGMA synchronous = NORMAL");
+				stmt.execute("PRAGMA mmap_size = "+MMAP_SIZE);
+			}
+			stmt.execute("PRAGMA cache_size = "+CACHE_SIZE);
 
-			/*
-			 *  CREATE INDEX "" ON rdh_record (
-				    workspace,
-				    path
-				);
-			 */
-			stmt.execute(maybeLogQuery(
-					"CREATE INDEX IF NOT EXISTS \"path_idx\" ON "+TBL_RECORD+" (\n" +
-					"    "+COL_WORKSPACE+",\n" +
-					"    "+COL_PATH+"\n" +
-					");"));
+			int version;
+			try(ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+				version = asInt(rs);
+			}
 
-			/*
-			 *  CREATE TABLE rdh_entry (
-				    record_id INTEGER REFERENCES rdh_record (id) ON DELETE CASCADE,
-				    property  TEXT    NOT NULL,
-				    value     TEXT    NOT NULL
-				);
-			 */
-			stmt.execute(maybeLogQuery(
-					"CREATE TABLE IF NOT EXISTS "+TBL_ENTRY+" (\n" +
-					"    "+COL_RECORD_ID+" INTEGER REFERENCES "+TBL_RECORD+" ("+COL_ID+") ON DELETE CASCADE,\n" +
-					"    "+COL_PROPERTY+"  TEXT    NOT NULL,\n" +
-					"    "+COL_VALUE+"     TEXT    NOT NULL\n" +
-					");"));
+			if(version>SCHEMA_VERSION)
+				throw new SQLException("Database schema version "+version
+						+" is newer than the supported version "+SCHEMA_VERSION);
+
+			if(version<SCHEMA_VERSION) {
+				migrate(stmt, version);
+			}
+		}
+	}
+
+	/**
+	 * Opens the connections used for all queries. File databases get
+	 * their own set of connections that are restricted to reading and
+	 * thanks to WAL mode never wait for the writer. An in-memory database
+	 * only exists for the connection that created it, so in that case
+	 * queries have to share the one connection with the writer and get
+	 * serialized with its transactions via the {@link #memoryLock}.
+	 */
+	private ReadConnectionPool openReaders() throws SQLException {
+		if(memory) {
+			return new ReadConnectionPool(Collections.singleton(connection));
+		}
+
+		Path path = rootFolder.resolve(DEFAULT_DB_FILE);
+
+		List<Connection> connections = new ArrayList<>(readConnections);
+		try {
+			for(int i = 0; i<readConnections; i++) {
+				Connection connection = DBUtils.connect("jdbc:sqlite:"+path);
+				connections.add(connection);
+
+				try(Statement stmt = connection.createStatement()) {
+					stmt.execute("PRAGMA query_only = ON");
+					stmt.execute("PRAGMA mmap_size = "+MMAP_SIZE);
+					stmt.execute("PRAGMA cache_size = "+CACHE_SIZE);
+				}
+			}
+		} catch (SQLException e) {
+			connections.forEach(DBUtils::closeSilently);
+			throw e;
+		}
+
+		return new ReadConnectionPool(connections);
+	}
+
+	/**
+	 * Runs the given query on one of the read connections.
+	 */
+	private <R> R read(SQLTask<R> task) throws SQLException {
+		ReadConnectionPool readers = this.readers;
+		if(readers==null)
+			throw new SQLException("Repository not started");
+
+		if(memory) {
+			synchronized (memoryLock) {
+				return readers.execute(task);
+			}
+		}
+
+		return readers.execute(task);
+	}
+
+	/**
+	 * Applies all migration steps necessary to go from the given {@code version}
+	 * to {@link #SCHEMA_VERSION} within a single transaction.
+	 * Version {@code 0} denotes either a fresh database or one created before
+	 * versioning was introduced, so the initial step must not fail on existing tables.
+	 */
+	private void migrate(Statement stmt, int version) throws SQLException {
+		log.info("Migrating metadata database from schema version {} to {}",
+				Integer.valueOf(version), Integer.valueOf(SCHEMA_VERSION));
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		boolean success = false;
+		try {
+			for(int v = version+1; v<=SCHEMA_VERSION; v++) {
+				switch (v) {
+				case 1: createTables(stmt); break;
+				case 2: createIndices(stmt); break;
+				case 3: createSearchIndex(stmt); break;
+
+				default:
+					throw new IllegalStateException("No migration defined for schema version "+v);
+				}
+			}
+
+			stmt.execute("PRAGMA user_version = "+SCHEMA_VERSION);
+
+			connection.commit();
+			success = true;
+		} finally {
+			if(!success) {
+				try {
+					connection.rollback();
+				} catch (SQLException e) {
+					log.error("Failed to roll back schema migration", e);
+				}
+			}
+			connection.setAutoCommit(autoCommit);
 		}
 	}
 
+	/**
+	 * Schema version 2: entries get looked up exclusively by their record,
+	 * so index them by record id. Including the remaining columns makes
+	 * this a covering index, so loading a record never touches the table itself.
+	 * Records are resolved by workspace, path and schema, so the old path index
+	 * gets replaced by one including the schema as well.
+	 */
+	private void createIndices(Statement stmt) throws SQLException {
+		/*
+		 *  CREATE INDEX "record_idx" ON rdh_record (
+			    workspace,
+			    path,
+			    schema
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE INDEX IF NOT EXISTS \"record_idx\" ON "+TBL_RECORD+" (\n" +
+				"    "+COL_WORKSPACE+",\n" +
+				"    "+COL_PATH+",\n" +
+				"    "+COL_SCHEMA+"\n" +
+				");"));
+		stmt.execute(maybeLogQuery("DROP INDEX IF EXISTS \"path_idx\""));
+
+		createEntryIndex(stmt);
+	}
+
+	private void createEntryIndex(Statement stmt) throws SQLException {
+		/*
+		 *  CREATE INDEX "entry_idx" ON rdh_entry (
+			    record_id,
+			    property,
+			    value
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE INDEX IF NOT EXISTS \"entry_idx\" ON "+TBL_ENTRY+" (\n" +
+				"    "+COL_RECORD_ID+",\n" +
+				"    "+COL_PROPERTY+",\n" +
+				"    "+COL_VALUE+"\n" +
+				");"));
+	}
+
+	/**
+	 * Schema version 3: full-text search over entry values.
+	 * The FTS5 table only indexes the values and takes their content
+	 * from the entry table itself, which is kept in sync via triggers.
+	 * External content requires stable row ids, so the entry table first
+	 * gets rebuilt with an explicit primary key (plain row ids may change
+	 * when the database gets vacuumed).
+	 */
+	private void createSearchIndex(Statement stmt) throws SQLException {
+		String tmpTable = TBL_ENTRY+"_v3";
+
+		/*
+		 *  CREATE TABLE rdh_entry (
+			    id        INTEGER PRIMARY KEY,
+			    record_id INTEGER REFERENCES rdh_record (id) ON DELETE CASCADE,
+			    property  TEXT    NOT NULL,
+			    value     TEXT    NOT NULL
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE TABLE "+tmpTable+" (\n" +
+				"    "+COL_ID+"        INTEGER PRIMARY KEY,\n" +
+				"    "+COL_RECORD_ID+" INTEGER REFERENCES "+TBL_RECORD+" ("+COL_ID+") ON DELETE CASCADE,\n" +
+				"    "+COL_PROPERTY+"  TEXT    NOT NULL,\n" +
+				"    "+COL_VALUE+"     TEXT    NOT NULL\n" +
+				");"));
+		stmt.execute(maybeLogQuery(
+				"INSERT INTO "+tmpTable+" ("+COL_ID+", "+COL_RECORD_ID+", "+COL_PROPERTY+", "+COL_VALUE+")\n" +
+				"SELECT rowid, "+COL_RECORD_ID+", "+COL_PROPERTY+", "+COL_VALUE+" FROM "+TBL_ENTRY));
+		stmt.execute(maybeLogQuery("DROP TABLE "+TBL_ENTRY));
+		stmt.execute(maybeLogQuery("ALTER TABLE "+tmpTable+" RENAME TO "+TBL_ENTRY));
+		createEntryIndex(stmt);
+
+		/*
+		 *  CREATE VIRTUAL TABLE rdh_entry_fts USING fts5 (
+			    value,
+			    content='rdh_entry',
+			    content_rowid='id',
+			    tokenize='unicode61 remove_diacritics 1'
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE VIRTUAL TABLE IF NOT EXISTS "+TBL_ENTRY_FTS+" USING fts5 (\n" +
+				"    "+COL_VALUE+",\n" +
+				"    content='"+TBL_ENTRY+"',\n" +
+				"    content_rowid='"+COL_ID+"',\n" +
+				"    tokenize='unicode61 remove_diacritics 1'\n" +
+				");"));
+
+		String insert = "INSERT INTO "+TBL_ENTRY_FTS+" (rowid, "+COL_VALUE+") VALUES (new."+COL_ID+", new."+COL_VALUE+");";
+		String delete = "INSERT INTO "+TBL_ENTRY_FTS+" ("+TBL_ENTRY_FTS+", rowid, "+COL_VALUE+") VALUES ('delete', old."+COL_ID+", old."+COL_VALUE+");";
+
+		stmt.execute(maybeLogQuery(
+				"CREATE TRIGGER IF NOT EXISTS "+TBL_ENTRY+"_ai AFTER INSERT ON "+TBL_ENTRY+" BEGIN\n" +
+				"    "+insert+"\n" +
+				"END"));
+		stmt.execute(maybeLogQuery(
+				"CREATE TRIGGER IF NOT EXISTS "+TBL_ENTRY+"_ad AFTER DELETE ON "+TBL_ENTRY+" BEGIN\n" +
+				"    "+delete+"\n" +
+				"END"));
+		stmt.execute(maybeLogQuery(
+				"CREATE TRIGGER IF NOT EXISTS "+TBL_ENTRY+"_au AFTER UPDATE ON "+TBL_ENTRY+" BEGIN\n" +
+				"    "+delete+"\n" +
+				"    "+insert+"\n" +
+				"END"));
+
+		// Index everything that's already there
+		stmt.execute(maybeLogQuery(
+				"INSERT INTO "+TBL_ENTRY_FTS+" ("+TBL_ENTRY_FTS+") VALUES ('rebuild')"));
+	}
+
+	/**
+	 * Schema version 1: the initial table layout
+	 */
+	private void createTables(Statement stmt) throws SQLException {
+		/*
+		 *  CREATE TABLE rdh_record (
+			    id        INTEGER PRIMARY KEY AUTOINCREMENT,
+			    workspace TEXT    NOT NULL,
+			    path      TEXT    NOT NULL,
+			    schema    TEXT    NOT NULL,
+			    UNIQUE (
+			        workspace COLLATE NOCASE,
+			        path COLLATE NOCASE
+			    )
+			    ON CONFLICT ABORT
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE TABLE IF NOT EXISTS "+TBL_RECORD+" (\n" +
+				"    "+COL_ID+"        INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+				"    "+COL_WORKSPACE+" TEXT    NOT NULL,\n" +
+				"    "+COL_PATH+"      TEXT    NOT NULL,\n" +
+				"    "+COL_SCHEMA+"    TEXT    NOT NULL,\n" +
+				"    UNIQUE (\n" +
+				"        "+COL_WORKSPACE+" COLLATE NOCASE,\n" +
+				"        "+COL_PATH+" COLLATE NOCASE,\n" +
+				"        "+COL_SCHEMA+" COLLATE NOCASE\n" +
+				"    )\n" +
+				"    ON CONFLICT ABORT\n" +
+				");"));
+
+		/*
+		 *  CREATE INDEX "" ON rdh_record (
+			    workspace,
+			    path
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE INDEX IF NOT EXISTS \"path_idx\" ON "+TBL_RECORD+" (\n" +
+				"    "+COL_WORKSPACE+",\n" +
+				"    "+COL_PATH+"\n" +
+				");"));
+
+		/*
+		 *  CREATE TABLE rdh_entry (
+			    record_id INTEGER REFERENCES rdh_record (id) ON DELETE CASCADE,
+			    property  TEXT    NOT NULL,
+			    value     TEXT    NOT NULL
+			);
+		 */
+		stmt.execute(maybeLogQuery(
+				"CREATE TABLE IF NOT EXISTS "+TBL_ENTRY+" (\n" +
+				"    "+COL_RECORD_ID+" INTEGER REFERENCES "+TBL_RECORD+" ("+COL_ID+") ON DELETE CASCADE,\n" +
+				"    "+COL_PROPERTY+"  TEXT    NOT NULL,\n" +
+				"    "+COL_VALUE+"     TEXT    NOT NULL\n" +
+				");"));
+	}
+
 	/**
 	 * @see bwfdm.replaydh.metadata.MetadataRepository#hasRecords(bwfdm.replaydh.metadata.MetadataRecord.Target)
 	 */
@@ -344,18 +857,28 @@ public class MetadataDB extends AbstractMetadataRespository {
 			return true;
 		}
 
-		try(Statement stmt = connection.createStatement(
-				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-			String workspace = target.getWorkspace();
-			String path = target.getPath();
-			String query = maybeLogQuery(
-					"SELECT count() FROM  (" +
-					"    SELECT * FROM "+TBL_RECORD+" " +
-					"    WHERE "+COL_WORKSPACE+"=\""+workspace+"\"\n" +
-					"        AND "+COL_PATH+"=\""+path+"\" LIMIT 1)");
-			ResultSet rs = stmt.executeQuery(query);
+		if(knownEmptyTargets.contains(target)) {
+			return false;
+		}
+
+		Collection<WriteOp> unwritten = getUnwrittenRecords(target);
+		if(!unwritten.isEmpty()) {
+			if(unwritten.stream().anyMatch(op -> !op.isDelete())) {
+				return true;
+			}
+			// Only removals pending, so check whether anything would remain
+			return !getRecords(target).isEmpty();
+		}
 
-			return asInt(rs) > 0;
+		try {
+			return read(c -> {
+				PreparedStatement stmt = c.prepare(SQL_HAS_RECORDS);
+				stmt.setString(1, target.getWorkspace());
+				stmt.setString(2, target.getPath());
+				try(ResultSet rs = stmt.executeQuery()) {
+					return rs.next();
+				}
+			}).booleanValue();
 		} catch (SQLException e) {
 			log.error("Failed to query database", e);
 		}
@@ -365,6 +888,7 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 	public void clearCache() {
 		cache.clear();
+		knownEmptyTargets.clear();
 	}
 
 	/**
@@ -381,7 +905,15 @@ public class MetadataDB extends AbstractMetadataRespository {
 	@Override
 	public RecordIterator getAvailableRecords() {
 
-		return new RecordIteratorImpl();
+		Executor prefetchExecutor = null;
+		if(prefetchPages) {
+			RDHClient client = getEnvironment().getClient();
+			if(client!=null) {
+				prefetchExecutor = client.getExecutorService();
+			}
+		}
+
+		return new RecordIteratorImpl(pageSize, prefetchExecutor);
 	}
 
 	/**
@@ -427,10 +959,16 @@ public class MetadataDB extends AbstractMetadataRespository {
 		MetadataRecord record = cache.getRecord(target, schemaId);
 
 		// If we got a cache miss try loading it
-		if(record==null) {
+		if(record==null && !knownEmptyTargets.contains(target)) {
 
-			// Create fresh buffer and read content from db
-			record = loadRecordFromDb(target, schemaId);
+			WriteOp op = getUnwrittenRecord(target, schemaId);
+			if(op!=null) {
+				// Database is not up to date yet
+				record = op.isDelete() ? null : op.record;
+			} else {
+				// Create fresh buffer and read content from db
+				record = loadRecordFromDb(target, schemaId);
+			}
 
 			// Cache result if one is available
 			if(record!=null) {
@@ -458,39 +996,50 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 		List<MetadataRecord> records = cache.getRecords(target);
 
-		if(records.isEmpty()) {
+		if(records.isEmpty() && !knownEmptyTargets.contains(target)) {
 			records = new ArrayList<>();
 
-			try(Statement stmt = connection.createStatement(
-					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-				String workspace = target.getWorkspace();
-				String path = target.getPath();
-				String query = maybeLogQuery(
-						"SELECT r."+COL_ID+", r."+COL_SCHEMA+", e."+COL_PROPERTY+", e."+COL_VALUE+"\n" +
-						"FROM "+TBL_ENTRY+" AS e\n" +
-						"INNER JOIN "+TBL_RECORD+" AS r ON r."+COL_ID+" = e."+COL_RECORD_ID+"\n" +
-						"WHERE r."+COL_WORKSPACE+" = \""+workspace+"\"\n" +
-						"    AND r."+COL_PATH+" = \""+path+"\"\n" +
-						"ORDER BY r."+COL_ID);
-				ResultSet rs = stmt.executeQuery(query);
-
-				int id = -1;
-				DefaultMetadataRecord record = null;
-				while(rs.next()) {
-					int newId = rs.getInt(1);
-					String schemaId = rs.getString(2);
-
-					if(record==null || newId != id) {
-						id = newId;
-						record = new DefaultMetadataRecord(target, schemaId);
-						records.add(record);
+			/*
+			 *  Writes committed while the query runs might be missed by it,
+			 *  so we need to know about them beforehand.
+			 */
+			Collection<WriteOp> unwritten = getUnwrittenRecords(target);
+
+			List<MetadataRecord> loaded = records;
+			try {
+				read(c -> {
+					PreparedStatement stmt = c.prepare(SQL_LOAD_RECORDS);
+					stmt.setString(1, target.getWorkspace());
+					stmt.setString(2, target.getPath());
+					try(ResultSet rs = stmt.executeQuery()) {
+						int id = -1;
+						DefaultMetadataRecord record = null;
+						while(rs.next()) {
+							int newId = rs.getInt(1);
+							String schemaId = rs.getString(2);
+
+							if(record==null || newId != id) {
+								id = newId;
+								record = new DefaultMetadataRecord(target, schemaId);
+								loaded.add(record);
+							}
+							record.addEntry(rs.getString(3), rs.getString(4));
+						}
 					}
-					record.addEntry(rs.getString(3), rs.getString(4));
-				}
+					return null;
+				});
 			} catch (SQLException e) {
 				log.error("Failed to query database", e);
 			}
 
+			// Bring in the writes the database didn't know about yet
+			for(WriteOp op : unwritten) {
+				records.removeIf(r -> op.schemaId.equals(r.getSchemaId()));
+				if(!op.isDelete()) {
+					records.add(op.record);
+				}
+			}
+
 			if(!records.isEmpty()) {
 				cache.addRecords(records);
 			}
@@ -499,141 +1048,639 @@ public class MetadataDB extends AbstractMetadataRespository {
 		return records;
 	}
 
-	private void saveRecordToDb(MetadataRecord record) {
-		int id = NO_ID;
-		/*
-		 *  If record existed, we need to erase content.
-		 *  The 'entry' table is essentially a triple store,
-		 *  so managing the dynamic content for a single record
-		 *  constantly would result in some coding overhead and
-		 *  simply erasing old data and inserting new one shouldn't
-		 *  be too painful on the performance side...
-		 */
-		try(Statement stmt = connection.createStatement()) {
-			id = getRecordId(stmt, record);
-			if(id != NO_ID) {
-				// Old record -> delete all the entries, but keep the "record" itself
-				String query = maybeLogQuery(
-						"DELETE\n" +
-						"FROM "+TBL_ENTRY+" AS e\n" +
-						"WHERE e."+COL_RECORD_ID+" = "+id);
-				stmt.execute(query);
-			} else {
-				// New record -> create entry in records table
-				Target target = record.getTarget();
-				String query = maybeLogQuery("INSERT INTO "+TBL_RECORD+" ("+COL_WORKSPACE+", "+COL_PATH+", "+COL_SCHEMA+")\n" +
-						"VALUES (\""+target.getWorkspace()+"\", \""+target.getPath()+"\", \""+record.getSchemaId()+"\")");
-				stmt.execute(query);
-
-				// Fetch record id
-				try(ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
-					id = asInt(rs);
-				}
-			}
+	/**
+	 * Maximum number of paths to be resolved by a single query, keeping
+	 * us below SQLite's default limit of 999 host parameters.
+	 */
+	private static final int MAX_TARGETS_PER_QUERY = 500;
 
-			// If record is empty, don't bother any further
-			if(record.getEntryCount()==0) {
-				return;
-			}
+	/**
+	 * Loads the records of all targets not already present in the cache with
+	 * one query per workspace and chunk of {@link #MAX_TARGETS_PER_QUERY} paths.
+	 *
+	 * @see bwfdm.replaydh.metadata.MetadataRepository#getRecords(java.util.Collection)
+	 */
+	@Override
+	public Map<Target, Collection<MetadataRecord>> getRecords(Collection<Target> targets) {
+		requireNonNull(targets);
 
-			/*
-			 * New record or previous data erased.
-			 * So either way, just run a batch insert of the rows
-			 * for our record.
-			 */
-			StringBuilder sb = new StringBuilder(50 + record.getEntryCount()*30);
-			sb.append("INSERT INTO "+TBL_ENTRY+" ("+COL_RECORD_ID+", "+COL_PROPERTY+", "+COL_VALUE+")\n VALUES ");
-			MutableInteger rows = new MutableInteger();
-			final int recordId = id;
-			record.forEachEntry(entry -> {
-				if(rows.getAndIncrement()>0) {
-					sb.append(",");
-				}
-				sb.append("\n(").append(recordId)
-					.append(", \"").append(entry.getName())
-					.append("\", \"").append(entry.getValue())
-					.append("\")");
-			});
+		Map<Target, Collection<MetadataRecord>> result = new LinkedHashMap<>();
+		Map<String, Map<String, Target>> missing = new LinkedHashMap<>();
 
-			String query = maybeLogQuery(sb.toString());
-			stmt.execute(query);
-		} catch (SQLException e) {
-			log.error("Failed to query database", e);
-			throw new MetadataException("Error while contacting database", e);
-		}
-	}
+		for(Target target : targets) {
+			if(result.containsKey(target)) {
+				continue;
+			}
 
-	private MetadataRecord loadRecordFromDb(Target target, String schemaId) {
-		try(Statement stmt = connection.createStatement()) {
-			String workspace = target.getWorkspace();
-			String path = target.getPath();
-			String query = maybeLogQuery(
-					"SELECT e."+COL_PROPERTY+", e."+COL_VALUE+" \n" +
-					"FROM "+TBL_ENTRY+" AS e, "+TBL_RECORD+" AS r\n" +
-					"WHERE r."+COL_WORKSPACE+" = \""+workspace+"\" \n" +
-					"    AND r."+COL_PATH+" = \""+path+"\"\n" +
-					"    AND r."+COL_SCHEMA+" = \""+schemaId+"\"\n" +
-					"    AND e."+COL_RECORD_ID+" = r."+COL_ID+"");
-			ResultSet rs = stmt.executeQuery(query);
-
-			DefaultMetadataRecord record = null;
-
-			while(rs.next()) {
-				// Lazily create the record if the query yielded actual results
-				if(record==null) {
-					record = new DefaultMetadataRecord(target, schemaId);
-				}
-				record.addEntry(rs.getString(1), rs.getString(2));
+			List<MetadataRecord> records = cache.getRecords(target);
+			if(records.isEmpty() && !knownEmptyTargets.contains(target)) {
+				records = new ArrayList<>();
+				missing.computeIfAbsent(target.getWorkspace(), w -> new HashMap<>())
+					.put(target.getPath(), target);
 			}
+			result.put(target, records);
+		}
 
-			return record;
-		} catch (SQLException e) {
-			log.error("Failed to query database", e);
-			return null;
+		if(!missing.isEmpty()) {
+			loadRecordsFromDb(missing, result);
 		}
+
+		return result;
 	}
 
-	private void deleteRecordFromDb(MetadataRecord record) {
-		try(Statement stmt = connection.createStatement()) {
-			Target target = record.getTarget();
-			String workspace = target.getWorkspace();
-			String path = target.getPath();
-			String schemaId = record.getSchemaId();
-			String query = maybeLogQuery(
-					"DELETE\n" +
-					"FROM "+TBL_RECORD+" AS r\n" +
-					"WHERE r."+COL_WORKSPACE+" = \""+workspace+"\" \n" +
-					"    AND r."+COL_PATH+" = \""+path+"\"\n" +
-					"    AND r."+COL_SCHEMA+" = \""+schemaId+"\"");
-			stmt.execute(query);
-		} catch (SQLException e) {
-			log.error("Failed to query database", e);
-			throw new MetadataException("Error while contacting database", e);
-		}
+	/**
+	 * @see bwfdm.replaydh.metadata.MetadataRepository#prefetchRecords(java.util.Collection)
+	 */
+	@Override
+	public void prefetchRecords(Collection<Target> targets) {
+		getRecords(targets);
 	}
 
-	private int getRecordId(Statement stmt, MetadataRecord record) throws SQLException {
-		int id =  record instanceof DbMetadataRecord ? ((DbMetadataRecord)record).getId() : NO_ID;
-		if(id != NO_ID) {
-			return id;
+	/**
+	 * Turns the given terms into a FTS5 query that requires each term to appear
+	 * as prefix of a token. Terms are quoted, so they can't be misinterpreted
+	 * as query syntax.
+	 */
+	private static String toMatchExpression(List<String> terms) {
+		StringBuilder sb = new StringBuilder();
+		for(String term : terms) {
+			if(sb.length()>0) {
+				sb.append(' ');
+			}
+			sb.append('"').append(term.replace("\"", "\"\"")).append("\"*");
 		}
+		return sb.toString();
+	}
 
-		Target target = record.getTarget();
-		String query = maybeLogQuery(
-				"SELECT r."+COL_ID+"\n" +
-				"FROM "+TBL_RECORD+" AS r\n" +
-				"WHERE r."+COL_WORKSPACE+" = \""+target.getWorkspace()+"\"\n" +
-				"    AND r."+COL_PATH+" = \""+target.getPath()+"\"\n" +
-				"    AND r."+COL_SCHEMA+" = \""+record.getSchemaId()+"\"");
-		try(ResultSet rs = stmt.executeQuery(query)) {
-			id = asInt(rs);
-		}
+	/**
+	 * Resolves the query via the full-text index. Every free text term and
+	 * every field restriction yields a set of records that match it, ranked
+	 * by the best {@code bm25} score among their entries. Results are the
+	 * intersection of those sets, ordered by the sum of their scores.
+	 *
+	 * @see bwfdm.replaydh.metadata.MetadataRepository#search(bwfdm.replaydh.metadata.MetadataQuery)
+	 */
+	@Override
+	public List<MetadataRecord> search(MetadataQuery query) {
+		requireNonNull(query);
 
-		if(record instanceof DbMetadataRecord) {
-			((DbMetadataRecord)record).setId(id);
+		if(query.isEmpty()) {
+			return Collections.emptyList();
 		}
 
-		return id;
+		// Search is based on the database alone
+		awaitPendingWrites();
+
+		List<String> matches = new ArrayList<>();
+		List<String> properties = new ArrayList<>();
+		for(String term : query.getTerms()) {
+			matches.add(toMatchExpression(Collections.singletonList(term)));
+			properties.add(null);
+		}
+		query.getFieldTerms().forEach((name, terms) -> {
+			matches.add(toMatchExpression(terms));
+			properties.add(name);
+		});
+
+		StringBuilder sb = new StringBuilder(500 * matches.size());
+		sb.append("WITH ");
+		for(int i = 0; i<matches.size(); i++) {
+			if(i>0) {
+				sb.append(",\n");
+			}
+			sb.append("m").append(i).append(" AS (\n")
+				.append("    SELECT e.").append(COL_RECORD_ID).append(" AS rid, MIN(f.score) AS score\n")
+				.append("    FROM (SELECT rowid, rank AS score FROM ").append(TBL_ENTRY_FTS)
+				.append(" WHERE ").append(TBL_ENTRY_FTS).append(" MATCH ?) AS f\n")
+				.append("    INNER JOIN ").append(TBL_ENTRY).append(" AS e ON e.").append(COL_ID).append(" = f.rowid\n");
+			if(properties.get(i)!=null) {
+				sb.append("    WHERE e.").append(COL_PROPERTY).append(" = ?\n");
+			}
+			sb.append("    GROUP BY e.").append(COL_RECORD_ID).append(")");
+		}
+		sb.append("\nSELECT r.").append(COL_WORKSPACE).append(", r.").append(COL_PATH)
+			.append(", r.").append(COL_SCHEMA).append("\n")
+			.append("FROM m0\n");
+		for(int i = 1; i<matches.size(); i++) {
+			sb.append("INNER JOIN m").append(i).append(" ON m").append(i).append(".rid = m0.rid\n");
+		}
+		sb.append("INNER JOIN ").append(TBL_RECORD).append(" AS r ON r.").append(COL_ID).append(" = m0.rid\n");
+		if(query.getSchemaId()!=null) {
+			sb.append("WHERE r.").append(COL_SCHEMA).append(" = ?\n");
+		}
+		sb.append("ORDER BY ");
+		for(int i = 0; i<matches.size(); i++) {
+			sb.append("m").append(i).append(".score + ");
+		}
+		sb.setLength(sb.length()-3);
+		sb.append(", r.").append(COL_ID).append("\n")
+			.append("LIMIT ? OFFSET ?");
+
+		List<Target> targets = new ArrayList<>();
+		List<String> schemaIds = new ArrayList<>();
+
+		String sql = maybeLogQuery(sb.toString());
+
+		try {
+			read(c -> {
+				PreparedStatement stmt = c.prepare(sql);
+				int index = 1;
+				for(int i = 0; i<matches.size(); i++) {
+					stmt.setString(index++, matches.get(i));
+					if(properties.get(i)!=null) {
+						stmt.setString(index++, properties.get(i));
+					}
+				}
+				if(query.getSchemaId()!=null) {
+					stmt.setString(index++, query.getSchemaId());
+				}
+				stmt.setInt(index++, query.getLimit());
+				stmt.setInt(index++, query.getOffset());
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					while(rs.next()) {
+						targets.add(Target.forString(rs.getString(1), rs.getString(2)));
+						schemaIds.add(rs.getString(3));
+					}
+				}
+				return null;
+			});
+		} catch (SQLException e) {
+			throw new MetadataException("Failed to search database", e);
+		}
+
+		// Fetch the actual records in bulk, mostly from cache
+		Map<Target, Collection<MetadataRecord>> records = getRecords(targets);
+
+		List<MetadataRecord> result = new ArrayList<>(targets.size());
+		for(int i = 0; i<targets.size(); i++) {
+			String schemaId = schemaIds.get(i);
+			records.get(targets.get(i)).stream()
+				.filter(r -> schemaId.equals(r.getSchemaId()))
+				.findFirst()
+				.ifPresent(result::add);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Fills the (empty) record lists in {@code result} for all the targets
+	 * in {@code missing}, which are grouped by workspace and path.
+	 */
+	private void loadRecordsFromDb(Map<String, Map<String, Target>> missing,
+			Map<Target, Collection<MetadataRecord>> result) {
+
+		/*
+		 *  Writes committed while the queries run might be missed by them,
+		 *  so we need to know about them beforehand.
+		 */
+		long writeCountBeforeLoad, completedBatchesBeforeLoad;
+		Map<Target, Collection<WriteOp>> unwritten = new HashMap<>();
+		synchronized (writeLock) {
+			writeCountBeforeLoad = writeCount;
+			completedBatchesBeforeLoad = completedBatches;
+			for(Map<String, Target> targetsByPath : missing.values()) {
+				for(Target target : targetsByPath.values()) {
+					Collection<WriteOp> ops = getUnwrittenRecords(target);
+					if(!ops.isEmpty()) {
+						unwritten.put(target, ops);
+					}
+				}
+			}
+		}
+
+		try {
+			read(c -> {
+				loadRecordsFromDb(c, missing, result);
+				return null;
+			});
+		} catch (SQLException e) {
+			log.error("Failed to query database", e);
+		}
+
+		List<MetadataRecord> loaded = new ArrayList<>();
+
+		for(Map<String, Target> targetsByPath : missing.values()) {
+			for(Target target : targetsByPath.values()) {
+				Collection<MetadataRecord> records = result.get(target);
+
+				// Bring in the writes the database didn't know about yet
+				for(WriteOp op : unwritten.getOrDefault(target, Collections.emptyList())) {
+					records.removeIf(r -> op.schemaId.equals(r.getSchemaId()));
+					if(!op.isDelete()) {
+						records.add(op.record);
+					}
+				}
+
+				loaded.addAll(records);
+			}
+		}
+
+		if(!loaded.isEmpty()) {
+			cache.addRecords(loaded);
+		}
+
+		/*
+		 *  Only remember empty targets if no write was issued since our snapshot
+		 *  and none reached the database while the queries were running.
+		 */
+		synchronized (writeLock) {
+			if(writeCount==writeCountBeforeLoad && completedBatches==completedBatchesBeforeLoad) {
+				for(Map<String, Target> targetsByPath : missing.values()) {
+					for(Target target : targetsByPath.values()) {
+						if(result.get(target).isEmpty()) {
+							knownEmptyTargets.add(target);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the actual queries for {@link #loadRecordsFromDb(Map, Map)}. The
+	 * statements vary in the number of paths, so they are not cached.
+	 */
+	private void loadRecordsFromDb(PooledConnection c, Map<String, Map<String, Target>> missing,
+			Map<Target, Collection<MetadataRecord>> result) throws SQLException {
+		for(Map.Entry<String, Map<String, Target>> entry : missing.entrySet()) {
+			String workspace = entry.getKey();
+			Map<String, Target> targetsByPath = entry.getValue();
+			List<String> paths = new ArrayList<>(targetsByPath.keySet());
+
+			for(int from = 0; from<paths.size(); from += MAX_TARGETS_PER_QUERY) {
+				List<String> chunk = paths.subList(from, Math.min(paths.size(), from+MAX_TARGETS_PER_QUERY));
+
+				StringBuilder sb = new StringBuilder(200 + chunk.size()*2);
+				sb.append("SELECT r.").append(COL_PATH).append(", r.").append(COL_ID)
+					.append(", r.").append(COL_SCHEMA).append(", e.").append(COL_PROPERTY)
+					.append(", e.").append(COL_VALUE).append("\n")
+					.append("FROM ").append(TBL_RECORD).append(" AS r\n")
+					.append("INNER JOIN ").append(TBL_ENTRY).append(" AS e ON e.")
+					.append(COL_RECORD_ID).append(" = r.").append(COL_ID).append("\n")
+					.append("WHERE r.").append(COL_WORKSPACE).append(" = ?\n")
+					.append("    AND r.").append(COL_PATH).append(" IN (");
+				for(int i = 0; i<chunk.size(); i++) {
+					sb.append(i==0 ? "?" : ", ?");
+				}
+				sb.append(")\n")
+					.append("ORDER BY r.").append(COL_ID);
+
+				try(PreparedStatement stmt = c.getConnection().prepareStatement(maybeLogQuery(sb.toString()))) {
+					stmt.setString(1, workspace);
+					for(int i = 0; i<chunk.size(); i++) {
+						stmt.setString(i+2, chunk.get(i));
+					}
+
+					try(ResultSet rs = stmt.executeQuery()) {
+						int id = NO_ID;
+						DefaultMetadataRecord record = null;
+						while(rs.next()) {
+							int newId = rs.getInt(2);
+
+							if(record==null || newId != id) {
+								id = newId;
+								Target target = targetsByPath.get(rs.getString(1));
+								record = new DefaultMetadataRecord(target, rs.getString(3));
+								result.get(target).add(record);
+							}
+							record.addEntry(rs.getString(4), rs.getString(5));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues the current content of the given record for being persisted
+	 * by the writer thread.
+	 */
+	private void saveRecordToDb(MetadataRecord record) {
+		enqueueWrite(WriteOp.save(record));
+	}
+
+	private MetadataRecord loadRecordFromDb(Target target, String schemaId) {
+		try {
+			return read(c -> {
+				PreparedStatement stmt = c.prepare(SQL_LOAD_RECORD);
+				stmt.setString(1, target.getWorkspace());
+				stmt.setString(2, target.getPath());
+				stmt.setString(3, schemaId);
+
+				DefaultMetadataRecord record = null;
+
+				try(ResultSet rs = stmt.executeQuery()) {
+					while(rs.next()) {
+						// Lazily create the record if the query yielded actual results
+						if(record==null) {
+							record = new DefaultMetadataRecord(target, schemaId);
+						}
+						record.addEntry(rs.getString(1), rs.getString(2));
+					}
+				}
+
+				return record;
+			});
+		} catch (SQLException e) {
+			log.error("Failed to query database", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Queues the removal of the given record for the writer thread.
+	 */
+	private void deleteRecordFromDb(MetadataRecord record) {
+		if(record instanceof DbMetadataRecord) {
+			((DbMetadataRecord)record).setId(NO_ID);
+		}
+		enqueueWrite(WriteOp.delete(record));
+	}
+
+	private void enqueueWrite(WriteOp op) {
+		synchronized (writeLock) {
+			writeCount++;
+			knownEmptyTargets.remove(op.target);
+			pendingWrites.computeIfAbsent(op.target, t -> new LinkedHashMap<>()).put(op.schemaId, op);
+			scheduleWrite();
+		}
+	}
+
+	/**
+	 * Hands over all pending writes to the writer thread unless an
+	 * update is currently in progress. Must be called while holding
+	 * the {@code writeLock}.
+	 */
+	private void scheduleWrite() {
+		if(!holdWrites && !writeScheduled && !pendingWrites.isEmpty() && writer!=null) {
+			writeScheduled = true;
+			writer.execute(this::writePendingRecords);
+		}
+	}
+
+	/**
+	 * Returns all the writes for the given target that might not be
+	 * visible in the database yet, with newer writes replacing older
+	 * ones for the same schema.
+	 */
+	private Collection<WriteOp> getUnwrittenRecords(Target target) {
+		synchronized (writeLock) {
+			Map<String, WriteOp> active = activeWrites.get(target);
+			Map<String, WriteOp> pending = pendingWrites.get(target);
+			if(active==null && pending==null) {
+				return Collections.emptyList();
+			}
+
+			Map<String, WriteOp> result = new LinkedHashMap<>();
+			if(active!=null) {
+				result.putAll(active);
+			}
+			if(pending!=null) {
+				result.putAll(pending);
+			}
+			return result.values();
+		}
+	}
+
+	private WriteOp getUnwrittenRecord(Target target, String schemaId) {
+		synchronized (writeLock) {
+			Map<String, WriteOp> ops = pendingWrites.get(target);
+			WriteOp op = ops==null ? null : ops.get(schemaId);
+			if(op==null) {
+				ops = activeWrites.get(target);
+				op = ops==null ? null : ops.get(schemaId);
+			}
+			return op;
+		}
+	}
+
+	/**
+	 * Makes sure that all writes issued so far have been persisted,
+	 * unless an update is still in progress, and reports any failure
+	 * that occurred on the writer thread since the last call to this
+	 * method.
+	 *
+	 * @throws MetadataException if persisting any records failed
+	 */
+	public void flush() {
+		awaitPendingWrites();
+
+		MetadataException failure = writeFailure;
+		if(failure!=null) {
+			writeFailure = null;
+			throw failure;
+		}
+	}
+
+	private void awaitPendingWrites() {
+		Future<?> barrier;
+		synchronized (writeLock) {
+			if(writer==null) {
+				return;
+			}
+			scheduleWrite();
+			// Single writer thread, so this only completes after all previously scheduled writes
+			barrier = writer.submit(() -> {});
+		}
+
+		try {
+			barrier.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MetadataException("Interrupted while waiting for pending records to be persisted", e);
+		} catch (ExecutionException e) {
+			throw new MetadataException("Failed to persist pending records", e.getCause());
+		}
+	}
+
+	/**
+	 * Persists all pending writes in a single database transaction.
+	 * Only ever executed on the writer thread.
+	 */
+	private void writePendingRecords() {
+		Map<Target, Map<String, WriteOp>> batch;
+		synchronized (writeLock) {
+			writeScheduled = false;
+			if(pendingWrites.isEmpty()) {
+				return;
+			}
+			batch = pendingWrites;
+			pendingWrites = new LinkedHashMap<>();
+			activeWrites = batch;
+		}
+
+		try {
+			if(memory) {
+				synchronized (memoryLock) {
+					writeToDb(batch);
+				}
+			} else {
+				writeToDb(batch);
+			}
+		} catch (SQLException e) {
+			log.error("Failed to persist {} metadata targets", Integer.valueOf(batch.size()), e);
+			writeFailure = new MetadataException("Error while contacting database", e);
+		} finally {
+			synchronized (writeLock) {
+				activeWrites = Collections.emptyMap();
+				completedBatches++;
+			}
+		}
+	}
+
+	private void prepareWriteStatements() throws SQLException {
+		if(stmtInsertEntry!=null) {
+			return;
+		}
+
+		stmtSelectRecordId = connection.prepareStatement(maybeLogQuery(
+				"SELECT "+COL_ID+" FROM "+TBL_RECORD+"\n" +
+				"WHERE "+COL_WORKSPACE+" = ? AND "+COL_PATH+" = ? AND "+COL_SCHEMA+" = ?"));
+		stmtInsertRecord = connection.prepareStatement(maybeLogQuery(
+				"INSERT INTO "+TBL_RECORD+" ("+COL_WORKSPACE+", "+COL_PATH+", "+COL_SCHEMA+")\n" +
+				"VALUES (?, ?, ?)"));
+		stmtLastInsertId = connection.prepareStatement("SELECT last_insert_rowid()");
+		stmtDeleteRecord = connection.prepareStatement(maybeLogQuery(
+				"DELETE FROM "+TBL_RECORD+"\n" +
+				"WHERE "+COL_WORKSPACE+" = ? AND "+COL_PATH+" = ? AND "+COL_SCHEMA+" = ?"));
+		stmtDeleteEntries = connection.prepareStatement(maybeLogQuery(
+				"DELETE FROM "+TBL_ENTRY+" WHERE "+COL_RECORD_ID+" = ?"));
+		stmtInsertEntry = connection.prepareStatement(maybeLogQuery(
+				"INSERT INTO "+TBL_ENTRY+" ("+COL_RECORD_ID+", "+COL_PROPERTY+", "+COL_VALUE+")\n" +
+				"VALUES (?, ?, ?)"));
+	}
+
+	private void closeWriteStatements() {
+		DBUtils.closeSilently(stmtSelectRecordId);
+		DBUtils.closeSilently(stmtInsertRecord);
+		DBUtils.closeSilently(stmtLastInsertId);
+		DBUtils.closeSilently(stmtDeleteRecord);
+		DBUtils.closeSilently(stmtDeleteEntries);
+		DBUtils.closeSilently(stmtInsertEntry);
+		stmtSelectRecordId = stmtInsertRecord = stmtLastInsertId = null;
+		stmtDeleteRecord = stmtDeleteEntries = stmtInsertEntry = null;
+	}
+
+	private static void bindRecord(PreparedStatement stmt, WriteOp op) throws SQLException {
+		stmt.setString(1, op.target.getWorkspace());
+		stmt.setString(2, op.target.getPath());
+		stmt.setString(3, op.schemaId);
+	}
+
+	/**
+	 * Writes the given batch of records within a single transaction.
+	 * Since there's at most one write per record, we can delay all the
+	 * modifications of the entry table and send them as JDBC batches.
+	 * Ids of new records are only assigned to them once the transaction
+	 * got committed, so a rollback never leaves records pointing to
+	 * rows that don't exist (or later belong to other records).
+	 */
+	private void writeToDb(Map<Target, Map<String, WriteOp>> batch) throws SQLException {
+		prepareWriteStatements();
+
+		List<WriteOp> saved = new ArrayList<>();
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		boolean success = false;
+		try {
+			for(Map<String, WriteOp> ops : batch.values()) {
+				for(WriteOp op : ops.values()) {
+					if(op.isDelete()) {
+						bindRecord(stmtDeleteRecord, op);
+						stmtDeleteRecord.addBatch();
+						continue;
+					}
+
+					/*
+					 *  If record existed, we need to erase content.
+					 *  The 'entry' table is essentially a triple store,
+					 *  so managing the dynamic content for a single record
+					 *  constantly would result in some coding overhead and
+					 *  simply erasing old data and inserting new one shouldn't
+					 *  be too painful on the performance side...
+					 */
+					int id = getRecordId(op);
+					if(id != NO_ID) {
+						// Old record -> delete all the entries, but keep the "record" itself
+						stmtDeleteEntries.setInt(1, id);
+						stmtDeleteEntries.addBatch();
+					} else {
+						// New record -> create entry in records table
+						bindRecord(stmtInsertRecord, op);
+						stmtInsertRecord.executeUpdate();
+
+						try(ResultSet rs = stmtLastInsertId.executeQuery()) {
+							id = asInt(rs);
+						}
+					}
+
+					op.newId = id;
+					saved.add(op);
+
+					for(int i = 0; i<op.names.length; i++) {
+						stmtInsertEntry.setInt(1, id);
+						stmtInsertEntry.setString(2, op.names[i]);
+						stmtInsertEntry.setString(3, op.values[i]);
+						stmtInsertEntry.addBatch();
+					}
+				}
+			}
+
+			stmtDeleteEntries.executeBatch();
+			stmtInsertEntry.executeBatch();
+			stmtDeleteRecord.executeBatch();
+
+			connection.commit();
+			success = true;
+		} finally {
+			if(!success) {
+				saved.clear();
+				stmtDeleteEntries.clearBatch();
+				stmtInsertEntry.clearBatch();
+				stmtDeleteRecord.clearBatch();
+				try {
+					connection.rollback();
+				} catch (SQLException e) {
+					log.error("Failed to roll back transaction", e);
+				}
+			}
+			connection.setAutoCommit(autoCommit);
+		}
+
+		synchronized (writeLock) {
+			for(WriteOp op : saved) {
+				// A removal issued in the meantime has already reset the id
+				if(!isDeletePending(op)) {
+					op.setId(op.newId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a removal of the given operation's record is
+	 * waiting to be written. Must be called while holding the
+	 * {@code writeLock}.
+	 */
+	private boolean isDeletePending(WriteOp op) {
+		Map<String, WriteOp> ops = pendingWrites.get(op.target);
+		WriteOp pending = ops==null ? null : ops.get(op.schemaId);
+		return pending!=null && pending.isDelete();
+	}
+
+	private int getRecordId(WriteOp op) throws SQLException {
+		int id = op.getId();
+		if(id != NO_ID) {
+			return id;
+		}
+
+		bindRecord(stmtSelectRecordId, op);
+		try(ResultSet rs = stmtSelectRecordId.executeQuery()) {
+			return asInt(rs);
+		}
 	}
 
 	private int asInt(ResultSet rs) throws SQLException {
@@ -686,7 +1733,7 @@ public class MetadataDB extends AbstractMetadataRespository {
 	 */
 	protected static class DbMetadataRecord extends DefaultMetadataRecord {
 
-		private int id = NO_ID;
+		private volatile int id = NO_ID;
 
 		public DbMetadataRecord(Target target, String schemaId) {
 			super(target, schemaId);
@@ -706,56 +1753,170 @@ public class MetadataDB extends AbstractMetadataRespository {
 	}
 
 	/**
-	 * Iterator that wraps around a {@link ResultSet} which is generated
-	 * dynamically and released once no longer needed.
+	 * Snapshot of a record to be written to or removed from the database.
+	 *
+	 * @author Markus Gärtner
+	 *
+	 */
+	private static class WriteOp {
+
+		static WriteOp save(MetadataRecord record) {
+			int count = record.getEntryCount();
+			List<String> names = new ArrayList<>(count);
+			List<String> values = new ArrayList<>(count);
+			record.forEachEntry(entry -> {
+				names.add(entry.getName());
+				values.add(entry.getValue());
+			});
+
+			return new WriteOp(record, names.toArray(new String[names.size()]),
+					values.toArray(new String[values.size()]));
+		}
+
+		static WriteOp delete(MetadataRecord record) {
+			return new WriteOp(record, null, null);
+		}
+
+		final MetadataRecord record;
+		final Target target;
+		final String schemaId;
+
+		/**
+		 * Entry content, {@code null} for removals
+		 */
+		final String[] names, values;
+
+		/**
+		 * Id of the record in the database, only valid once the
+		 * write got committed. Confined to the writer thread.
+		 */
+		int newId = NO_ID;
+
+		private WriteOp(MetadataRecord record, String[] names, String[] values) {
+			this.record = requireNonNull(record);
+			this.target = record.getTarget();
+			this.schemaId = record.getSchemaId();
+			this.names = names;
+			this.values = values;
+		}
+
+		boolean isDelete() {
+			return names==null;
+		}
+
+		int getId() {
+			return record instanceof DbMetadataRecord ? ((DbMetadataRecord)record).getId() : NO_ID;
+		}
+
+		void setId(int id) {
+			if(record instanceof DbMetadataRecord) {
+				((DbMetadataRecord)record).setId(id);
+			}
+		}
+	}
+
+	/**
+	 * Iterates all records in the database in pages of {@link #pageSize} rows.
+	 * Pages are fetched via keyset pagination on the record id, so no statement
+	 * or cursor remains open between pages and the database stays available to
+	 * the writer. If an executor is available, the next page gets loaded in the
+	 * background while the current one is being consumed.
 	 *
 	 * @author Markus Gärtner
 	 *
 	 */
 	protected class RecordIteratorImpl implements RecordIterator {
 
-		private Statement stmt;
-		private ResultSet rs;
-		private Target nextTarget;
+		private final int pageSize;
+		/** Executor for loading the next page in advance, may be {@code null} */
+		private final Executor prefetchExecutor;
+
+		private List<Target> page = Collections.emptyList();
+		private int cursor = 0;
+		private int lastId = NO_ID;
+		private boolean exhausted = false;
 		private boolean loaded = false;
 
+		private CompletableFuture<Page> nextPage;
+
+		protected RecordIteratorImpl(int pageSize, Executor prefetchExecutor) {
+			checkArgument("Page size must be greater than 0", pageSize>0);
+
+			this.pageSize = pageSize;
+			this.prefetchExecutor = prefetchExecutor;
+		}
+
+		private Page loadPage(int afterId) {
+			List<Target> targets = new ArrayList<>(pageSize);
+			int id;
+
+			try {
+				id = read(c -> {
+					PreparedStatement stmt = c.prepare(SQL_LOAD_PAGE);
+					stmt.setInt(1, afterId);
+					stmt.setInt(2, pageSize);
+
+					int lastId = afterId;
+					try(ResultSet rs = stmt.executeQuery()) {
+						while(rs.next()) {
+							lastId = rs.getInt(1);
+							targets.add(Target.forString(rs.getString(2), rs.getString(3)));
+						}
+					}
+					return Integer.valueOf(lastId);
+				}).intValue();
+			} catch (SQLException e) {
+				throw new MetadataException("Error while contacting database", e);
+			}
+
+			return new Page(targets, id);
+		}
+
+		private Page awaitPage(CompletableFuture<Page> future) {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof MetadataException)
+					throw (MetadataException) cause;
+				throw new MetadataException("Error while contacting database", cause);
+			}
+		}
+
 		/**
 		 * @see java.util.Iterator#hasNext()
 		 */
 		@Override
 		public boolean hasNext() {
-			if(nextTarget != null) {
+			if(cursor<page.size()) {
 				return true;
 			}
 
-			if(stmt == null && !loaded) {
-				try {
-					stmt = connection.createStatement();
-					String query = maybeLogQuery(
-							"SELECT r."+COL_WORKSPACE+", r."+COL_PATH+" \n" +
-							"FROM "+TBL_RECORD+" AS r");
-					rs = stmt.executeQuery(query);
-				} catch (SQLException e) {
-					throw new MetadataException("Error while contacting database", e);
-				}
+			if(exhausted) {
+				return false;
 			}
 
-			if(rs == null) {
-				return false;
+			if(!loaded) {
+				// Iteration is based on the database alone
+				awaitPendingWrites();
+				loaded = true;
 			}
 
-			try {
-				if(!rs.next()) {
-					close();
-					return false;
-				}
+			Page current = nextPage==null ? loadPage(lastId) : awaitPage(nextPage);
+			nextPage = null;
 
-				nextTarget = Target.forString(rs.getString(1), rs.getString(2));
-			} catch (SQLException e) {
-				throw new MetadataException("Error while contacting database", e);
+			page = current.targets;
+			cursor = 0;
+			lastId = current.lastId;
+
+			if(page.size()<pageSize) {
+				exhausted = true;
+			} else if(prefetchExecutor!=null) {
+				int afterId = lastId;
+				nextPage = CompletableFuture.supplyAsync(() -> loadPage(afterId), prefetchExecutor);
 			}
 
-			return nextTarget != null;
+			return cursor<page.size();
 		}
 
 		/**
@@ -763,13 +1924,10 @@ public class MetadataDB extends AbstractMetadataRespository {
 		 */
 		@Override
 		public Target next() {
-			Target target = nextTarget;
-			if(target == null)
+			if(!hasNext())
 				throw new NoSuchElementException();
 
-			nextTarget = null;
-
-			return target;
+			return page.get(cursor++);
 		}
 
 		/**
@@ -777,13 +1935,29 @@ public class MetadataDB extends AbstractMetadataRespository {
 		 */
 		@Override
 		public void close() {
-			DBUtils.closeSilently(stmt);
-			stmt = null;
-			rs = null;
+			exhausted = true;
+			page = Collections.emptyList();
+			cursor = 0;
+
+			if(nextPage!=null) {
+				nextPage.cancel(false);
+				nextPage = null;
+			}
 		}
 
 	}
 
+	private static class Page {
+		final List<Target> targets;
+		/** Id of the last record in this page */
+		final int lastId;
+
+		Page(List<Target> targets, int lastId) {
+			this.targets = targets;
+			this.lastId = lastId;
+		}
+	}
+
 	/**
 	 *
 	 * @author Markus Gärtner
@@ -797,6 +1971,12 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 		public static final boolean DEFAULT_EMPTY_SCHEMA_AS_FALLBACK = false;
 
+		public static final int DEFAULT_PAGE_SIZE = 500;
+
+		public static final boolean DEFAULT_PREFETCH_PAGES = true;
+
+		public static final int DEFAULT_READ_CONNECTIONS = 3;
+
 		private Path rootFolder;
 
 		private Function<MetadataRecord, String> nameGenerator;
@@ -811,6 +1991,12 @@ public class MetadataDB extends AbstractMetadataRespository {
 
 		private Boolean emptySchemaAsFallback;
 
+		private Integer pageSize;
+
+		private Boolean prefetchPages;
+
+		private Integer readConnections;
+
 		private MetadataSchema defaultSchema;
 
 		/**
@@ -889,6 +2075,44 @@ public class MetadataDB extends AbstractMetadataRespository {
 			return this;
 		}
 
+		/**
+		 * Number of records to fetch per query when {@link MetadataDB#getAvailableRecords() iterating}
+		 * all records.
+		 */
+		public Builder pageSize(int pageSize) {
+			checkArgument("Page size must be greater than 0", pageSize>0);
+			checkState("Page size set", this.pageSize==null);
+
+			this.pageSize = Integer.valueOf(pageSize);
+
+			return this;
+		}
+
+		/**
+		 * Whether or not to fetch the next page of records in the background
+		 * while {@link MetadataDB#getAvailableRecords() iterating} all records.
+		 */
+		public Builder prefetchPages(boolean prefetchPages) {
+			checkState("Prefetch flag set", this.prefetchPages==null);
+
+			this.prefetchPages = Boolean.valueOf(prefetchPages);
+
+			return this;
+		}
+
+		/**
+		 * Number of read-only connections used for queries against a file
+		 * database. In-memory databases always use a single connection.
+		 */
+		public Builder readConnections(int readConnections) {
+			checkArgument("Number of read connections must be greater than 0", readConnections>0);
+			checkState("Number of read connections set", this.readConnections==null);
+
+			this.readConnections = Integer.valueOf(readConnections);
+
+			return this;
+		}
+
 		public MetadataSchema getDefaultSchema() {
 			return defaultSchema;
 		}
@@ -917,6 +2141,18 @@ public class MetadataDB extends AbstractMetadataRespository {
 			return verbose==null ? DEFAULT_VERBOSE : verbose.booleanValue();
 		}
 
+		public int getPageSize() {
+			return pageSize==null ? DEFAULT_PAGE_SIZE : pageSize.intValue();
+		}
+
+		public boolean isPrefetchPages() {
+			return prefetchPages==null ? DEFAULT_PREFETCH_PAGES : prefetchPages.booleanValue();
+		}
+
+		public int getReadConnections() {
+			return readConnections==null ? DEFAULT_READ_CONNECTIONS : readConnections.intValue();
+		}
+
 		public boolean isEmptySchemaAsFallback() {
 			return emptySchemaAsFallback==null ? DEFAULT_EMPTY_SCHEMA_AS_FALLBACK : emptySchemaAsFallback.booleanValue();
 		}
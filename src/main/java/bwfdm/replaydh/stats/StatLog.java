@@ -108,6 +108,18 @@ public class StatLog extends AbstractRDHTool {
 		}
 	}
 
+	/**
+	 * Returns whether this log is started and actually collecting
+	 * entries. Tools that report during their own shutdown should
+	 * check this first, as the order in which tools get stopped is
+	 * undefined.
+	 */
+	public boolean isActive() {
+		synchronized (lock) {
+			return isStarted() && active;
+		}
+	}
+
 	public void log(StatEntry entry) {
 		checkStarted();
 
@@ -37,6 +37,7 @@ public final class GuiStats implements Stats {
 	public static final String OPEN_WORKSPACE = "open_workspace";
 	public static final String CLEAR_CACHE = "clear_cache";
 	public static final String UPDATE_TRACKER = "update_tracker";
+	public static final String RESOLVE_FILES = "resolve_files";
 
 	public static final String WINDOW_EXPAND = "window_expand";
 	public static final String WINDOW_COLLAPSE = "window_collapse";
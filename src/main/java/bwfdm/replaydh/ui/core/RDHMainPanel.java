@@ -46,7 +46,9 @@ import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -96,6 +98,7 @@ import bwfdm.replaydh.git.GitRemoteImporterWizard.GitRemoteImporterContext;
 import bwfdm.replaydh.io.FileTracker;
 import bwfdm.replaydh.io.IOUtils;
 import bwfdm.replaydh.io.LocalFileObject;
+import bwfdm.replaydh.io.ParallelFileResolver;
 import bwfdm.replaydh.io.TrackerException;
 import bwfdm.replaydh.io.TrackerListener;
 import bwfdm.replaydh.io.TrackingAction;
@@ -1824,6 +1827,9 @@ public class RDHMainPanel extends JPanel implements CloseableUI, JMenuBarSource
 				resolveFiles(TrackingStatus.MODIFIED, modifiedFiles);
 			}
 
+			// Don't risk losing all the freshly computed checksums
+			environment.getClient().getChecksumCache().flush();
+
 			return true;
 		}
 
@@ -2015,20 +2021,33 @@ public class RDHMainPanel extends JPanel implements CloseableUI, JMenuBarSource
 			WorkflowSchema workflowSchema = environment.getWorkspace().getSchema();
 			MetadataRepository repository = environment.getClient().getLocalMetadataRepository();
 
-			for(Resource resource : newResources) {
-				Identifier path = resource.getIdentifier(IdentifierType.PATH);
-				if(path==null) {
-					continue;
-				}
-				Target target = Target.forIdentifier(environment.getWorkspacePath(), path);
+			Map<Resource, Target> targets = collectTargets(newResources);
+			repository.prefetchRecords(targets.values());
 
-				MetadataRecord record = repository.getRecord(target, schemaId);
+			for(Map.Entry<Resource, Target> entry : targets.entrySet()) {
+				Resource resource = entry.getKey();
+				MetadataRecord record = repository.getRecord(entry.getValue(), schemaId);
 				if(record!=null) {
 					metadataFiller.fillResource(environment, workflowSchema, record, resource);
 				}
 			}
 		}
 
+		/**
+		 * Maps all resources that carry a {@link IdentifierType#PATH path}
+		 * identifier to their respective metadata {@link Target}.
+		 */
+		private Map<Resource, Target> collectTargets(Set<Resource> resources) {
+			Map<Resource, Target> targets = new LinkedHashMap<>();
+			for(Resource resource : resources) {
+				Identifier path = resource.getIdentifier(IdentifierType.PATH);
+				if(path!=null) {
+					targets.put(resource, Target.forIdentifier(environment.getWorkspacePath(), path));
+				}
+			}
+			return targets;
+		}
+
 		private void fillRecords(WorkflowStep step) {
 			if(metadataFiller==null) {
 				return;
@@ -2048,16 +2067,16 @@ public class RDHMainPanel extends JPanel implements CloseableUI, JMenuBarSource
 			String schemaId = DublinCoreSchema11.ID;
 			WorkflowSchema workflowSchema = environment.getWorkspace().getSchema();
 			MetadataRepository repository = environment.getClient().getLocalMetadataRepository();
+
+			// Resolve all records in one go instead of hitting the repository per resource
+			Map<Resource, Target> targets = collectTargets(resources);
+			repository.prefetchRecords(targets.values());
+
 			repository.beginUpdate();
 			try {
-				for(Resource resource : resources) {
-					Identifier path = resource.getIdentifier(IdentifierType.PATH);
-					if(path==null) {
-						continue;
-					}
-					Target target = Target.forIdentifier(environment.getWorkspacePath(), path);
-
-					MetadataRecord record = repository.ensureRecord(target, schemaId);
+				for(Map.Entry<Resource, Target> entry : targets.entrySet()) {
+					Resource resource = entry.getKey();
+					MetadataRecord record = repository.ensureRecord(entry.getValue(), schemaId);
 
 					if(!(record instanceof MutableMetadataRecord)) {
 						continue;
@@ -2187,21 +2206,30 @@ public class RDHMainPanel extends JPanel implements CloseableUI, JMenuBarSource
 				return;
 			}
 
-			for(Path file : files) {
-				if(Thread.interrupted())
-					throw new InterruptedException();
+			ParallelFileResolver resolver = new ParallelFileResolver(environment);
 
-				file = RDHUtils.normalize(file);
+			long start = System.nanoTime();
 
-				// Wrap file
-				LocalFileObject fileObject = new LocalFileObject(file, trackingStatus);
-
-				// Attempt to create identifiers and resolve file to resource and metadata record
-				if(LocalFileObject.ensureOrRefreshResource(fileObject, environment)) {
+			// Attempt to create identifiers and resolve files to resources and metadata records
+			resolver.resolve(files, trackingStatus, (fileObject, refreshed) -> {
+				if(refreshed) {
 					publish(fileObject);
 				}
 				buffer.add(fileObject);
-			}
+			});
+
+			long millis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
+			// Throughput only makes sense for the bytes we actually had to read
+			long bytes = resolver.getBytesHashed();
+			double throughput = (bytes / (1024.0 * 1024.0)) / (millis / 1000.0);
+
+			logStat(StatEntry.withData(StatType.INTERNAL_ACTION, GuiStats.RESOLVE_FILES,
+					trackingStatus.name(),
+					String.valueOf(files.size()),
+					String.valueOf(bytes),
+					String.valueOf(resolver.getBytesCached()),
+					String.valueOf(millis),
+					String.format(Locale.ROOT, "%.2f", throughput)));
 		}
 
 		/**
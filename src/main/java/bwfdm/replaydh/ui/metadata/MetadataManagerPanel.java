@@ -57,6 +57,8 @@ import javax.swing.JTable;
 import javax.swing.JToolBar;
 import javax.swing.JTree;
 import javax.swing.ListSelectionModel;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultTreeSelectionModel;
@@ -194,6 +196,7 @@ public class MetadataManagerPanel extends JPanel implements CloseableUI {
 		treeSelectionModel.setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 		workspaceTree.setSelectionModel(treeSelectionModel);
 		workspaceTree.addTreeSelectionListener(handler);
+		workspaceTree.addTreeExpansionListener(handler);
 		workspaceTree.setCellRenderer(new TargetRenderer());
 
 		JScrollPane leftScrollPane = new JScrollPane(workspaceTree);
@@ -245,6 +248,10 @@ public class MetadataManagerPanel extends JPanel implements CloseableUI {
 		workspaceTreeModel.setRootFolder(path);
 		recordPanel.reset(null);
 
+		if(path!=null) {
+			prefetchRecords(workspaceTreeModel.getRoot());
+		}
+
 		refreshActions();
 	}
 
@@ -275,6 +282,31 @@ public class MetadataManagerPanel extends JPanel implements CloseableUI {
 		return Target.forFile(environment.getWorkspacePath(), path);
 	}
 
+	/**
+	 * Asks the repository to load the records for all files directly
+	 * contained in the given node of the workspace tree, so that the
+	 * renderer doesn't trigger an individual lookup for every row.
+	 */
+	private void prefetchRecords(Object parent) {
+		Path workspace = environment.getWorkspacePath();
+		if(workspace==null) {
+			return;
+		}
+
+		List<Target> targets = new ArrayList<>();
+		int childCount = workspaceTreeModel.getChildCount(parent);
+		for(int i=0; i<childCount; i++) {
+			Object child = workspaceTreeModel.getChild(parent, i);
+			if(child instanceof Path && !Files.isDirectory((Path)child, LinkOption.NOFOLLOW_LINKS)) {
+				targets.add(Target.forFile(workspace, (Path) child));
+			}
+		}
+
+		if(!targets.isEmpty()) {
+			repository.prefetchRecords(targets);
+		}
+	}
+
 	private Editor<MetadataBuilder> createEditorForBuild() {
 		return new MetadataUIBuilder();
 	}
@@ -605,7 +637,8 @@ public class MetadataManagerPanel extends JPanel implements CloseableUI {
 		}
 	}
 
-	private class Handler implements TreeSelectionListener, PropertyChangeListener, MetadataListener, TrackerListener {
+	private class Handler implements TreeSelectionListener, TreeExpansionListener,
+			PropertyChangeListener, MetadataListener, TrackerListener {
 
 		/**
 		 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
@@ -626,6 +659,22 @@ public class MetadataManagerPanel extends JPanel implements CloseableUI {
 			}
 		}
 
+		/**
+		 * @see javax.swing.event.TreeExpansionListener#treeExpanded(javax.swing.event.TreeExpansionEvent)
+		 */
+		@Override
+		public void treeExpanded(TreeExpansionEvent event) {
+			prefetchRecords(event.getPath().getLastPathComponent());
+		}
+
+		/**
+		 * @see javax.swing.event.TreeExpansionListener#treeCollapsed(javax.swing.event.TreeExpansionEvent)
+		 */
+		@Override
+		public void treeCollapsed(TreeExpansionEvent event) {
+			// no-op
+		}
+
 		private void refreshWorkspaceInfo(ActionEvent ae) {
 			reset();
 		}
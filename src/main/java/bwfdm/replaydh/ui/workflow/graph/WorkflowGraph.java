@@ -25,6 +25,8 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
@@ -166,6 +168,8 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 
 	private final AtomicBoolean isBuilding = new AtomicBoolean(false);
 
+	private final AtomicBoolean isLoadingOlderSteps = new AtomicBoolean(false);
+
 	// Register our custom renderer for workflow step nodes
 	static {
 		mxGraphics2DCanvas.putShape(SHAPE_WORKFLOW_STEP, new WorkflowStepShape());
@@ -364,6 +368,7 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 
 		graphComponent.getGraphControl().addMouseListener(handler);
 		graphComponent.getGraphControl().addMouseWheelListener(handler);
+		graphComponent.getHorizontalScrollBar().addAdjustmentListener(handler);
 
 		graph.getSelectionModel().addListener(null, handler);
 
@@ -717,6 +722,31 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 		GuiUtils.invokeEDTLater(this::refreshActions);
 	}
 
+	/**
+	 * Loads the next chunk of older steps of the current workflow in the
+	 * background. The graph gets rebuilt once the workflow reports them.
+	 */
+	public void loadOlderSteps() {
+		final Workflow workflow = this.workflow;
+		if(workflow==null || workflow.isClosed()) {
+			return;
+		}
+
+		if(isLoadingOlderSteps.compareAndSet(false, true)) {
+			environment.execute(() -> {
+				try {
+					if(!workflow.isClosed() && workflow.hasOlderSteps()) {
+						workflow.loadOlderSteps();
+					}
+				} catch(RDHException e) {
+					log.error("Failed to load older steps of workflow", e);
+				} finally {
+					isLoadingOlderSteps.set(false);
+				}
+			});
+		}
+	}
+
 	public void setWorkflow(Workflow workflow) {
 		Workflow oldValue = this.workflow;
 
@@ -930,16 +960,17 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 			}
 
 			Set<WorkflowStep> steps = getSelectedSteps();
-			if(steps.isEmpty()) {
-				steps = getWorkflow().getAllSteps();
-			}
 
 			WorkflowExportContext context = initExportContext();
 			context.workflowScope(WorkflowScope.PART);
 			context.type(Type.METADATA);
 			context.targetStep(step);
 			context.objectScope(ObjectScope.WORKSPACE);
-			context.steps(steps);
+			if(steps.isEmpty()) {
+				context.allSteps();
+			} else {
+				context.steps(steps);
+			}
 
 			doExport(context);
 		}
@@ -1003,7 +1034,7 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 						.workflow(workflow)
 						.targetStep(workflow.getActiveStep())
 						.objectScope(ObjectScope.WORKSPACE)
-						.steps(workflow.getAllSteps())
+						.allSteps()
 						.workflowScope(WorkflowScope.WORKFLOW)
 						.build();
 
@@ -1147,7 +1178,9 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 		}
 	}
 
-	private class Handler extends MouseAdapter implements WorkflowListener, mxIEventListener {
+	private class Handler extends MouseAdapter implements WorkflowListener, mxIEventListener, AdjustmentListener {
+
+		private int lastScrollValue = 0;
 
 		/**
 		 * Check to make sure that we only ever react to
@@ -1209,6 +1242,24 @@ public class WorkflowGraph extends AbstractPropertyChangeSource implements Close
 			}
 		}
 
+		/**
+		 * Loads older steps once the view got scrolled to the very beginning
+		 * of the graph. Only reacts to actual movement towards the beginning,
+		 * so that graphs fitting entirely into the view don't trigger loading.
+		 *
+		 * @see java.awt.event.AdjustmentListener#adjustmentValueChanged(java.awt.event.AdjustmentEvent)
+		 */
+		@Override
+		public void adjustmentValueChanged(AdjustmentEvent e) {
+			int value = e.getValue();
+			int previousValue = lastScrollValue;
+			lastScrollValue = value;
+
+			if(value<previousValue && value==e.getAdjustable().getMinimum()) {
+				loadOlderSteps();
+			}
+		}
+
 		private void maybeInitRebuild(Workflow workflow) {
 			if(isRelevantWorkflow(workflow)) {
 				WorkflowGraph.this.initRebuild();
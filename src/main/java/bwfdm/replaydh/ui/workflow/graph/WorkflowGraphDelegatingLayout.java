@@ -21,8 +21,10 @@ package bwfdm.replaydh.ui.workflow.graph;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
@@ -170,19 +172,13 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 	private static final int FLAG_PIPE = WorkflowNode.createFlag();
 
 	protected void workflow2Graph(final Workflow workflow) {
-		// Pending steps
-		Stack<WorkflowStep> steps = new Stack<>();
-
-		// Start with initial step
-		steps.add(workflow.getInitialStep());
-
 		final Object parent = getGraph().getDefaultParent();
 
 		final Set<WorkflowNode> segments = new HashSet<>();
+		final Set<WorkflowNode> borders = new HashSet<>();
 
-		// First pass: map all steps to segments
-		while(!steps.isEmpty()) {
-			WorkflowStep step = steps.pop();
+		// First pass: map all known steps to segments, starting with the oldest ones
+		for(WorkflowStep step : collectKnownSteps(workflow)) {
 
 			// No processing nodes again
 			if(isMapped(step)) {
@@ -190,7 +186,7 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 			}
 
 			boolean stepHidden = false;
-			boolean canHide = WorkflowUtils.canHide(step);
+			boolean canHide = canHide(workflow, step);
 
 			WorkflowNode node = null;
 
@@ -201,7 +197,7 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 				if(previous!=workflow.getInitialStep()) {
 					node = getNode(previous);
 
-					if(node.isFlagSet(FLAG_PIPE)) {
+					if(node!=null && node.isFlagSet(FLAG_PIPE)) {
 						node.addHiddenStep(step);
 
 						// Map step to the segment that hides it
@@ -218,20 +214,27 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 			if(!stepHidden) {
 				node = defaultMakeNode(parent, step);
-			}
 
-			node.setFlag(FLAG_PIPE, WorkflowUtils.isPipe(step));
+				if(isHistoryBorder(workflow, step)) {
+					borders.add(node);
+				}
+			}
 
-			// Add all outgoing steps for subsequent processing
-			steps.addAll(workflow.getNextSteps(step));
+			node.setFlag(FLAG_PIPE, isPipe(workflow, step));
 		}
 
 		// Second pass: now perform the linking
 		forEachNode(node -> {
 			WorkflowStep step = (WorkflowStep) node.getValue();
+			// Parents of border steps are not loaded yet
+			if(!workflow.hasLoadedLinks(step, true)) {
+				return;
+			}
 			workflow.forEachPreviousStep(step, previous -> {
 				// The linking method will ensure not to create redundant edges
-				defaultMakeLink(parent, previous, step);
+				if(isMapped(previous)) {
+					defaultMakeLink(parent, previous, step);
+				}
 			});
 		});
 
@@ -240,6 +243,81 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 		for(WorkflowNode segment : segments) {
 			addHiddenStepCountOverlay(segment);
 		}
+		for(WorkflowNode border : borders) {
+			addOlderStepsOverlay(border);
+		}
+	}
+
+	/**
+	 * Returns the steps of the given workflow that are currently known, without
+	 * loading older parts of it. The returned steps are ordered so that each step
+	 * comes after all its previous steps. The initial step is only included once
+	 * the entire workflow has been loaded, since before that it can't be linked
+	 * to any of the known steps anyway.
+	 */
+	private static Collection<WorkflowStep> collectKnownSteps(Workflow workflow) {
+		final Set<WorkflowStep> known = new HashSet<>(workflow.getKnownSteps());
+		if(workflow.hasOlderSteps()) {
+			known.remove(workflow.getInitialStep());
+		}
+
+		// Fetch the data of all the steps we're going to display at once
+		workflow.prefetchSteps(known);
+
+		final Set<WorkflowStep> result = new LinkedHashSet<>();
+		final Set<WorkflowStep> visited = new HashSet<>();
+		final Stack<WorkflowStep> pending = new Stack<>();
+
+		// Depth-first walk against the direction of links, adding steps on the way back
+		for(WorkflowStep start : known) {
+			pending.push(start);
+
+			while(!pending.isEmpty()) {
+				WorkflowStep step = pending.peek();
+				if(visited.add(step)) {
+					if(workflow.hasLoadedLinks(step, true)) {
+						workflow.forEachPreviousStep(step, previous -> {
+							if(known.contains(previous) && !visited.contains(previous)) {
+								pending.push(previous);
+							}
+						});
+					}
+				} else {
+					pending.pop();
+					result.add(step);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns whether older steps linked to the given one are still waiting to be loaded.
+	 */
+	private static boolean isHistoryBorder(Workflow workflow, WorkflowStep step) {
+		return !workflow.isInitialStep(step)
+				&& !workflow.hasLoadedLinks(step, true);
+	}
+
+	/**
+	 * Variant of {@link WorkflowUtils#canHide(WorkflowStep)} that doesn't cause
+	 * older parts of the workflow to be loaded.
+	 */
+	private static boolean canHide(Workflow workflow, WorkflowStep step) {
+		return step!=null
+				&& workflow.hasLoadedLinks(step, true)
+				&& WorkflowUtils.canHide(step);
+	}
+
+	/**
+	 * Variant of {@link WorkflowUtils#isPipe(WorkflowStep)} that doesn't cause
+	 * older parts of the workflow to be loaded.
+	 */
+	private static boolean isPipe(Workflow workflow, WorkflowStep step) {
+		return step!=null
+				&& workflow.hasLoadedLinks(step, false)
+				&& WorkflowUtils.isPipe(step);
 	}
 
 	/**
@@ -283,11 +361,13 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 		WorkflowStep step = getStep(cell);
 
-		if(getWorkflow().isInitialStep(step)) {
+		Workflow workflow = getWorkflow();
+		if(workflow.isInitialStep(step)) {
 			return false;
 		}
 
-		return WorkflowUtils.canCompress(step);
+		return (canHide(workflow, step) && isPipe(workflow, WorkflowUtils.previous(step)))
+				|| (isPipe(workflow, step) && canHide(workflow, WorkflowUtils.next(step)));
 	}
 
 	@Override
@@ -305,12 +385,13 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 		// The step initiating the algorithm
 		final WorkflowStep step = getStep(cell);
 
+		final Workflow workflow = getWorkflow();
+
 		// Try to fail early
-		if(!WorkflowUtils.canHide(step) && !WorkflowUtils.isPipe(step)) {
+		if(!canHide(workflow, step) && !isPipe(workflow, step)) {
 			return null;
 		}
 
-		final Workflow workflow = getWorkflow();
 		if(workflow.isInitialStep(step)) {
 			return null;
 		}
@@ -324,9 +405,9 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 			// Pointing to the step which is going to hide all subsequent ones
 			WorkflowStep first = step;
 			// Collect steps backwards as far as possible
-			while(WorkflowUtils.canHide(first)) {
+			while(canHide(workflow, first)) {
 				WorkflowStep previous = WorkflowUtils.previous(first);
-				if(workflow.isInitialStep(previous) || !WorkflowUtils.isPipe(previous)) {
+				if(workflow.isInitialStep(previous) || !isPipe(workflow, previous)) {
 					break;
 				}
 				stepsToHide.add(first);
@@ -337,9 +418,9 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 			// Now collect forward
 			WorkflowStep last = step;
-			while(WorkflowUtils.isPipe(last)) {
+			while(isPipe(workflow, last)) {
 				WorkflowStep next = WorkflowUtils.next(last);
-				if(!WorkflowUtils.canHide(next)) {
+				if(!canHide(workflow, next) || !isMapped(next)) {
 					break;
 				}
 				stepsToHide.add(next); // Adding next, since this loop is a 1-lookahead
@@ -354,7 +435,7 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 			last = stepsToHide.get(stepsToHide.size()-1);
 
 			WorkflowNode segment = getNode(first);
-			segment.setFlag(FLAG_PIPE, WorkflowUtils.isPipe(last));
+			segment.setFlag(FLAG_PIPE, isPipe(workflow, last));
 
 			// Now remove all nodes and links for the intermediary steps
 			for(WorkflowStep midStep : stepsToHide) {
@@ -368,7 +449,9 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 			Object parent = getGraph().getDefaultParent();
 			for(WorkflowStep next : workflow.getNextSteps(last)) {
-				defaultMakeLink(parent, first, next);
+				if(isMapped(next)) {
+					defaultMakeLink(parent, first, next);
+				}
 			}
 
 			refreshNodeStyle(segment);
@@ -393,7 +476,8 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 			return false;
 		}
 		WorkflowNode node = (WorkflowNode) cell;
-		return node.hasHiddenSteps();
+		return node.hasHiddenSteps()
+				|| isHistoryBorder(getWorkflow(), getStep(node));
 	}
 
 	@Override
@@ -405,12 +489,17 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 		// The node to be expanded
 		final WorkflowNode node = (WorkflowNode) cell;
+		Workflow workflow = getWorkflow();
+
 		if(!node.hasHiddenSteps()) {
+			// Expanding the border of the loaded history means loading older steps
+			if(isHistoryBorder(workflow, getStep(node))) {
+				getWorkflowGraph().loadOlderSteps();
+				return node;
+			}
 			return null;
 		}
 
-		Workflow workflow = getWorkflow();
-
 		model.beginUpdate();
 		try {
 
@@ -428,7 +517,7 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 			for(WorkflowStep step : hiddenSteps) {
 				unmapStep(step);
 				WorkflowNode newNode = defaultMakeNode(parent, step);
-				newNode.setFlag(FLAG_PIPE, WorkflowUtils.isPipe(step));
+				newNode.setFlag(FLAG_PIPE, isPipe(workflow, step));
 				node.removeHiddenStep(step);
 
 				lastNode = newNode;
@@ -436,13 +525,15 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 
 			// Refresh info on the original node
 			final WorkflowStep originalStep = getStep(node);
-			node.setFlag(FLAG_PIPE, WorkflowUtils.isPipe(originalStep));
+			node.setFlag(FLAG_PIPE, isPipe(workflow, originalStep));
 			defaultMakeLink(parent, originalStep, hiddenSteps.get(0));
 
 			// Finally link all the new nodes
 			for(WorkflowStep step : hiddenSteps) {
 				for(WorkflowStep next : workflow.getNextSteps(step)) {
-					defaultMakeLink(parent, step, next);
+					if(isMapped(next)) {
+						defaultMakeLink(parent, step, next);
+					}
 				}
 			}
 
@@ -484,6 +575,26 @@ public class WorkflowGraphDelegatingLayout extends WorkflowGraphLayout {
 		getGraph().updateCellSize(overlay);
 	}
 
+	private static final String OVERLAY_OLDER = "older";
+
+	private void addOlderStepsOverlay(WorkflowNode node) {
+		String tooltip = ResourceManager.getInstance().get(
+				"replaydh.ui.core.workflowGraph.labels.olderSteps");
+		Object overlay = overlay()
+				.value("...")
+				.type(OVERLAY_OLDER)
+				.size(20, 14)
+				.style(WorkflowGraph.STYLE_OVERLAY)
+				.addStyle(mxConstants.STYLE_SHAPE, mxConstants.SHAPE_RECTANGLE)
+				.addStyle(mxConstants.STYLE_ROUNDED, true)
+				.addStyle(WorkflowGraph.STYLE_TOOLTIP, tooltip)
+				.position(0.0, 0.0)
+				.offset(-16.0, -7.0)
+				.build();
+
+		addOverlay(node, overlay);
+	}
+
 	private void applyLayout(Object parent) {
 		mxGraph graph = getGraph();
 
@@ -24,11 +24,9 @@ import static java.util.Objects.requireNonNull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.ByteChannel;
 import java.nio.channels.Channel;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.SeekableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -47,6 +45,13 @@ public final class Checksums {
 
 		MD5("MD5"),
 		SHA_1("SHA-1"),
+		SHA_256("SHA-256"),
+
+		/**
+		 * Fast non-cryptographic 64 bit hash. Suitable for change detection
+		 * on very large files, but not for protection against tampering.
+		 */
+		XXH64(XXHash64Digest.ALGORITHM),
 		;
 
 		ChecksumType(String type) {
@@ -58,6 +63,27 @@ public final class Checksums {
 		public String getAlgorithm() {
 			return type;
 		}
+
+		/**
+		 * Creates a new and unused digest for this type.
+		 */
+		public MessageDigest createDigest() {
+			return getDigest(type);
+		}
+
+		/**
+		 * Returns the type registered for the given algorithm name
+		 * or {@code null} if no such type exists.
+		 */
+		public static ChecksumType forAlgorithm(String algorithm) {
+			requireNonNull(algorithm);
+			for(ChecksumType type : values()) {
+				if(type.type.equals(algorithm)) {
+					return type;
+				}
+			}
+			return null;
+		}
 	}
 
 	/**
@@ -85,6 +111,24 @@ public final class Checksums {
 			9,
 	};
 
+	/**
+	 * Length of the individual chunks sampled for the summary digest.
+	 * Must not be changed, as it would render all existing checksums
+	 * of split files invalid!
+	 */
+	private static final int SAMPLE_LENGTH = IOUtils.BUFFER_LENGTH;
+
+	/**
+	 * Buffer size for reading the actual file content.
+	 */
+	private static final int READ_BUFFER_LENGTH = 1<<20;
+
+	/**
+	 * Direct buffers are expensive to create, so we keep one per thread around.
+	 */
+	private static final ThreadLocal<ByteBuffer> directBuffers =
+			ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_LENGTH));
+
 	private static int getSkipSize(long fileSize) {
 		int  index = THRESHOLDS.length-1;
 		while(fileSize<THRESHOLDS[index]) {
@@ -117,47 +161,77 @@ public final class Checksums {
     	return channel instanceof FileChannel;
     }
 
-    private static byte[] digest(MessageDigest digest, ReadableByteChannel data) throws IOException, InterruptedException {
+    /**
+     * Reads the entire content of {@code data} exactly once and feeds it
+     * to {@code digest}. If {@code summaryDigest} is not {@code null} it
+     * receives chunks of {@link #SAMPLE_LENGTH} bytes each, separated by
+     * gaps of {@code skipSize} bytes, starting at the beginning of the data.
+     */
+    private static void digest(MessageDigest digest, MessageDigest summaryDigest, int skipSize,
+    		ReadableByteChannel data) throws IOException, InterruptedException {
+    	// Native channels can read directly into off-heap memory
         ByteBuffer bb = isNativeChannel(data) ?
-        		ByteBuffer.allocate(IOUtils.BUFFER_LENGTH)
-        		: ByteBuffer.allocateDirect(IOUtils.BUFFER_LENGTH);
+        		directBuffers.get()
+        		: ByteBuffer.allocate(READ_BUFFER_LENGTH);
+        bb.clear();
 
-        while (data.read(bb) > -1) {
-        	checkInterrupted();
+        long stride = SAMPLE_LENGTH + (long)skipSize;
+        long offset = 0L;
 
-        	bb.flip();
-            digest.update(bb);
-            bb.clear();
+        try {
+	        while (data.read(bb) > -1) {
+	        	checkInterrupted();
+
+	        	bb.flip();
+	        	int count = bb.remaining();
+
+	        	if(summaryDigest!=null) {
+	        		sample(summaryDigest, bb, offset, stride);
+	        	}
+	            digest.update(bb);
+
+	            offset += count;
+	            bb.clear();
+	        }
+        } finally {
+        	bb.clear();
         }
-
-        return digest.digest();
     }
 
-    private static byte[] digestPartially(MessageDigest digest, SeekableByteChannel data, int skipSize) throws IOException, InterruptedException {
-        ByteBuffer bb = isNativeChannel(data) ?
-        		ByteBuffer.allocate(IOUtils.BUFFER_LENGTH)
-        		: ByteBuffer.allocateDirect(IOUtils.BUFFER_LENGTH);
-
-        long size = data.size();
-        while (data.read(bb) > -1) {
-        	checkInterrupted();
-
-        	bb.flip();
-            digest.update(bb);
-            bb.clear();
-
-            long nextChunk = data.position()+skipSize;
-            if(nextChunk>=size) {
-            	break;
-            }
-
-            data.position(nextChunk);
-        }
-
-        return digest.digest();
+    /**
+     * Feeds all bytes of the given buffer to {@code digest} that lie within
+     * a sampling chunk. The buffer's position and limit are left unchanged.
+     *
+     * @param offset absolute position of the buffer's first byte within the data
+     */
+    private static void sample(MessageDigest digest, ByteBuffer bb, long offset, long stride) {
+    	final int start = bb.position();
+    	final int end = bb.limit();
+
+    	int pos = start;
+    	while(pos<end) {
+    		long posInChunk = (offset+pos-start) % stride;
+    		if(posInChunk<SAMPLE_LENGTH) {
+    			int len = (int) Math.min(SAMPLE_LENGTH-posInChunk, end-pos);
+    			bb.limit(pos+len);
+    			bb.position(pos);
+    			digest.update(bb);
+    			pos += len;
+    		} else {
+    			// Jump to begin of next chunk
+    			pos += (int) Math.min(stride-posInChunk, end-pos);
+    		}
+    	}
+
+    	bb.limit(end);
+    	bb.position(start);
     }
 
     private static MessageDigest getDigest(String algorithm) {
+    	if(XXHash64Digest.ALGORITHM.equals(algorithm)) {
+    		return new XXHash64Digest();
+    	}
+
         try {
             return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException e) {
@@ -181,7 +255,10 @@ public final class Checksums {
 
     /**
      * Computes a complete checksum for the specified file.
-     *
+     * <p>
+     * The file is read only once: For large files the summary digest
+     * is computed from the sampled chunks in the same pass as the
+     * full digest.
      *
      * @param data
      * @param type
@@ -190,27 +267,21 @@ public final class Checksums {
      * @throws InterruptedException
      */
 	public static Checksum createChecksum(IOResource data, ChecksumType type) throws IOException, InterruptedException {
-		MessageDigest digest = getDigest(type.getAlgorithm());
+		MessageDigest digest = type.createDigest();
 		long size = data.size();
 		int skipSize = getSkipSize(size);
 
-		byte[] payload = null;
-		byte[] summary = null;
+		// For very large files compute an additional "summary" digest from small chunks
+		MessageDigest summaryDigest = skipSize>0 ? type.createDigest() : null;
 
-		// For very large files compute a "summary" digest from small chunks
-		if(skipSize>0) {
-			try(SeekableByteChannel channel = data.getReadChannel()) {
-				summary = digestPartially(digest, channel, skipSize);
-			}
+		try(ReadableByteChannel channel = data.getReadChannel()) {
+			digest(digest, summaryDigest, skipSize, channel);
 		}
 
-		// Now do a complete checksum
-		try(ByteChannel channel = data.getReadChannel()) {
-			payload = digest(digest, channel);
-		}
+		byte[] payload = digest.digest();
 
-		if(summary!=null) {
-			payload = combine(payload, summary);
+		if(summaryDigest!=null) {
+			payload = combine(payload, summaryDigest.digest());
 		}
 
 		return new Checksum(type.getAlgorithm(), size, payload);
@@ -258,32 +329,54 @@ public final class Checksums {
 		int skipSize = getSkipSize(size);
 
 		byte[] expectedPayload = checksum.getPayload();
+		byte[] expectedSummary = null;
+		MessageDigest summaryDigest = null;
 
-		// If possible use the summary digest for a quicker check
 		if(skipSize>0) {
-			byte[] expectedSummary = split(expectedPayload, false);
+			expectedSummary = split(expectedPayload, false);
 			expectedPayload = split(expectedPayload, true);
-			try(SeekableByteChannel channel = data.getReadChannel()) {
-				byte[] summary = digestPartially(digest, channel, skipSize);
+			summaryDigest = getDigest(checksum.getType());
+		}
 
-				if(!Arrays.equals(expectedSummary, summary)) {
-					return ChecksumValidationResult.CONTENT_CHANGED;
-				}
-			}
+		// Single pass over the data for both digests
+		try(ReadableByteChannel channel = data.getReadChannel()) {
+			digest(digest, summaryDigest, skipSize, channel);
 		}
 
-		// All simple checks didn't work out, so run a complete checksum generation
-		try(ByteChannel channel = data.getReadChannel()) {
-			byte[] payload = digest(digest, channel);
+		if(summaryDigest!=null && !Arrays.equals(expectedSummary, summaryDigest.digest())) {
+			return ChecksumValidationResult.CONTENT_CHANGED;
+		}
 
-			if(!Arrays.equals(expectedPayload, payload)) {
-				return ChecksumValidationResult.CONTENT_CHANGED;
-			}
+		if(!Arrays.equals(expectedPayload, digest.digest())) {
+			return ChecksumValidationResult.CONTENT_CHANGED;
 		}
 
 		return ChecksumValidationResult.VALID;
 	}
 
+	/**
+	 * Validates the given checksum and creates a replacement for it in the
+	 * same pass over the data in case it turns out to be outdated. This avoids
+	 * reading modified files twice, once for {@link #validateChecksum(IOResource, Checksum) validation}
+	 * and once more for {@link #createChecksum(IOResource, ChecksumType) creating}
+	 * the new checksum.
+	 *
+	 * @param data
+	 * @param checksum
+	 * @return the given {@code checksum} if it still accurately describes the
+	 * specified file, or a new checksum of the same type otherwise
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static Checksum updateChecksum(IOResource data, Checksum checksum) throws IOException, InterruptedException {
+		ChecksumType type = ChecksumType.forAlgorithm(checksum.getType());
+		checkArgument("Unsupported checksum type: "+checksum.getType(), type!=null);
+
+		Checksum current = createChecksum(data, type);
+
+		return current.equals(checksum) ? checksum : current;
+	}
+
 	// No instantiation for utility class
 	private Checksums() {
 		// no -op
@@ -20,6 +20,9 @@ package bwfdm.replaydh.workflow;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -142,6 +145,79 @@ public interface Workflow extends AutoCloseable {
      */
     void forEachStep(Consumer<? super WorkflowStep> action);
 
+    /**
+     * Hint for implementations that load the data of individual steps
+     * lazily from a backend storage: signals that the data of all the
+     * given {@code steps} is about to be accessed, so it can be fetched
+     * in bulk instead of one step at a time.
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @param steps
+     */
+    default void prefetchSteps(Collection<? extends WorkflowStep> steps) {
+    	// no-op
+    }
+
+    /**
+     * Returns a snapshot of all the steps this workflow currently knows about.
+     * Unlike {@link #forEachStep(Consumer)} this neither loads missing parts of
+     * the workflow nor the data of individual steps, so the returned steps might
+     * not represent the entire workflow and must be {@link #prefetchSteps(Collection) prefetched}
+     * before their content is accessed.
+     * <p>
+     * The default implementation delegates to {@link #getAllSteps()}.
+     *
+     * @return
+     */
+    default List<WorkflowStep> getKnownSteps() {
+    	return new ArrayList<>(getAllSteps());
+    }
+
+    /**
+     * Returns whether older parts of this workflow have not been loaded yet,
+     * i.e. whether {@link #loadOlderSteps()} can add further steps to the
+     * {@link #getKnownSteps() known} ones.
+     * <p>
+     * The default implementation returns {@code false}.
+     *
+     * @return
+     */
+    default boolean hasOlderSteps() {
+    	return false;
+    }
+
+    /**
+     * Loads the next chunk of older steps for implementations that load the
+     * history of a workflow lazily from a backend storage. If any steps got
+     * added, listeners will be notified via a change of the workflow's state.
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @return {@code true} iff any new steps have been loaded
+     */
+    default boolean loadOlderSteps() {
+    	return false;
+    }
+
+    /**
+     * Returns whether the links of the given {@code step} in the direction
+     * specified by the {@code incoming} parameter are already known, so that
+     * accessing them will not load further parts of the workflow. For steps
+     * at the border of the {@link #getKnownSteps() known} part of the workflow
+     * this method returns {@code false}.
+     * <p>
+     * The default implementation returns {@code true}.
+     *
+     * @param step
+     * @param incoming
+     * @return
+     */
+    default boolean hasLoadedLinks(WorkflowStep step, boolean incoming) {
+    	requireNonNull(step);
+    	return true;
+    }
+
     /**
      * Returns a {@link Set} view on all the steps recorded in this
      * workflow. This method should be used with care since the graph might
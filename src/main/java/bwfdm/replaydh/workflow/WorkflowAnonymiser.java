@@ -38,6 +38,15 @@ import bwfdm.replaydh.workflow.impl.DefaultWorkflow;
 import bwfdm.replaydh.workflow.schema.IdentifierType;
 
 /**
+ * Creates anonymised versions of workflow steps. The {@link #anonymise()}
+ * method converts the entire {@link #getSource() source} workflow into a new
+ * {@link #getTarget() target} workflow. For streaming scenarios, such as exports
+ * of large histories, {@link #anonymiseStep(WorkflowStep)} can be used as a
+ * transformation stage of a {@link WorkflowStepIterator} instead, which
+ * anonymises steps individually and doesn't build up a second workflow graph.
+ * In both cases identical values are consistently mapped to the same
+ * anonymised replacement.
+ *
  * @author Markus Gärtner
  *
  */
@@ -104,8 +113,21 @@ public class WorkflowAnonymiser {
 			return target.getInitialStep();
 		}
 
-		WorkflowStep newStep = target.createWorkflowStep();
+		return anonymise(source, target.createWorkflowStep());
+	}
+
+	/**
+	 * Creates an anonymised copy of the given step that is not part of
+	 * any workflow graph. Contrary to {@link #anonymise()} no mapping
+	 * between source and anonymised step is stored. The {@link WorkflowStep#getId() id}
+	 * of the source step is preserved.
+	 */
+	public WorkflowStep anonymiseStep(WorkflowStep source) {
+		requireNonNull(source);
+		return anonymise(source, target.createWorkflowStep());
+	}
 
+	private WorkflowStep anonymise(WorkflowStep source, WorkflowStep newStep) {
 		Optional.ofNullable(source.getId()).ifPresent(newStep::setId);
 		Optional.ofNullable(anonymiseText(source.getTitle())).ifPresent(newStep::setTitle);
 		Optional.ofNullable(anonymiseText(source.getTitle())).ifPresent(newStep::setDescription);
@@ -135,7 +157,10 @@ public class WorkflowAnonymiser {
 		return newStep;
 	}
 
-	private static String anonymiseText(String text) {
+	/**
+	 * Replaces the given text with a description of its length.
+	 */
+	public static String anonymiseText(String text) {
 		if(text==null) {
 			return null;
 		}
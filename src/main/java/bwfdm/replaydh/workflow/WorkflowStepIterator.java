@@ -0,0 +1,213 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow;
+
+import static bwfdm.replaydh.utils.RDHUtils.checkState;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Iterates the steps of a {@link Workflow} in topological order, i.e. every
+ * step is only returned after all its previous steps within the scope of
+ * the iterator have been returned. The iterator works directly on the graph
+ * and never copies the step set. Apart from the scope given by client code
+ * it only remembers the current frontier of the traversal and the merge steps
+ * that are still waiting for some of their previous steps, so iterating
+ * an entire workflow needs memory proportional to its width, not its length.
+ * <p>
+ * Additional transformation stages can be {@link #addStage(UnaryOperator) added}
+ * that get applied to each step individually right before it is returned
+ * by {@link #next()}. This allows for instance to anonymise steps on the
+ * fly during an export instead of creating a modified copy of the entire
+ * workflow. Stages must preserve the {@link WorkflowStep#getId() id} of
+ * steps, since serializers describe the graph structure based on the
+ * original steps.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class WorkflowStepIterator implements Iterator<WorkflowStep> {
+
+	private final Workflow workflow;
+
+	/**
+	 * Steps to be visited or {@code null} if the entire workflow is covered
+	 */
+	private final Set<WorkflowStep> scope;
+
+	private final List<UnaryOperator<WorkflowStep>> stages = new ArrayList<>();
+
+	/**
+	 * Steps whose previous steps have all been returned already
+	 */
+	private final Deque<WorkflowStep> pending = new ArrayDeque<>();
+
+	/**
+	 * Number of previous steps that haven't been returned yet, only
+	 * stored for steps that have been reached by at least one of them.
+	 */
+	private final Map<WorkflowStep, Integer> waiting = new IdentityHashMap<>();
+
+	private WorkflowStep current;
+
+	private boolean started = false;
+
+	/**
+	 * Creates an iterator over all the steps in the given workflow,
+	 * starting with its {@link Workflow#getInitialStep() initial step}.
+	 */
+	public WorkflowStepIterator(Workflow workflow) {
+		this(workflow, null);
+	}
+
+	/**
+	 * Creates an iterator over the given selection of steps. If {@code scope}
+	 * is {@code null}, the entire workflow is covered.
+	 */
+	public WorkflowStepIterator(Workflow workflow, Set<WorkflowStep> scope) {
+		this.workflow = requireNonNull(workflow);
+		this.scope = scope;
+	}
+
+	/**
+	 * Adds another transformation to be applied to each step before
+	 * it gets returned. Stages are applied in the order they've been added.
+	 *
+	 * @throws IllegalStateException if the iteration has already started
+	 */
+	public WorkflowStepIterator addStage(UnaryOperator<WorkflowStep> stage) {
+		requireNonNull(stage);
+		checkState("Iteration already started", !started);
+
+		stages.add(stage);
+
+		return this;
+	}
+
+	/**
+	 * Creates a new iterator that covers the same steps as this one,
+	 * but without any transformation stages.
+	 */
+	public WorkflowStepIterator restart() {
+		return new WorkflowStepIterator(workflow, scope);
+	}
+
+	public Workflow getWorkflow() {
+		return workflow;
+	}
+
+	/**
+	 * Returns whether or not the given step is covered by this iterator.
+	 */
+	public boolean isInScope(WorkflowStep step) {
+		return scope==null || scope.contains(step);
+	}
+
+	/**
+	 * Returns the untransformed version of the step most recently
+	 * returned by {@link #next()}.
+	 */
+	public WorkflowStep getCurrentSource() {
+		checkState("No current step", current!=null);
+		return current;
+	}
+
+	private void start() {
+		started = true;
+
+		if(scope==null) {
+			pending.push(workflow.getInitialStep());
+		} else {
+			for(WorkflowStep step : scope) {
+				if(previousStepCount(step)==0) {
+					pending.push(step);
+				}
+			}
+		}
+	}
+
+	private int previousStepCount(WorkflowStep step) {
+		int count = workflow.getPreviousStepCount(step);
+		if(scope!=null) {
+			for(int i = count-1; i>=0; i--) {
+				if(!scope.contains(workflow.getPreviousStep(step, i))) {
+					count--;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+		if(!started) {
+			start();
+		}
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public WorkflowStep next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		WorkflowStep step = pending.pop();
+
+		// Release all next steps that now have all their previous steps visited
+		int nextStepCount = workflow.getNextStepCount(step);
+		for(int i = nextStepCount-1; i>=0; i--) {
+			WorkflowStep next = workflow.getNextStep(step, i);
+			if(!isInScope(next)) {
+				continue;
+			}
+
+			Integer remaining = waiting.remove(next);
+			int count = remaining==null ? previousStepCount(next) : remaining.intValue();
+			if(--count==0) {
+				pending.push(next);
+			} else {
+				waiting.put(next, Integer.valueOf(count));
+			}
+		}
+
+		current = step;
+
+		for(UnaryOperator<WorkflowStep> stage : stages) {
+			step = requireNonNull(stage.apply(step), "Stage returned null");
+		}
+
+		return step;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming implementation of the non-cryptographic 64 bit
+ * <a href="https://github.com/Cyan4973/xxHash">xxHash</a> algorithm
+ * (XXH64, seed {@code 0}) exposed as a {@link java.security.MessageDigest}
+ * so that it can be used interchangeably with the JDK digests.
+ * <p>
+ * The produced digest is the canonical big-endian representation of
+ * the 64 bit hash value.
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class XXHash64Digest extends java.security.MessageDigest implements Cloneable {
+
+	public static final String ALGORITHM = "XXH64";
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE = 32;
+
+	private final long seed;
+
+	private long v1, v2, v3, v4;
+
+	/**
+	 * Total number of bytes consumed
+	 */
+	private long length;
+
+	/**
+	 * Pending bytes not yet making up a full stripe
+	 */
+	private byte[] buffer = new byte[STRIPE];
+	private int bufferSize;
+
+	XXHash64Digest() {
+		this(0L);
+	}
+
+	XXHash64Digest(long seed) {
+		super(ALGORITHM);
+		this.seed = seed;
+		engineReset();
+	}
+
+	/**
+	 * @see java.security.MessageDigestSpi#engineGetDigestLength()
+	 */
+	@Override
+	protected int engineGetDigestLength() {
+		return Long.BYTES;
+	}
+
+	/**
+	 * @see java.security.MessageDigestSpi#engineReset()
+	 */
+	@Override
+	protected void engineReset() {
+		v1 = seed + PRIME1 + PRIME2;
+		v2 = seed + PRIME2;
+		v3 = seed;
+		v4 = seed - PRIME1;
+		length = 0L;
+		bufferSize = 0;
+	}
+
+	/**
+	 * @see java.security.MessageDigestSpi#engineUpdate(byte)
+	 */
+	@Override
+	protected void engineUpdate(byte input) {
+		buffer[bufferSize++] = input;
+		length++;
+		if(bufferSize==STRIPE) {
+			processStripe(buffer, 0);
+			bufferSize = 0;
+		}
+	}
+
+	/**
+	 * @see java.security.MessageDigestSpi#engineUpdate(byte[], int, int)
+	 */
+	@Override
+	protected void engineUpdate(byte[] input, int offset, int len) {
+		length += len;
+
+		// Complete a pending stripe first
+		if(bufferSize>0) {
+			int fill = Math.min(len, STRIPE-bufferSize);
+			System.arraycopy(input, offset, buffer, bufferSize, fill);
+			bufferSize += fill;
+			offset += fill;
+			len -= fill;
+
+			if(bufferSize<STRIPE) {
+				return;
+			}
+
+			processStripe(buffer, 0);
+			bufferSize = 0;
+		}
+
+		while(len>=STRIPE) {
+			processStripe(input, offset);
+			offset += STRIPE;
+			len -= STRIPE;
+		}
+
+		if(len>0) {
+			System.arraycopy(input, offset, buffer, 0, len);
+			bufferSize = len;
+		}
+	}
+
+	/**
+	 * Avoids the intermediate copying of the default implementation
+	 * for direct buffers.
+	 *
+	 * @see java.security.MessageDigestSpi#engineUpdate(java.nio.ByteBuffer)
+	 */
+	@Override
+	protected void engineUpdate(ByteBuffer input) {
+		if(input.hasArray()) {
+			int pos = input.position();
+			int len = input.remaining();
+			engineUpdate(input.array(), input.arrayOffset()+pos, len);
+			input.position(pos+len);
+			return;
+		}
+
+		while(bufferSize>0 && input.hasRemaining()) {
+			engineUpdate(input.get());
+		}
+
+		ByteBuffer bb = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int pos = bb.position();
+		int limit = bb.limit();
+
+		while(limit-pos>=STRIPE) {
+			v1 = round(v1, bb.getLong(pos));
+			v2 = round(v2, bb.getLong(pos+8));
+			v3 = round(v3, bb.getLong(pos+16));
+			v4 = round(v4, bb.getLong(pos+24));
+			pos += STRIPE;
+			length += STRIPE;
+		}
+		input.position(pos);
+
+		while(input.hasRemaining()) {
+			engineUpdate(input.get());
+		}
+	}
+
+	private void processStripe(byte[] b, int offset) {
+		v1 = round(v1, getLong(b, offset));
+		v2 = round(v2, getLong(b, offset+8));
+		v3 = round(v3, getLong(b, offset+16));
+		v4 = round(v4, getLong(b, offset+24));
+	}
+
+	/**
+	 * @see java.security.MessageDigestSpi#engineDigest()
+	 */
+	@Override
+	protected byte[] engineDigest() {
+		long h;
+
+		if(length>=STRIPE) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+				+ Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = seed + PRIME5;
+		}
+
+		h += length;
+
+		int offset = 0;
+		while(offset+8<=bufferSize) {
+			h ^= round(0L, getLong(buffer, offset));
+			h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+			offset += 8;
+		}
+
+		if(offset+4<=bufferSize) {
+			h ^= (getInt(buffer, offset) & 0xFFFFFFFFL) * PRIME1;
+			h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+			offset += 4;
+		}
+
+		while(offset<bufferSize) {
+			h ^= (buffer[offset] & 0xFF) * PRIME5;
+			h = Long.rotateLeft(h, 11) * PRIME1;
+			offset++;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+
+		engineReset();
+
+		byte[] result = new byte[Long.BYTES];
+		for(int i=Long.BYTES-1; i>=0; i--) {
+			result[i] = (byte) h;
+			h >>>= 8;
+		}
+		return result;
+	}
+
+	/**
+	 * @see java.security.MessageDigest#clone()
+	 */
+	@Override
+	public Object clone() throws CloneNotSupportedException {
+		XXHash64Digest clone = (XXHash64Digest) super.clone();
+		clone.buffer = buffer.clone();
+		return clone;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+
+	private static long mergeRound(long acc, long val) {
+		acc ^= round(0L, val);
+		return acc * PRIME1 + PRIME4;
+	}
+
+	private static long getLong(byte[] b, int offset) {
+		return (b[offset] & 0xFFL)
+				| (b[offset+1] & 0xFFL) << 8
+				| (b[offset+2] & 0xFFL) << 16
+				| (b[offset+3] & 0xFFL) << 24
+				| (b[offset+4] & 0xFFL) << 32
+				| (b[offset+5] & 0xFFL) << 40
+				| (b[offset+6] & 0xFFL) << 48
+				| (b[offset+7] & 0xFFL) << 56;
+	}
+
+	private static int getInt(byte[] b, int offset) {
+		return (b[offset] & 0xFF)
+				| (b[offset+1] & 0xFF) << 8
+				| (b[offset+2] & 0xFF) << 16
+				| (b[offset+3] & 0xFF) << 24;
+	}
+}
@@ -20,10 +20,17 @@ package bwfdm.replaydh.workflow.catalog;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.event.ChangeEvent;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import bwfdm.replaydh.core.AbstractRDHTool;
 import bwfdm.replaydh.core.RDHClient;
 import bwfdm.replaydh.core.RDHEnvironment;
@@ -34,14 +41,26 @@ import bwfdm.replaydh.workflow.Identifiable;
 import bwfdm.replaydh.workflow.Workflow;
 import bwfdm.replaydh.workflow.WorkflowAdapter;
 import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.catalog.MetadataCache.StepSnapshot;
 
 /**
  * Implements a simple in-memory solution for the {@link MetadataCatalog} interface.
  * <p>
  * The storage/search-space for full grown {@link Identifiable} objects is the entire
- * content of the current {@link Workflow}. This implementation is based on the assumption
- * that typical workflows will stay relatively small (sub 10k steps) so that running live
- * searches on the elements in them is still going to be fast enough.
+ * content of the current {@link Workflow}. All descriptions, type-specific properties and
+ * identifiers are kept in an n-gram index that is updated incrementally whenever steps
+ * in the workflow are added, changed or removed. Queries only need to verify the candidates
+ * delivered by the index and return the best scoring matches first.
+ * <p>
+ * All modifications of the cache happen on a dedicated background thread in the order
+ * the workflow reported them. The data of changed steps is copied on the thread that
+ * reported the change, so the background thread never reads steps that might still
+ * be modified. Only steps that actually changed get re-indexed, the entire workflow
+ * is only processed again when it gets replaced. Neither that nor any other update
+ * loads further parts of the workflow's history. Steps that appear without individual
+ * events (e.g. commits fetched from a remote repository or older parts of the history
+ * getting loaded) are detected by comparing the {@link Workflow#getKnownSteps() known steps}
+ * of the workflow with the cache and get read on the background thread.
  *
  *
  * @author Markus Gärtner
@@ -49,10 +68,23 @@ import bwfdm.replaydh.workflow.WorkflowStep;
  */
 public class InMemoryMetadataCatalog extends AbstractRDHTool implements MetadataCatalog {
 
+	private static final Logger log = LoggerFactory.getLogger(InMemoryMetadataCatalog.class);
+
 	private final Handler handler = new Handler();
 
 	private final MetadataCache cache = new MetadataCache();
 
+	/**
+	 * Workflow currently reflected by the cache. Pending updates for
+	 * any other workflow get discarded.
+	 */
+	private volatile Workflow workflow;
+
+	/**
+	 * Single thread performing all the updates of the cache
+	 */
+	private ExecutorService updater;
+
 	/**
 	 * @see bwfdm.replaydh.core.AbstractRDHTool#start(bwfdm.replaydh.core.RDHEnvironment)
 	 */
@@ -64,16 +96,20 @@ public class InMemoryMetadataCatalog extends AbstractRDHTool implements Metadata
 
 		RDHClient client = environment.getClient();
 
+		synchronized (this) {
+			updater = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "metadata-catalog-updater");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
 		// We should start late enough to be able to access the file tracker without any issues
 		RDHTool fileTracker = client.getFileTracker();
 		fileTracker.addPropertyChangeListener(FileTracker.NAME_WORKFLOW, handler);
 
 		// If a workflow is available, go and cache its data
-		Workflow workflow = client.getWorkflowSource().get();
-		if(workflow!=null) {
-			workflow.addWorkflowListener(handler);
-			cache.reload(workflow);
-		}
+		replaceWorkflow(client.getWorkflowSource().get());
 
 		return true;
 	}
@@ -83,18 +119,33 @@ public class InMemoryMetadataCatalog extends AbstractRDHTool implements Metadata
 	 */
 	@Override
 	public void stop(RDHEnvironment environment) throws RDHLifecycleException {
-		cache.clear();
-
 		RDHClient client = environment.getClient();
 
 		RDHTool fileTracker = client.getFileTracker();
 		fileTracker.removePropertyChangeListener(FileTracker.NAME_WORKFLOW, handler);
 
-		Workflow workflow = client.getWorkflowSource().get();
-		if(workflow!=null) {
-			workflow.removeWorkflowListener(handler);
+		unregisterWorkflowListener(workflow);
+		workflow = null;
+
+		ExecutorService updater;
+		synchronized (this) {
+			updater = this.updater;
+			this.updater = null;
+		}
+
+		if(updater!=null) {
+			updater.shutdown();
+			try {
+				if(!updater.awaitTermination(5, TimeUnit.SECONDS)) {
+					log.warn("Update thread for metadata catalog did not terminate in time");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 
+		cache.clear();
+
 		super.stop(environment);
 	}
 
@@ -114,6 +165,97 @@ public class InMemoryMetadataCatalog extends AbstractRDHTool implements Metadata
 		return cache.suggest(settings, context, key, valuePrefix);
 	}
 
+	/**
+	 * Switches over to the given workflow and rebuilds the cache for it
+	 * in the background. Does nothing if the workflow didn't change.
+	 */
+	private synchronized void replaceWorkflow(Workflow newWorkflow) {
+		Workflow oldWorkflow = workflow;
+		if(oldWorkflow==newWorkflow) {
+			return;
+		}
+
+		unregisterWorkflowListener(oldWorkflow);
+		workflow = newWorkflow;
+		registerWorkflowListener(newWorkflow);
+
+		submit(newWorkflow, () -> cache.reload(newWorkflow));
+	}
+
+	/**
+	 * Picks up steps that got added to the workflow without individual events
+	 * being fired for them, such as commits fetched from a remote repository or
+	 * pages of older history. Since updates are executed in order, this also
+	 * covers steps that got loaded while a reload was still running and only
+	 * needs to read the steps not cached so far.
+	 * <p>
+	 * Only the identities of the steps currently known to the workflow are
+	 * copied on the calling thread. Neither further parts of the workflow nor
+	 * the data of any steps get loaded for this. Comparing them with the cache
+	 * and reading the new steps happens on the background thread.
+	 */
+	private void addMissingSteps(Workflow workflow) {
+		List<WorkflowStep> steps = workflow.getKnownSteps();
+		submit(workflow, () -> {
+			List<WorkflowStep> missing = new ArrayList<>();
+			for(WorkflowStep step : steps) {
+				if(!cache.contains(step)) {
+					missing.add(step);
+				}
+			}
+
+			if(missing.isEmpty()) {
+				return;
+			}
+
+			// Fetch the data of all new steps at once instead of one by one
+			workflow.prefetchSteps(missing);
+
+			for(WorkflowStep step : missing) {
+				StepSnapshot snapshot = snapshot(step);
+				if(snapshot!=null) {
+					cache.addWorkflowStep(snapshot);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copies the cached data of the given step or returns {@code null}
+	 * if the step's content cannot be read.
+	 */
+	private static StepSnapshot snapshot(WorkflowStep step) {
+		try {
+			return MetadataCache.snapshot(step);
+		} catch (RuntimeException e) {
+			log.error("Failed to read workflow step for metadata catalog: {}", step.getId(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Queues the given cache update for the background thread. The update
+	 * is skipped if the workflow it belongs to isn't the current one anymore
+	 * once it gets executed.
+	 */
+	private synchronized void submit(Workflow workflow, Runnable update) {
+		if(updater==null) {
+			return;
+		}
+
+		updater.execute(() -> {
+			if(this.workflow!=workflow) {
+				return;
+			}
+
+			try {
+				update.run();
+			} catch (RuntimeException e) {
+				log.error("Failed to update metadata catalog", e);
+			}
+		});
+	}
+
 	private void registerWorkflowListener(Workflow workflow) {
 		if(workflow!=null) {
 			workflow.addWorkflowListener(handler);
@@ -128,26 +270,44 @@ public class InMemoryMetadataCatalog extends AbstractRDHTool implements Metadata
 
 	private class Handler extends WorkflowAdapter implements PropertyChangeListener {
 
+		/**
+		 * Bulk changes such as loading parts of the history don't report
+		 * individual steps, so we only have to react to closing the workflow
+		 * or to steps we haven't seen yet.
+		 */
 		@Override
 		public void stateChanged(ChangeEvent e) {
-			if(e.getSource() instanceof Workflow) {
-				cache.reload((Workflow) e.getSource());
+			if(!(e.getSource() instanceof Workflow)) {
+				return;
+			}
+
+			Workflow workflow = (Workflow) e.getSource();
+			if(workflow.isClosed()) {
+				submit(workflow, cache::clear);
+			} else {
+				addMissingSteps(workflow);
 			}
 		}
 
 		@Override
 		public void workflowStepAdded(Workflow workflow, WorkflowStep step) {
-			cache.addWorkflowStep(step);
+			StepSnapshot snapshot = snapshot(step);
+			if(snapshot!=null) {
+				submit(workflow, () -> cache.addWorkflowStep(snapshot));
+			}
 		}
 
 		@Override
 		public void workflowStepRemoved(Workflow workflow, WorkflowStep step) {
-			cache.removeWorkflowStep(step);
+			submit(workflow, () -> cache.removeWorkflowStep(step));
 		}
 
 		@Override
 		public void workflowStepChanged(Workflow workflow, WorkflowStep step) {
-			cache.updateWorkflowStep(step);
+			StepSnapshot snapshot = snapshot(step);
+			if(snapshot!=null) {
+				submit(workflow, () -> cache.updateWorkflowStep(snapshot));
+			}
 		}
 
 		@Override
@@ -156,11 +316,7 @@ public class InMemoryMetadataCatalog extends AbstractRDHTool implements Metadata
 				return;
 			}
 
-			unregisterWorkflowListener((Workflow) pce.getOldValue());
-
-			Workflow newWorkflow = (Workflow)pce.getNewValue();
-			registerWorkflowListener(newWorkflow);
-			cache.reload(newWorkflow);
+			replaceWorkflow((Workflow) pce.getNewValue());
 		}
 
 	}
@@ -22,19 +22,21 @@ import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
-import bwfdm.replaydh.utils.IdentityHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import bwfdm.replaydh.workflow.Identifiable;
 import bwfdm.replaydh.workflow.Identifier;
 import bwfdm.replaydh.workflow.Person;
@@ -44,6 +46,7 @@ import bwfdm.replaydh.workflow.Workflow;
 import bwfdm.replaydh.workflow.WorkflowStep;
 import bwfdm.replaydh.workflow.catalog.MetadataCatalog.Constraint;
 import bwfdm.replaydh.workflow.catalog.MetadataCatalog.QuerySettings;
+import bwfdm.replaydh.workflow.catalog.MetadataIndex.PostingList;
 
 /**
  * @author Markus Gärtner
@@ -51,33 +54,81 @@ import bwfdm.replaydh.workflow.catalog.MetadataCatalog.QuerySettings;
  */
 public class MetadataCache {
 
+	private static final Logger log = LoggerFactory.getLogger(MetadataCache.class);
+
 	//TODO currently we use the loca-independent strings for keys. but should we maybe change since we're only working on "live" data anyway?
 
+	/**
+	 * Values longer than this are still suggested, but only words starting
+	 * within the first {@value #MAX_CACHED_TEXT_LENGTH} characters can be
+	 * used to find them.
+	 */
 	public static final int MAX_CACHED_TEXT_LENGTH = 150;
 
-	private final Map<String, NavigableSet<String>> propertyCache = new HashMap<>(100);
-
-	private final Set<Identifiable> identifiableCache = new IdentityHashSet<>(200);
+	/**
+	 * Current content of the cache. Only ever modified while holding
+	 * the {@link #lock}, but {@link #reload(Workflow) reloads} build
+	 * an entirely new state and swap it in once it is complete.
+	 */
+	private volatile State state = new State();
 
 	private final Object lock = new Object();
 
 	public void clear() {
 		synchronized (lock) {
-			propertyCache.values().forEach(Collection::clear);
-			propertyCache.clear();
+			state = new State();
 		}
-
-		//TODO cleanup any further storage structrues we're using
 	}
 
+	/**
+	 * Rebuilds the cache for the given workflow. The new content is assembled
+	 * without holding the lock, so queries keep being answered from the previous
+	 * content until the new one is complete.
+	 * <p>
+	 * This method reads the data of the {@link Workflow#getKnownSteps() known steps}
+	 * of the workflow on the calling thread, without loading any further parts of
+	 * its history. Steps that cannot be read are skipped with a warning, since any
+	 * concurrent modification of them is going to be reported by an event of its
+	 * own that re-indexes the step afterwards.
+	 */
 	public void reload(Workflow workflow) {
+		State newState = new State();
+
+		// Only access workflow data if it's still 'alive'
+		if(workflow!=null && !workflow.isClosed()) {
+			List<WorkflowStep> steps = workflow.getKnownSteps();
+			workflow.prefetchSteps(steps);
+
+			for(WorkflowStep step : steps) {
+				try {
+					newState.update(snapshot(step));
+				} catch (RuntimeException e) {
+					log.warn("Failed to read workflow step for metadata cache: {}", step.getId(), e);
+				}
+			}
+		}
+
 		synchronized (lock) {
-			clear();
+			state = newState;
+		}
+	}
 
-			// Only access workflow data if it's still 'alive'
-			if(workflow!=null && !workflow.isClosed()) {
-				workflow.forEachStep(this::addWorkflowStep0);
-			}
+	/**
+	 * Returns the number of steps currently reflected by the cache.
+	 */
+	public int getStepCount() {
+		synchronized (lock) {
+			return state.stepContent.size();
+		}
+	}
+
+	/**
+	 * Returns whether or not the given step is currently reflected by the cache.
+	 */
+	public boolean contains(WorkflowStep step) {
+		requireNonNull(step);
+		synchronized (lock) {
+			return state.stepContent.containsKey(step);
 		}
 	}
 
@@ -88,7 +139,10 @@ public class MetadataCache {
 		fragment = fragment.trim();
 		checkArgument("Fragment must not be empty", !fragment.isEmpty());
 
-		return scan(settings, fullTextScanner(fragment));
+		synchronized (lock) {
+			MetadataIndex index = state.index;
+			return search(settings, index, index.candidates(fragment), new FullTextScanner(fragment));
+		}
 	}
 
 	public List<Identifiable> query(QuerySettings settings, List<Constraint> constraints) throws CatalogException {
@@ -96,24 +150,87 @@ public class MetadataCache {
 		requireNonNull(constraints, "Constraint list must not be null");
 		checkArgument("Constraint list must not be empty", !constraints.isEmpty());
 
-		return scan(settings, fromConstraints(constraints));
-	}
+		synchronized (lock) {
+			MetadataIndex index = state.index;
+			PostingList[] lists = new PostingList[constraints.size()];
+			for(int i = 0; i<lists.length; i++) {
+				Constraint constraint = constraints.get(i);
+				lists[i] = index.candidates(constraint.getKey(), constraint.getValue());
+			}
 
-	private static Predicate<Identifiable> fromConstraints(List<Constraint> constraints) {
-		return new ConstraintScanner(constraints);
+			return search(settings, index, PostingList.intersect(lists), new ConstraintScanner(constraints));
+		}
 	}
 
-	private static Predicate<Identifiable> fullTextScanner(String value) {
-		return new FullTextScanner(value);
+	/**
+	 * Verifies all the {@code candidates} provided by the index and returns
+	 * the best scoring matches, ordered by descending score. Ties are
+	 * resolved in favor of the identifiable that got indexed first.
+	 */
+	private static List<Identifiable> search(QuerySettings settings, MetadataIndex index,
+			PostingList candidates, Matcher matcher) {
+		if(candidates.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final int limit = settings.getResultLimit();
+
+		// Min-heap with the currently weakest hit at its head
+		PriorityQueue<Hit> hits = new PriorityQueue<>(Math.min(limit, candidates.size())+1, HIT_ORDER);
+
+		for(int i = 0; i<candidates.size(); i++) {
+			int id = candidates.get(i);
+			Identifiable target = index.get(id);
+			if(target==null) {
+				continue;
+			}
+
+			int score = matcher.score(target);
+			if(score>0) {
+				hits.add(new Hit(id, score, target));
+				if(hits.size()>limit) {
+					hits.poll();
+				}
+			}
+		}
+
+		List<Hit> result = new ArrayList<>(hits);
+		result.sort(HIT_ORDER.reversed());
+
+		return result.stream()
+				.map(hit -> hit.target)
+				.collect(Collectors.toList());
 	}
 
-	private List<Identifiable> scan(QuerySettings settings, Predicate<? super Identifiable> constraint) {
-		return identifiableCache.parallelStream() // needs testing to make sure we're not suffocating the EDT
-			.filter(constraint)
-			.limit(settings.getResultLimit())
-			.collect(Collectors.toList());
+	/**
+	 * Orders hits from weakest to best
+	 */
+	private static final Comparator<Hit> HIT_ORDER = (h1, h2) -> {
+		int result = Integer.compare(h1.score, h2.score);
+		if(result==0) {
+			result = Integer.compare(h2.id, h1.id);
+		}
+		return result;
+	};
+
+	private static class Hit {
+		final int id;
+		final int score;
+		final Identifiable target;
+
+		Hit(int id, int score, Identifiable target) {
+			this.id = id;
+			this.score = score;
+			this.target = target;
+		}
 	}
 
+	/**
+	 * Returns the values of the given property that contain a word starting
+	 * with {@code valuePrefix}, ignoring case. Values used more often and
+	 * more recently come first. This method does not need to acquire the
+	 * lock used for modifications, so it never waits for workflow updates.
+	 */
 	public List<String> suggest(QuerySettings settings, Identifiable context, String key, String valuePrefix)
 			throws CatalogException {
 		requireNonNull(settings, "Settings must not be null");
@@ -122,138 +239,313 @@ public class MetadataCache {
 		key = key.trim();
 		checkArgument("Key must not be empty", !key.isEmpty());
 
-		synchronized (lock) {
-			NavigableSet<String> rawCache = propertyCache.get(key);
-			if(rawCache==null)
-				return Collections.emptyList();
-
-			NavigableSet<String> source = rawCache;
-
-			if(valuePrefix!=null && !valuePrefix.trim().isEmpty()) {
-				source = rawCache.subSet(valuePrefix, true, valuePrefix+Character.MAX_VALUE, false);
-			}
-
-			int resultSize = Math.min(settings.getResultLimit(), source.size());
+		SuggestionIndex suggestions = state.propertyCache.get(key);
+		if(suggestions==null)
+			return Collections.emptyList();
 
-			if(resultSize==0)
-				return Collections.emptyList();
-
-			return source.stream()
-					.limit(resultSize)
-					.collect(Collectors.toList());
-		}
+		return suggestions.suggest(valuePrefix==null ? "" : valuePrefix, settings.getResultLimit());
 	}
 
 	public void addWorkflowStep(WorkflowStep step) {
+		addWorkflowStep(snapshot(step));
+	}
+
+	void addWorkflowStep(StepSnapshot snapshot) {
+		requireNonNull(snapshot);
 		synchronized (lock) {
-			addWorkflowStep0(step);
+			state.update(snapshot);
 		}
 	}
 
 	public void removeWorkflowStep(WorkflowStep step) {
+		requireNonNull(step);
 		synchronized (lock) {
-			step.forEachIdentifiable(identifiableCache::remove);
+			state.remove(step);
 		}
 	}
 
 	public void updateWorkflowStep(WorkflowStep step) {
+		updateWorkflowStep(snapshot(step));
+	}
+
+	void updateWorkflowStep(StepSnapshot snapshot) {
+		requireNonNull(snapshot);
 		synchronized (lock) {
-			updateWorkflowStep0(step);
+			state.update(snapshot);
 		}
 	}
 
-	private void addWorkflowStep0(WorkflowStep step) {
-		step.forEachIdentifiable(identifiableCache::add);
+	/**
+	 * Reads all the data of the given step that is relevant for the cache.
+	 * The result can be applied later on any thread, without accessing the
+	 * step's content again.
+	 */
+	static StepSnapshot snapshot(WorkflowStep step) {
+		requireNonNull(step);
+
+		Map<Identifiable, MetadataIndex.Values> content = new IdentityHashMap<>();
+		Map<String, Map<String, Integer>> values = new HashMap<>();
 
-		updateWorkflowStep0(step);
-	}
+		storeProperty(values, MetadataCatalog.TITLE_KEY, step.getTitle());
+		storeProperty(values, MetadataCatalog.DESCRIPTION_KEY, step.getDescription());
 
-	private void updateWorkflowStep0(WorkflowStep step) {
-		storeProperty(MetadataCatalog.TITLE_KEY, step.getTitle());
-		storeProperty(MetadataCatalog.DESCRIPTION_KEY, step.getDescription());
+		step.forEachIdentifiable(identifiable -> {
+			if(!content.containsKey(identifiable)) {
+				content.put(identifiable, MetadataIndex.collect(identifiable));
+			}
+			storeIdentifiable(values, identifiable);
+		});
 
-		step.forEachIdentifiable(this::storeIdentifiable);
+		return new StepSnapshot(step, content, values);
 	}
 
-	private void storeIdentifiable(Identifiable identifiable) {
-		storeProperty(MetadataCatalog.DESCRIPTION_KEY, identifiable.getDescription());
+	/**
+	 * Data of a single step as seen by the cache at the time
+	 * the snapshot got {@link MetadataCache#snapshot(WorkflowStep) taken}.
+	 */
+	static final class StepSnapshot {
+		final WorkflowStep step;
+		final Map<Identifiable, MetadataIndex.Values> content;
+		final Map<String, Map<String, Integer>> values;
+
+		StepSnapshot(WorkflowStep step, Map<Identifiable, MetadataIndex.Values> content,
+				Map<String, Map<String, Integer>> values) {
+			this.step = step;
+			this.content = content;
+			this.values = values;
+		}
+	}
+
+	private static void storeIdentifiable(Map<String, Map<String, Integer>> values, Identifiable identifiable) {
+		storeProperty(values, MetadataCatalog.DESCRIPTION_KEY, identifiable.getDescription());
 
 		switch (identifiable.getType()) {
 		case PERSON:
-			storeProperty(MetadataCatalog.ROLE_KEY, ((Person)identifiable).getRole());
+			storeProperty(values, MetadataCatalog.ROLE_KEY, ((Person)identifiable).getRole());
 			break;
 
 		case TOOL: {
 			Tool tool = (Tool) identifiable;
-			storeProperty(MetadataCatalog.ENVIRONMENT_KEY, tool.getEnvironment());
-			storeProperty(MetadataCatalog.PARAMETERS_KEY, tool.getParameters());
+			storeProperty(values, MetadataCatalog.ENVIRONMENT_KEY, tool.getEnvironment());
+			storeProperty(values, MetadataCatalog.PARAMETERS_KEY, tool.getParameters());
 		} // fall-through to RESOURCE for the type property
 
 		case RESOURCE:
-			storeProperty(MetadataCatalog.TYPE_KEY, ((Resource)identifiable).getResourceType());
+			storeProperty(values, MetadataCatalog.TYPE_KEY, ((Resource)identifiable).getResourceType());
 			break;
 
 		default:
 			throw new IllegalArgumentException("Identifiable type not handled yet: "+identifiable.getType());
 		}
 
-		identifiable.forEachIdentifier(this::storeIdentifier);
+		identifiable.forEachIdentifier(identifier -> storeIdentifier(values, identifier));
 	}
 
-	private void storeIdentifier(Identifier identifier) {
-		storeProperty(identifier.getType().getLabel(), identifier.getId());
+	private static void storeIdentifier(Map<String, Map<String, Integer>> values, Identifier identifier) {
+		storeProperty(values, identifier.getType().getLabel(), identifier.getId());
 	}
 
-	private void storeProperty(String key, String value) {
+	private static void storeProperty(Map<String, Map<String, Integer>> values, String key, String value) {
 		if(value==null || value.isEmpty()) {
 			return;
 		}
 
-		if(value.length()>MAX_CACHED_TEXT_LENGTH) {
-			return;
+		values.computeIfAbsent(key, k -> new HashMap<>()).merge(value, Integer.valueOf(1), Integer::sum);
+	}
+
+	/**
+	 * Indexed content of the cache. This class is not thread-safe.
+	 */
+	private static final class State {
+
+		/**
+		 * Suggestion index for every property key. Lookups happen without
+		 * holding the {@link MetadataCache#lock lock}.
+		 */
+		final Map<String, SuggestionIndex> propertyCache = new ConcurrentHashMap<>(100);
+
+		/**
+		 * Property values contributed by every step and how often they
+		 * occurred in it, so that we can adjust the usage counts in
+		 * {@link #propertyCache} when a step changes.
+		 */
+		final Map<WorkflowStep, Map<String, Map<String, Integer>>> stepValues = new IdentityHashMap<>(200);
+
+		final MetadataIndex index = new MetadataIndex();
+
+		/**
+		 * Identifiables currently indexed for every step, so that we can
+		 * detect removed ones when a step changes.
+		 */
+		final Map<WorkflowStep, Set<Identifiable>> stepContent = new IdentityHashMap<>(200);
+
+		/**
+		 * Number of steps referencing every indexed identifiable. Steps can
+		 * share identifiables, so they must only leave the index once the
+		 * last step using them is gone.
+		 */
+		final Map<Identifiable, Integer> references = new IdentityHashMap<>(400);
+
+		void remove(WorkflowStep step) {
+			Set<Identifiable> content = stepContent.remove(step);
+			if(content!=null) {
+				content.forEach(this::release);
+			}
+
+			Map<String, Map<String, Integer>> values = stepValues.remove(step);
+			if(values!=null) {
+				updateProperties(values, Collections.emptyMap());
+			}
 		}
 
-		propertyCache.computeIfAbsent(key, k -> new TreeSet<>()).add(value);
+		/**
+		 * Drops one reference to the given identifiable and removes it
+		 * from the index if no other step uses it.
+		 */
+		private void release(Identifiable identifiable) {
+			Integer count = references.get(identifiable);
+			if(count==null || count.intValue()<=1) {
+				references.remove(identifiable);
+				index.remove(identifiable);
+			} else {
+				references.put(identifiable, Integer.valueOf(count.intValue()-1));
+			}
+		}
+
+		void update(StepSnapshot snapshot) {
+			WorkflowStep step = snapshot.step;
+			Set<Identifiable> oldContent = stepContent.get(step);
+			Set<Identifiable> newContent = snapshot.content.keySet();
+
+			// Release whatever got removed from the step since we last saw it
+			if(oldContent!=null) {
+				for(Identifiable identifiable : oldContent) {
+					if(!newContent.contains(identifiable)) {
+						release(identifiable);
+					}
+				}
+			}
+
+			// Adds new identifiables and re-indexes changed values of existing ones
+			for(Map.Entry<Identifiable, MetadataIndex.Values> e : snapshot.content.entrySet()) {
+				Identifiable identifiable = e.getKey();
+				if(oldContent==null || !oldContent.contains(identifiable)) {
+					references.merge(identifiable, Integer.valueOf(1), Integer::sum);
+				}
+				index.add(identifiable, e.getValue());
+			}
+			stepContent.put(step, newContent);
+
+			Map<String, Map<String, Integer>> oldValues = stepValues.put(step, snapshot.values);
+			updateProperties(oldValues==null ? Collections.emptyMap() : oldValues, snapshot.values);
+		}
+
+		/**
+		 * Applies the difference between the property values a step contributed
+		 * previously and the ones it contributes now to the usage counts in the
+		 * {@link #propertyCache}. Values the step keeps using are left untouched.
+		 */
+		private void updateProperties(Map<String, Map<String, Integer>> oldValues,
+				Map<String, Map<String, Integer>> newValues) {
+
+			for(Map.Entry<String, Map<String, Integer>> e : oldValues.entrySet()) {
+				SuggestionIndex suggestions = propertyCache.get(e.getKey());
+				if(suggestions==null) {
+					continue;
+				}
+
+				Map<String, Integer> current = newValues.getOrDefault(e.getKey(), Collections.emptyMap());
+				for(Map.Entry<String, Integer> v : e.getValue().entrySet()) {
+					int delta = v.getValue().intValue() - current.getOrDefault(v.getKey(), Integer.valueOf(0)).intValue();
+					if(delta>0) {
+						suggestions.remove(v.getKey(), delta);
+					}
+				}
+
+				if(suggestions.isEmpty()) {
+					propertyCache.remove(e.getKey());
+				}
+			}
+
+			for(Map.Entry<String, Map<String, Integer>> e : newValues.entrySet()) {
+				Map<String, Integer> previous = oldValues.getOrDefault(e.getKey(), Collections.emptyMap());
+				SuggestionIndex suggestions = null;
+
+				for(Map.Entry<String, Integer> v : e.getValue().entrySet()) {
+					int delta = v.getValue().intValue() - previous.getOrDefault(v.getKey(), Integer.valueOf(0)).intValue();
+					if(delta>0) {
+						if(suggestions==null) {
+							suggestions = propertyCache.computeIfAbsent(e.getKey(), k -> new SuggestionIndex());
+						}
+						suggestions.add(v.getKey(), delta);
+					}
+				}
+			}
+		}
 	}
 
 	/**
 	 * Change here if we ever want to adjust the matching policy into a more
 	 * restrictive one compared to the contianment check.
+	 * <p>
+	 * Returns {@code 0} if the {@code target} doesn't contain the
+	 * {@code constraint} and otherwise a positive score that rewards
+	 * prefix and exact matches.
 	 *
 	 * @param constraint
 	 * @param target
 	 * @return
 	 */
-	private static boolean matches(String constraint, String target) {
-		return target!=null && !target.isEmpty() && target.contains(constraint);
+	private static int matches(String constraint, String target) {
+		if(target==null || target.isEmpty() || !target.contains(constraint)) {
+			return 0;
+		}
+
+		if(target.length()==constraint.length()) {
+			return SCORE_EXACT;
+		} else if(target.startsWith(constraint)) {
+			return SCORE_PREFIX;
+		}
+		return SCORE_CONTAINS;
+	}
+
+	private static final int SCORE_CONTAINS = 1;
+	private static final int SCORE_PREFIX = 2;
+	private static final int SCORE_EXACT = 4;
+
+	/**
+	 * Verifies candidates from the index and rates their relevance.
+	 */
+	@FunctionalInterface
+	private interface Matcher {
+		/**
+		 * Returns {@code 0} if the {@code target} is not a match,
+		 * otherwise a positive value, higher values denoting better
+		 * matches.
+		 */
+		int score(Identifiable target);
 	}
 
-	private static class FullTextScanner implements Predicate<Identifiable> {
+	private static class FullTextScanner implements Matcher {
 		private final String value;
-		private final Predicate<Identifier> identifierCheck;
 
 		FullTextScanner(String value) {
 			this.value = requireNonNull(value);
-			identifierCheck = this::checkIdentifier;
 		}
 
-		private boolean checkIdentifier(Identifier identifier) {
-			return checkValue(identifier.getId());
-		}
-
-		private boolean checkValue(String target) {
+		private int checkValue(String target) {
 			return matches(value, target);
 		}
 
-		private boolean checkTypeSpecific(Identifiable target) {
+		private int checkTypeSpecific(Identifiable target) {
 			switch (target.getType()) {
 			case PERSON: return checkValue(((Person)target).getRole());
 			case RESOURCE: return checkValue(((Resource)target).getResourceType());
 			case TOOL: {
 				Tool tool = (Tool)target;
 				return checkValue(tool.getResourceType())
-						|| checkValue(tool.getEnvironment())
-						|| checkValue(tool.getParameters());
+						+ checkValue(tool.getEnvironment())
+						+ checkValue(tool.getParameters());
 			}
 
 			default:
@@ -262,22 +554,27 @@ public class MetadataCache {
 		}
 
 		/**
-		 * @see java.util.function.Predicate#test(java.lang.Object)
+		 * Sums up the scores of all fields and identifiers, so that
+		 * targets matching in several places rank higher.
+		 *
+		 * @see bwfdm.replaydh.workflow.catalog.MetadataCache.Matcher#score(bwfdm.replaydh.workflow.Identifiable)
 		 */
 		@Override
-		public boolean test(Identifiable target) {
-			return checkTypeSpecific(target)
-					|| checkValue(target.getDescription())
-					|| target.hasIdentifier(identifierCheck);
+		public int score(Identifiable target) {
+			int[] score = {checkTypeSpecific(target) + checkValue(target.getDescription())};
+			target.forEachIdentifier(identifier -> score[0] += checkValue(identifier.getId()));
+			return score[0];
 		}
 	}
 
-	private static class ConstraintScanner implements Predicate<Identifiable> {
-		private final Predicate<Identifiable>[] checks;
+	/**
+	 * Requires all the constraints to be fulfilled.
+	 */
+	private static class ConstraintScanner implements Matcher {
+		private final Matcher[] checks;
 
-		@SuppressWarnings("unchecked")
 		ConstraintScanner(List<Constraint> constraints) {
-			List<Predicate<Identifiable>> tmp = new ArrayList<>();
+			List<Matcher> tmp = new ArrayList<>();
 
 			for(Constraint constraint : constraints) {
 				switch (constraint.getKey()) {
@@ -303,22 +600,24 @@ public class MetadataCache {
 				}
 			}
 
-			checks = new Predicate[tmp.size()];
-			tmp.toArray(checks);
+			checks = tmp.toArray(new Matcher[tmp.size()]);
 		}
 
 		@Override
-		public boolean test(Identifiable target) {
-			for(Predicate<Identifiable> check : checks) {
-				if(check.test(target)) {
-					return true;
+		public int score(Identifiable target) {
+			int score = 0;
+			for(Matcher check : checks) {
+				int s = check.score(target);
+				if(s==0) {
+					return 0;
 				}
+				score += s;
 			}
-			return false;
+			return score;
 		}
 	}
 
-	private static class IdentifierConstraint implements Predicate<Identifiable> {
+	private static class IdentifierConstraint implements Matcher {
 		protected final String key, value;
 
 		IdentifierConstraint(Constraint constraint) {
@@ -328,9 +627,9 @@ public class MetadataCache {
 		}
 
 		@Override
-		public boolean test(Identifiable target) {
+		public int score(Identifiable target) {
 			Identifier id = target.getIdentifier(key);
-			return id!=null && matches(value, id.getId());
+			return id==null ? 0 : matches(value, id.getId());
 		}
 	}
 
@@ -346,11 +645,11 @@ public class MetadataCache {
 		}
 
 		@Override
-		public boolean test(Identifiable target) {
+		public int score(Identifiable target) {
 			if(clazz.isInstance(target)) {
 				return matches(value, getter.apply(clazz.cast(target)));
 			} else {
-				return super.test(target);
+				return super.score(target);
 			}
 		}
 
@@ -87,9 +87,11 @@ public interface MetadataCatalog {
 	 * @param context  optional hint for the catalog for which type of resource/person/tool suggestions
 	 * should be gathered. If {@code null} then search will be performed solely based on {@code key}
 	 * @param key  the property for which to gather values
-	 * @param valuePrefix  a filter to restrict the search to only values that start with this prefix. If
-	 * {@code null} or {@link String#isEmpty() empty} then arbitrary values for the specified key will be picked.
-	 * @return A non-null but potentially empty list of values found for the specified property based on the parameters
+	 * @param valuePrefix  a filter to restrict the search to only values that start with this prefix or contain
+	 * a word starting with it, ignoring case. If {@code null} or {@link String#isEmpty() empty} then arbitrary
+	 * values for the specified key will be picked.
+	 * @return A non-null but potentially empty list of values found for the specified property based on the parameters,
+	 * values used more often coming first
 	 * @throws CatalogException
 	 */
 	List<String> suggest(QuerySettings settings, Identifiable context, String key, String valuePrefix) throws CatalogException;
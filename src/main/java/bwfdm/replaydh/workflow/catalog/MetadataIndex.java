@@ -0,0 +1,547 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import bwfdm.replaydh.workflow.Identifiable;
+import bwfdm.replaydh.workflow.Person;
+import bwfdm.replaydh.workflow.Resource;
+import bwfdm.replaydh.workflow.Tool;
+
+/**
+ * Inverted index over the {@link Identifiable} objects of a workflow.
+ * <p>
+ * Every indexed text value is split into all of its character n-grams
+ * up to a length of {@value #GRAM_LENGTH}. Each n-gram maps to a sorted
+ * {@link PostingList} of the internal ids of all identifiables containing
+ * it, separately for every field and for every identifier type. Fragments
+ * not longer than {@value #GRAM_LENGTH} characters directly address a single
+ * posting list, longer ones are resolved by intersecting the postings of
+ * their n-grams. The index only narrows down the candidates, so callers
+ * have to verify the actual matches themselves.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Markus Gärtner
+ *
+ */
+class MetadataIndex {
+
+	static final int GRAM_LENGTH = 3;
+
+	/**
+	 * Minimum number of unused ids before the index considers
+	 * {@link #compact() compacting} them.
+	 */
+	static final int MIN_COMPACTION_SIZE = 64;
+
+	/**
+	 * N-gram postings of descriptions and type-specific properties, per field key
+	 */
+	private final Map<String, Map<String, PostingList>> fields = new HashMap<>();
+
+	/**
+	 * N-gram postings of identifier values, per identifier type
+	 */
+	private final Map<String, Map<String, PostingList>> identifiers = new HashMap<>();
+
+	private final Map<Identifiable, Entry> entries = new IdentityHashMap<>();
+
+	/**
+	 * Lookup for entries based on their ids. Ids of removed entries are not
+	 * reused, so that new entries always get appended to the end of posting
+	 * lists and ids reflect the order in which entries got added. Instead
+	 * the index gets {@link #compact() compacted} once the majority of ids
+	 * are unused.
+	 */
+	private final List<Entry> entriesById = new ArrayList<>();
+
+	/**
+	 * Number of {@code null} slots in {@link #entriesById}
+	 */
+	private int unusedIds = 0;
+
+	public void clear() {
+		fields.clear();
+		identifiers.clear();
+		entries.clear();
+		entriesById.clear();
+		unusedIds = 0;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean contains(Identifiable identifiable) {
+		return entries.containsKey(identifiable);
+	}
+
+	/**
+	 * Returns the number of ids currently in use or reserved by removed
+	 * entries, i.e. the upper bound for ids returned by this index.
+	 */
+	int idCount() {
+		return entriesById.size();
+	}
+
+	/**
+	 * Returns the identifiable stored for the given internal {@code id}
+	 * or {@code null} if it has been removed from the index.
+	 */
+	public Identifiable get(int id) {
+		Entry entry = entriesById.get(id);
+		return entry==null ? null : entry.target;
+	}
+
+	/**
+	 * Adds the given identifiable to the index or updates the
+	 * indexed values if it is already present.
+	 */
+	public void add(Identifiable identifiable) {
+		add(identifiable, collect(identifiable));
+	}
+
+	/**
+	 * Adds the given identifiable to the index or updates the indexed
+	 * values if it is already present, using the {@code values} that
+	 * have been {@link #collect(Identifiable) collected} for it earlier.
+	 */
+	void add(Identifiable identifiable, Values values) {
+		requireNonNull(identifiable);
+		requireNonNull(values);
+
+		Entry entry = entries.get(identifiable);
+		if(entry==null) {
+			entry = new Entry(entriesById.size(), identifiable);
+			entries.put(identifiable, entry);
+			entriesById.add(entry);
+		}
+
+		reindex(entry.id, fields, entry.fieldValues, values.fieldValues);
+		reindex(entry.id, identifiers, entry.identifierValues, values.identifierValues);
+
+		entry.fieldValues = values.fieldValues;
+		entry.identifierValues = values.identifierValues;
+	}
+
+	/**
+	 * Reads all the values of the given identifiable that the index
+	 * would store for it.
+	 */
+	static Values collect(Identifiable identifiable) {
+		requireNonNull(identifiable);
+
+		Map<String, String> fieldValues = new HashMap<>();
+		Map<String, String> identifierValues = new HashMap<>();
+		collectValues(identifiable, fieldValues, identifierValues);
+
+		return new Values(fieldValues, identifierValues);
+	}
+
+	public void remove(Identifiable identifiable) {
+		Entry entry = entries.remove(identifiable);
+		if(entry==null) {
+			return;
+		}
+
+		reindex(entry.id, fields, entry.fieldValues, Collections.emptyMap());
+		reindex(entry.id, identifiers, entry.identifierValues, Collections.emptyMap());
+
+		entriesById.set(entry.id, null);
+		unusedIds++;
+
+		if(unusedIds>=MIN_COMPACTION_SIZE && unusedIds>entries.size()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Assigns consecutive ids to all remaining entries, preserving their
+	 * order, and rewrites the posting lists accordingly. Ids obtained from
+	 * the index before are invalid afterwards.
+	 */
+	void compact() {
+		if(unusedIds==0) {
+			return;
+		}
+
+		int[] mapping = new int[entriesById.size()];
+		List<Entry> live = new ArrayList<>(entries.size());
+		for(int id = 0; id<mapping.length; id++) {
+			Entry entry = entriesById.get(id);
+			if(entry==null) {
+				mapping[id] = -1;
+			} else {
+				mapping[id] = live.size();
+				entry.id = live.size();
+				live.add(entry);
+			}
+		}
+
+		// Mapping is monotonic, so posting lists stay sorted
+		for(Map<String, PostingList> grams : fields.values()) {
+			grams.values().forEach(postings -> postings.remap(mapping));
+		}
+		for(Map<String, PostingList> grams : identifiers.values()) {
+			grams.values().forEach(postings -> postings.remap(mapping));
+		}
+
+		entriesById.clear();
+		entriesById.addAll(live);
+		unusedIds = 0;
+	}
+
+	/**
+	 * Returns the ids of all identifiables that potentially contain the given
+	 * {@code fragment} in any of their fields or identifiers.
+	 */
+	public PostingList candidates(String fragment) {
+		PostingList result = PostingList.EMPTY;
+
+		for(Map<String, PostingList> grams : fields.values()) {
+			result = PostingList.union(result, lookup(grams, fragment));
+		}
+		for(Map<String, PostingList> grams : identifiers.values()) {
+			result = PostingList.union(result, lookup(grams, fragment));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the ids of all identifiables that potentially contain the given
+	 * {@code fragment} in the field or identifier denoted by {@code key}.
+	 */
+	public PostingList candidates(String key, String fragment) {
+		return PostingList.union(
+				lookup(fields.get(key), fragment),
+				lookup(identifiers.get(key), fragment));
+	}
+
+	private static PostingList lookup(Map<String, PostingList> grams, String fragment) {
+		if(grams==null || fragment.isEmpty()) {
+			return PostingList.EMPTY;
+		}
+
+		if(fragment.length()<=GRAM_LENGTH) {
+			PostingList postings = grams.get(fragment);
+			return postings==null ? PostingList.EMPTY : postings;
+		}
+
+		// Gather all n-grams of the fragment, so we can start with the most selective one
+		Set<String> fragmentGrams = new HashSet<>();
+		for(int i = 0; i<=fragment.length()-GRAM_LENGTH; i++) {
+			fragmentGrams.add(fragment.substring(i, i+GRAM_LENGTH));
+		}
+
+		PostingList[] lists = new PostingList[fragmentGrams.size()];
+		int index = 0;
+		for(String gram : fragmentGrams) {
+			PostingList postings = grams.get(gram);
+			if(postings==null || postings.isEmpty()) {
+				return PostingList.EMPTY;
+			}
+			lists[index++] = postings;
+		}
+
+		return PostingList.intersect(lists);
+	}
+
+	private static void collectValues(Identifiable identifiable,
+			Map<String, String> fieldValues, Map<String, String> identifierValues) {
+
+		putValue(fieldValues, MetadataCatalog.DESCRIPTION_KEY, identifiable.getDescription());
+
+		switch (identifiable.getType()) {
+		case PERSON:
+			putValue(fieldValues, MetadataCatalog.ROLE_KEY, ((Person)identifiable).getRole());
+			break;
+
+		case TOOL: {
+			Tool tool = (Tool) identifiable;
+			putValue(fieldValues, MetadataCatalog.ENVIRONMENT_KEY, tool.getEnvironment());
+			putValue(fieldValues, MetadataCatalog.PARAMETERS_KEY, tool.getParameters());
+		} // fall-through to RESOURCE for the type property
+
+		case RESOURCE:
+			putValue(fieldValues, MetadataCatalog.TYPE_KEY, ((Resource)identifiable).getResourceType());
+			break;
+
+		default:
+			throw new IllegalArgumentException("Identifiable type not handled yet: "+identifiable.getType());
+		}
+
+		identifiable.forEachIdentifier(identifier -> putValue(identifierValues,
+				identifier.getType().getLabel(), identifier.getId()));
+	}
+
+	private static void putValue(Map<String, String> map, String key, String value) {
+		if(value!=null && !value.isEmpty()) {
+			map.put(key, value);
+		}
+	}
+
+	/**
+	 * Removes the postings for all values that changed between {@code oldValues}
+	 * and {@code newValues} and adds the ones for the new values.
+	 */
+	private static void reindex(int id, Map<String, Map<String, PostingList>> index,
+			Map<String, String> oldValues, Map<String, String> newValues) {
+
+		for(Map.Entry<String, String> e : oldValues.entrySet()) {
+			String key = e.getKey();
+			if(Objects.equals(e.getValue(), newValues.get(key))) {
+				continue;
+			}
+
+			Map<String, PostingList> grams = index.get(key);
+			for(String gram : grams(e.getValue())) {
+				PostingList postings = grams.get(gram);
+				postings.remove(id);
+				if(postings.isEmpty()) {
+					grams.remove(gram);
+				}
+			}
+			if(grams.isEmpty()) {
+				index.remove(key);
+			}
+		}
+
+		for(Map.Entry<String, String> e : newValues.entrySet()) {
+			String key = e.getKey();
+			if(Objects.equals(e.getValue(), oldValues.get(key))) {
+				continue;
+			}
+
+			Map<String, PostingList> grams = index.computeIfAbsent(key, k -> new HashMap<>());
+			for(String gram : grams(e.getValue())) {
+				grams.computeIfAbsent(gram, g -> new PostingList()).add(id);
+			}
+		}
+	}
+
+	/**
+	 * Returns all distinct substrings of {@code value} with a length
+	 * of up to {@value #GRAM_LENGTH} characters.
+	 */
+	private static Set<String> grams(String value) {
+		int length = value.length();
+		Set<String> result = new HashSet<>(length*GRAM_LENGTH);
+		for(int i = 0; i<length; i++) {
+			int maxEnd = Math.min(length, i+GRAM_LENGTH);
+			for(int end = i+1; end<=maxEnd; end++) {
+				result.add(value.substring(i, end));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Indexable values of a single identifiable, read up front so that
+	 * the index itself can be updated on a different thread.
+	 */
+	static final class Values {
+		final Map<String, String> fieldValues;
+		final Map<String, String> identifierValues;
+
+		Values(Map<String, String> fieldValues, Map<String, String> identifierValues) {
+			this.fieldValues = fieldValues;
+			this.identifierValues = identifierValues;
+		}
+	}
+
+	private static class Entry {
+		int id;
+		final Identifiable target;
+
+		Map<String, String> fieldValues = Collections.emptyMap();
+		Map<String, String> identifierValues = Collections.emptyMap();
+
+		Entry(int id, Identifiable target) {
+			this.id = id;
+			this.target = target;
+		}
+	}
+
+	/**
+	 * Sorted list of distinct entry ids.
+	 *
+	 * @author Markus Gärtner
+	 *
+	 */
+	static final class PostingList {
+
+		static final PostingList EMPTY = new PostingList(new int[0], 0);
+
+		private int[] ids;
+		private int size;
+
+		PostingList() {
+			this(new int[4], 0);
+		}
+
+		private PostingList(int[] ids, int size) {
+			this.ids = ids;
+			this.size = size;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean isEmpty() {
+			return size==0;
+		}
+
+		public int get(int index) {
+			return ids[index];
+		}
+
+		void add(int id) {
+			// Fast path for new entries which always receive the highest id so far
+			if(size==0 || ids[size-1]<id) {
+				ensureCapacity();
+				ids[size++] = id;
+				return;
+			}
+
+			int index = Arrays.binarySearch(ids, 0, size, id);
+			if(index>=0) {
+				return;
+			}
+			index = -index-1;
+			ensureCapacity();
+			System.arraycopy(ids, index, ids, index+1, size-index);
+			ids[index] = id;
+			size++;
+		}
+
+		void remove(int id) {
+			int index = Arrays.binarySearch(ids, 0, size, id);
+			if(index<0) {
+				return;
+			}
+			System.arraycopy(ids, index+1, ids, index, size-index-1);
+			size--;
+		}
+
+		/**
+		 * Replaces every id with the value stored for it in {@code mapping}.
+		 * The mapping must be strictly increasing for all contained ids.
+		 */
+		void remap(int[] mapping) {
+			for(int i = 0; i<size; i++) {
+				ids[i] = mapping[ids[i]];
+			}
+		}
+
+		private void ensureCapacity() {
+			if(size==ids.length) {
+				ids = Arrays.copyOf(ids, Math.max(4, size<<1));
+			}
+		}
+
+		static PostingList union(PostingList a, PostingList b) {
+			if(a.isEmpty()) {
+				return b;
+			} else if(b.isEmpty()) {
+				return a;
+			}
+
+			int[] result = new int[a.size+b.size];
+			int i = 0, j = 0, k = 0;
+			while(i<a.size && j<b.size) {
+				int x = a.ids[i], y = b.ids[j];
+				if(x<y) {
+					result[k++] = x;
+					i++;
+				} else if(y<x) {
+					result[k++] = y;
+					j++;
+				} else {
+					result[k++] = x;
+					i++;
+					j++;
+				}
+			}
+			while(i<a.size) {
+				result[k++] = a.ids[i++];
+			}
+			while(j<b.size) {
+				result[k++] = b.ids[j++];
+			}
+
+			return new PostingList(result, k);
+		}
+
+		static PostingList intersect(PostingList a, PostingList b) {
+			if(a.isEmpty() || b.isEmpty()) {
+				return EMPTY;
+			}
+
+			int[] result = new int[Math.min(a.size, b.size)];
+			int i = 0, j = 0, k = 0;
+			while(i<a.size && j<b.size) {
+				int x = a.ids[i], y = b.ids[j];
+				if(x<y) {
+					i++;
+				} else if(y<x) {
+					j++;
+				} else {
+					result[k++] = x;
+					i++;
+					j++;
+				}
+			}
+
+			return k==0 ? EMPTY : new PostingList(result, k);
+		}
+
+		/**
+		 * Intersects all the given lists, starting with the shortest ones.
+		 */
+		static PostingList intersect(PostingList...lists) {
+			if(lists.length==0) {
+				return EMPTY;
+			}
+
+			PostingList[] sorted = lists.clone();
+			Arrays.sort(sorted, (l1, l2) -> Integer.compare(l1.size, l2.size));
+
+			PostingList result = sorted[0];
+			for(int i = 1; i<sorted.length && !result.isEmpty(); i++) {
+				result = intersect(result, sorted[i]);
+			}
+			return result;
+		}
+	}
+}
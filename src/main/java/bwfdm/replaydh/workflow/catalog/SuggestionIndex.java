@@ -0,0 +1,575 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.catalog;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import bwfdm.replaydh.utils.IdentityHashSet;
+
+/**
+ * Suggestion index over all the values of a single property.
+ * <p>
+ * Values are stored in a trie over their lowercase form, once for the
+ * beginning of the value and once for the beginning of every further word
+ * it contains. This way a fragment matches case-insensitively at the start
+ * of a value as well as at the start of any of its words. Only the first
+ * {@value #MAX_DEPTH} characters of every such suffix are stored, longer
+ * fragments are verified against the candidates found for their beginning.
+ * <p>
+ * Every value is reference counted, the count being the number of places
+ * it is currently used in, and remembers when it got used the last time.
+ * Suggestions are ranked by those weights, preferring values that start
+ * with the given fragment over ones that only contain it. Every node lazily
+ * caches the {@value #TOP_SIZE} best values of its subtree, so a lookup
+ * only has to walk down the fragment instead of visiting all the values
+ * sharing its beginning.
+ * <p>
+ * Modifications must not happen concurrently, but lookups don't need any
+ * locking: nodes only ever publish new immutable arrays for their children
+ * and values, so readers always see a consistent, if slightly outdated,
+ * state of the trie.
+ *
+ * @author Markus Gärtner
+ *
+ */
+class SuggestionIndex {
+
+	/**
+	 * Maximum number of characters stored in the trie for every suffix
+	 */
+	static final int MAX_DEPTH = 24;
+
+	/**
+	 * Only words starting within this many characters of a value get indexed
+	 */
+	static final int MAX_INDEXED_LENGTH = MetadataCache.MAX_CACHED_TEXT_LENGTH;
+
+	/**
+	 * Number of best values cached per node. Lookups for more results
+	 * have to scan the entire subtree.
+	 */
+	static final int TOP_SIZE = MetadataCatalog.DEFAULT_RESULT_LIMIT;
+
+	private final Node root = new Node();
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Logical clock for the recency of values, only accessed by writers
+	 */
+	private long clock = 0;
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Returns how often the given value is currently used or {@code 0}
+	 * if it is not part of this index.
+	 */
+	public int getCount(String value) {
+		Entry entry = entries.get(value);
+		return entry==null ? 0 : entry.count;
+	}
+
+	/**
+	 * Records {@code count} additional usages of the given value and
+	 * marks it as the most recently used one.
+	 */
+	public void add(String value, int count) {
+		requireNonNull(value);
+		if(count<=0) {
+			return;
+		}
+
+		Entry entry = entries.get(value);
+		if(entry==null) {
+			entry = new Entry(value);
+			entry.count = count;
+			entry.lastUsed = ++clock;
+			insert(entry);
+			entries.put(value, entry);
+		} else {
+			entry.count += count;
+			entry.lastUsed = ++clock;
+			invalidate(entry);
+		}
+	}
+
+	/**
+	 * Discards {@code count} usages of the given value and removes it
+	 * from the index once it isn't used anymore.
+	 */
+	public void remove(String value, int count) {
+		requireNonNull(value);
+		if(count<=0) {
+			return;
+		}
+
+		Entry entry = entries.get(value);
+		if(entry==null) {
+			return;
+		}
+
+		int newCount = entry.count-count;
+		if(newCount>0) {
+			entry.count = newCount;
+			invalidate(entry);
+			return;
+		}
+
+		entry.count = 0;
+		entries.remove(value);
+		delete(entry);
+	}
+
+	/**
+	 * Returns up to {@code limit} values that contain a word starting with
+	 * the given {@code fragment}, ignoring case. An empty fragment matches
+	 * all values. Results are ordered by relevance, best first.
+	 */
+	public List<String> suggest(String fragment, int limit) {
+		requireNonNull(fragment);
+		if(limit<=0) {
+			return Collections.emptyList();
+		}
+
+		String needle = normalize(fragment.trim());
+
+		Node node = root;
+		int depth = Math.min(needle.length(), MAX_DEPTH);
+		for(int i = 0; i<depth && node!=null; i++) {
+			node = node.edges.child(needle.charAt(i));
+		}
+		if(node==null) {
+			return Collections.emptyList();
+		}
+
+		if(needle.length()>MAX_DEPTH || limit>TOP_SIZE) {
+			return scan(node, needle, limit);
+		}
+
+		// Values starting with the fragment go first, then the best of the rest
+		Top top = node.top();
+		List<String> result = new ArrayList<>(Math.min(limit, top.all.length));
+		Set<Entry> seen = new IdentityHashSet<>();
+		for(Entry entry : top.heads) {
+			if(result.size()>=limit) {
+				break;
+			}
+			if(entry.count>0 && seen.add(entry)) {
+				result.add(entry.value);
+			}
+		}
+		for(Entry entry : top.all) {
+			if(result.size()>=limit) {
+				break;
+			}
+			if(entry.count>0 && seen.add(entry)) {
+				result.add(entry.value);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Ranks all values in the subtree of {@code node}, verifying them
+	 * against the full {@code needle}.
+	 */
+	private static List<String> scan(Node node, String needle, int limit) {
+		Set<Entry> candidates = new IdentityHashSet<>();
+		List<Node> pending = new ArrayList<>();
+		pending.add(node);
+
+		while(!pending.isEmpty()) {
+			Node current = pending.remove(pending.size()-1);
+			Collections.addAll(candidates, current.heads);
+			Collections.addAll(candidates, current.values);
+			Collections.addAll(pending, current.edges.nodes);
+		}
+
+		// Min-heap with the currently weakest candidate at its head
+		PriorityQueue<Candidate> best = new PriorityQueue<>(limit+1, CANDIDATE_ORDER);
+
+		for(Entry entry : candidates) {
+			boolean prefix = entry.normalized.startsWith(needle);
+			if(!prefix && !entry.normalized.contains(needle)) {
+				continue;
+			}
+
+			Candidate candidate = new Candidate(entry, prefix);
+			if(candidate.count==0) {
+				// Removed concurrently
+				continue;
+			}
+
+			best.add(candidate);
+			if(best.size()>limit) {
+				best.poll();
+			}
+		}
+
+		List<Candidate> sorted = new ArrayList<>(best);
+		sorted.sort(CANDIDATE_ORDER.reversed());
+
+		List<String> result = new ArrayList<>(sorted.size());
+		for(Candidate candidate : sorted) {
+			result.add(candidate.entry.value);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the (at most {@value #TOP_SIZE}) best entries among the
+	 * given candidates, best first.
+	 */
+	private static Entry[] best(Collection<Entry> candidates) {
+		PriorityQueue<Candidate> best = new PriorityQueue<>(TOP_SIZE+1, CANDIDATE_ORDER);
+
+		for(Entry entry : candidates) {
+			Candidate candidate = new Candidate(entry, false);
+			if(candidate.count==0) {
+				continue;
+			}
+
+			best.add(candidate);
+			if(best.size()>TOP_SIZE) {
+				best.poll();
+			}
+		}
+
+		Entry[] result = new Entry[best.size()];
+		for(int i = result.length-1; i>=0; i--) {
+			result[i] = best.poll().entry;
+		}
+		return result;
+	}
+
+	static String normalize(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the distinct beginnings of all the suffixes of the
+	 * normalized value that start a word, mapped to whether they
+	 * denote the beginning of the entire value.
+	 */
+	private static Map<String, Boolean> suffixes(String normalized) {
+		Map<String, Boolean> result = new HashMap<>();
+		int length = Math.min(normalized.length(), MAX_INDEXED_LENGTH);
+		for(int i = 0; i<length; i++) {
+			if(i==0 || (Character.isLetterOrDigit(normalized.charAt(i))
+					&& !Character.isLetterOrDigit(normalized.charAt(i-1)))) {
+				String suffix = normalized.substring(i, Math.min(normalized.length(), i+MAX_DEPTH));
+				result.merge(suffix, Boolean.valueOf(i==0), Boolean::logicalOr);
+			}
+		}
+		return result;
+	}
+
+	private void insert(Entry entry) {
+		for(Map.Entry<String, Boolean> e : suffixes(entry.normalized).entrySet()) {
+			String suffix = e.getKey();
+			Node[] path = new Node[suffix.length()+1];
+			path[0] = root;
+			for(int i = 0; i<suffix.length(); i++) {
+				char c = suffix.charAt(i);
+				Node child = path[i].edges.child(c);
+				if(child==null) {
+					child = new Node();
+					path[i].edges = path[i].edges.with(c, child);
+				}
+				path[i+1] = child;
+			}
+
+			path[suffix.length()].addValue(entry, e.getValue().booleanValue());
+			invalidate(path);
+		}
+	}
+
+	private void delete(Entry entry) {
+		for(Map.Entry<String, Boolean> e : suffixes(entry.normalized).entrySet()) {
+			String suffix = e.getKey();
+			Node[] path = path(entry, suffix);
+
+			path[suffix.length()].removeValue(entry, e.getValue().booleanValue());
+
+			// Prune all nodes that became useless
+			for(int i = suffix.length(); i>0; i--) {
+				Node node = path[i];
+				if(node.heads.length>0 || node.values.length>0 || node.edges.nodes.length>0) {
+					break;
+				}
+				path[i-1].edges = path[i-1].edges.without(suffix.charAt(i-1));
+			}
+
+			invalidate(path);
+		}
+	}
+
+	/**
+	 * Discards the cached best values of all nodes that contain
+	 * the given entry in their subtree.
+	 */
+	private void invalidate(Entry entry) {
+		for(String suffix : suffixes(entry.normalized).keySet()) {
+			invalidate(path(entry, suffix));
+		}
+	}
+
+	private static void invalidate(Node[] path) {
+		for(Node node : path) {
+			node.version++;
+		}
+	}
+
+	private Node[] path(Entry entry, String suffix) {
+		Node[] path = new Node[suffix.length()+1];
+		path[0] = root;
+		for(int i = 0; i<suffix.length(); i++) {
+			path[i+1] = path[i].edges.child(suffix.charAt(i));
+			if(path[i+1]==null)
+				throw new IllegalStateException("Corrupted suggestion index - missing path for: "+entry.value);
+		}
+		return path;
+	}
+
+	/**
+	 * Orders candidates from weakest to best
+	 */
+	private static final Comparator<Candidate> CANDIDATE_ORDER = (c1, c2) -> {
+		int result = Boolean.compare(c1.prefix, c2.prefix);
+		if(result==0) {
+			result = Integer.compare(c1.count, c2.count);
+		}
+		if(result==0) {
+			result = Long.compare(c1.lastUsed, c2.lastUsed);
+		}
+		if(result==0) {
+			result = c2.entry.value.compareTo(c1.entry.value);
+		}
+		return result;
+	};
+
+	/**
+	 * Snapshot of the weights of an entry, so that the ordering stays
+	 * stable while writers keep updating the entry.
+	 */
+	private static class Candidate {
+		final Entry entry;
+		final boolean prefix;
+		final int count;
+		final long lastUsed;
+
+		Candidate(Entry entry, boolean prefix) {
+			this.entry = entry;
+			this.prefix = prefix;
+			this.count = entry.count;
+			this.lastUsed = entry.lastUsed;
+		}
+	}
+
+	private static class Entry {
+		final String value;
+		final String normalized;
+
+		volatile int count = 0;
+		volatile long lastUsed = 0;
+
+		Entry(String value) {
+			this.value = value;
+			this.normalized = normalize(value);
+		}
+	}
+
+	private static final Entry[] NO_ENTRIES = {};
+
+	/**
+	 * Cached best values of a subtree, valid as long as the
+	 * node's version hasn't changed.
+	 */
+	private static class Top {
+		final int version;
+		/** Best values whose beginning leads into the subtree */
+		final Entry[] heads;
+		/** Best values in the subtree overall */
+		final Entry[] all;
+
+		Top(int version, Entry[] heads, Entry[] all) {
+			this.version = version;
+			this.heads = heads;
+			this.all = all;
+		}
+	}
+
+	private static class Node {
+		volatile Edges edges = Edges.EMPTY;
+
+		/**
+		 * Values whose indexed beginning ends in this node
+		 */
+		volatile Entry[] heads = NO_ENTRIES;
+
+		/**
+		 * Values with an indexed word ending in this node
+		 */
+		volatile Entry[] values = NO_ENTRIES;
+
+		/**
+		 * Incremented by writers after every change to the subtree
+		 */
+		volatile int version = 0;
+
+		volatile Top top;
+
+		Top top() {
+			int version = this.version;
+			Top top = this.top;
+			if(top!=null && top.version==version) {
+				return top;
+			}
+
+			Set<Entry> heads = new IdentityHashSet<>();
+			Set<Entry> all = new IdentityHashSet<>();
+			Collections.addAll(heads, this.heads);
+			Collections.addAll(all, this.heads);
+			Collections.addAll(all, values);
+
+			for(Node child : edges.nodes) {
+				Top childTop = child.top();
+				Collections.addAll(heads, childTop.heads);
+				Collections.addAll(all, childTop.all);
+			}
+
+			top = new Top(version, best(heads), best(all));
+			this.top = top;
+
+			return top;
+		}
+
+		void addValue(Entry entry, boolean head) {
+			if(head) {
+				heads = add(heads, entry);
+			} else {
+				values = add(values, entry);
+			}
+		}
+
+		void removeValue(Entry entry, boolean head) {
+			if(head) {
+				heads = remove(heads, entry);
+			} else {
+				values = remove(values, entry);
+			}
+		}
+
+		private static Entry[] add(Entry[] entries, Entry entry) {
+			Entry[] result = Arrays.copyOf(entries, entries.length+1);
+			result[entries.length] = entry;
+			return result;
+		}
+
+		private static Entry[] remove(Entry[] entries, Entry entry) {
+			for(int i = 0; i<entries.length; i++) {
+				if(entries[i]==entry) {
+					Entry[] result = new Entry[entries.length-1];
+					System.arraycopy(entries, 0, result, 0, i);
+					System.arraycopy(entries, i+1, result, i, entries.length-i-1);
+					return result;
+				}
+			}
+			return entries;
+		}
+	}
+
+	/**
+	 * Immutable set of outgoing edges of a node, sorted by character.
+	 */
+	private static final class Edges {
+
+		static final Edges EMPTY = new Edges(new char[0], new Node[0]);
+
+		final char[] keys;
+		final Node[] nodes;
+
+		Edges(char[] keys, Node[] nodes) {
+			this.keys = keys;
+			this.nodes = nodes;
+		}
+
+		Node child(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index<0 ? null : nodes[index];
+		}
+
+		Edges with(char c, Node node) {
+			int index = -Arrays.binarySearch(keys, c)-1;
+			int length = keys.length;
+
+			char[] newKeys = new char[length+1];
+			Node[] newNodes = new Node[length+1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(nodes, 0, newNodes, 0, index);
+			newKeys[index] = c;
+			newNodes[index] = node;
+			System.arraycopy(keys, index, newKeys, index+1, length-index);
+			System.arraycopy(nodes, index, newNodes, index+1, length-index);
+
+			return new Edges(newKeys, newNodes);
+		}
+
+		Edges without(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			if(index<0) {
+				return this;
+			}
+			int length = keys.length;
+			if(length==1) {
+				return EMPTY;
+			}
+
+			char[] newKeys = new char[length-1];
+			Node[] newNodes = new Node[length-1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(nodes, 0, newNodes, 0, index);
+			System.arraycopy(keys, index+1, newKeys, index, length-index-1);
+			System.arraycopy(nodes, index+1, newNodes, index, length-index-1);
+
+			return new Edges(newKeys, newNodes);
+		}
+	}
+}
@@ -37,6 +37,7 @@ import bwfdm.replaydh.utils.RDHUtils;
 import bwfdm.replaydh.workflow.Resource;
 import bwfdm.replaydh.workflow.Workflow;
 import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowStepIterator;
 
 /**
  * Wraps all the basic information needed for an export
@@ -67,6 +68,7 @@ public class WorkflowExportInfo {
 	private Workflow workflow;
 	private WorkflowStep sourceStep, targetStep;
 	private Set<WorkflowStep> steps;
+	private boolean allSteps;
 
 	private ResourceProvider resourceProvider;
 	private IOResource outputResource;
@@ -124,8 +126,29 @@ public class WorkflowExportInfo {
 		return targetStep;
 	}
 
+	/**
+	 * Returns the steps to be exported. If the export covers
+	 * {@link #isAllSteps() all steps} of the workflow, this collects them
+	 * into a new set on every call. Exporters that only need to visit each
+	 * step once should use {@link #createStepIterator()} instead.
+	 */
 	public Set<WorkflowStep> getSteps() {
-		return steps;
+		return allSteps ? workflow.getAllSteps() : steps;
+	}
+
+	/**
+	 * Returns whether the entire workflow is to be exported.
+	 */
+	public boolean isAllSteps() {
+		return allSteps;
+	}
+
+	/**
+	 * Creates a fresh iterator that visits the steps to be exported in
+	 * topological order without collecting them first.
+	 */
+	public WorkflowStepIterator createStepIterator() {
+		return new WorkflowStepIterator(workflow, allSteps ? null : steps);
 	}
 
 	public ResourceProvider getResourceProvider() {
@@ -214,7 +237,7 @@ public class WorkflowExportInfo {
 		sb.append(", encoding=").append(encoding);
 		sb.append(", sourceStep=").append(sourceStep==null ? null : sourceStep.getId());
 		sb.append(", targetStep=").append(targetStep==null ? null : targetStep.getId());
-		sb.append(", stepCount=").append(steps==null ? 0 : steps.size());
+		sb.append(", stepCount=").append(allSteps ? "all" : String.valueOf(steps==null ? 0 : steps.size()));
 		sb.append(", resourceCount=").append(resources==null ? 0 : resources.size());
 		sb.append(", outputResource=").append(outputResource==null ? null : outputResource.getPath());
 		sb.append(", resourceProvider=").append(resourceProvider);
@@ -405,7 +428,7 @@ public class WorkflowExportInfo {
 		}
 
 		public Builder steps(Set<WorkflowStep> steps) {
-			checkState("Workflow steps already set", info.steps==null);
+			checkState("Workflow steps already set", info.steps==null && !info.allSteps);
 			requireNonNull(steps);
 
 			info.steps = steps;
@@ -413,6 +436,18 @@ public class WorkflowExportInfo {
 			return this;
 		}
 
+		/**
+		 * Marks the export as covering every step in the workflow, so
+		 * that the steps don't have to be collected upfront.
+		 */
+		public Builder allSteps() {
+			checkState("Workflow steps already set", info.steps==null && !info.allSteps);
+
+			info.allSteps = true;
+
+			return this;
+		}
+
 		public Builder resourceProvider(ResourceProvider resourceProvider) {
 			info.checkExport(true);
 			checkState("Resource provider already set", info.resourceProvider==null);
@@ -466,7 +501,7 @@ public class WorkflowExportInfo {
 			}
 
 			checkState("Workflow not set", info.workflow!=null);
-			checkState("Steps not set", info.steps!=null);
+			checkState("Steps not set", info.steps!=null || info.allSteps);
 
 			if(info.workflowScope==WorkflowScope.PATH) {
 				checkState("Source step not set", info.sourceStep!=null);
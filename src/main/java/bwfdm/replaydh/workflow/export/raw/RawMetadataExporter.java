@@ -20,8 +20,9 @@ package bwfdm.replaydh.workflow.export.raw;
 
 import java.awt.Component;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
-import java.util.Set;
+import java.nio.file.Path;
 
 import javax.swing.JCheckBox;
 import javax.swing.JTextArea;
@@ -29,6 +30,8 @@ import javax.swing.JTextArea;
 import com.jgoodies.forms.builder.FormBuilder;
 import com.jgoodies.forms.factories.Paddings;
 
+import bwfdm.replaydh.binary.BinaryFormat;
+import bwfdm.replaydh.binary.BinaryWorkflowWriter;
 import bwfdm.replaydh.json.JsonWorkflowStepWriter;
 import bwfdm.replaydh.resources.ResourceManager;
 import bwfdm.replaydh.ui.GuiUtils;
@@ -37,7 +40,7 @@ import bwfdm.replaydh.ui.helper.ScrollablePanel.ScrollableSizeHint;
 import bwfdm.replaydh.utils.Options;
 import bwfdm.replaydh.workflow.Workflow;
 import bwfdm.replaydh.workflow.WorkflowAnonymiser;
-import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowStepIterator;
 import bwfdm.replaydh.workflow.export.ExportException;
 import bwfdm.replaydh.workflow.export.WorkflowExportInfo;
 import bwfdm.replaydh.workflow.export.WorkflowExporter;
@@ -100,15 +103,27 @@ public class RawMetadataExporter implements WorkflowExporter {
 	public void export(WorkflowExportInfo exportInfo) throws IOException, ExportException, InterruptedException {
 
 		Workflow workflow = exportInfo.getWorkflow();
-		Set<WorkflowStep> steps = exportInfo.getSteps();
+		WorkflowStepIterator steps = exportInfo.createStepIterator();
+		String title = workflow.getTitle();
+		String description = workflow.getDescription();
 
+		// Anonymise steps one by one while they are being written
 		if(doAnonymise) {
 			WorkflowAnonymiser anonymiser = new WorkflowAnonymiser(workflow);
+			steps.addStage(anonymiser::anonymiseStep);
 
-			anonymiser.anonymise();
+			title = WorkflowAnonymiser.anonymiseText(title);
+			description = WorkflowAnonymiser.anonymiseText(description);
+		}
+
+		if(isBinaryOutput(exportInfo)) {
+			try(OutputStream out = exportInfo.createOutputStream();
+					BinaryWorkflowWriter workflowStepWriter = new BinaryWorkflowWriter()) {
+				workflowStepWriter.init(out, new Options());
 
-			workflow = anonymiser.getTarget();
-			steps = anonymiser.map(steps);
+				workflowStepWriter.writeWorkflow(title, description, steps);
+			}
+			return;
 		}
 
 		try(Writer writer = exportInfo.createWriter();
@@ -118,8 +133,17 @@ public class RawMetadataExporter implements WorkflowExporter {
 			options.put(JsonWorkflowStepWriter.PRETTY, Boolean.TRUE);
 			workflowStepWriter.init(writer, options);
 
-			workflowStepWriter.writeWorkflow(workflow, steps);
+			workflowStepWriter.writeWorkflow(title, description, steps);
 		}
 	}
 
+	/**
+	 * Checks whether the user picked the {@link BinaryFormat binary format}
+	 * as output, based on the file ending.
+	 */
+	private static boolean isBinaryOutput(WorkflowExportInfo exportInfo) {
+		Path path = exportInfo.getOutputResource().getPath();
+		return path!=null && path.getFileName().toString().endsWith(BinaryFormat.FILE_EXTENSION);
+	}
+
 }
@@ -0,0 +1,462 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.impl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Primitive storage for the graph structure behind {@link Node} instances.
+ * Every attached node is assigned a dense {@code int} index. Links are kept
+ * as index slices in a single shared {@code int[]} pool (one slice per node
+ * and direction, similar to a compressed sparse row layout), flags live in
+ * an {@code int[]} and node properties are stored column-wise per property
+ * key. This avoids the per-node lists and maps that would otherwise dominate
+ * the memory footprint of large workflows.
+ * <p>
+ * Slices grow by powers of two. When a slice needs to grow it is moved to the
+ * end of the pool and the old space is reclaimed by an occasional compaction.
+ * Indices of removed nodes are reused for new ones.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Markus Gärtner
+ *
+ * @param <E> type of payload of the stored nodes
+ */
+final class AdjacencyStore<E extends Object> {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Minimum size of the edge pool before compaction is considered
+	 */
+	private static final int MIN_COMPACTION_SIZE = 1024;
+
+	private Node<E>[] nodes;
+	private int[] flags;
+	private int[] outOffset, outCount;
+	private int[] inOffset, inCount;
+
+	/**
+	 * High-water mark of used node indices
+	 */
+	private int size = 0;
+
+	/**
+	 * Indices of removed nodes that can be reused
+	 */
+	private int[] free = new int[INITIAL_CAPACITY];
+	private int freeCount = 0;
+
+	/**
+	 * Shared pool of link slices
+	 */
+	private int[] edges;
+	private int edgesSize = 0;
+
+	/**
+	 * Number of slots in the pool no longer covered by any slice
+	 */
+	private int garbage = 0;
+
+	/**
+	 * Node properties, stored as one column per key
+	 */
+	private final Map<String, Object[]> properties = new HashMap<>(4);
+
+	AdjacencyStore() {
+		init();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void init() {
+		nodes = (Node<E>[]) new Node<?>[INITIAL_CAPACITY];
+		flags = new int[INITIAL_CAPACITY];
+		outOffset = new int[INITIAL_CAPACITY];
+		outCount = new int[INITIAL_CAPACITY];
+		inOffset = new int[INITIAL_CAPACITY];
+		inCount = new int[INITIAL_CAPACITY];
+		edges = new int[INITIAL_CAPACITY*2];
+
+		size = 0;
+		freeCount = 0;
+		edgesSize = 0;
+		garbage = 0;
+		properties.clear();
+	}
+
+	/**
+	 * Capacity of a slice holding {@code count} links.
+	 */
+	private static int capacity(int count) {
+		return count<=1 ? count : Integer.highestOneBit(count-1)<<1;
+	}
+
+	private void ensureNodeCapacity(int required) {
+		if(required<=nodes.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(required, nodes.length<<1);
+		nodes = Arrays.copyOf(nodes, newCapacity);
+		flags = Arrays.copyOf(flags, newCapacity);
+		outOffset = Arrays.copyOf(outOffset, newCapacity);
+		outCount = Arrays.copyOf(outCount, newCapacity);
+		inOffset = Arrays.copyOf(inOffset, newCapacity);
+		inCount = Arrays.copyOf(inCount, newCapacity);
+	}
+
+	/**
+	 * Assigns an index to the given node.
+	 */
+	void attach(Node<E> node) {
+		int index;
+		if(freeCount>0) {
+			index = free[--freeCount];
+		} else {
+			ensureNodeCapacity(size+1);
+			index = size++;
+		}
+
+		nodes[index] = node;
+		node.store = this;
+		node.index = index;
+	}
+
+	/**
+	 * Removes the given node together with all links from or to it
+	 * and releases its index.
+	 */
+	void detach(Node<E> node) {
+		int index = node.index;
+
+		for(int i = inCount[index]-1; i>=0; i--) {
+			int source = edges[inOffset[index]+i];
+			removeEdge(outOffset, outCount, source, index);
+		}
+		for(int i = outCount[index]-1; i>=0; i--) {
+			int target = edges[outOffset[index]+i];
+			removeEdge(inOffset, inCount, target, index);
+		}
+
+		garbage += capacity(inCount[index]) + capacity(outCount[index]);
+		inCount[index] = outCount[index] = 0;
+		inOffset[index] = outOffset[index] = 0;
+		flags[index] = 0;
+
+		for(Object[] column : properties.values()) {
+			if(index<column.length) {
+				column[index] = null;
+			}
+		}
+
+		nodes[index] = null;
+		if(freeCount==free.length) {
+			free = Arrays.copyOf(free, freeCount<<1);
+		}
+		free[freeCount++] = index;
+
+		node.store = null;
+		node.index = -1;
+	}
+
+	/**
+	 * Detaches all nodes and resets the storage to its initial state.
+	 */
+	void clear() {
+		for(int i=0; i<size; i++) {
+			Node<E> node = nodes[i];
+			if(node!=null) {
+				node.store = null;
+				node.index = -1;
+			}
+		}
+
+		init();
+	}
+
+	// LINKS
+
+	void addLink(int source, int target) {
+		addEdge(outOffset, outCount, source, target);
+		addEdge(inOffset, inCount, target, source);
+	}
+
+	void removeLink(int source, int target) {
+		removeEdge(outOffset, outCount, source, target);
+		removeEdge(inOffset, inCount, target, source);
+	}
+
+	private void addEdge(int[] offsets, int[] counts, int index, int value) {
+		int count = counts[index];
+		if(count==capacity(count)) {
+			relocate(offsets, index, count, capacity(count+1));
+		}
+
+		edges[offsets[index]+count] = value;
+		counts[index] = count+1;
+	}
+
+	/**
+	 * Removes the first occurrence of {@code value} from the slice,
+	 * preserving the order of the remaining entries.
+	 */
+	private void removeEdge(int[] offsets, int[] counts, int index, int value) {
+		int offset = offsets[index];
+		int count = counts[index];
+		for(int i=0; i<count; i++) {
+			if(edges[offset+i]==value) {
+				System.arraycopy(edges, offset+i+1, edges, offset+i, count-i-1);
+				counts[index] = count-1;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves the slice of the given node to the end of the pool, providing
+	 * room for {@code newCapacity} links.
+	 */
+	private void relocate(int[] offsets, int index, int count, int newCapacity) {
+		if(garbage>(edgesSize>>1) && edgesSize>MIN_COMPACTION_SIZE) {
+			compact();
+		}
+
+		int required = edgesSize+newCapacity;
+		if(required>edges.length) {
+			edges = Arrays.copyOf(edges, Math.max(required, edges.length<<1));
+		}
+
+		int offset = edgesSize;
+		System.arraycopy(edges, offsets[index], edges, offset, count);
+		offsets[index] = offset;
+		edgesSize += newCapacity;
+		garbage += capacity(count);
+	}
+
+	/**
+	 * Rewrites the pool so that all slices are stored back to back.
+	 */
+	private void compact() {
+		int required = 0;
+		for(int i=0; i<size; i++) {
+			required += capacity(outCount[i]) + capacity(inCount[i]);
+		}
+
+		int[] newEdges = new int[Math.max(required<<1, INITIAL_CAPACITY*2)];
+		int cursor = 0;
+		for(int i=0; i<size; i++) {
+			cursor = copySlice(newEdges, cursor, outOffset, outCount, i);
+			cursor = copySlice(newEdges, cursor, inOffset, inCount, i);
+		}
+
+		edges = newEdges;
+		edgesSize = cursor;
+		garbage = 0;
+	}
+
+	private int copySlice(int[] target, int cursor, int[] offsets, int[] counts, int index) {
+		int count = counts[index];
+		if(count>0) {
+			System.arraycopy(edges, offsets[index], target, cursor, count);
+		}
+		offsets[index] = cursor;
+		return cursor + capacity(count);
+	}
+
+	/**
+	 * Returns the exclusive upper bound for indices of attached nodes.
+	 */
+	int indexLimit() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of slots in use by the edge pool, including
+	 * the ones no longer covered by any slice.
+	 */
+	int poolSize() {
+		return edgesSize;
+	}
+
+	E content(int index) {
+		Node<E> node = nodes[index];
+		return node==null ? null : node.content();
+	}
+
+	/**
+	 * Returns the index of the target of an outgoing link.
+	 */
+	int outgoingIndex(int index, int position) {
+		return edges[outOffset[index]+position];
+	}
+
+	/**
+	 * Returns the index of the source of an incoming link.
+	 */
+	int incomingIndex(int index, int position) {
+		return edges[inOffset[index]+position];
+	}
+
+	int outgoingCount(int index) {
+		return outCount[index];
+	}
+
+	int incomingCount(int index) {
+		return inCount[index];
+	}
+
+	E outgoing(int index, int position) {
+		return target(outOffset, outCount, index, position);
+	}
+
+	E incoming(int index, int position) {
+		return target(inOffset, inCount, index, position);
+	}
+
+	private E target(int[] offsets, int[] counts, int index, int position) {
+		if(position<0 || position>=counts[index])
+			throw new IndexOutOfBoundsException("Position "+position+" out of bounds for "+counts[index]+" links");
+		return nodes[edges[offsets[index]+position]].content();
+	}
+
+	boolean hasOutgoing(int index, E target) {
+		int offset = outOffset[index];
+		for(int i = outCount[index]-1; i>=0; i--) {
+			if(nodes[edges[offset+i]].content()==target) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	void forEachOutgoing(int index, Consumer<? super E> action) {
+		forEach(outOffset, outCount, index, action);
+	}
+
+	void forEachIncoming(int index, Consumer<? super E> action) {
+		forEach(inOffset, inCount, index, action);
+	}
+
+	private void forEach(int[] offsets, int[] counts, int index, Consumer<? super E> action) {
+		int offset = offsets[index];
+		int count = counts[index];
+		for(int i=0; i<count; i++) {
+			action.accept(nodes[edges[offset+i]].content());
+		}
+	}
+
+	/**
+	 * Returns a live read-only view on the outgoing links of a node.
+	 */
+	List<E> outgoingView(Node<E> node) {
+		return new LinkView(node, true);
+	}
+
+	/**
+	 * Returns a live read-only view on the incoming links of a node.
+	 */
+	List<E> incomingView(Node<E> node) {
+		return new LinkView(node, false);
+	}
+
+	// FLAGS
+
+	int flags(int index) {
+		return flags[index];
+	}
+
+	void setFlags(int index, int value) {
+		flags[index] = value;
+	}
+
+	/**
+	 * Sets or clears the given flag on every node.
+	 */
+	void setFlagForAll(int flag, boolean active) {
+		if(active) {
+			for(int i=0; i<size; i++) {
+				flags[i] |= flag;
+			}
+		} else {
+			for(int i=0; i<size; i++) {
+				flags[i] &= ~flag;
+			}
+		}
+	}
+
+	// PROPERTIES
+
+	Object setProperty(int index, String key, Object value) {
+		Object[] column = properties.get(key);
+		if(column==null) {
+			if(value==null) {
+				return null;
+			}
+			column = new Object[nodes.length];
+			properties.put(key, column);
+		} else if(index>=column.length) {
+			if(value==null) {
+				return null;
+			}
+			column = Arrays.copyOf(column, nodes.length);
+			properties.put(key, column);
+		}
+
+		Object oldValue = column[index];
+		column[index] = value;
+		return oldValue;
+	}
+
+	Object getProperty(int index, String key) {
+		Object[] column = properties.get(key);
+		return column==null || index>=column.length ? null : column[index];
+	}
+
+	private class LinkView extends AbstractList<E> {
+		private final Node<E> node;
+		private final boolean outgoing;
+
+		LinkView(Node<E> node, boolean outgoing) {
+			this.node = node;
+			this.outgoing = outgoing;
+		}
+
+		@Override
+		public E get(int position) {
+			int index = node.index;
+			return outgoing ? AdjacencyStore.this.outgoing(index, position)
+					: AdjacencyStore.this.incoming(index, position);
+		}
+
+		@Override
+		public int size() {
+			int index = node.index;
+			if(index==-1 || node.store!=AdjacencyStore.this) {
+				return 0;
+			}
+			return outgoing ? outCount[index] : inCount[index];
+		}
+	}
+}
@@ -22,13 +22,15 @@ import static bwfdm.replaydh.utils.RDHUtils.checkArgument;
 import static bwfdm.replaydh.utils.RDHUtils.checkState;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -59,6 +61,11 @@ public class DefaultWorkflow implements Workflow {
 
 	private final Map<WorkflowStep, Node<WorkflowStep>> graph = new IdentityHashMap<>();
 
+	/**
+	 * Links, flags and properties of all the nodes in {@link #graph}
+	 */
+	private final AdjacencyStore<WorkflowStep> store = new AdjacencyStore<>();
+
 	private final Map<String, WorkflowStep> idLookup = new HashMap<>();
 
 	static final String UNSET_ID = "UNSET";
@@ -190,7 +197,7 @@ public class DefaultWorkflow implements Workflow {
 
 		listeners.clear();
 
-		graph.values().forEach(n -> n.dispose());
+		store.clear();
 		graph.clear();
 
 		idLookup.clear();
@@ -388,6 +395,19 @@ public class DefaultWorkflow implements Workflow {
 		ensureFullWorkflowData();
 	}
 
+	/**
+	 * Callback for subclasses that implement lazy loading of
+	 * external resources. This method signals that data directly
+	 * associated with all the given {@code steps} should be loaded,
+	 * giving implementations the chance to fetch it in bulk.
+	 * <p>
+	 * The default implementation delegates to {@link #ensureWorkflowStepData(WorkflowStep)}
+	 * for every individual step.
+	 */
+	protected void ensureWorkflowStepsData(Collection<? extends WorkflowStep> steps) {
+		steps.forEach(this::ensureWorkflowStepData);
+	}
+
 	protected Consumer<? super WorkflowStep> checkedConsumer(Consumer<? super WorkflowStep> action) {
 		Consumer<WorkflowStep> check = this::ensureWorkflowStepData;
 
@@ -410,10 +430,31 @@ public class DefaultWorkflow implements Workflow {
 	public void forEachStep(Consumer<? super WorkflowStep> action) {
 		requireNonNull(action);
 		ensureFullWorkflowData();
+		ensureWorkflowStepsData(graph.keySet());
 
 		graph.keySet().forEach(checkedConsumer(action));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see bwfdm.replaydh.workflow.Workflow#prefetchSteps(java.util.Collection)
+	 */
+	@Override
+	public void prefetchSteps(Collection<? extends WorkflowStep> steps) {
+		requireNonNull(steps);
+
+		ensureWorkflowStepsData(steps);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see bwfdm.replaydh.workflow.Workflow#getKnownSteps()
+	 */
+	@Override
+	public List<WorkflowStep> getKnownSteps() {
+		return new ArrayList<>(graph.keySet());
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see bwfdm.replaydh.workflow.Workflow#forEachNextStep(bwfdm.replaydh.workflow.WorkflowStep, java.util.function.Consumer)
@@ -451,7 +492,7 @@ public class DefaultWorkflow implements Workflow {
 
 		ensureWorkflowStepLinks(step, false);
 
-		return ensureWorkflowStepData(node(step, false).outgoing().get(index));
+		return ensureWorkflowStepData(node(step, false).getOutgoing(index));
 	}
 
 	/**
@@ -531,7 +572,7 @@ public class DefaultWorkflow implements Workflow {
 
 		ensureWorkflowStepLinks(step, true);
 
-		return ensureWorkflowStepData(node(step, false).incoming().get(index));
+		return ensureWorkflowStepData(node(step, false).getIncoming(index));
 	}
 
 	/**
@@ -696,17 +737,10 @@ public class DefaultWorkflow implements Workflow {
 		boolean canDelete = node!=null && node.outgoingCount()==0;
 
 		if(canDelete) {
-			// Delete all links for incoming steps
-			node.forEachIncoming(source -> {
-				Node<WorkflowStep> previous = node(source, false);
-				List<WorkflowStep> out = previous.outgoing();
-				// Delete link
-				out.remove(step);
-				// And update heads if needed
-				setHead(previous.content(), out.isEmpty());
-
-			});
-			// Erase internal node data
+			// Previous steps become heads if the link to this step is their only one
+			node.forEachIncoming(source -> setHead(source, node(source, false).outgoingCount()==1));
+
+			// Erase internal node data, including all links
 			node.dispose();
 
 			// Finally delete node mapping itself
@@ -814,6 +848,7 @@ public class DefaultWorkflow implements Workflow {
 		Node<WorkflowStep> node = graph.get(content);
 		if(node==null && createIfMissing) {
 			node = newNode(content);
+			store.attach(node);
 			graph.put(content, node);
 		}
 		if(node==null && requirePresent)
@@ -847,14 +882,12 @@ public class DefaultWorkflow implements Workflow {
 		requireNonNull(from);
 		requireNonNull(to);
 
-		node(from, true).addOutgoing(to);
-		node(to, true).addIncoming(from);
+		Node<WorkflowStep> source = node(from, true);
+		source.addOutgoing(node(to, true));
 	}
 
 	public void setFlagForNodes(int flag, boolean active) {
-		for(Node<WorkflowStep> node : graph.values()) {
-			node.setFlag(flag, active);
-		}
+		store.setFlagForAll(flag, active);
 	}
 
 
@@ -865,86 +898,93 @@ public class DefaultWorkflow implements Workflow {
 	 * Outgoing links for a node are only being followed if the visitor
 	 * returned {@code true} for above call. No node will be visited more
 	 * than once.
+	 * <p>
+	 * The visited state is private to each call, so multiple threads can
+	 * walk the graph at the same time as long as nobody modifies it.
 	 *
 	 * @param startingNodes
 	 * @param visitor
 	 */
 	public void walkGraph(Set<WorkflowStep> startingNodes, BiPredicate<Workflow, ? super WorkflowStep> visitor) {
 		requireNonNull(visitor);
-		requireNonNull(startingNodes);
-		checkArgument("No starting nodes", !startingNodes.isEmpty());
+		walkGraph(startingNodes, step -> visitor.test(this, step));
+	}
 
-		ensureFullWorkflowData();
+	/**
+	 * Same as {@link #walkGraph(Set, BiPredicate)} but without passing
+	 * this graph to the visitor.
+	 *
+	 * @param startingNodes
+	 * @param visitor
+	 */
+	public void walkGraph(Set<WorkflowStep> startingNodes, Predicate<? super WorkflowStep> visitor) {
+		requireNonNull(visitor);
 
-		// Reset VISITED flag for entire graph
-		setFlagForNodes(FLAG_VISITED, false);
+		Traversals.walk(store, indices(startingNodes), visitor);
+	}
 
-		// Grab nodes for starting points
-		Stack<Node<WorkflowStep>> buffer = new Stack<>();
-		for(WorkflowStep node : startingNodes) {
-			buffer.add(node(node, false, true));
-		}
+	/**
+	 * Parallel version of {@link #walkGraph(Set, Predicate)} that runs on the
+	 * common {@link java.util.concurrent.ForkJoinPool fork/join pool}.
+	 * The {@code visitor} will be called from multiple threads at once and
+	 * should therefore be free of side effects or at least thread-safe.
+	 * No node will be visited more than once.
+	 *
+	 * @param startingNodes
+	 * @param visitor
+	 */
+	public void walkGraphParallel(Set<WorkflowStep> startingNodes, Predicate<? super WorkflowStep> visitor) {
+		requireNonNull(visitor);
 
-		while(!buffer.isEmpty()) {
-			Node<WorkflowStep> node = buffer.pop();
+		Traversals.walkParallel(store, indices(startingNodes), visitor);
+	}
 
-			boolean doContinue = visitor.test(this, node.content());
+	/**
+	 * Returns an iterator that visits all steps reachable from the given
+	 * starting steps exactly once in breadth-first order.
+	 * <p>
+	 * The graph must not be modified while the iterator is in use.
+	 */
+	public Iterator<WorkflowStep> breadthFirst(Collection<WorkflowStep> startingNodes) {
+		return Traversals.search(store, indices(startingNodes), false);
+	}
 
-			// Mark node as VISITED
-			node.setFlag(FLAG_VISITED, true);
+	/**
+	 * Returns an iterator that visits all steps reachable from the given
+	 * starting steps exactly once in depth-first order.
+	 * <p>
+	 * The graph must not be modified while the iterator is in use.
+	 */
+	public Iterator<WorkflowStep> depthFirst(Collection<WorkflowStep> startingNodes) {
+		return Traversals.search(store, indices(startingNodes), true);
+	}
 
-			// Only if visitor allows it will we follow outgoing links
-			if(doContinue) {
-				List<WorkflowStep> outgoing = node.outgoing();
-				if(outgoing!=null) {
-					for(WorkflowStep out : outgoing) {
-						Node<WorkflowStep> nodeOut = node(out, false, true);
-						if(!nodeOut.flagSet(FLAG_VISITED)) {
-							buffer.add(nodeOut);
-						}
-					}
-				}
-			}
-		}
+	/**
+	 * Returns an iterator that visits all steps reachable from the given
+	 * starting steps so that every step is returned only after all of
+	 * its reachable predecessors.
+	 * <p>
+	 * The graph must not be modified while the iterator is in use.
+	 */
+	public Iterator<WorkflowStep> topological(Collection<WorkflowStep> startingNodes) {
+		return Traversals.topological(store, indices(startingNodes));
 	}
 
-	public void walkGraph(Set<WorkflowStep> startingNodes, Predicate<? super WorkflowStep> visitor) {
-		requireNonNull(visitor);
+	/**
+	 * Translates the given steps into the indices of their nodes.
+	 */
+	private int[] indices(Collection<WorkflowStep> startingNodes) {
 		requireNonNull(startingNodes);
 		checkArgument("No starting nodes", !startingNodes.isEmpty());
 
 		ensureFullWorkflowData();
 
-		// Reset VISITED flag for entire graph
-		setFlagForNodes(FLAG_VISITED, false);
-
-		// Grab nodes for starting points
-		Stack<Node<WorkflowStep>> buffer = new Stack<>();
-		for(WorkflowStep node : startingNodes) {
-			buffer.add(node(node, false, true));
-		}
-
-		while(!buffer.isEmpty()) {
-			Node<WorkflowStep> node = buffer.pop();
-
-			boolean doContinue = visitor.test(node.content());
-
-			// Mark node as VISITED
-			node.setFlag(FLAG_VISITED, true);
-
-			// Only if visitor allows it will we follow outgoing links
-			if(doContinue) {
-				List<WorkflowStep> outgoing = node.outgoing();
-				if(outgoing!=null) {
-					for(WorkflowStep out : outgoing) {
-						Node<WorkflowStep> nodeOut = node(out, false, true);
-						if(!nodeOut.flagSet(FLAG_VISITED)) {
-							buffer.add(nodeOut);
-						}
-					}
-				}
-			}
+		int[] indices = new int[startingNodes.size()];
+		int i = 0;
+		for(WorkflowStep step : startingNodes) {
+			indices[i++] = node(step, false, true).index;
 		}
+		return indices;
 	}
 
 	// Facility to allow subclasses to create compatible additional flags
@@ -970,7 +1010,11 @@ public class DefaultWorkflow implements Workflow {
 	/**
 	 * Used by walker or visitor code to check if a given node has been
 	 * visited previously.
+	 *
+	 * @deprecated the traversal methods keep their visited state private to
+	 * each call, since a flag shared on the nodes prevents concurrent walks
 	 */
+	@Deprecated
 	protected final int FLAG_VISITED = createFlag();
 
 	/**
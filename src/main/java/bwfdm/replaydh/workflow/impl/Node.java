@@ -18,16 +18,17 @@
  */
 package bwfdm.replaydh.workflow.impl;
 
+import static bwfdm.replaydh.utils.RDHUtils.checkState;
 import static java.util.Objects.requireNonNull;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 /**
- * Copied over generic graph node class
+ * Handle for a single node in the graph of a {@link DefaultWorkflow}.
+ * Links, flags and properties are not stored in the node itself but in
+ * the {@link AdjacencyStore} of the workflow, which assigns each node a
+ * dense index once it gets attached.
  *
  * @author Markus Gärtner
  *
@@ -36,10 +37,11 @@ import java.util.function.Consumer;
 public class Node<E extends Object> {
 	private E content;
 
-	private List<E> incoming, outgoing;
-	private int flags = 0;
-
-	private Map<String, Object> properties;
+	/**
+	 * Storage and position of this node, set while the node is attached
+	 */
+	AdjacencyStore<E> store;
+	int index = -1;
 
 	protected Node(E content) {
 		requireNonNull(content);
@@ -51,91 +53,100 @@ public class Node<E extends Object> {
 		return content;
 	}
 
-	public Object setProperty(String key, Object value) {
-		if(properties==null) {
-			properties = new HashMap<>();
-		}
+	private AdjacencyStore<E> store() {
+		checkState("Node not attached", store!=null);
+		return store;
+	}
 
-		return properties.put(key, value);
+	public Object setProperty(String key, Object value) {
+		return store().setProperty(index, key, value);
 	}
 
 	public Object getProperty(String key) {
-		return properties==null ? null : properties.get(key);
+		return store==null ? null : store.getProperty(index, key);
 	}
 
+	/**
+	 * Removes this node and all its links from the graph.
+	 */
 	protected void dispose() {
-		content = null;
-		incoming = null;
-		outgoing = null;
-		flags = 0;
-	}
-
-	private List<E> incoming(boolean createIfMissing) {
-		if(incoming==null && createIfMissing) {
-			incoming = new ArrayList<>();
-		}
-		return incoming;
-	}
-
-	private List<E> outgoing(boolean createIfMissing) {
-		if(outgoing==null && createIfMissing) {
-			outgoing = new ArrayList<>();
+		if(store!=null) {
+			store.detach(this);
 		}
-		return outgoing;
+		content = null;
 	}
 
 	public boolean flagSet(int flag) {
-		return (flags & flag) == flag;
+		return (store().flags(index) & flag) == flag;
 	}
 
 	public void setFlag(int flag, boolean active) {
+		AdjacencyStore<E> store = store();
+		int flags = store.flags(index);
 		if(active) {
 			flags |= flag;
 		} else {
 			flags &= ~flag;
 		}
+		store.setFlags(index, flags);
 	}
 
 	public boolean hasLink(E target) {
-		List<E> outgoing = outgoing(false);
-		return outgoing!=null && outgoing.contains(target);
+		return store().hasOutgoing(index, target);
 	}
 
-	public void addIncoming(E incoming) {
-		incoming(true).add(incoming);
+	/**
+	 * Adds a link from this node to the given {@code target} node.
+	 * The link is visible from both sides afterwards.
+	 */
+	public void addOutgoing(Node<E> target) {
+		checkState("Foreign node", target.store==store());
+		store.addLink(index, target.index);
 	}
 
-	public void addOutgoing(E outgoing) {
-		outgoing(true).add(outgoing);
+	/**
+	 * Removes the link from this node to the given {@code target} node.
+	 */
+	public void removeOutgoing(Node<E> target) {
+		checkState("Foreign node", target.store==store());
+		store.removeLink(index, target.index);
 	}
 
 	public void forEachIncoming(Consumer<? super E> action) {
-		List<E> incoming = incoming(false);
-		if(incoming!=null) {
-			incoming.forEach(action);
-		}
+		store().forEachIncoming(index, action);
 	}
 
 	public void forEachOutgoing(Consumer<? super E> action) {
-		List<E> outgoing = outgoing(false);
-		if(outgoing!=null) {
-			outgoing.forEach(action);
-		}
+		store().forEachOutgoing(index, action);
 	}
 
 	public int incomingCount() {
-		return incoming==null ? 0 : incoming.size();
+		return store==null ? 0 : store.incomingCount(index);
 	}
 
 	public int outgoingCount() {
-		return outgoing==null ? 0 : outgoing.size();
+		return store==null ? 0 : store.outgoingCount(index);
+	}
+
+	public E getOutgoing(int position) {
+		return store().outgoing(index, position);
+	}
+
+	public E getIncoming(int position) {
+		return store().incoming(index, position);
 	}
 
+	/**
+	 * Returns a live read-only view on the outgoing links.
+	 */
 	public List<E> outgoing() {
-		return outgoing(false);
+		return store().outgoingView(this);
 	}
 
+	/**
+	 * Returns a live read-only view on the incoming links.
+	 */
 	public List<E> incoming() {
-		return incoming(false);
+		return store().incomingView(this);
 	}
 }
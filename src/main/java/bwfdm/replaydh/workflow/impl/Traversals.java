@@ -0,0 +1,350 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Graph traversals over an {@link AdjacencyStore}. Every traversal keeps its
+ * own visited state as a bitset keyed by node index, so any number of
+ * traversals can run at the same time as long as the graph itself isn't
+ * modified meanwhile. Nothing has to be reset before a traversal starts.
+ *
+ * @author Markus Gärtner
+ *
+ */
+final class Traversals {
+
+	private Traversals() {
+		// no instantiation
+	}
+
+	/**
+	 * Simple growable buffer of indices, used as stack or queue.
+	 */
+	private static final class IndexBuffer {
+		private int[] items;
+		private int head = 0, tail = 0;
+
+		IndexBuffer(int capacity) {
+			items = new int[Math.max(capacity, 16)];
+		}
+
+		void add(int index) {
+			if(tail==items.length) {
+				if(head>0) {
+					System.arraycopy(items, head, items, 0, tail-head);
+					tail -= head;
+					head = 0;
+				}
+				if(tail==items.length) {
+					items = Arrays.copyOf(items, items.length<<1);
+				}
+			}
+			items[tail++] = index;
+		}
+
+		boolean isEmpty() {
+			return head==tail;
+		}
+
+		int pollFirst() {
+			return items[head++];
+		}
+
+		int pollLast() {
+			return items[--tail];
+		}
+	}
+
+	/**
+	 * Visits all nodes reachable from the {@code start} nodes exactly once,
+	 * either breadth-first or depth-first.
+	 */
+	static <E> Iterator<E> search(AdjacencyStore<E> store, int[] start, boolean depthFirst) {
+		return new SearchIterator<>(store, start, depthFirst);
+	}
+
+	private static final class SearchIterator<E> implements Iterator<E> {
+		private final AdjacencyStore<E> store;
+		private final boolean depthFirst;
+		private final BitSet visited;
+		private final IndexBuffer pending;
+
+		SearchIterator(AdjacencyStore<E> store, int[] start, boolean depthFirst) {
+			this.store = store;
+			this.depthFirst = depthFirst;
+
+			visited = new BitSet(store.indexLimit());
+			pending = new IndexBuffer(start.length);
+
+			// Reverse order for the stack, so that the first start node comes first
+			for(int i=0; i<start.length; i++) {
+				offer(start[depthFirst ? start.length-1-i : i]);
+			}
+		}
+
+		private void offer(int index) {
+			if(!visited.get(index)) {
+				visited.set(index);
+				pending.add(index);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !pending.isEmpty();
+		}
+
+		@Override
+		public E next() {
+			if(pending.isEmpty())
+				throw new NoSuchElementException();
+
+			int index = depthFirst ? pending.pollLast() : pending.pollFirst();
+
+			int count = store.outgoingCount(index);
+			for(int i=0; i<count; i++) {
+				offer(store.outgoingIndex(index, depthFirst ? count-1-i : i));
+			}
+
+			return store.content(index);
+		}
+	}
+
+	/**
+	 * Visits all nodes reachable from the {@code start} nodes so that every
+	 * node comes after all of its reachable predecessors.
+	 */
+	static <E> Iterator<E> topological(AdjacencyStore<E> store, int[] start) {
+		return new TopologicalIterator<>(store, start);
+	}
+
+	private static final class TopologicalIterator<E> implements Iterator<E> {
+		private final AdjacencyStore<E> store;
+
+		/**
+		 * Number of predecessors not returned yet for every reachable node
+		 */
+		private final int[] remaining;
+		private final IndexBuffer ready;
+
+		TopologicalIterator(AdjacencyStore<E> store, int[] start) {
+			this.store = store;
+
+			int limit = store.indexLimit();
+			BitSet reachable = new BitSet(limit);
+			IndexBuffer buffer = new IndexBuffer(start.length);
+			for(int index : start) {
+				if(!reachable.get(index)) {
+					reachable.set(index);
+					buffer.add(index);
+				}
+			}
+			while(!buffer.isEmpty()) {
+				int index = buffer.pollLast();
+				int count = store.outgoingCount(index);
+				for(int i=0; i<count; i++) {
+					int target = store.outgoingIndex(index, i);
+					if(!reachable.get(target)) {
+						reachable.set(target);
+						buffer.add(target);
+					}
+				}
+			}
+
+			remaining = new int[limit];
+			ready = new IndexBuffer(start.length);
+			for(int index = reachable.nextSetBit(0); index>=0; index = reachable.nextSetBit(index+1)) {
+				int count = store.incomingCount(index);
+				int predecessors = 0;
+				for(int i=0; i<count; i++) {
+					if(reachable.get(store.incomingIndex(index, i))) {
+						predecessors++;
+					}
+				}
+				remaining[index] = predecessors;
+				if(predecessors==0) {
+					ready.add(index);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !ready.isEmpty();
+		}
+
+		@Override
+		public E next() {
+			if(ready.isEmpty())
+				throw new NoSuchElementException();
+
+			int index = ready.pollLast();
+
+			int count = store.outgoingCount(index);
+			for(int i = count-1; i>=0; i--) {
+				int target = store.outgoingIndex(index, i);
+				if(--remaining[target]==0) {
+					ready.add(target);
+				}
+			}
+
+			return store.content(index);
+		}
+	}
+
+	/**
+	 * Depth-first walk that only follows the outgoing links of a node if
+	 * the {@code visitor} returned {@code true} for it.
+	 */
+	static <E> void walk(AdjacencyStore<E> store, int[] start, Predicate<? super E> visitor) {
+		BitSet visited = new BitSet(store.indexLimit());
+		IndexBuffer pending = new IndexBuffer(start.length);
+
+		for(int index : start) {
+			if(!visited.get(index)) {
+				visited.set(index);
+				pending.add(index);
+			}
+		}
+
+		while(!pending.isEmpty()) {
+			int index = pending.pollLast();
+
+			if(visitor.test(store.content(index))) {
+				int count = store.outgoingCount(index);
+				for(int i=0; i<count; i++) {
+					int target = store.outgoingIndex(index, i);
+					if(!visited.get(target)) {
+						visited.set(target);
+						pending.add(target);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parallel version of {@link #walk(AdjacencyStore, int[], Predicate)}
+	 * on the common {@link ForkJoinPool}. The visitor is called concurrently
+	 * and must therefore be thread-safe, ideally free of side effects.
+	 */
+	static <E> void walkParallel(AdjacencyStore<E> store, int[] start, Predicate<? super E> visitor) {
+		ConcurrentBitSet visited = new ConcurrentBitSet(store.indexLimit());
+
+		IndexBuffer roots = new IndexBuffer(start.length);
+		for(int i = start.length-1; i>=0; i--) {
+			if(visited.mark(start[i])) {
+				roots.add(start[i]);
+			}
+		}
+
+		ForkJoinPool.commonPool().invoke(new Walker<>(null, store, visitor, visited, roots));
+	}
+
+	private static final class ConcurrentBitSet {
+		private final AtomicLongArray words;
+
+		ConcurrentBitSet(int size) {
+			words = new AtomicLongArray((size+63)>>>6);
+		}
+
+		/**
+		 * Sets the bit for {@code index} and returns {@code true}
+		 * if it hasn't been set before.
+		 */
+		boolean mark(int index) {
+			int word = index>>>6;
+			long mask = 1L << index;
+			for(;;) {
+				long current = words.get(word);
+				if((current & mask) != 0L) {
+					return false;
+				}
+				if(words.compareAndSet(word, current, current | mask)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	private static final class Walker<E> extends CountedCompleter<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Number of queued tasks above which a walker keeps
+		 * new nodes for itself instead of forking.
+		 */
+		private static final int SURPLUS_LIMIT = 3;
+
+		private final AdjacencyStore<E> store;
+		private final Predicate<? super E> visitor;
+		private final ConcurrentBitSet visited;
+		private final IndexBuffer pending;
+
+		Walker(Walker<E> parent, AdjacencyStore<E> store, Predicate<? super E> visitor,
+				ConcurrentBitSet visited, IndexBuffer pending) {
+			super(parent);
+			this.store = store;
+			this.visitor = visitor;
+			this.visited = visited;
+			this.pending = pending;
+		}
+
+		@Override
+		public void compute() {
+			while(!pending.isEmpty()) {
+				int index = pending.pollLast();
+
+				if(!visitor.test(store.content(index))) {
+					continue;
+				}
+
+				int count = store.outgoingCount(index);
+				for(int i = count-1; i>=0; i--) {
+					int target = store.outgoingIndex(index, i);
+					if(!visited.mark(target)) {
+						continue;
+					}
+
+					// Only hand out work while other threads might run short of it
+					if(pending.isEmpty() || getSurplusQueuedTaskCount()>SURPLUS_LIMIT) {
+						pending.add(target);
+					} else {
+						IndexBuffer split = new IndexBuffer(0);
+						split.add(target);
+						addToPendingCount(1);
+						new Walker<>(this, store, visitor, visited, split).fork();
+					}
+				}
+			}
+
+			tryComplete();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.git;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class WorkflowSkeletonCacheTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static ObjectId id(int value) {
+		return ObjectId.fromString(String.format("%040x", value));
+	}
+
+	private static Map<String, ObjectId> tips(String name, ObjectId commit) {
+		Map<String, ObjectId> tips = new LinkedHashMap<>();
+		tips.put(name, commit);
+		return tips;
+	}
+
+	private Path file() {
+		return folder.getRoot().toPath().resolve("skeleton.bin");
+	}
+
+	/**
+	 * Writes a cache with a linear history of 3 commits.
+	 */
+	private Path writeBaseline() throws IOException {
+		Path file = file();
+		new WorkflowSkeletonCache(tips("master", id(3)), id(1),
+				new ObjectId[] {id(1), id(2), id(3)},
+				new int[][] {{}, {0}, {1}}).write(file);
+		return file;
+	}
+
+	@Test
+	public void testMissingFile() throws Exception {
+		assertNull(WorkflowSkeletonCache.read(file()));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Path file = writeBaseline();
+
+		WorkflowSkeletonCache cache = WorkflowSkeletonCache.read(file);
+
+		assertEquals(tips("master", id(3)), cache.getTips());
+		assertEquals(id(1), cache.getInitialCommit());
+		assertEquals(3, cache.getCommitCount());
+		assertEquals(id(2), cache.getCommit(1));
+		assertArrayEquals(new int[0], cache.getParents(0));
+		assertArrayEquals(new int[] {1}, cache.getParents(2));
+		assertEquals(1, cache.getBlockCount());
+		assertFalse(cache.isTruncated());
+	}
+
+	@Test
+	public void testAppend() throws Exception {
+		Path file = writeBaseline();
+
+		// Branch off of commit 2 and merge back into master
+		WorkflowSkeletonCache.append(file, tips("master", id(4)),
+				new ObjectId[] {id(5)}, new int[][] {{1}});
+		Map<String, ObjectId> tips = tips("master", id(6));
+		tips.put("branch", id(5));
+		WorkflowSkeletonCache.append(file, tips,
+				new ObjectId[] {id(6)}, new int[][] {{2, 3}});
+
+		WorkflowSkeletonCache cache = WorkflowSkeletonCache.read(file);
+
+		assertEquals(tips, cache.getTips());
+		assertEquals(5, cache.getCommitCount());
+		assertEquals(id(5), cache.getCommit(3));
+		assertEquals(id(6), cache.getCommit(4));
+		assertArrayEquals(new int[] {1}, cache.getParents(3));
+		assertArrayEquals(new int[] {2, 3}, cache.getParents(4));
+		assertEquals(3, cache.getBlockCount());
+		assertFalse(cache.isTruncated());
+	}
+
+	@Test
+	public void testTruncatedTail() throws Exception {
+		Path file = writeBaseline();
+		long size = Files.size(file);
+
+		WorkflowSkeletonCache.append(file, tips("master", id(4)),
+				new ObjectId[] {id(4)}, new int[][] {{2}});
+
+		// Simulate a crash in the middle of appending
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(size+10);
+		}
+
+		WorkflowSkeletonCache cache = WorkflowSkeletonCache.read(file);
+
+		assertTrue(cache.isTruncated());
+		assertEquals(1, cache.getBlockCount());
+		assertEquals(3, cache.getCommitCount());
+		assertEquals(tips("master", id(3)), cache.getTips());
+	}
+
+	@Test
+	public void testDamagedTail() throws Exception {
+		Path file = writeBaseline();
+		long size = Files.size(file);
+
+		WorkflowSkeletonCache.append(file, tips("master", id(4)),
+				new ObjectId[] {id(4)}, new int[][] {{2}});
+
+		// Flip a byte of the appended commit id so that the checksum fails
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			long pos = Files.size(file)-8-4-4-1;
+			raf.seek(pos);
+			int b = raf.read();
+			raf.seek(pos);
+			raf.write(b ^ 0xFF);
+		}
+		assertTrue(Files.size(file)>size);
+
+		WorkflowSkeletonCache cache = WorkflowSkeletonCache.read(file);
+
+		assertTrue(cache.isTruncated());
+		assertEquals(3, cache.getCommitCount());
+	}
+
+	@Test
+	public void testCorruptedCommitCount() throws Exception {
+		Path file = file();
+		new WorkflowSkeletonCache(Collections.emptyMap(), null,
+				new ObjectId[] {id(1)}, new int[][] {{}}).write(file);
+
+		// magic + version + initial commit flag + tip count
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(4+4+1+4);
+			raf.writeInt(Integer.MAX_VALUE);
+		}
+
+		try {
+			WorkflowSkeletonCache.read(file);
+			fail("Corrupted commit count not detected");
+		} catch(IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDamagedFirstBlock() throws Exception {
+		Path file = writeBaseline();
+
+		try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.setLength(raf.length()-4);
+		}
+
+		try {
+			WorkflowSkeletonCache.read(file);
+			fail("Truncated first block not detected");
+		} catch(IOException e) {
+			// expected
+		}
+	}
+}
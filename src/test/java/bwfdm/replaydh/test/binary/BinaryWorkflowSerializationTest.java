@@ -0,0 +1,218 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.binary;
+
+import static bwfdm.replaydh.test.RDHTestUtils.assertDeepEqual;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bwfdm.replaydh.binary.BinaryWorkflowReader;
+import bwfdm.replaydh.binary.BinaryWorkflowWriter;
+import bwfdm.replaydh.utils.Options;
+import bwfdm.replaydh.workflow.Identifier;
+import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.impl.DefaultPerson;
+import bwfdm.replaydh.workflow.impl.DefaultResource;
+import bwfdm.replaydh.workflow.impl.DefaultTool;
+import bwfdm.replaydh.workflow.impl.DefaultWorkflow;
+import bwfdm.replaydh.workflow.schema.IdentifierSchema;
+import bwfdm.replaydh.workflow.schema.IdentifierType;
+import bwfdm.replaydh.workflow.schema.WorkflowSchema;
+
+/**
+ * Tests {@link BinaryWorkflowWriter} and {@link BinaryWorkflowReader}
+ * in conjunction, analogous to the JSON serialization test.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class BinaryWorkflowSerializationTest {
+
+	private DefaultWorkflow workflow;
+	private WorkflowStep original, deserialized;
+
+	@Before
+	public void prepare() throws Exception {
+		workflow = new DefaultWorkflow(WorkflowSchema.getDefaultSchema());
+		original = workflow.createWorkflowStep();
+		deserialized = null;
+	}
+
+	private void initFull(WorkflowStep step, int index) {
+		IdentifierSchema resourceSchema = workflow.getSchema().getResourceIdentifierSchema();
+		IdentifierSchema personSchema = workflow.getSchema().getPersonIdentifierSchema();
+
+		step.setId("step"+index);
+		step.setTitle("some random title");
+		step.setDescription("some description\nthatcontains\nline-breaks and some other junk...");
+		step.setRecordingTime(LocalDateTime.of(2018, 3, 14, 15, 9, 26, 535897932));
+
+		for(int i=0; i<3; i++) {
+			DefaultResource input = DefaultResource.withResourceType("type"+i);
+			input.setDescription("Some input related stuff "+i);
+			input.addIdentifier(new Identifier(resourceSchema.findIdentifierType(IdentifierType.PATH), "data/input"+i+".csv"));
+			step.addInput(input);
+
+			DefaultResource output = DefaultResource.withResourceType("type"+i);
+			output.addIdentifier(new Identifier(resourceSchema.findIdentifierType(IdentifierType.NAME_VERSION), "output"+i, "context"));
+			step.addOutput(output);
+		}
+
+		DefaultPerson person = DefaultPerson.withRole("author");
+		person.addIdentifier(new Identifier(personSchema.findIdentifierType(IdentifierType.NAME), "Jane Doe"));
+		step.addPerson(person);
+
+		DefaultTool tool = DefaultTool.uniqueTool();
+		tool.setResourceType("executable");
+		tool.setEnvironment("architecture: win10");
+		tool.setParameters("java -jar xyz.jar -v -dest some/place/some/where/my_file.txt");
+		tool.addIdentifier(new Identifier(resourceSchema.findIdentifierType(IdentifierType.NAME_VERSION), "random_tool"));
+		step.setTool(tool);
+
+		step.setProperty("key", "value"+index);
+		step.setProperty("ümlaut", "äöü ☃");
+	}
+
+	private byte[] write(Options options, WorkflowStep...steps) throws IOException, InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(BinaryWorkflowWriter writer = new BinaryWorkflowWriter()) {
+			writer.init(out, options);
+			for(WorkflowStep step : steps) {
+				writer.write(step);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private List<WorkflowStep> read(byte[] data) throws IOException, InterruptedException {
+		workflow.reset();
+
+		try(BinaryWorkflowReader reader = new BinaryWorkflowReader(
+				workflow.getSchema(), workflow::createWorkflowStep)) {
+			reader.init(new ByteArrayInputStream(data), null);
+			return reader.readAll();
+		}
+	}
+
+	private void checkSerializationResult(String msg, Options options) throws Exception {
+		List<WorkflowStep> steps = read(write(options, original));
+		assertEquals(1, steps.size());
+		deserialized = steps.get(0);
+
+		assertDeepEqual(msg, original, deserialized, null);
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		checkSerializationResult("Empty original", Options.emptyOptions);
+	}
+
+	@Test
+	public void testFull() throws Exception {
+		initFull(original, 0);
+		checkSerializationResult("Full step", Options.emptyOptions);
+	}
+
+	@Test
+	public void testFullUncompressed() throws Exception {
+		initFull(original, 0);
+		checkSerializationResult("Full step without compression",
+				new Options(BinaryWorkflowWriter.COMPRESS, Boolean.FALSE));
+	}
+
+	/**
+	 * Enough steps to span multiple blocks and to make heavy use of the string table.
+	 */
+	@Test
+	public void testManySteps() throws Exception {
+		WorkflowStep[] steps = new WorkflowStep[5000];
+		for(int i=0; i<steps.length; i++) {
+			steps[i] = workflow.createWorkflowStep();
+			initFull(steps[i], i);
+		}
+
+		byte[] data = write(Options.emptyOptions, steps);
+		List<WorkflowStep> result = read(data);
+
+		assertEquals(steps.length, result.size());
+		for(int i=0; i<steps.length; i++) {
+			assertDeepEqual("Step "+i, steps[i], result.get(i), null);
+		}
+	}
+
+	@Test
+	public void testWorkflowWithLinks() throws Exception {
+		WorkflowStep a = workflow.createWorkflowStep();
+		initFull(a, 1);
+		WorkflowStep b = workflow.createWorkflowStep();
+		initFull(b, 2);
+		WorkflowStep c = workflow.createWorkflowStep();
+		initFull(c, 3);
+
+		workflow.addWorkflowStep(a);
+		workflow.addWorkflowStep(a, b);
+		workflow.addWorkflowStep(a, c);
+		workflow.setTitle("My Workflow");
+
+		Set<WorkflowStep> steps = new LinkedHashSet<>();
+		Collections.addAll(steps, a, b, c);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(BinaryWorkflowWriter writer = new BinaryWorkflowWriter()) {
+			writer.init(out, null);
+			writer.writeWorkflow(workflow, steps);
+		}
+
+		List<int[]> links = new ArrayList<>();
+		try(BinaryWorkflowReader reader = new BinaryWorkflowReader(
+				workflow.getSchema(), workflow::createWorkflowStep)) {
+			reader.setLinkAction((source, target) -> links.add(new int[]{source, target}));
+			reader.init(new ByteArrayInputStream(out.toByteArray()), null);
+
+			assertEquals("My Workflow", reader.getTitle());
+
+			List<WorkflowStep> result = new ArrayList<>();
+			while(reader.hasMoreData()) {
+				result.add(reader.read());
+			}
+			assertFalse(reader.hasMoreData());
+
+			assertEquals(3, result.size());
+			assertEquals(2, links.size());
+			for(int[] link : links) {
+				assertEquals(0, link[0]);
+				assertTrue(link[1]==1 || link[1]==2);
+			}
+		}
+	}
+}
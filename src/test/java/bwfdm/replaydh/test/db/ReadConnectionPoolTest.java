@@ -0,0 +1,112 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.db.ReadConnectionPool;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class ReadConnectionPoolTest {
+
+	@Test
+	public void testExecute() throws Exception {
+		Connection connection = mock(Connection.class);
+		try(ReadConnectionPool pool = new ReadConnectionPool(Collections.singleton(connection))) {
+			assertEquals(1, pool.getSize());
+			assertEquals(Integer.valueOf(1), pool.execute(c -> {
+				assertTrue(c.getConnection()==connection);
+				return Integer.valueOf(1);
+			}));
+		}
+		verify(connection).close();
+	}
+
+	@Test(expected=SQLException.class)
+	public void testExecuteAfterClose() throws Exception {
+		ReadConnectionPool pool = new ReadConnectionPool(Collections.singleton(mock(Connection.class)));
+		pool.close();
+		pool.execute(c -> null);
+	}
+
+	@Test(timeout=10_000)
+	public void testCloseWakesWaitingCaller() throws Exception {
+		Connection connection = mock(Connection.class);
+		ReadConnectionPool pool = new ReadConnectionPool(Collections.singleton(connection));
+
+		CountDownLatch inUse = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			// Occupy the only connection
+			Future<?> first = executor.submit(() -> pool.execute(c -> {
+				inUse.countDown();
+				try {
+					finish.await();
+				} catch (InterruptedException e) {
+					throw new SQLException(e);
+				}
+				return null;
+			}));
+			assertTrue(inUse.await(5, TimeUnit.SECONDS));
+
+			// Second caller has to wait for the connection
+			Future<?> second = executor.submit(() -> pool.execute(c -> null));
+			Thread.sleep(200);
+
+			pool.close();
+
+			try {
+				second.get();
+				fail("Waiting caller must fail once the pool is closed");
+			} catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof SQLException);
+			}
+
+			finish.countDown();
+			first.get();
+
+			// Connection returned after closing gets closed instead of reused
+			verify(connection).close();
+		} finally {
+			finish.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bwfdm.replaydh.core.RDHClient;
+import bwfdm.replaydh.core.RDHEnvironment;
+import bwfdm.replaydh.io.ChecksumCache;
+import bwfdm.replaydh.io.resources.FileResource;
+import bwfdm.replaydh.test.RDHTestUtils;
+import bwfdm.replaydh.workflow.Checksum;
+import bwfdm.replaydh.workflow.Checksums;
+import bwfdm.replaydh.workflow.Checksums.ChecksumType;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class ChecksumCacheTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static RDHEnvironment createEnvironment() {
+		RDHEnvironment environment = RDHTestUtils.createTestEnvironment();
+		RDHClient client = mock(RDHClient.class);
+		when(environment.getClient()).thenReturn(client);
+		return environment;
+	}
+
+	/**
+	 * Creates a file with given content and moves its modification time
+	 * to the past so that the cache doesn't consider it "racy".
+	 */
+	private Path createFile(String name, String content) throws IOException {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()-60_000));
+		return file;
+	}
+
+	private static BasicFileAttributes attributes(Path file) throws IOException {
+		return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+	}
+
+	private static Checksum checksum(Path file) throws IOException, InterruptedException {
+		return Checksums.createChecksum(new FileResource(file), ChecksumType.MD5);
+	}
+
+	@Test
+	public void testLookupUnchanged() throws Exception {
+		ChecksumCache cache = new ChecksumCache(new FileResource(folder.newFile("cache.txt").toPath()));
+
+		Path file = createFile("test.txt", "some content");
+		Checksum checksum = checksum(file);
+
+		assertNull(cache.lookup(file, attributes(file), ChecksumType.MD5));
+
+		cache.store(file, attributes(file), System.currentTimeMillis(), checksum);
+
+		assertEquals(checksum, cache.lookup(file, attributes(file), ChecksumType.MD5));
+		assertNull(cache.lookup(file, attributes(file), ChecksumType.SHA_1));
+	}
+
+	@Test
+	public void testLookupModified() throws Exception {
+		ChecksumCache cache = new ChecksumCache(new FileResource(folder.newFile("cache.txt").toPath()));
+
+		Path file = createFile("test.txt", "some content");
+		cache.store(file, attributes(file), System.currentTimeMillis(), checksum(file));
+
+		createFile("test.txt", "some other content");
+
+		assertNull(cache.lookup(file, attributes(file), ChecksumType.MD5));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testIgnoreRacyFiles() throws Exception {
+		ChecksumCache cache = new ChecksumCache(new FileResource(folder.newFile("cache.txt").toPath()));
+
+		Path file = createFile("test.txt", "some content");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+		cache.store(file, attributes(file), System.currentTimeMillis(), checksum(file));
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testIgnoreFilesRacyWhenRead() throws Exception {
+		ChecksumCache cache = new ChecksumCache(new FileResource(folder.newFile("cache.txt").toPath()));
+
+		Path file = createFile("test.txt", "some content");
+		BasicFileAttributes attributes = attributes(file);
+		long readTime = attributes.lastModifiedTime().toMillis()+1_000;
+
+		// Hashing might take long, but only the time of reading the attributes counts
+		cache.store(file, attributes, readTime, checksum(file));
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testFlush() throws Exception {
+		Path storage = folder.getRoot().toPath().resolve("cache.txt");
+		RDHEnvironment environment = createEnvironment();
+
+		Path file = createFile("test.txt", "some content");
+		Checksum checksum = checksum(file);
+
+		ChecksumCache cache = new ChecksumCache(new FileResource(storage));
+		cache.start(environment);
+		cache.store(file, attributes(file), System.currentTimeMillis(), checksum);
+		// Simulate abnormal termination: flushed but never stopped
+		cache.flush();
+		assertFalse(Files.exists(storage.resolveSibling("cache.txt.tmp")));
+
+		ChecksumCache cache2 = new ChecksumCache(new FileResource(storage));
+		cache2.start(environment);
+		try {
+			assertEquals(checksum, cache2.lookup(file, attributes(file), ChecksumType.MD5));
+		} finally {
+			cache2.stop(environment);
+		}
+	}
+
+	@Test
+	public void testPersistence() throws Exception {
+		Path storage = folder.getRoot().toPath().resolve("cache.txt");
+		RDHEnvironment environment = createEnvironment();
+
+		Path file = createFile("test\twith tab.txt", "some content");
+		Checksum checksum = checksum(file);
+
+		ChecksumCache cache = new ChecksumCache(new FileResource(storage));
+		cache.start(environment);
+		cache.store(file, attributes(file), System.currentTimeMillis(), checksum);
+		cache.stop(environment);
+
+		ChecksumCache cache2 = new ChecksumCache(new FileResource(storage));
+		cache2.start(environment);
+		try {
+			assertEquals(1, cache2.size());
+			Checksum cached = cache2.lookup(file, attributes(file), ChecksumType.MD5);
+			assertNotNull(cached);
+			assertEquals(checksum, cached);
+		} finally {
+			cache2.stop(environment);
+		}
+	}
+}
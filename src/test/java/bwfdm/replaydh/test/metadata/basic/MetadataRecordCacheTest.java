@@ -0,0 +1,191 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.metadata.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.metadata.MetadataRecord;
+import bwfdm.replaydh.metadata.MetadataRecord.Target;
+import bwfdm.replaydh.metadata.basic.DefaultMetadataRecord;
+import bwfdm.replaydh.metadata.basic.MetadataRecordCache;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class MetadataRecordCacheTest {
+
+	private static final String SCHEMA = "schema";
+
+	private static MetadataRecord record(int index) {
+		DefaultMetadataRecord record = new DefaultMetadataRecord(
+				Target.forString("w1", "p"+index), SCHEMA);
+		record.addEntry("key", "value"+index);
+		return record;
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 10);
+		MetadataRecord record = record(0);
+
+		assertNull(cache.getRecord(record.getTarget(), SCHEMA));
+		cache.addRecord(record);
+		assertSame(record, cache.getRecord(record.getTarget(), SCHEMA));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 10, 0.5f);
+
+		// Keep strong refs around so that evicted records stay in the weak tier
+		List<MetadataRecord> records = new ArrayList<>();
+		for(int i=0; i<10; i++) {
+			MetadataRecord record = record(i);
+			records.add(record);
+			cache.addRecord(record);
+		}
+		assertEquals(10, cache.getRetainedCount());
+
+		// Make the first record the most recently used one
+		cache.getRecord(records.get(0).getTarget(), SCHEMA);
+
+		// Overflow shrinks the tier down to half its limit
+		MetadataRecord overflow = record(10);
+		records.add(overflow);
+		cache.addRecord(overflow);
+
+		assertEquals(5, cache.getRetainedCount());
+		assertEquals(6, cache.getEvictionCount());
+
+		// Evicted records are still reachable through the weak tier
+		for(MetadataRecord record : records) {
+			assertSame(record, cache.getRecord(record.getTarget(), SCHEMA));
+		}
+	}
+
+	@Test
+	public void testByteLimit() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 100, 2_000, 0.2f);
+
+		for(int i=0; i<100; i++) {
+			cache.addRecord(record(i));
+			assertTrue(cache.getRetainedBytes()<=2_000);
+		}
+		assertTrue(cache.getEvictionCount()>0);
+	}
+
+	@Test
+	public void testHasRecords() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 10);
+		MetadataRecord record = record(0);
+
+		assertFalse(cache.hasRecords(record.getTarget()));
+		cache.addRecord(record);
+		assertTrue(cache.hasRecords(record.getTarget()));
+		cache.removeRecord(record);
+		assertFalse(cache.hasRecords(record.getTarget()));
+	}
+
+	@Test
+	public void testResizeOnReAdd() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 10);
+		DefaultMetadataRecord record = (DefaultMetadataRecord) record(0);
+
+		cache.addRecord(record);
+		long initialBytes = cache.getRetainedBytes();
+
+		// Editing alone goes unnoticed, saving the record updates the estimate
+		record.addEntry("description", "some rather long text that increases the footprint");
+		assertEquals(initialBytes, cache.getRetainedBytes());
+
+		cache.addRecord(record);
+		assertTrue(cache.getRetainedBytes()>initialBytes);
+
+		cache.removeRecord(record);
+		assertEquals(0, cache.getRetainedBytes());
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 100);
+
+		int threads = 4;
+		int recordsPerThread = 500;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(int t=0; t<threads; t++) {
+				int offset = t*recordsPerThread;
+				futures.add(executor.submit(() -> {
+					List<MetadataRecord> records = new ArrayList<>();
+					for(int i=0; i<recordsPerThread; i++) {
+						MetadataRecord record = record(offset+i);
+						records.add(record);
+						cache.addRecord(record);
+					}
+					for(int round=0; round<3; round++) {
+						for(MetadataRecord record : records) {
+							assertSame(record, cache.getRecord(record.getTarget(), SCHEMA));
+						}
+					}
+				}));
+			}
+			for(Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(threads*recordsPerThread*3, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertTrue(cache.getEvictionCount()>0);
+	}
+
+	@Test
+	public void testRemoveReleasesRetainedRecord() {
+		MetadataRecordCache cache = new MetadataRecordCache(10, 10);
+		MetadataRecord record = record(0);
+
+		cache.addRecord(record);
+		cache.removeRecord(record);
+
+		assertEquals(0, cache.getRetainedCount());
+		assertEquals(0, cache.getRetainedBytes());
+		assertTrue(cache.isEmpty());
+	}
+}
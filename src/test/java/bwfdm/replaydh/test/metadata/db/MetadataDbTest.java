@@ -23,19 +23,34 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import bwfdm.replaydh.core.RDHEnvironment;
 import bwfdm.replaydh.core.RDHLifecycleException;
+import bwfdm.replaydh.db.DBUtils;
 import bwfdm.replaydh.metadata.MetadataBuilder;
+import bwfdm.replaydh.metadata.MetadataException;
+import bwfdm.replaydh.metadata.MetadataQuery;
 import bwfdm.replaydh.metadata.MetadataRecord;
 import bwfdm.replaydh.metadata.MetadataRecord.Target;
 import bwfdm.replaydh.metadata.MetadataRepository.RecordIterator;
@@ -50,6 +65,9 @@ import bwfdm.replaydh.test.RDHTestUtils;
  */
 public class MetadataDbTest {
 
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
 	private RDHEnvironment environment;
 	private MetadataDB repository;
 
@@ -334,4 +352,392 @@ public class MetadataDbTest {
 			assertFalse(recordIterator.hasNext());
 		}
 	}
+
+	@Test
+	public void testPagedRecordIterator() throws Exception {
+		final int resourceCount = 10;
+
+		MetadataDB pagedRepository = MetadataDB.newBuilder()
+				.useDefaultCacheAndLocationProvider()
+				.defaultSchema(MetadataSchema.EMPTY_SCHEMA)
+				.memory(true)
+				.pageSize(3)
+				.build();
+
+		assertTrue(pagedRepository.start(environment));
+		try {
+			pagedRepository.addSchema(MetadataSchema.EMPTY_SCHEMA);
+
+			pagedRepository.beginUpdate();
+			try {
+				for (int i = 0; i < resourceCount; i++) {
+					MetadataBuilder builder = pagedRepository.createBuilder(
+							Target.forString("workspace1", "path"+i), MetadataSchema.EMPTY_SCHEMA_ID);
+					builder.start();
+					builder.addEntry("key"+i, "value"+i);
+					pagedRepository.addRecord(builder.build());
+				}
+			} finally {
+				pagedRepository.endUpdate();
+			}
+
+			try(RecordIterator recordIterator = pagedRepository.getAvailableRecords()) {
+				for (int i = 0; i < resourceCount; i++) {
+					assertTrue(recordIterator.hasNext());
+					assertEquals("path"+i, recordIterator.next().getPath());
+				}
+
+				assertFalse(recordIterator.hasNext());
+			}
+		} finally {
+			pagedRepository.stop(environment);
+		}
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		String workspace = "workspace1";
+		String schemaId = MetadataSchema.EMPTY_SCHEMA_ID;
+		String[] titles = {"Survey results 2018", "Interview transcripts", "Survey questionnaire"};
+		String[] creators = {"Jane Doe", "John Doe", "Jürgen Müller"};
+
+		repository.beginUpdate();
+		try {
+			for (int i = 0; i < titles.length; i++) {
+				MetadataBuilder builder = repository.createBuilder(Target.forString(workspace, "path"+i), schemaId);
+				builder.start();
+
+				builder.addEntry("title", titles[i]);
+				builder.addEntry("creator", creators[i]);
+
+				repository.addRecord(builder.build());
+			}
+		} finally {
+			repository.endUpdate();
+		}
+
+		List<MetadataRecord> records = repository.search(MetadataQuery.newBuilder().text("surv").build());
+		assertEquals(2, records.size());
+
+		// Field scoped terms only match entries of that name
+		records = repository.search(MetadataQuery.newBuilder().text("survey").field("creator", "doe").build());
+		assertEquals(1, records.size());
+		assertEquals("path0", records.get(0).getTarget().getPath());
+
+		assertTrue(repository.search(MetadataQuery.newBuilder().field("title", "doe").build()).isEmpty());
+
+		// Diacritics are ignored
+		records = repository.search(MetadataQuery.newBuilder().text("jurgen").build());
+		assertEquals(1, records.size());
+		assertEquals("path2", records.get(0).getTarget().getPath());
+
+		// Paging
+		records = repository.search(MetadataQuery.newBuilder().text("doe").limit(1).build());
+		assertEquals(1, records.size());
+		records = repository.search(MetadataQuery.newBuilder().text("doe").offset(1).limit(1).build());
+		assertEquals(1, records.size());
+		records = repository.search(MetadataQuery.newBuilder().text("doe").offset(2).build());
+		assertTrue(records.isEmpty());
+	}
+
+	private MetadataDB createFileRepository(Path rootFolder) throws RDHLifecycleException {
+		MetadataDB repository = MetadataDB.newBuilder()
+				.useDefaultCacheAndLocationProvider()
+				.defaultSchema(MetadataSchema.EMPTY_SCHEMA)
+				.rootFolder(rootFolder)
+				.build();
+
+		assertTrue(repository.start(environment));
+
+		repository.addSchema(MetadataSchema.EMPTY_SCHEMA);
+
+		return repository;
+	}
+
+	/**
+	 * Creates a database with the layout used before schema versioning
+	 * got introduced and opens it, which has to migrate the existing
+	 * records to the current layout.
+	 */
+	@Test
+	public void testMigrateFromUnversionedLayout() throws Exception {
+		Path rootFolder = folder.getRoot().toPath();
+		Path file = rootFolder.resolve(MetadataDB.DEFAULT_DB_FILE);
+
+		try(Connection connection = DBUtils.connect("jdbc:sqlite:"+file);
+				Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE rdh_record (\n" +
+					"    id        INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+					"    workspace TEXT    NOT NULL,\n" +
+					"    path      TEXT    NOT NULL,\n" +
+					"    schema    TEXT    NOT NULL,\n" +
+					"    UNIQUE (workspace COLLATE NOCASE, path COLLATE NOCASE, schema COLLATE NOCASE)\n" +
+					"    ON CONFLICT ABORT\n" +
+					")");
+			stmt.execute("CREATE INDEX \"path_idx\" ON rdh_record (workspace, path)");
+			stmt.execute("CREATE TABLE rdh_entry (\n" +
+					"    record_id INTEGER REFERENCES rdh_record (id) ON DELETE CASCADE,\n" +
+					"    property  TEXT    NOT NULL,\n" +
+					"    value     TEXT    NOT NULL\n" +
+					")");
+
+			stmt.execute("INSERT INTO rdh_record (workspace, path, schema) VALUES ('w1', 'path1', '"
+					+MetadataSchema.EMPTY_SCHEMA_ID+"')");
+			stmt.execute("INSERT INTO rdh_record (workspace, path, schema) VALUES ('w1', 'path2', '"
+					+MetadataSchema.EMPTY_SCHEMA_ID+"')");
+			stmt.execute("INSERT INTO rdh_entry (record_id, property, value) VALUES (1, 'title', 'Survey results')");
+			stmt.execute("INSERT INTO rdh_entry (record_id, property, value) VALUES (1, 'creator', 'Jane Doe')");
+			stmt.execute("INSERT INTO rdh_entry (record_id, property, value) VALUES (2, 'title', 'Interview notes')");
+		}
+
+		MetadataDB migrated = createFileRepository(rootFolder);
+		try {
+			MetadataRecord record = migrated.getRecord(Target.forString("w1", "path1"), MetadataSchema.EMPTY_SCHEMA_ID);
+			assertNotNull(record);
+			assertEquals(2, record.getEntryCount());
+			assertEquals("Survey results", record.getEntry("title").getValue());
+			assertEquals("Jane Doe", record.getEntry("creator").getValue());
+
+			assertEquals(1, migrated.getRecords(Target.forString("w1", "path2")).size());
+
+			// Existing entries end up in the full-text index
+			List<MetadataRecord> found = migrated.search(MetadataQuery.newBuilder().text("interview").build());
+			assertEquals(1, found.size());
+			assertEquals("path2", found.get(0).getTarget().getPath());
+
+			// New records can be added next to the migrated ones
+			migrated.beginUpdate();
+			try {
+				MetadataBuilder builder = migrated.createBuilder(Target.forString("w1", "path3"), MetadataSchema.EMPTY_SCHEMA_ID);
+				builder.start();
+				builder.addEntry("title", "Survey questionnaire");
+				migrated.addRecord(builder.build());
+			} finally {
+				migrated.endUpdate();
+			}
+
+			assertEquals(2, migrated.search(MetadataQuery.newBuilder().text("survey").build()).size());
+		} finally {
+			migrated.stop(environment);
+		}
+
+		try(Connection connection = DBUtils.connect("jdbc:sqlite:"+file);
+				Statement stmt = connection.createStatement()) {
+			try(ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+				assertTrue(rs.next());
+				assertEquals(3, rs.getInt(1));
+			}
+			try(ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM rdh_entry")) {
+				assertTrue(rs.next());
+				assertEquals(4, rs.getInt(1));
+			}
+			try(ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'path_idx'")) {
+				assertFalse("Old path index not dropped", rs.next());
+			}
+		}
+
+		// Reopening an up-to-date database must not migrate again
+		MetadataDB reopened = createFileRepository(rootFolder);
+		try {
+			assertEquals(1, reopened.getRecords(Target.forString("w1", "path3")).size());
+			assertEquals(2, reopened.search(MetadataQuery.newBuilder().text("survey").build()).size());
+		} finally {
+			reopened.stop(environment);
+		}
+	}
+
+	private static int countRecords(MetadataDB repository) {
+		int count = 0;
+		try(RecordIterator recordIterator = repository.getAvailableRecords()) {
+			while(recordIterator.hasNext()) {
+				recordIterator.next();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Commits a large update on a background thread while several threads
+	 * keep iterating the records in the database, which must only ever see
+	 * none or all of the records written by the update.
+	 */
+	private void assertReadsDuringWrite(MetadataDB repository) throws Exception {
+		final int recordCount = 2000;
+		final int readerCount = 3;
+
+		repository.beginUpdate();
+		for (int i = 0; i < recordCount; i++) {
+			MetadataBuilder builder = repository.createBuilder(
+					Target.forString("w1", "path"+i), MetadataSchema.EMPTY_SCHEMA_ID);
+			builder.start();
+			builder.addEntry("key"+i, "value"+i);
+			repository.addRecord(builder.build());
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(readerCount+1);
+		try {
+			Future<?> commit = executor.submit(repository::endUpdate);
+
+			List<Future<Integer>> readers = new ArrayList<>();
+			for (int i = 0; i < readerCount; i++) {
+				readers.add(executor.submit(() -> {
+					int reads = 0;
+					do {
+						int count = countRecords(repository);
+						if(count!=0 && count!=recordCount)
+							throw new AssertionError("Partial update visible: "+count);
+						reads++;
+					} while(!commit.isDone());
+					return Integer.valueOf(reads);
+				}));
+			}
+
+			commit.get();
+			for(Future<Integer> reader : readers) {
+				assertTrue(reader.get().intValue()>0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(recordCount, countRecords(repository));
+	}
+
+	@Test
+	public void testReadDuringWriteFile() throws Exception {
+		MetadataDB fileRepository = MetadataDB.newBuilder()
+				.useDefaultCacheAndLocationProvider()
+				.defaultSchema(MetadataSchema.EMPTY_SCHEMA)
+				.rootFolder(folder.getRoot().toPath())
+				.pageSize(10_000)
+				.readConnections(2)
+				.build();
+
+		assertTrue(fileRepository.start(environment));
+		try {
+			fileRepository.addSchema(MetadataSchema.EMPTY_SCHEMA);
+			assertReadsDuringWrite(fileRepository);
+		} finally {
+			fileRepository.stop(environment);
+		}
+	}
+
+	@Test
+	public void testReadDuringWriteMemory() throws Exception {
+		MetadataDB memoryRepository = MetadataDB.newBuilder()
+				.useDefaultCacheAndLocationProvider()
+				.defaultSchema(MetadataSchema.EMPTY_SCHEMA)
+				.memory(true)
+				.pageSize(10_000)
+				.build();
+
+		assertTrue(memoryRepository.start(environment));
+		try {
+			memoryRepository.addSchema(MetadataSchema.EMPTY_SCHEMA);
+			assertReadsDuringWrite(memoryRepository);
+		} finally {
+			memoryRepository.stop(environment);
+		}
+	}
+
+	private MetadataRecord buildRecord(Target target, String key, String value) {
+		MetadataBuilder builder = repository.createBuilder(target, MetadataSchema.EMPTY_SCHEMA_ID);
+		builder.start();
+		builder.addEntry(key, value);
+		return builder.build();
+	}
+
+	private void assertStored(Target target, String key, String value) {
+		MetadataRecord record = repository.getRecord(target, MetadataSchema.EMPTY_SCHEMA_ID);
+		assertNotNull("No record for "+target, record);
+		assertEquals(1, record.getEntryCount());
+		assertEquals(value, record.getEntry(key).getValue());
+	}
+
+	/**
+	 * Records added outside of an update are written in the background,
+	 * but must be visible right away and end up in the database.
+	 */
+	@Test
+	public void testWriteBehind() throws Exception {
+		final int recordCount = 20;
+
+		for (int i = 0; i < recordCount; i++) {
+			repository.addRecord(buildRecord(Target.forString("w1", "path"+i), "key", "value"+i));
+		}
+
+		// Visible no matter whether the writer thread is done yet
+		for (int i = 0; i < recordCount; i++) {
+			assertTrue(repository.hasRecords(Target.forString("w1", "path"+i)));
+		}
+
+		MetadataRecord removed = repository.getRecord(Target.forString("w1", "path0"), MetadataSchema.EMPTY_SCHEMA_ID);
+		repository.removeRecord(removed);
+		assertFalse(repository.hasRecords(Target.forString("w1", "path0")));
+
+		repository.flush();
+		repository.clearCache();
+
+		assertNull(repository.getRecord(Target.forString("w1", "path0"), MetadataSchema.EMPTY_SCHEMA_ID));
+		for (int i = 1; i < recordCount; i++) {
+			assertStored(Target.forString("w1", "path"+i), "key", "value"+i);
+		}
+	}
+
+	/**
+	 * A failed transaction must be reported by {@code endUpdate()} and must
+	 * not leave records with ids of rows that got rolled back, since those
+	 * ids will be handed out again to other records.
+	 */
+	@Test
+	public void testFailedUpdate() throws Exception {
+		Target targetA = Target.forString("w1", "a");
+		Target targetC = Target.forString("w1", "c");
+
+		repository.beginUpdate();
+		try {
+			repository.addRecord(buildRecord(Target.forString("w1", "P"), "key", "upper"));
+		} finally {
+			repository.endUpdate();
+		}
+
+		MetadataRecord recordA = buildRecord(targetA, "key", "valueA");
+
+		repository.beginUpdate();
+		try {
+			repository.addRecord(recordA);
+			// Clashes with the existing record, since paths are unique regardless of case
+			repository.addRecord(buildRecord(Target.forString("w1", "p"), "key", "lower"));
+		} finally {
+			try {
+				repository.endUpdate();
+				fail("Failed transaction not reported");
+			} catch(MetadataException e) {
+				// expected
+			}
+		}
+
+		// Reuses the row id of the rolled back insert for 'a'
+		repository.beginUpdate();
+		try {
+			repository.addRecord(buildRecord(targetC, "key", "valueC"));
+		} finally {
+			repository.endUpdate();
+		}
+
+		// Saving 'a' again must create its own row instead of overwriting 'c'
+		repository.beginUpdate();
+		try {
+			repository.addRecord(recordA);
+		} finally {
+			repository.endUpdate();
+		}
+
+		repository.clearCache();
+
+		assertStored(targetA, "key", "valueA");
+		assertStored(targetC, "key", "valueC");
+		assertStored(Target.forString("w1", "P"), "key", "upper");
+	}
 }
@@ -0,0 +1,125 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowUtils;
+import bwfdm.replaydh.workflow.impl.DefaultWorkflow;
+import bwfdm.replaydh.workflow.schema.WorkflowSchema;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class DefaultWorkflowTraversalTest {
+
+	private static DefaultWorkflow createWorkflow() {
+		return (DefaultWorkflow) WorkflowUtils.createForkedWorkflow(WorkflowSchema.getDefaultSchema());
+	}
+
+	private static Set<WorkflowStep> start(DefaultWorkflow workflow) {
+		return Collections.singleton(workflow.getInitialStep());
+	}
+
+	private static Set<WorkflowStep> collect(Iterator<WorkflowStep> iterator) {
+		Set<WorkflowStep> steps = new HashSet<>();
+		while(iterator.hasNext()) {
+			assertTrue("Step visited twice", steps.add(iterator.next()));
+		}
+		return steps;
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		DefaultWorkflow workflow = createWorkflow();
+		Set<WorkflowStep> all = workflow.getAllSteps();
+
+		assertEquals(all, collect(workflow.breadthFirst(start(workflow))));
+		assertEquals(all, collect(workflow.depthFirst(start(workflow))));
+	}
+
+	@Test
+	public void testTopological() throws Exception {
+		DefaultWorkflow workflow = createWorkflow();
+
+		Map<WorkflowStep, Integer> positions = new IdentityHashMap<>();
+		Iterator<WorkflowStep> iterator = workflow.topological(start(workflow));
+		while(iterator.hasNext()) {
+			WorkflowStep step = iterator.next();
+			for(WorkflowStep previous : workflow.getPreviousSteps(step)) {
+				assertTrue("Previous step not visited yet", positions.containsKey(previous));
+			}
+			assertFalse("Step visited twice", positions.containsKey(step));
+			positions.put(step, Integer.valueOf(positions.size()));
+		}
+
+		assertEquals(workflow.getStepCount(), positions.size());
+	}
+
+	@Test
+	public void testWalkGraph() throws Exception {
+		DefaultWorkflow workflow = createWorkflow();
+
+		AtomicInteger count = new AtomicInteger();
+		workflow.walkGraph(start(workflow), step -> {
+			count.incrementAndGet();
+			return true;
+		});
+		assertEquals(workflow.getStepCount(), count.get());
+
+		// Visitor prevents any further traversal
+		count.set(0);
+		workflow.walkGraph(start(workflow), step -> {
+			count.incrementAndGet();
+			return false;
+		});
+		assertEquals(1, count.get());
+	}
+
+	@Test
+	public void testWalkGraphParallel() throws Exception {
+		DefaultWorkflow workflow = createWorkflow();
+
+		Set<WorkflowStep> visited = ConcurrentHashMap.newKeySet();
+		AtomicInteger count = new AtomicInteger();
+		workflow.walkGraphParallel(start(workflow), step -> {
+			count.incrementAndGet();
+			visited.add(step);
+			return true;
+		});
+
+		assertEquals(workflow.getStepCount(), count.get());
+		assertEquals(workflow.getAllSteps(), visited);
+	}
+}
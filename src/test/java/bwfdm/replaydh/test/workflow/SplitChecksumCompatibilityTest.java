@@ -0,0 +1,161 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.workflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.io.IOUtils;
+import bwfdm.replaydh.io.resources.IOResource;
+import bwfdm.replaydh.io.resources.VirtualIOResource;
+import bwfdm.replaydh.workflow.Checksum;
+import bwfdm.replaydh.workflow.Checksums;
+import bwfdm.replaydh.workflow.Checksums.ChecksumType;
+import bwfdm.replaydh.workflow.Checksums.ChecksumValidationResult;
+
+/**
+ * Makes sure that checksums of split files created by the original two-pass
+ * implementation still validate with the single-pass sampling.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class SplitChecksumCompatibilityTest {
+
+	/**
+	 * Gap between sampled chunks used by the original implementation
+	 * for files between 10 bytes and 100 MB
+	 */
+	private static final int LEGACY_SKIP_SIZE = 16;
+
+	private static final int[] SIZES = {
+			11,
+			IOUtils.BUFFER_LENGTH,
+			IOUtils.BUFFER_LENGTH+LEGACY_SKIP_SIZE+1,
+			(int) (512*IOUtils.KB)+3,
+	};
+
+	private static final ChecksumType[] LEGACY_TYPES = {
+			ChecksumType.MD5,
+			ChecksumType.SHA_1,
+	};
+
+	private final Random random = new Random(1234);
+
+	private static IOResource createResource(byte[] data) throws IOException {
+		VirtualIOResource resource = new VirtualIOResource(null, data.length);
+		try(ByteChannel channel = resource.getWriteChannel(true)) {
+			ByteBuffer bb = ByteBuffer.wrap(data);
+			while(bb.hasRemaining()) {
+				channel.write(bb);
+			}
+		}
+		return resource;
+	}
+
+	/**
+	 * Recreates a checksum the way the original implementation did: first
+	 * a summary digest over chunks of {@link IOUtils#BUFFER_LENGTH} bytes
+	 * with gaps of {@link #LEGACY_SKIP_SIZE} bytes, then the full digest.
+	 */
+	private static Checksum legacyChecksum(ChecksumType type, byte[] data) throws Exception {
+		MessageDigest digest = MessageDigest.getInstance(type.getAlgorithm());
+
+		int position = 0;
+		while(position<data.length) {
+			int length = Math.min(IOUtils.BUFFER_LENGTH, data.length-position);
+			digest.update(data, position, length);
+			position += length+LEGACY_SKIP_SIZE;
+		}
+		byte[] summary = digest.digest();
+
+		byte[] full = digest.digest(data);
+
+		byte[] payload = new byte[full.length+summary.length];
+		System.arraycopy(full, 0, payload, 0, full.length);
+		System.arraycopy(summary, 0, payload, full.length, summary.length);
+
+		return new Checksum(type.getAlgorithm(), data.length, payload);
+	}
+
+	@Test
+	public void testLegacyChecksumsValidate() throws Exception {
+		for(ChecksumType type : LEGACY_TYPES) {
+			for(int size : SIZES) {
+				byte[] data = new byte[size];
+				random.nextBytes(data);
+
+				IOResource resource = createResource(data);
+				Checksum legacy = legacyChecksum(type, data);
+
+				assertEquals(type+"@"+size, legacy, Checksums.createChecksum(resource, type));
+				assertEquals(type+"@"+size, ChecksumValidationResult.VALID,
+						Checksums.validateChecksum(resource, legacy));
+			}
+		}
+	}
+
+	@Test
+	public void testModifiedContent() throws Exception {
+		for(ChecksumType type : LEGACY_TYPES) {
+			for(int size : SIZES) {
+				byte[] data = new byte[size];
+				random.nextBytes(data);
+				Checksum legacy = legacyChecksum(type, data);
+
+				// Change a byte that lies within a sampled chunk
+				data[size/2 % IOUtils.BUFFER_LENGTH]++;
+				IOResource resource = createResource(data);
+
+				assertEquals(type+"@"+size, ChecksumValidationResult.CONTENT_CHANGED,
+						Checksums.validateChecksum(resource, legacy));
+			}
+		}
+	}
+
+	@Test
+	public void testUpdateChecksum() throws Exception {
+		for(ChecksumType type : LEGACY_TYPES) {
+			byte[] data = new byte[SIZES[3]];
+			random.nextBytes(data);
+			Checksum legacy = legacyChecksum(type, data);
+
+			assertSame(legacy, Checksums.updateChecksum(createResource(data), legacy));
+
+			data[data.length-1]++;
+			IOResource resource = createResource(data);
+
+			Checksum updated = Checksums.updateChecksum(resource, legacy);
+			assertNotSame(legacy, updated);
+			assertNotEquals(legacy, updated);
+			assertArrayEquals(legacyChecksum(type, data).getPayload(), updated.getPayload());
+		}
+	}
+}
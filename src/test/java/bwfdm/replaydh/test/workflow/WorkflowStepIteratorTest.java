@@ -0,0 +1,117 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.workflow.Workflow;
+import bwfdm.replaydh.workflow.WorkflowStep;
+import bwfdm.replaydh.workflow.WorkflowStepIterator;
+import bwfdm.replaydh.workflow.WorkflowUtils;
+import bwfdm.replaydh.workflow.schema.WorkflowSchema;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class WorkflowStepIteratorTest {
+
+	/**
+	 * Consumes the iterator and verifies that every step is visited
+	 * exactly once and only after all its previous steps in scope.
+	 */
+	private static Map<WorkflowStep, Integer> assertTopologicalOrder(
+			Workflow workflow, WorkflowStepIterator iterator) {
+		Map<WorkflowStep, Integer> positions = new IdentityHashMap<>();
+
+		while(iterator.hasNext()) {
+			iterator.next();
+			WorkflowStep step = iterator.getCurrentSource();
+
+			assertFalse("Step visited twice", positions.containsKey(step));
+
+			for(WorkflowStep previous : workflow.getPreviousSteps(step)) {
+				if(iterator.isInScope(previous)) {
+					assertTrue("Previous step not visited yet", positions.containsKey(previous));
+				}
+			}
+
+			positions.put(step, Integer.valueOf(positions.size()));
+		}
+
+		return positions;
+	}
+
+	@Test
+	public void testEntireWorkflow() throws Exception {
+		Workflow workflow = WorkflowUtils.createForkedWorkflow(WorkflowSchema.getDefaultSchema());
+
+		Map<WorkflowStep, Integer> positions = assertTopologicalOrder(
+				workflow, new WorkflowStepIterator(workflow));
+
+		assertEquals(workflow.getStepCount(), positions.size());
+		assertEquals(0, positions.get(workflow.getInitialStep()).intValue());
+	}
+
+	@Test
+	public void testScope() throws Exception {
+		Workflow workflow = WorkflowUtils.createForkedWorkflow(WorkflowSchema.getDefaultSchema());
+
+		// Drop the initial step and its direct successor from the selection
+		Set<WorkflowStep> scope = new HashSet<>(workflow.getAllSteps());
+		WorkflowStep initial = workflow.getInitialStep();
+		scope.remove(initial);
+		scope.removeAll(workflow.getNextSteps(initial));
+
+		Map<WorkflowStep, Integer> positions = assertTopologicalOrder(
+				workflow, new WorkflowStepIterator(workflow, scope));
+
+		assertEquals(scope, positions.keySet());
+	}
+
+	@Test
+	public void testStages() throws Exception {
+		Workflow workflow = WorkflowUtils.createLinearWorkflow(WorkflowSchema.getDefaultSchema());
+
+		WorkflowStepIterator iterator = new WorkflowStepIterator(workflow)
+				.addStage(step -> {
+					WorkflowStep copy = workflow.createWorkflowStep();
+					copy.setTitle(step.getTitle()+"_copy");
+					return copy;
+				});
+
+		while(iterator.hasNext()) {
+			WorkflowStep step = iterator.next();
+			WorkflowStep source = iterator.getCurrentSource();
+
+			assertSame(workflow, iterator.getWorkflow());
+			assertEquals(source.getTitle()+"_copy", step.getTitle());
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.test.workflow;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.workflow.Checksums.ChecksumType;
+
+/**
+ * Verifies the XXH64 digest against the reference values of the
+ * original xxHash implementation.
+ *
+ * @author Markus Gärtner
+ *
+ */
+public class XXHash64DigestTest {
+
+	/**
+	 * Recreates the sanity buffer used by the xxHash self test.
+	 */
+	private static byte[] sanityBuffer(int length) {
+		byte[] buffer = new byte[length];
+		long generator = 2654435761L;
+		for(int i=0; i<length; i++) {
+			buffer[i] = (byte) (generator >>> 56);
+			generator *= 0x9E3779B185EBCA8DL;
+		}
+		return buffer;
+	}
+
+	private static byte[] hash(byte[] data) {
+		return ChecksumType.XXH64.createDigest().digest(data);
+	}
+
+	private static byte[] expected(long value) {
+		return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+	}
+
+	private static void assertHash(long expected, byte[] data) {
+		assertArrayEquals(expected(expected), hash(data));
+	}
+
+	private static void assertHash(long expected, String text) {
+		assertHash(expected, text.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testDigestLength() throws Exception {
+		assertEquals(Long.BYTES, ChecksumType.XXH64.createDigest().getDigestLength());
+	}
+
+	@Test
+	public void testStrings() throws Exception {
+		assertHash(0xEF46DB3751D8E999L, "");
+		assertHash(0xD24EC4F1A98C6E5BL, "a");
+		assertHash(0x44BC2CF5AD770999L, "abc");
+		assertHash(0xFBCEA83C8A378BF1L, "Nobody inspects the spammish repetition");
+	}
+
+	@Test
+	public void testSanityBuffer() throws Exception {
+		byte[] buffer = sanityBuffer(2367);
+
+		assertHash(0xEF46DB3751D8E999L, new byte[0]);
+		assertHash(0xE934A84ADB052768L, sanityBuffer(1));
+		assertHash(0x8282DCC4994E35C8L, sanityBuffer(14));
+		assertHash(0xB641AE8CB691C174L, sanityBuffer(222));
+		assertHash(0xA82418DDEC0EA581L, buffer);
+	}
+
+	@Test
+	public void testStreaming() throws Exception {
+		byte[] buffer = sanityBuffer(2367);
+		byte[] expected = expected(0xA82418DDEC0EA581L);
+		Random random = new Random(2367);
+
+		MessageDigest digest = ChecksumType.XXH64.createDigest();
+
+		// Single bytes
+		for(byte b : buffer) {
+			digest.update(b);
+		}
+		assertArrayEquals(expected, digest.digest());
+
+		// Random chunks, mixing arrays and buffers
+		for(int run=0; run<10; run++) {
+			int offset = 0;
+			while(offset<buffer.length) {
+				int length = Math.min(random.nextInt(100), buffer.length-offset);
+				if(random.nextBoolean()) {
+					digest.update(buffer, offset, length);
+				} else {
+					digest.update(ByteBuffer.wrap(buffer, offset, length));
+				}
+				offset += length;
+			}
+			assertArrayEquals(expected, digest.digest());
+		}
+	}
+}
@@ -24,6 +24,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -91,13 +92,20 @@ public class InMemoryMetadataCatalogTest {
 		catalog = null;
 	}
 
+	/**
+	 * Reloads happen in the background, so give them some time
+	 */
+	private static final int RELOAD_TIMEOUT = 5000;
+
 	@Test
 	public void testStart() throws Exception {
 		assertTrue(catalog.start(environment));
 
 		verify(workflowGen).get();
 		verify(workflow).addWorkflowListener(any());
-		verify(workflow).forEachStep(any());
+		verify(workflow, timeout(RELOAD_TIMEOUT)).getKnownSteps();
+		// Reloading must not load the entire history
+		verify(workflow, never()).forEachStep(any());
 		verify(fileTracker).addPropertyChangeListener(eq(FileTracker.NAME_WORKFLOW), any());
 	}
 
@@ -129,7 +137,7 @@ public class InMemoryMetadataCatalogTest {
 
 		verify(workflowGen).get();
 		verify(workflow).addWorkflowListener(any());
-		verify(workflow).forEachStep(any());
+		verify(workflow, timeout(RELOAD_TIMEOUT)).getKnownSteps();
 		verify(fileTracker).addPropertyChangeListener(eq(FileTracker.NAME_WORKFLOW), any());
 
 		Workflow newWorkflow = mock(Workflow.class);
@@ -140,7 +148,7 @@ public class InMemoryMetadataCatalogTest {
 
 		verify(workflow).removeWorkflowListener(any());
 		verify(newWorkflow).addWorkflowListener(any());
-		verify(newWorkflow).forEachStep(any());
+		verify(newWorkflow, timeout(RELOAD_TIMEOUT)).getKnownSteps();
 	}
 
 	@Test
@@ -151,7 +159,7 @@ public class InMemoryMetadataCatalogTest {
 
 		verify(workflowGen).get();
 		verify(workflow).addWorkflowListener(any());
-		verify(workflow, never()).forEachStep(any());
+		verify(workflow, never()).getKnownSteps();
 		verify(fileTracker).addPropertyChangeListener(eq(FileTracker.NAME_WORKFLOW), any());
 	}
 
@@ -22,10 +22,6 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -37,7 +33,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
-import java.util.function.Consumer;
 
 import org.junit.After;
 import org.junit.Before;
@@ -45,7 +40,6 @@ import org.junit.Test;
 
 import bwfdm.replaydh.utils.IdentityHashSet;
 import bwfdm.replaydh.workflow.Identifiable;
-import bwfdm.replaydh.workflow.Identifiable.Type;
 import bwfdm.replaydh.workflow.Identifier;
 import bwfdm.replaydh.workflow.Person;
 import bwfdm.replaydh.workflow.Resource;
@@ -58,7 +52,6 @@ import bwfdm.replaydh.workflow.impl.DefaultPerson;
 import bwfdm.replaydh.workflow.impl.DefaultResource;
 import bwfdm.replaydh.workflow.impl.DefaultTool;
 import bwfdm.replaydh.workflow.impl.DefaultWorkflow;
-import bwfdm.replaydh.workflow.schema.IdentifierType;
 import bwfdm.replaydh.workflow.schema.WorkflowSchema;
 import bwfdm.replaydh.workflow.schema.impl.IdentifierTypeImpl;
 
@@ -124,29 +117,14 @@ public class MetadataCacheTest {
 		}
 	}
 
+	/**
+	 * Adds a separate step for every value, so each call to this method
+	 * increases the usage count of the given values by {@code 1} and marks
+	 * them as used more recently than all previously stored values.
+	 */
 	private void store(String key, String...values) {
 		for(String value : values) {
-			Identifiable proxy = mock(Resource.class);
-			when(proxy.getType()).thenReturn(Type.RESOURCE);
-			IdentifierType type = mock(IdentifierType.class);
-			when(type.getLabel()).thenReturn(key);
-			Identifier id = new Identifier(type, value);
-			doAnswer(inv -> {
-				@SuppressWarnings("unchecked")
-				Consumer<? super Identifier> action = (Consumer<? super Identifier>) inv.getArguments()[0];
-				action.accept(id);
-				return null;
-			}).when(proxy).forEachIdentifier(any());
-
-			WorkflowStep step = mock(WorkflowStep.class);
-			doAnswer(inv -> {
-				@SuppressWarnings("unchecked")
-				Consumer<? super Identifiable> action = (Consumer<? super Identifiable>) inv.getArguments()[0];
-				action.accept(proxy);
-				return null;
-			}).when(step).forEachIdentifiable(any());
-
-			cache.addWorkflowStep(step);
+			storeStep(makeIdentifiable(key, value));
 		}
 	}
 
@@ -248,6 +226,36 @@ public class MetadataCacheTest {
 		}
 	}
 
+	@Test
+	public void testSnapshotIgnoresLaterChanges() throws Exception {
+		WorkflowStep step = workflow.createWorkflowStep();
+		step.setTitle("before");
+
+		MetadataCache.StepSnapshot snapshot = MetadataCache.snapshot(step);
+		step.setTitle("after");
+
+		cache.addWorkflowStep(snapshot);
+		assertListEquals(cache.suggest(ES, null, MetadataCatalog.TITLE_KEY, null), "before");
+
+		cache.updateWorkflowStep(step);
+		assertListEquals(cache.suggest(ES, null, MetadataCatalog.TITLE_KEY, null), "after");
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		storeStep(MetadataCatalog.TITLE_KEY, "stale");
+
+		WorkflowStep step = workflow.createWorkflowStep();
+		step.setTitle("testTitle");
+		workflow.addWorkflowStep(step);
+
+		cache.reload(workflow);
+
+		assertEquals(workflow.getStepCount(), cache.getStepCount());
+		assertTrue(cache.contains(step));
+		assertListEquals(cache.suggest(ES, null, MetadataCatalog.TITLE_KEY, null), "testTitle");
+	}
+
 	@Test
 	public void suggestEmptyWhenCacheEmpty() throws Exception {
 		assertEmpty(cache.suggest(ES, null, "test", null));
@@ -256,8 +264,9 @@ public class MetadataCacheTest {
 	@Test
 	public void suggestWhenPrefixEmpty() throws Exception {
 		store("test", "x1", "x2");
+		// equal usage counts, so the most recent value comes first
 		assertListEquals(cache.suggest(ES, null, "test", null),
-				"x1", "x2");
+				"x2", "x1");
 	}
 
 	@Test
@@ -266,7 +275,7 @@ public class MetadataCacheTest {
 		store("test2", "x1", "x2");
 		store("test3", "x1", "x2");
 		assertListEquals(cache.suggest(ES, null, "test", null),
-				"x1", "x2");
+				"x2", "x1");
 	}
 
 	@Test
@@ -274,8 +283,9 @@ public class MetadataCacheTest {
 		store("test", "x1", "x2");
 		store("test", "x2", "x4");
 		store("test", "x4", "x3");
+		// x2 and x4 got used twice, x4 and x3 most recently
 		assertListEquals(cache.suggest(ES, null, "test", null),
-				"x1", "x2", "x3", "x4");
+				"x4", "x2", "x3", "x1");
 	}
 
 	@Test
@@ -284,7 +294,7 @@ public class MetadataCacheTest {
 		store("test", "x2", "x4");
 		store("test", "x4", "x3");
 		assertListEquals(cache.suggest(MetadataCatalog.settings().setResultLimit(3), null, "test", null),
-				"x1", "x2", "x3");
+				"x4", "x2", "x3");
 	}
 
 	@Test
@@ -292,8 +302,9 @@ public class MetadataCacheTest {
 		store("test", "x10", "x11");
 		store("test", "x20", "x14");
 		store("test", "x1", "x21");
-		assertCollectionEquals(cache.suggest(ES, null, "test", "x1"),
-				"x1", "x10", "x11", "x14");
+		// all matches got used once, so recency decides
+		assertListEquals(cache.suggest(ES, null, "test", "x1"),
+				"x1", "x14", "x11", "x10");
 	}
 
 	@Test
@@ -301,8 +312,8 @@ public class MetadataCacheTest {
 		store("test", "x10", "x11");
 		store("test", "x20", "x14");
 		store("test", "x1", "x21");
-		assertCollectionEquals(cache.suggest(MetadataCatalog.settings().setResultLimit(3), null, "test", "x1"),
-				"x1", "x10", "x11");
+		assertListEquals(cache.suggest(MetadataCatalog.settings().setResultLimit(3), null, "test", "x1"),
+				"x1", "x14", "x11");
 	}
 
 	private void assertResult(List<Identifiable> result, Identifiable...expected) {
@@ -0,0 +1,234 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import bwfdm.replaydh.workflow.Identifiable;
+import bwfdm.replaydh.workflow.Identifier;
+import bwfdm.replaydh.workflow.Resource;
+import bwfdm.replaydh.workflow.catalog.MetadataIndex.PostingList;
+import bwfdm.replaydh.workflow.impl.DefaultPerson;
+import bwfdm.replaydh.workflow.impl.DefaultResource;
+import bwfdm.replaydh.workflow.schema.impl.IdentifierTypeImpl;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class MetadataIndexTest {
+
+	private static Resource resource(String description) {
+		Resource resource = DefaultResource.blankResource();
+		resource.setDescription(description);
+		return resource;
+	}
+
+	private static Resource resource(String key, String value) {
+		IdentifierTypeImpl type = new IdentifierTypeImpl();
+		type.setLabel(key);
+		return DefaultResource.withIdentifiers(Collections.singleton(new Identifier(type, value)));
+	}
+
+	private static List<Identifiable> resolve(MetadataIndex index, PostingList postings) {
+		List<Identifiable> result = new ArrayList<>(postings.size());
+		for(int i = 0; i<postings.size(); i++) {
+			result.add(index.get(postings.get(i)));
+		}
+		return result;
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+
+		assertEquals(0, index.size());
+		assertTrue(index.candidates("x").isEmpty());
+		assertTrue(index.candidates(MetadataCatalog.DESCRIPTION_KEY, "x").isEmpty());
+	}
+
+	@Test
+	public void testAddAndQuery() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		Resource first = resource("some input data");
+		Resource second = resource("output data");
+		Resource third = resource("doi", "10.1000/182");
+
+		index.add(first);
+		index.add(second);
+		index.add(third);
+
+		assertEquals(3, index.size());
+		assertTrue(index.contains(second));
+
+		// Short fragments address a single posting list
+		assertEquals(Collections.singletonList(second), resolve(index, index.candidates("out")));
+		// Longer ones intersect the postings of their n-grams
+		assertEquals(list(first, second), resolve(index, index.candidates("data")));
+		assertEquals(Collections.singletonList(third), resolve(index, index.candidates("1000/1")));
+
+		assertEquals(list(first, second), resolve(index,
+				index.candidates(MetadataCatalog.DESCRIPTION_KEY, "put")));
+		assertEquals(Collections.singletonList(third), resolve(index, index.candidates("doi", "182")));
+		assertTrue(index.candidates("doi", "data").isEmpty());
+		assertTrue(index.candidates(MetadataCatalog.ROLE_KEY, "data").isEmpty());
+	}
+
+	@Test
+	public void testTypeSpecificFields() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		Identifiable person = DefaultPerson.withRole("supervisor");
+		Identifiable resource = DefaultResource.withResourceType("supervisor notes");
+
+		index.add(person);
+		index.add(resource);
+
+		assertEquals(Collections.singletonList(person), resolve(index,
+				index.candidates(MetadataCatalog.ROLE_KEY, "super")));
+		assertEquals(Collections.singletonList(resource), resolve(index,
+				index.candidates(MetadataCatalog.TYPE_KEY, "super")));
+		assertEquals(list(person, resource), resolve(index, index.candidates("visor")));
+	}
+
+	@Test
+	public void testUpdate() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		Resource resource = resource("old description");
+		index.add(resource);
+
+		resource.setDescription("new description");
+		index.add(resource);
+
+		assertEquals(1, index.size());
+		assertTrue(index.candidates("old").isEmpty());
+		assertEquals(Collections.singletonList(resource), resolve(index, index.candidates("new desc")));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		Resource first = resource("first item");
+		Resource second = resource("second item");
+		index.add(first);
+		index.add(second);
+
+		int id = index.candidates("first").get(0);
+		index.remove(first);
+
+		assertEquals(1, index.size());
+		assertFalse(index.contains(first));
+		assertNull(index.get(id));
+		assertTrue(index.candidates("first").isEmpty());
+		assertEquals(Collections.singletonList(second), resolve(index, index.candidates("item")));
+
+		// Removing unknown objects has no effect
+		index.remove(first);
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		index.add(resource("item"));
+		index.clear();
+
+		assertEquals(0, index.size());
+		assertEquals(0, index.idCount());
+		assertTrue(index.candidates("item").isEmpty());
+	}
+
+	@Test
+	public void testCompactOnRemove() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		final int count = 4 * MetadataIndex.MIN_COMPACTION_SIZE;
+
+		List<Resource> resources = new ArrayList<>();
+		for(int i = 0; i<count; i++) {
+			Resource resource = resource("item "+i);
+			resources.add(resource);
+			index.add(resource);
+		}
+		assertEquals(count, index.idCount());
+
+		// Remove the first three quarters, which forces at least one compaction
+		List<Resource> remaining = new ArrayList<>(resources);
+		for(int i = 0; i<count*3/4; i++) {
+			index.remove(remaining.remove(0));
+		}
+
+		assertEquals(remaining.size(), index.size());
+		assertTrue("Ids not compacted: "+index.idCount(), index.idCount()<count);
+
+		// Order of insertion is preserved
+		assertEquals(remaining, resolve(index, index.candidates("item")));
+
+		// New entries still get appended
+		Resource added = resource("item new");
+		index.add(added);
+		remaining.add(added);
+		assertEquals(remaining, resolve(index, index.candidates("item")));
+		assertSame(added, index.get(index.idCount()-1));
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		MetadataIndex index = new MetadataIndex();
+		Resource first = resource("first item");
+		Resource second = resource("second item");
+		Resource third = resource("third item");
+		index.add(first);
+		index.add(second);
+		index.add(third);
+
+		index.remove(second);
+		assertEquals(3, index.idCount());
+
+		index.compact();
+
+		assertEquals(2, index.idCount());
+		assertEquals(list(first, third), resolve(index, index.candidates("item")));
+		assertEquals(Collections.singletonList(third), resolve(index, index.candidates("third")));
+
+		// Remaining entries can still be updated and removed
+		third.setDescription("last item");
+		index.add(third);
+		assertTrue(index.candidates("third").isEmpty());
+		assertEquals(Collections.singletonList(third), resolve(index, index.candidates("last")));
+
+		index.remove(first);
+		assertEquals(Collections.singletonList(third), resolve(index, index.candidates("item")));
+	}
+
+	@SafeVarargs
+	private static <T> List<T> list(T...items) {
+		List<T> result = new ArrayList<>();
+		Collections.addAll(result, items);
+		return result;
+	}
+}
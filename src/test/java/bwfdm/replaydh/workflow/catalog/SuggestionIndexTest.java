@@ -0,0 +1,176 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class SuggestionIndexTest {
+
+	private static final int LIMIT = SuggestionIndex.TOP_SIZE;
+
+	@Test
+	public void testEmpty() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+
+		assertTrue(index.isEmpty());
+		assertEquals(0, index.getCount("x"));
+		assertEquals(Collections.emptyList(), index.suggest("", LIMIT));
+		assertEquals(Collections.emptyList(), index.suggest("x", LIMIT));
+	}
+
+	@Test
+	public void testAddAndRemove() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+
+		index.add("value", 2);
+		index.add("value", 1);
+		assertEquals(1, index.size());
+		assertEquals(3, index.getCount("value"));
+
+		index.remove("value", 2);
+		assertEquals(1, index.getCount("value"));
+		assertEquals(Arrays.asList("value"), index.suggest("val", LIMIT));
+
+		index.remove("value", 1);
+		assertTrue(index.isEmpty());
+		assertEquals(0, index.getCount("value"));
+		assertEquals(Collections.emptyList(), index.suggest("val", LIMIT));
+
+		// Non-positive counts and unknown values are ignored
+		index.add("value", 0);
+		index.remove("other", 1);
+		assertTrue(index.isEmpty());
+	}
+
+	@Test
+	public void testWordStarts() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		index.add("Input Data", 1);
+		index.add("data-set", 1);
+		index.add("metadata", 1);
+
+		// Matches at the beginning of any word, ignoring case
+		assertEquals(Arrays.asList("data-set", "Input Data"), index.suggest("DATA", LIMIT));
+		assertEquals(Arrays.asList("data-set"), index.suggest("set", LIMIT));
+		assertEquals(Arrays.asList("Input Data"), index.suggest("input d", LIMIT));
+		// But not within a word
+		assertEquals(Collections.emptyList(), index.suggest("tadata", LIMIT));
+	}
+
+	@Test
+	public void testEmptyFragmentMatchesAll() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		index.add("a", 1);
+		index.add("b", 3);
+		index.add("c", 2);
+
+		assertEquals(Arrays.asList("b", "c", "a"), index.suggest("", LIMIT));
+		assertEquals(Arrays.asList("b", "c"), index.suggest("  ", 2));
+	}
+
+	@Test
+	public void testRankByPrefixCountAndRecency() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		index.add("my file", 5);
+		index.add("file b", 1);
+		index.add("file a", 1);
+		index.add("file c", 2);
+
+		// Values starting with the fragment first, then by count, then most recent
+		assertEquals(Arrays.asList("file c", "file a", "file b", "my file"),
+				index.suggest("fi", LIMIT));
+
+		// Using a value again makes it more recent
+		index.add("file b", 1);
+		index.remove("file b", 1);
+		assertEquals(Arrays.asList("file c", "file b", "file a", "my file"),
+				index.suggest("fi", LIMIT));
+
+		// Dropping usages lowers the count, but keeps the recency
+		index.remove("file c", 1);
+		assertEquals(Arrays.asList("my file", "file b", "file c", "file a"),
+				index.suggest("", LIMIT));
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		List<String> expected = new ArrayList<>();
+		final int count = 2 * LIMIT + 5;
+		for(int i = count; i>0; i--) {
+			String value = "value "+i;
+			index.add(value, i);
+			expected.add(value);
+		}
+
+		// Beyond the cached top values the whole subtree gets scanned
+		assertEquals(expected, index.suggest("val", count));
+		assertEquals(expected.subList(0, LIMIT), index.suggest("val", LIMIT));
+		assertEquals(expected.subList(0, 3), index.suggest("val", 3));
+		assertEquals(Collections.emptyList(), index.suggest("val", 0));
+	}
+
+	@Test
+	public void testLongFragment() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		String prefix = "abcdefghijklmnopqrstuvwxyz";
+		assertTrue(prefix.length()>SuggestionIndex.MAX_DEPTH);
+
+		index.add(prefix+"-1", 1);
+		index.add(prefix+"-2", 1);
+
+		// Fragments longer than the trie depth are verified on the candidates
+		assertEquals(Arrays.asList(prefix+"-2"), index.suggest(prefix+"-2", LIMIT));
+		assertEquals(Arrays.asList(prefix+"-2", prefix+"-1"), index.suggest(prefix, LIMIT));
+		assertEquals(Collections.emptyList(), index.suggest(prefix+"-3", LIMIT));
+	}
+
+	@Test
+	public void testTopValuesFollowChanges() throws Exception {
+		SuggestionIndex index = new SuggestionIndex();
+		index.add("alpha", 1);
+		index.add("alpine", 2);
+
+		assertEquals(Arrays.asList("alpine", "alpha"), index.suggest("al", LIMIT));
+
+		index.add("alpha", 5);
+		assertEquals(Arrays.asList("alpha", "alpine"), index.suggest("al", LIMIT));
+
+		index.remove("alpha", 6);
+		assertEquals(Arrays.asList("alpine"), index.suggest("al", LIMIT));
+		assertFalse(index.isEmpty());
+
+		index.remove("alpine", 2);
+		assertEquals(Collections.emptyList(), index.suggest("a", LIMIT));
+		assertTrue(index.isEmpty());
+	}
+}
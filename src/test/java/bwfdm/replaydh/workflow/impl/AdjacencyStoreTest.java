@@ -0,0 +1,181 @@
+/*
+ * Unless expressly otherwise stated, code from this project is licensed under the MIT license [https://opensource.org/licenses/MIT].
+ *
+ * Copyright (c) <2018> <Markus Gärtner, Volodymyr Kushnarenko, Florian Fritze, Sibylle Hermann and Uli Hahn>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF
+ * CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH
+ * THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package bwfdm.replaydh.workflow.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Markus Gärtner
+ *
+ */
+public class AdjacencyStoreTest {
+
+	private static Node<String> attach(AdjacencyStore<String> store, String content) {
+		Node<String> node = new Node<>(content);
+		store.attach(node);
+		return node;
+	}
+
+	private static void assertLinks(List<String> expected, List<String> actual) {
+		assertEquals(expected, new ArrayList<>(actual));
+	}
+
+	@Test
+	public void testLinks() throws Exception {
+		AdjacencyStore<String> store = new AdjacencyStore<>();
+		Node<String> a = attach(store, "a");
+		Node<String> b = attach(store, "b");
+		Node<String> c = attach(store, "c");
+
+		a.addOutgoing(b);
+		a.addOutgoing(c);
+		b.addOutgoing(c);
+
+		assertLinks(Arrays.asList("b", "c"), a.outgoing());
+		assertLinks(Arrays.asList("a", "b"), c.incoming());
+		assertTrue(a.hasLink("c"));
+		assertFalse(c.hasLink("a"));
+
+		a.removeOutgoing(b);
+
+		assertLinks(Arrays.asList("c"), a.outgoing());
+		assertEquals(0, b.incomingCount());
+	}
+
+	@Test
+	public void testDetach() throws Exception {
+		AdjacencyStore<String> store = new AdjacencyStore<>();
+		Node<String> a = attach(store, "a");
+		Node<String> b = attach(store, "b");
+		Node<String> c = attach(store, "c");
+
+		a.addOutgoing(b);
+		b.addOutgoing(c);
+		a.addOutgoing(c);
+
+		b.dispose();
+
+		assertEquals(-1, b.index);
+		assertNull(b.store);
+		assertLinks(Arrays.asList("c"), a.outgoing());
+		assertLinks(Arrays.asList("a"), c.incoming());
+	}
+
+	@Test
+	public void testIndexReuse() throws Exception {
+		AdjacencyStore<String> store = new AdjacencyStore<>();
+		Node<String> a = attach(store, "a");
+		Node<String> b = attach(store, "b");
+
+		a.addOutgoing(b);
+		b.setFlag(1, true);
+		b.setProperty("key", "value");
+
+		int index = b.index;
+		b.dispose();
+
+		Node<String> c = attach(store, "c");
+
+		// The freed index gets handed out again, without any of the old state
+		assertEquals(index, c.index);
+		assertEquals(2, store.indexLimit());
+		assertEquals(0, c.incomingCount());
+		assertEquals(0, c.outgoingCount());
+		assertFalse(c.flagSet(1));
+		assertNull(c.getProperty("key"));
+		assertEquals(0, a.outgoingCount());
+
+		a.addOutgoing(c);
+		assertLinks(Arrays.asList("c"), a.outgoing());
+		assertLinks(Arrays.asList("a"), c.incoming());
+	}
+
+	/**
+	 * Randomly adds and removes nodes and links and compares the store
+	 * against a simple model. The churn is large enough for the pool to
+	 * grow past the compaction threshold repeatedly.
+	 */
+	@Test
+	public void testCompaction() throws Exception {
+		AdjacencyStore<String> store = new AdjacencyStore<>();
+		Random random = new Random(42);
+
+		List<Node<String>> nodes = new ArrayList<>();
+		Map<Node<String>, List<String>> outgoing = new HashMap<>();
+		Map<Node<String>, List<String>> incoming = new HashMap<>();
+
+		int maxPoolSize = 0;
+		boolean compacted = false;
+
+		for(int i=0; i<50_000; i++) {
+			int op = random.nextInt(10);
+			if(op<3 || nodes.size()<2) {
+				Node<String> node = attach(store, "n"+i);
+				nodes.add(node);
+				outgoing.put(node, new ArrayList<>());
+				incoming.put(node, new ArrayList<>());
+			} else if(op<8) {
+				Node<String> source = nodes.get(random.nextInt(nodes.size()));
+				Node<String> target = nodes.get(random.nextInt(nodes.size()));
+				if(source!=target) {
+					source.addOutgoing(target);
+					outgoing.get(source).add(target.content());
+					incoming.get(target).add(source.content());
+				}
+			} else {
+				Node<String> node = nodes.remove(random.nextInt(nodes.size()));
+				String content = node.content();
+				for(Node<String> other : nodes) {
+					outgoing.get(other).removeAll(Collections.singleton(content));
+					incoming.get(other).removeAll(Collections.singleton(content));
+				}
+				outgoing.remove(node);
+				incoming.remove(node);
+				node.dispose();
+			}
+
+			int poolSize = store.poolSize();
+			if(poolSize<maxPoolSize) {
+				compacted = true;
+			}
+			maxPoolSize = Math.max(maxPoolSize, poolSize);
+		}
+
+		assertTrue("Pool never exceeded compaction threshold: "+maxPoolSize, maxPoolSize>1024);
+		assertTrue("Pool never got compacted", compacted);
+
+		for(Node<String> node : nodes) {
+			assertLinks(outgoing.get(node), node.outgoing());
+			assertLinks(incoming.get(node), node.incoming());
+		}
+	}
+}